@@ -4,30 +4,57 @@ import android.content.Context;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
-import android.graphics.Path;
 import android.util.AttributeSet;
+import android.view.Choreographer;
 import android.view.View;
 
-import java.util.ArrayList;
-import java.util.List;
+import com.tsinghua.openring.utils.LatencyHistogram;
+import com.tsinghua.openring.utils.PipelineMetrics;
+import com.tsinghua.openring.utils.SlidingWindowStats;
 
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Line chart for live sensor channels and short history series.
+ *
+ * Samples go into primitive {@link SlidingWindowStats} windows, which also track min/max incrementally,
+ * so {@link #addValue} can be called from the BLE thread at the sensor rate without shifting, boxing or
+ * rescanning the buffer. Redraws are coalesced to
+ * at most one per display frame through {@link Choreographer}, and {@link #onDraw} reuses its paints and
+ * line buffers, so a dozen live charts stay within the frame budget.
+ */
 public class PlotView extends View {
 
-    private final List<Integer> dataBuffer = new ArrayList<>();
-    private final List<Integer> dataBuffer2 = new ArrayList<>();  // 用于双线绘制
+    private static final LatencyHistogram drawLatency = PipelineMetrics.histogram("ui.plot_draw");
+
     private final int bufferSize = 512;  // 默认最大数据点数
+    // 数据由 BLE 线程写入、UI 线程绘制，两者都在此锁内访问 series
+    private final Object lock = new Object();
+    private SlidingWindowStats series = new SlidingWindowStats(bufferSize);
+    private SlidingWindowStats series2 = new SlidingWindowStats(bufferSize);  // 用于双线绘制
+
+    // 仅在 UI 线程使用：绘制时的数据快照与 drawLines 线段缓冲（每段 4 个 float）
+    private int[] drawValues = new int[0];
+    private int[] drawValues2 = new int[0];
+    private float[] linePoints = new float[0];
+
     private final Paint axisPaint = new Paint();
     private final Paint plotPaint = new Paint();
     private final Paint plotPaint2 = new Paint();  // 第二条线的画笔
+    private final Paint emptyTextPaint = new Paint();
+    private final Paint labelPaint = new Paint();
+    private final Paint pointPaint = new Paint();
+    private final Paint pointPaint2 = new Paint();
+    private final Paint valuePaint = new Paint();
+    private final Paint valuePaint2 = new Paint();
+    private final Paint singleValuePaint = new Paint();
     private float axisPadding = 35f;  // 增加填充量为标签留出空间
 
     private int axisColor = Color.parseColor("#ABD0B1"); // 坐标轴颜色
     private int plotColor = Color.parseColor("#00FF00"); // 曲线颜色
     private int plotColor2 = Color.parseColor("#FFA500"); // 第二条曲线颜色
 
-    private int maxY = Integer.MIN_VALUE;
-    private int minY = Integer.MAX_VALUE;
-
     // 增加一个阈值参数来检测数据变化的大小
     private final int MIN_Y_RANGE = 10;
 
@@ -37,13 +64,28 @@ public class PlotView extends View {
     // 是否显示数据点标签（默认不显示，用于实时测量）
     private boolean showDataLabels = false;
 
+    // Y 轴刻度文字缓存，范围不变时不重新生成字符串
+    private int labelMinY = Integer.MAX_VALUE;
+    private int labelMaxY = Integer.MIN_VALUE;
+    private String minLabel, midLabel, maxLabel;
+
+    // 每帧最多重绘一次：addValue 只在尚未安排时提交帧回调
+    private final Choreographer choreographer;
+    private final AtomicBoolean frameScheduled = new AtomicBoolean(false);
+    private final Choreographer.FrameCallback frameCallback = frameTimeNanos -> {
+        frameScheduled.set(false);
+        invalidate();
+    };
+
     public PlotView(Context context) {
         super(context);
+        choreographer = Choreographer.getInstance();
         init();
     }
 
     public PlotView(Context context, AttributeSet attrs) {
         super(context, attrs);
+        choreographer = Choreographer.getInstance();
         init();
     }
 
@@ -53,13 +95,53 @@ public class PlotView extends View {
         axisPaint.setStyle(Paint.Style.STROKE);
         axisPaint.setTextSize(30);
 
+        // drawLines 逐段绘制，圆形线帽让相邻线段的连接处与 Path 一样连续
         plotPaint.setColor(plotColor);
         plotPaint.setStrokeWidth(3);
         plotPaint.setStyle(Paint.Style.STROKE);
+        plotPaint.setStrokeCap(Paint.Cap.ROUND);
 
         plotPaint2.setColor(plotColor2);
         plotPaint2.setStrokeWidth(3);
         plotPaint2.setStyle(Paint.Style.STROKE);
+        plotPaint2.setStrokeCap(Paint.Cap.ROUND);
+
+        emptyTextPaint.setColor(Color.GRAY);
+        emptyTextPaint.setTextSize(30);
+        emptyTextPaint.setTextAlign(Paint.Align.CENTER);
+
+        labelPaint.setColor(Color.WHITE);
+        labelPaint.setTextSize(24);
+        labelPaint.setTextAlign(Paint.Align.RIGHT);
+        labelPaint.setAntiAlias(true);
+
+        pointPaint.setStyle(Paint.Style.FILL);
+        pointPaint2.setStyle(Paint.Style.FILL);
+
+        valuePaint.setTextSize(22);
+        valuePaint.setTextAlign(Paint.Align.CENTER);
+        valuePaint.setAntiAlias(true);
+
+        valuePaint2.setTextSize(22);
+        valuePaint2.setTextAlign(Paint.Align.CENTER);
+        valuePaint2.setAntiAlias(true);
+
+        singleValuePaint.setTextSize(28);
+        singleValuePaint.setTextAlign(Paint.Align.CENTER);
+        singleValuePaint.setAntiAlias(true);
+
+        applyPlotColors();
+    }
+
+    private void applyPlotColors() {
+        plotPaint.setColor(plotColor);
+        pointPaint.setColor(plotColor);
+        valuePaint.setColor(plotColor);
+        singleValuePaint.setColor(plotColor);
+
+        plotPaint2.setColor(plotColor2);
+        pointPaint2.setColor(plotColor2);
+        valuePaint2.setColor(plotColor2);
     }
 
     // 自定义坐标轴和绘制曲线的颜色
@@ -71,69 +153,65 @@ public class PlotView extends View {
 
     public void setPlotColor(int color) {
         plotColor = color;
-        plotPaint.setColor(plotColor);
+        applyPlotColors();
         invalidate();  // 重新绘制
     }
 
+    /**
+     * Append a live sample; safe to call from any thread
+     */
     public void addValue(int value) {
-        if (dataBuffer.size() >= bufferSize) {
-            dataBuffer.remove(0);
+        synchronized (lock) {
+            series.add(value);
         }
-
-        dataBuffer.add(value);
-
-        updateYRange();
-
-        adjustYScale();
-
-        postInvalidate();
+        requestFrame();
     }
 
     public void clearPlot() {
-        dataBuffer.clear();
-        dataBuffer2.clear();
-        maxY = Integer.MIN_VALUE;
-        minY = Integer.MAX_VALUE;
-        dualLineMode = false;
-        postInvalidate(); // 请求重新绘制
+        synchronized (lock) {
+            resetSeries(0, 0);
+            dualLineMode = false;
+        }
+        requestFrame(); // 请求重新绘制
     }
 
     // 批量设置数据（用于历史数据展示）
     public void setData(List<Integer> data) {
-        dataBuffer.clear();
-        dataBuffer2.clear();
-        dualLineMode = false;
-        if (data != null && !data.isEmpty()) {
-            dataBuffer.addAll(data);
-            updateYRange();
-            adjustYScale();
-        } else {
-            maxY = Integer.MIN_VALUE;
-            minY = Integer.MAX_VALUE;
+        synchronized (lock) {
+            resetSeries(data != null ? data.size() : 0, 0);
+            dualLineMode = false;
+            if (data != null) {
+                for (Integer value : data) {
+                    series.add(value);
+                }
+            }
         }
-        postInvalidate();
+        requestFrame();
     }
 
     // 设置双线数据（用于BP的SYS和DIA）
     public void setDualData(List<Integer> data1, List<Integer> data2) {
-        dataBuffer.clear();
-        dataBuffer2.clear();
-        dualLineMode = true;
-        if (data1 != null && !data1.isEmpty()) {
-            dataBuffer.addAll(data1);
-        }
-        if (data2 != null && !data2.isEmpty()) {
-            dataBuffer2.addAll(data2);
+        synchronized (lock) {
+            resetSeries(data1 != null ? data1.size() : 0, data2 != null ? data2.size() : 0);
+            dualLineMode = true;
+            if (data1 != null) {
+                for (Integer value : data1) {
+                    series.add(value);
+                }
+            }
+            if (data2 != null) {
+                for (Integer value : data2) {
+                    series2.add(value);
+                }
+            }
         }
-        updateYRangeForDual();
-        adjustYScale();
-        postInvalidate();
+        requestFrame();
     }
 
     // 设置第二条线的颜色
     public void setPlotColor2(int color) {
         plotColor2 = color;
-        plotPaint2.setColor(plotColor2);
+        applyPlotColors();
         invalidate();
     }
 
@@ -143,154 +221,138 @@ public class PlotView extends View {
         invalidate();
     }
 
-    // 动态更新 Y 轴的最大最小值
-    private void updateYRange() {
-        if (dataBuffer.isEmpty()) return;
-
-        int localMaxY = Integer.MIN_VALUE;
-        int localMinY = Integer.MAX_VALUE;
-
-        // 只计算当前缓冲区内的数据
-        for (int value : dataBuffer) {
-            localMaxY = Math.max(localMaxY, value);
-            localMinY = Math.min(localMinY, value);
+    // 清空数据；历史数据超过默认容量时按需扩容，恢复实时模式时回到默认容量（需持有 lock）
+    private void resetSeries(int size1, int size2) {
+        int capacity1 = Math.max(bufferSize, size1);
+        if (series.capacity() != capacity1) {
+            series = new SlidingWindowStats(capacity1);
+        } else {
+            series.clear();
         }
-
-        maxY = localMaxY;
-        minY = localMinY;
-    }
-
-    // 双线模式下更新 Y 轴范围
-    private void updateYRangeForDual() {
-        if (dataBuffer.isEmpty() && dataBuffer2.isEmpty()) return;
-
-        int localMaxY = Integer.MIN_VALUE;
-        int localMinY = Integer.MAX_VALUE;
-
-        for (int value : dataBuffer) {
-            localMaxY = Math.max(localMaxY, value);
-            localMinY = Math.min(localMinY, value);
+        int capacity2 = Math.max(bufferSize, size2);
+        if (series2.capacity() != capacity2) {
+            series2 = new SlidingWindowStats(capacity2);
+        } else {
+            series2.clear();
         }
+    }
 
-        for (int value : dataBuffer2) {
-            localMaxY = Math.max(localMaxY, value);
-            localMinY = Math.min(localMinY, value);
+    private void requestFrame() {
+        if (frameScheduled.compareAndSet(false, true)) {
+            choreographer.postFrameCallback(frameCallback);
         }
-
-        maxY = localMaxY;
-        minY = localMinY;
     }
 
-    // 动态调整 Y 轴的范围，若数据变化较小，适当扩大Y轴的范围
-    private void adjustYScale() {
-        if ((maxY - minY) < MIN_Y_RANGE) {
-            int range = MIN_Y_RANGE - (maxY - minY);
-            maxY += range;
-            minY -= range;
-        }
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        choreographer.removeFrameCallback(frameCallback);
+        frameScheduled.set(false);
     }
 
     @Override
     protected void onDraw(Canvas canvas) {
         super.onDraw(canvas);
+        long start = System.nanoTime();
+        drawPlot(canvas);
+        drawLatency.recordSince(start);
+    }
 
+    private void drawPlot(Canvas canvas) {
         float width = getWidth();
         float height = getHeight();
         float labelPadding = 60f;  // 为Y轴标签留出空间
         float axisWidth = width - axisPadding - labelPadding;
         float axisHeight = height - 2 * axisPadding;
 
+        // 在锁内复制数据快照，锁外计算坐标和绘制，尽量不阻塞 BLE 线程
+        int size;
+        int size2 = 0;
+        int minY;
+        int maxY;
+        boolean dual;
+        synchronized (lock) {
+            size = series.size();
+            if (drawValues.length < series.capacity()) {
+                drawValues = new int[series.capacity()];
+            }
+            copyTo(series, drawValues);
+            minY = (int) series.min();
+            maxY = (int) series.max();
+            dual = dualLineMode;
+            if (dual) {
+                size2 = series2.size();
+                if (drawValues2.length < series2.capacity()) {
+                    drawValues2 = new int[series2.capacity()];
+                }
+                copyTo(series2, drawValues2);
+                if (size2 > 0) {
+                    minY = Math.min(minY, (int) series2.min());
+                    maxY = Math.max(maxY, (int) series2.max());
+                }
+            }
+        }
+        if (linePoints.length < 4 * Math.max(size, size2)) {
+            linePoints = new float[4 * Math.max(drawValues.length, drawValues2.length)];
+        }
+
         // 不绘制边框，避免数据波形超出框时看起来诡异
 
         // 如果没有数据，显示提示信息
-        if (dataBuffer.isEmpty()) {
-            Paint textPaint = new Paint();
-            textPaint.setColor(Color.GRAY);
-            textPaint.setTextSize(30);
-            textPaint.setTextAlign(Paint.Align.CENTER);
-            canvas.drawText("No data", width / 2, height / 2, textPaint);
+        if (size == 0) {
+            canvas.drawText("No data", width / 2, height / 2, emptyTextPaint);
             return;
         }
 
+        // 动态调整 Y 轴的范围，若数据变化较小，适当扩大Y轴的范围
+        if ((maxY - minY) < MIN_Y_RANGE) {
+            int range = MIN_Y_RANGE - (maxY - minY);
+            maxY += range;
+            minY -= range;
+        }
+
         // 动态调整 Y 轴比例
         float yScale = axisHeight / (maxY - minY);
+        float bottom = height - axisPadding;
+        float left = axisPadding + labelPadding;
 
         // 绘制Y轴刻度标签
-        Paint labelPaint = new Paint();
-        labelPaint.setColor(Color.WHITE);
-        labelPaint.setTextSize(24);
-        labelPaint.setTextAlign(Paint.Align.RIGHT);
-        labelPaint.setAntiAlias(true);
-
+        updateAxisLabels(minY, maxY);
         // 最大值（稍微向下移动一点，留出空间给可能的数值标签）
-        canvas.drawText(String.valueOf(maxY), axisPadding + labelPadding - 10, axisPadding + 8, labelPaint);
+        canvas.drawText(maxLabel, left - 10, axisPadding + 8, labelPaint);
         // 中间值
-        int midValue = (maxY + minY) / 2;
-        canvas.drawText(String.valueOf(midValue), axisPadding + labelPadding - 10, height / 2 + 8, labelPaint);
+        canvas.drawText(midLabel, left - 10, height / 2 + 8, labelPaint);
         // 最小值
-        canvas.drawText(String.valueOf(minY), axisPadding + labelPadding - 10, height - axisPadding + 5, labelPaint);
+        canvas.drawText(minLabel, left - 10, bottom + 5, labelPaint);
 
         // 如果只有一个数据点，绘制一个圆点
-        if (dataBuffer.size() == 1) {
-            Paint pointPaint = new Paint();
-            pointPaint.setColor(plotColor);
-            pointPaint.setStyle(Paint.Style.FILL);
-            float x = axisPadding + labelPadding + axisWidth / 2;
-            int value = dataBuffer.get(0);
-            float y = height - axisPadding - (value - minY) * yScale;
+        if (size == 1) {
+            float x = left + axisWidth / 2;
+            int value = drawValues[0];
+            float y = bottom - (value - minY) * yScale;
             canvas.drawCircle(x, y, 8, pointPaint);
 
             // 如果启用了标签显示，绘制数值标签
             if (showDataLabels) {
-                Paint valuePaint = new Paint();
-                valuePaint.setColor(plotColor);
-                valuePaint.setTextSize(28);
-                valuePaint.setTextAlign(Paint.Align.CENTER);
-                valuePaint.setAntiAlias(true);
-
                 // 调整标签位置，确保不超出边界
                 float labelY = y - 15;
                 if (labelY < axisPadding + 5) {  // 标签会超出顶部
                     labelY = y + 35;  // 移到点下方
-                } else if (y + 35 > height - axisPadding) {  // 如果下方也会超出
+                } else if (y + 35 > bottom) {  // 如果下方也会超出
                     labelY = axisPadding + 20;  // 固定在靠近顶部的位置
                 }
-                canvas.drawText(String.valueOf(value), x, labelY, valuePaint);
+                canvas.drawText(String.valueOf(value), x, labelY, singleValuePaint);
             }
             return;
         }
 
-        // 确定数据点数量（用于计算 X 坐标）
-        int dataSize = dataBuffer.size();
-        int effectiveSize = Math.max(dataSize, 2);  // 至少2个点，避免除零
-
-        // 如果启用了标签显示，准备数值标签画笔
-        Paint valuePaint = null;
-        if (showDataLabels) {
-            valuePaint = new Paint();
-            valuePaint.setColor(plotColor);
-            valuePaint.setTextSize(22);
-            valuePaint.setTextAlign(Paint.Align.CENTER);
-            valuePaint.setAntiAlias(true);
-        }
-
         // 绘制第一条曲线和数据点
-        Path path = new Path();
-        for (int i = 0; i < dataBuffer.size(); i++) {
-            int value = dataBuffer.get(i);
-            float x = axisPadding + labelPadding + i * (axisWidth / (effectiveSize - 1));
-            float y = height - axisPadding - (value - minY) * yScale;
-            if (i == 0) {
-                path.moveTo(x, y);
-            } else {
-                path.lineTo(x, y);
-            }
-
-            // 如果启用了标签显示，绘制数据点圆圈和标签
-            if (showDataLabels) {
-                Paint pointPaint = new Paint();
-                pointPaint.setColor(plotColor);
-                pointPaint.setStyle(Paint.Style.FILL);
+        float step = axisWidth / (size - 1);
+        drawSeries(canvas, drawValues, size, left, step, bottom, yScale, minY, plotPaint);
+        if (showDataLabels) {
+            for (int i = 0; i < size; i++) {
+                float x = left + i * step;
+                float y = bottom - (drawValues[i] - minY) * yScale;
                 canvas.drawCircle(x, y, 5, pointPaint);
 
                 // 调整标签位置，确保不超出边界
@@ -298,83 +360,77 @@ public class PlotView extends View {
                 if (labelY < axisPadding + 5) {  // 标签会超出顶部
                     labelY = y + 20;  // 移到点下方
                 }
-                if (labelY > height - axisPadding) {  // 标签会超出底部
-                    labelY = height - axisPadding - 5;  // 固定在底部边界内
+                if (labelY > bottom) {  // 标签会超出底部
+                    labelY = bottom - 5;  // 固定在底部边界内
                 }
-                canvas.drawText(String.valueOf(value), x, labelY, valuePaint);
+                canvas.drawText(String.valueOf(drawValues[i]), x, labelY, valuePaint);
             }
         }
-        canvas.drawPath(path, plotPaint);
 
         // 如果是双线模式，绘制第二条曲线
-        if (dualLineMode && !dataBuffer2.isEmpty()) {
-            // 如果启用了标签显示，准备第二条线的数值标签画笔
-            Paint valuePaint2 = null;
-            if (showDataLabels) {
-                valuePaint2 = new Paint();
-                valuePaint2.setColor(plotColor2);
-                valuePaint2.setTextSize(22);
-                valuePaint2.setTextAlign(Paint.Align.CENTER);
-                valuePaint2.setAntiAlias(true);
+        if (dual && size2 > 0) {
+            float step2 = size2 == 1 ? 0 : axisWidth / (size2 - 1);
+            if (size2 > 1) {
+                drawSeries(canvas, drawValues2, size2, left, step2, bottom, yScale, minY, plotPaint2);
             }
+            // 单点时画在中间；启用标签时绘制数据点圆圈和标签（在点下方，避免与第一条线重叠）
+            if (size2 == 1 || showDataLabels) {
+                for (int i = 0; i < size2; i++) {
+                    float x = size2 == 1 ? left + axisWidth / 2 : left + i * step2;
+                    float y = bottom - (drawValues2[i] - minY) * yScale;
+                    canvas.drawCircle(x, y, 5, pointPaint2);
 
-            if (dataBuffer2.size() == 1) {
-                // 绘制单点
-                Paint pointPaint = new Paint();
-                pointPaint.setColor(plotColor2);
-                pointPaint.setStyle(Paint.Style.FILL);
-                float x = axisPadding + labelPadding + axisWidth / 2;
-                int value = dataBuffer2.get(0);
-                float y = height - axisPadding - (value - minY) * yScale;
-                canvas.drawCircle(x, y, 5, pointPaint);
-
-                // 如果启用了标签显示，绘制数值标签（在点下方，避免与第一条线重叠）
-                if (showDataLabels) {
-                    // 调整标签位置，确保不超出边界
-                    float labelY = y + 25;
-                    if (labelY > height - axisPadding) {  // 标签会超出底部
-                        labelY = height - axisPadding - 5;  // 固定在底部边界内
-                    }
-                    if (labelY < axisPadding + 20) {  // 标签会超出顶部
-                        labelY = axisPadding + 20;  // 固定在顶部边界内
-                    }
-                    canvas.drawText(String.valueOf(value), x, labelY, valuePaint2);
-                }
-            } else {
-                Path path2 = new Path();
-                int dataSize2 = dataBuffer2.size();
-                int effectiveSize2 = Math.max(dataSize2, 2);
-
-                for (int i = 0; i < dataBuffer2.size(); i++) {
-                    int value = dataBuffer2.get(i);
-                    float x = axisPadding + labelPadding + i * (axisWidth / (effectiveSize2 - 1));
-                    float y = height - axisPadding - (value - minY) * yScale;
-                    if (i == 0) {
-                        path2.moveTo(x, y);
-                    } else {
-                        path2.lineTo(x, y);
-                    }
-
-                    // 如果启用了标签显示，绘制数据点圆圈和标签
                     if (showDataLabels) {
-                        Paint pointPaint2 = new Paint();
-                        pointPaint2.setColor(plotColor2);
-                        pointPaint2.setStyle(Paint.Style.FILL);
-                        canvas.drawCircle(x, y, 5, pointPaint2);
-
                         // 调整标签位置，确保不超出边界
                         float labelY = y + 25;
-                        if (labelY > height - axisPadding) {  // 标签会超出底部
-                            labelY = height - axisPadding - 5;  // 固定在底部边界内
+                        if (labelY > bottom) {  // 标签会超出底部
+                            labelY = bottom - 5;  // 固定在底部边界内
                         }
                         if (labelY < axisPadding + 20) {  // 标签会超出顶部
                             labelY = axisPadding + 20;  // 固定在顶部边界内
                         }
-                        canvas.drawText(String.valueOf(value), x, labelY, valuePaint2);
+                        canvas.drawText(String.valueOf(drawValues2[i]), x, labelY, valuePaint2);
                     }
                 }
-                canvas.drawPath(path2, plotPaint2);
             }
         }
     }
+
+    // 按时间顺序复制窗口内的样本（需持有 lock）
+    private static void copyTo(SlidingWindowStats window, int[] dst) {
+        for (int i = 0, n = window.size(); i < n; i++) {
+            dst[i] = (int) window.get(i);
+        }
+    }
+
+    // 将折线展开为 drawLines 的线段端点（复用 linePoints，不分配）
+    private void drawSeries(Canvas canvas, int[] values, int size, float left, float step,
+                            float bottom, float yScale, int minY, Paint paint) {
+        float[] points = linePoints;
+        float prevX = left;
+        float prevY = bottom - (values[0] - minY) * yScale;
+        int k = 0;
+        for (int i = 1; i < size; i++) {
+            float x = left + i * step;
+            float y = bottom - (values[i] - minY) * yScale;
+            points[k++] = prevX;
+            points[k++] = prevY;
+            points[k++] = x;
+            points[k++] = y;
+            prevX = x;
+            prevY = y;
+        }
+        canvas.drawLines(points, 0, k, paint);
+    }
+
+    private void updateAxisLabels(int minY, int maxY) {
+        if (minY == labelMinY && maxY == labelMaxY && minLabel != null) {
+            return;
+        }
+        labelMinY = minY;
+        labelMaxY = maxY;
+        minLabel = String.valueOf(minY);
+        midLabel = String.valueOf((maxY + minY) / 2);
+        maxLabel = String.valueOf(maxY);
+    }
 }
@@ -45,24 +45,28 @@ import com.tsinghua.openring.utils.BLEService;
 import com.tsinghua.openring.inference.ModelInferenceManager;
 import com.tsinghua.openring.inference.ModelArchitecture;
 import com.tsinghua.openring.inference.ModelSelectionConfig;
+import com.tsinghua.openring.utils.AsyncLogger;
 import com.tsinghua.openring.utils.NotificationHandler;
+import com.tsinghua.openring.utils.RingRecording;
+import com.tsinghua.openring.utils.RingRecordingWriter;
 import com.tsinghua.openring.utils.VitalSignsProcessor;
 import com.tsinghua.openring.utils.VitalSignsHistoryManager;
 import com.tsinghua.openring.utils.VitalSignsRecord;
 import com.tsinghua.openring.utils.CloudConfig;
+import com.tsinghua.openring.utils.CloudSyncJobService;
 import com.tsinghua.openring.utils.CloudSyncService;
 
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Random;
 import java.util.Set;
 import java.util.TimeZone;
@@ -193,9 +197,13 @@ public class MainActivity extends AppCompatActivity implements IResponseListener
     private Button stopLogRecordingButton;
     private TextView logStatusText;
     private TextView logDisplayText;
-    private BufferedWriter logWriter;
+    // 会话记录：日志和原始数据包经异步队列批量写入 MainSession_*.bin
+    private volatile AsyncLogger sessionLogger;
     private boolean isLogRecording = false;
 
+    // 当前下载文件的记录（按包追加，最后一个包时关闭）
+    private RingRecordingWriter downloadRecording;
+
     // Cloud Sync Related
     private TextView cloudSyncIndicator;
     private TextView uploadedFilesCount;
@@ -444,6 +452,10 @@ public class MainActivity extends AppCompatActivity implements IResponseListener
         // Initialize CloudConfig and CloudSyncService
         cloudConfig = new CloudConfig(this);
         cloudSyncService = new CloudSyncService(this);
+        if (cloudConfig.isCloudSyncEnabled()) {
+            // 充电且连接 Wi-Fi 时在后台分批上传
+            CloudSyncJobService.schedule(this);
+        }
 
         // Initialize Vital Signs Processor
         vitalSignsProcessor = new VitalSignsProcessor(new VitalSignsProcessor.VitalSignsCallback() {
@@ -582,20 +594,18 @@ public class MainActivity extends AppCompatActivity implements IResponseListener
         });
         modelInferenceManager.init();
         NotificationHandler.setInferenceManager(modelInferenceManager);
-        // Log model loading status to UI logs
-        try {
+        // Models load in the background: log their status to the UI once every mission is ready
+        modelInferenceManager.whenAllReady().thenRun(() -> {
             String status = modelInferenceManager.reportStatus();
             for (String line : status.split("\n")) {
                 if (!line.trim().isEmpty()) recordLog(line);
             }
-            // 显示日志文件路径
-            String logPath = ModelInferenceManager.getLogFilePath();
-            if (logPath != null) {
-                recordLog("Model Inference日志文件: " + logPath);
-                recordLog("使用命令拉取日志: adb pull " + logPath + " ./");
-            }
-        } catch (Exception e) {
-            recordLog("Error reporting model status: " + e.getMessage());
+        });
+        // 显示日志文件路径
+        String logPath = ModelInferenceManager.getLogFilePath();
+        if (logPath != null) {
+            recordLog("Model Inference日志文件: " + logPath);
+            recordLog("使用命令拉取日志: adb pull " + logPath + " ./");
         }
 
         // Set PlotView colors
@@ -807,6 +817,10 @@ public class MainActivity extends AppCompatActivity implements IResponseListener
         if (viewHistoryButton != null) {
             viewHistoryButton.setOnClickListener(v -> openHistoryView());
         }
+        Button viewMetricsButton = findViewById(R.id.viewMetricsButton);
+        if (viewMetricsButton != null) {
+            viewMetricsButton.setOnClickListener(v -> openMetricsView());
+        }
 
         // Exercise control buttons
         if (startExerciseButton != null) {
@@ -1150,36 +1164,49 @@ public class MainActivity extends AppCompatActivity implements IResponseListener
             String safeFileName = fileInfo.fileName.replace(":", "_");
 
             File file = new File(directory, safeFileName);
-            boolean append = currentPacket > 1;
-
-            try (FileWriter fileWriter = new FileWriter(file, append);
-                 BufferedWriter writer = new BufferedWriter(fileWriter)) {
-
-                if (currentPacket == 1) {
-                    writer.write("# ========== File Information ==========\n");
-                    writer.write("# File name: " + fileInfo.fileName + "\n");
-                    writer.write("# File type: " + fileInfo.getFileTypeDescription() + "\n");
-                    writer.write("# User ID: " + fileInfo.userId + "\n");
-                    writer.write("# Time: " + fileInfo.timestamp + "\n");
-                    writer.write("# Download time: " + getCurrentTimestamp() + "\n");
-                    writer.write("# Total packets: " + totalPackets + "\n");
-                    writer.write("# =======================================\n\n");
-                }
-                writer.write("# Packet " + currentPacket + "/" + totalPackets + ":\n");
-                writer.write("# Raw data: " + bytesToHexString(data) + "\n");
-                writer.write("\n");
-                writer.flush();
+
+            if (currentPacket == 1 || downloadRecording == null || !file.equals(downloadRecording.getFile())) {
+                closeDownloadRecording();
+                Map<String, String> header = new LinkedHashMap<>();
+                header.put(RingRecording.KEY_KIND, RingRecording.KIND_DOWNLOAD);
+                header.put(RingRecording.KEY_FILE_NAME, fileInfo.fileName);
+                header.put("file_type", fileInfo.getFileTypeDescription());
+                header.put(RingRecording.KEY_USER, String.valueOf(fileInfo.userId));
+                header.put("time", String.valueOf(fileInfo.timestamp));
+                header.put("download_time", getCurrentTimestamp());
+                header.put("total_packets", String.valueOf(totalPackets));
+                header.put(RingRecording.KEY_DEVICE, deviceName);
+                header.put(RingRecording.KEY_MAC, macAddress);
+                downloadRecording = currentPacket == 1
+                        ? RingRecordingWriter.create(file, header)
+                        : RingRecordingWriter.openForAppend(file, header);
+            }
+            downloadRecording.writePacket(System.currentTimeMillis(), data);
+            if (currentPacket >= totalPackets) {
+                closeDownloadRecording();
             }
 
             recordLog(String.format("File data saved: %s (Packet %d/%d) -> %s",
                     fileInfo.fileName, currentPacket, totalPackets, file.getAbsolutePath()));
 
         } catch (IOException e) {
+            closeDownloadRecording();
             recordLog("Failed to save file: " + e.getMessage());
             e.printStackTrace();
         }
     }
 
+    private void closeDownloadRecording() {
+        if (downloadRecording != null) {
+            try {
+                downloadRecording.close();
+            } catch (IOException e) {
+                android.util.Log.e("MainActivity", "Failed to close download file: " + e.getMessage());
+            }
+            downloadRecording = null;
+        }
+    }
+
     private void downloadNextSelectedFile() {
         if (currentDownloadIndex >= selectedFiles.size()) {
             // 所有文件下载完成
@@ -1444,13 +1471,10 @@ public class MainActivity extends AppCompatActivity implements IResponseListener
         updateLogRecordingUI(false);
         updateLogStatus("Ready");
 
-        try {
-            if (logWriter != null) {
-                logWriter.close();
-                logWriter = null;
-            }
-        } catch (IOException e) {
-            recordLog("Failed to close log file: " + e.getMessage());
+        NotificationHandler.setPacketLogger(null);
+        if (sessionLogger != null) {
+            sessionLogger.close();
+            sessionLogger = null;
         }
 
         Toast.makeText(this, "Log recording stopped", Toast.LENGTH_SHORT).show();
@@ -1468,9 +1492,19 @@ public class MainActivity extends AppCompatActivity implements IResponseListener
             }
         }
 
-        String fileName = "MainSession_" + System.currentTimeMillis() + ".txt";
+        long now = System.currentTimeMillis();
+        String fileName = "MainSession_" + now + ".bin";
         File logFile = new File(directory, fileName);
-        logWriter = new BufferedWriter(new FileWriter(logFile, true));
+
+        Map<String, String> header = new LinkedHashMap<>();
+        header.put(RingRecording.KEY_KIND, RingRecording.KIND_SESSION);
+        header.put(RingRecording.KEY_CREATED, String.valueOf(now));
+        header.put(RingRecording.KEY_DEVICE, deviceName);
+        header.put(RingRecording.KEY_MAC, macAddress);
+        header.put(RingRecording.KEY_USER, getCurrentUserName());
+        RingRecordingWriter recording = RingRecordingWriter.create(logFile, header);
+        sessionLogger = new AsyncLogger("SessionLog", AsyncLogger.recordingSink(recording), android.util.Log.VERBOSE);
+        NotificationHandler.setPacketLogger(sessionLogger);
 
         recordLog("Log file created: " + logFile.getAbsolutePath());
     }
@@ -1643,6 +1677,11 @@ public class MainActivity extends AppCompatActivity implements IResponseListener
         startActivity(intent);
     }
 
+    private void openMetricsView() {
+        Intent intent = new Intent(this, MetricsActivity.class);
+        startActivity(intent);
+    }
+
     private void startMeasurementTimer(int totalTime) {
         totalMeasurementTime = totalTime;
         measurementElapsed = 0;
@@ -2217,28 +2256,23 @@ public class MainActivity extends AppCompatActivity implements IResponseListener
             String safeFileName = fileInfo.fileName.replace(":", "_");
             File file = new File(directory, safeFileName);
 
-            try (FileWriter fileWriter = new FileWriter(file);
-                 BufferedWriter writer = new BufferedWriter(fileWriter)) {
-
-                // 写入文件头信息
-                writer.write("# ========== Hardware Batch Download File ==========\n");
-                writer.write("# File name: " + fileInfo.fileName + "\n");
-                writer.write("# File index: " + fileInfo.fileIndex + "\n");
-                writer.write("# Start timestamp: " + fileInfo.startTimestamp + "\n");
-                writer.write("# End timestamp: " + fileInfo.endTimestamp + "\n");
-                writer.write("# Download time: " + getCurrentTimestamp() + "\n");
-                writer.write("# Total packets: " + fileInfo.receivedPackets + "\n");
-                writer.write("# ==================================================\n\n");
-
-                // 写入所有数据包
-                for (int i = 0; i < fileInfo.fileDataPackets.size(); i++) {
-                    byte[] packetData = fileInfo.fileDataPackets.get(i);
-                    writer.write("# Packet " + (i + 1) + "/" + fileInfo.receivedPackets + ":\n");
-                    writer.write("# Raw data: " + bytesToHexString(packetData) + "\n");
-                    writer.write("\n");
+            Map<String, String> header = new LinkedHashMap<>();
+            header.put(RingRecording.KEY_KIND, RingRecording.KIND_BATCH_DOWNLOAD);
+            header.put(RingRecording.KEY_FILE_NAME, fileInfo.fileName);
+            header.put("file_index", String.valueOf(fileInfo.fileIndex));
+            header.put("start_timestamp", String.valueOf(fileInfo.startTimestamp));
+            header.put("end_timestamp", String.valueOf(fileInfo.endTimestamp));
+            header.put("download_time", getCurrentTimestamp());
+            header.put("total_packets", String.valueOf(fileInfo.receivedPackets));
+            header.put(RingRecording.KEY_DEVICE, deviceName);
+            header.put(RingRecording.KEY_MAC, macAddress);
+
+            // 所有数据包按接收顺序写入，时间戳为保存时间
+            try (RingRecordingWriter writer = RingRecordingWriter.create(file, header)) {
+                long savedAt = System.currentTimeMillis();
+                for (byte[] packetData : fileInfo.fileDataPackets) {
+                    writer.writeFrame(RingRecording.TYPE_FILE_CHUNK, savedAt, packetData, 0, packetData.length);
                 }
-
-                writer.flush();
             }
 
             recordLog(String.format("Hardware batch file saved: %s -> %s",
@@ -2407,9 +2441,6 @@ public class MainActivity extends AppCompatActivity implements IResponseListener
     // ==================== Log Recording ====================
 
     private void recordLog(String message) {
-        String timestamp = getCurrentTimestamp();
-        String fullLogMessage = "[" + timestamp + "] " + message;
-
         // Display to UI
         if (mainHandler != null) {
             mainHandler.post(() -> {
@@ -2420,17 +2451,13 @@ public class MainActivity extends AppCompatActivity implements IResponseListener
             });
         }
 
-        // Write to file (only when recording)
-        if (isLogRecording && logWriter != null) {
-            try {
-                logWriter.write(fullLogMessage + "\n");
-                logWriter.flush();
-            } catch (IOException e) {
-                android.util.Log.e("MainActivity", "Failed to write log: " + e.getMessage());
-            }
+        // Write to file (only when recording); queued, the timestamp is formatted by the decoder
+        AsyncLogger logger = sessionLogger;
+        if (isLogRecording && logger != null) {
+            logger.log(android.util.Log.INFO, message);
         }
 
-        android.util.Log.d("MainActivity", fullLogMessage);
+        android.util.Log.d("MainActivity", message);
     }
 
     // ==================== Cloud Sync Methods ====================
@@ -3027,7 +3054,10 @@ public class MainActivity extends AppCompatActivity implements IResponseListener
 
     @Override
     protected void onDestroy() {
-        // 关闭模型推理日志文件
+        // 停止推理线程并关闭模型推理日志文件
+        if (modelInferenceManager != null) {
+            modelInferenceManager.shutdown();
+        }
         ModelInferenceManager.closeFileLogging();
         super.onDestroy();
 
@@ -3042,13 +3072,11 @@ public class MainActivity extends AppCompatActivity implements IResponseListener
         }
 
         // Close log file
-        if (logWriter != null) {
-            try {
-                logWriter.close();
-                logWriter = null;
-            } catch (IOException e) {
-                android.util.Log.e("MainActivity", "Failed to close log file: " + e.getMessage());
-            }
+        NotificationHandler.setPacketLogger(null);
+        closeDownloadRecording();
+        if (sessionLogger != null) {
+            sessionLogger.close();
+            sessionLogger = null;
         }
 
         recordLog("MainActivity destroyed, resources cleaned up");
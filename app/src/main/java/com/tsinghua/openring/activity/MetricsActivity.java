@@ -0,0 +1,108 @@
+package com.tsinghua.openring.activity;
+
+import android.os.Bundle;
+import android.os.Environment;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.widget.Button;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import androidx.appcompat.app.AppCompatActivity;
+
+import com.tsinghua.openring.R;
+import com.tsinghua.openring.utils.PipelineMetrics;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Debug screen showing live pipeline metrics (per-stage latency percentiles, counters, gauges)
+ */
+public class MetricsActivity extends AppCompatActivity {
+
+    private static final String TAG = "MetricsActivity";
+    private static final long REFRESH_INTERVAL_MS = 1000;
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    // 导出指标文件在后台线程执行，避免在 UI 线程做磁盘 IO
+    private final ExecutorService dumpExecutor = Executors.newSingleThreadExecutor();
+    private TextView metricsText;
+
+    private final Runnable refreshTask = new Runnable() {
+        @Override
+        public void run() {
+            metricsText.setText(PipelineMetrics.format());
+            handler.postDelayed(this, REFRESH_INTERVAL_MS);
+        }
+    };
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_metrics);
+
+        metricsText = findViewById(R.id.metricsText);
+
+        Button dumpButton = findViewById(R.id.dumpMetricsButton);
+        dumpButton.setOnClickListener(v -> dumpMetrics());
+
+        Button resetButton = findViewById(R.id.resetMetricsButton);
+        resetButton.setOnClickListener(v -> {
+            PipelineMetrics.reset();
+            metricsText.setText(PipelineMetrics.format());
+        });
+
+        Button backButton = findViewById(R.id.backButton);
+        backButton.setOnClickListener(v -> finish());
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        handler.post(refreshTask);
+    }
+
+    @Override
+    protected void onPause() {
+        super.onPause();
+        handler.removeCallbacks(refreshTask);
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        dumpExecutor.shutdown();  // 已提交的导出仍会完成
+    }
+
+    private void dumpMetrics() {
+        String timestamp = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.getDefault()).format(new Date());
+        dumpExecutor.execute(() -> {
+            File dir = new File(Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_DOCUMENTS),
+                    "Sample/RingLog");
+            if (!dir.exists() && !dir.mkdirs()) {
+                showToast("Cannot create " + dir);
+                return;
+            }
+            File file = new File(dir, "metrics_" + timestamp + ".txt");
+            try {
+                PipelineMetrics.dump(file);
+                showToast("Metrics saved to " + file.getAbsolutePath());
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to dump metrics", e);
+                showToast("Failed to save metrics: " + e.getMessage());
+            }
+        });
+    }
+
+    private void showToast(String message) {
+        // 使用 Application Context：页面关闭后导出完成也能提示
+        handler.post(() -> Toast.makeText(getApplicationContext(), message, Toast.LENGTH_SHORT).show());
+    }
+}
@@ -25,6 +25,7 @@ import com.lm.sdk.utils.BLEUtils;
 import com.tsinghua.openring.R;
 import com.tsinghua.openring.RingAdapter;
 import com.tsinghua.openring.utils.CloudConfig;
+import com.tsinghua.openring.utils.CloudSyncJobService;
 import com.tsinghua.openring.utils.CloudSyncService;
 
 import java.util.ArrayList;
@@ -167,6 +168,11 @@ public class RingSettingsActivity extends AppCompatActivity {
 
         cloudSyncSwitch.setOnCheckedChangeListener((buttonView, isChecked) -> {
             cloudConfig.setCloudSyncEnabled(isChecked);
+            if (isChecked) {
+                CloudSyncJobService.schedule(this);
+            } else {
+                CloudSyncJobService.cancel(this);
+            }
             updateConnectionStatus("Cloud sync " + (isChecked ? "enabled" : "disabled"));
         });
 
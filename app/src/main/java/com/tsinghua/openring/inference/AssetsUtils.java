@@ -1,30 +1,280 @@
 package com.tsinghua.openring.inference;
 
 import android.content.Context;
+import android.content.res.AssetFileDescriptor;
 import android.content.res.AssetManager;
+import android.util.Log;
 
+import com.tsinghua.openring.utils.LatencyHistogram;
+import com.tsinghua.openring.utils.PipelineMetrics;
+import com.tsinghua.openring.utils.UploadCodec;
+
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Extracts model assets to internal storage so that {@code Module.load} can open them by path.
+ *
+ * The build writes {@value #MANIFEST_ASSET} with the SHA-256 and size of every model file
+ * (see generateModelManifest in app/build.gradle). An extracted copy is named after its hash, so it is
+ * reused until the APK ships a different model and never mistaken for an older one. Extraction maps
+ * the asset straight out of the APK when it is stored uncompressed (models are marked noCompress) and
+ * falls back to a streamed {@code transferFrom} copy otherwise; the hash is computed on the way and
+ * checked against the manifest. Each copy is written to a temp file, synced and renamed into place, so a crash or a
+ * full disk never leaves a truncated model behind. Safe to call from several loader threads at once.
+ */
 public class AssetsUtils {
+    private static final String TAG = "AssetsUtils";
+    static final String MANIFEST_ASSET = "model_manifest.txt";
+    private static final String EXTRACT_DIR = "models";
+    private static final int COPY_BUFFER_SIZE = 1 << 20;
+    private static final int HASH_PREFIX_LENGTH = 12;
+
+    private static final LatencyHistogram extractLatency = PipelineMetrics.histogram("inference.asset_extract");
+    private static final Map<String, Object> extractLocks = new ConcurrentHashMap<>();
+    // 清单中没有记录的资源：本进程内只解压一次
+    private static final Set<String> extractedWithoutManifest = ConcurrentHashMap.newKeySet();
+    private static volatile Map<String, ManifestEntry> manifest;
+
+    /**
+     * Hash and size of one asset as recorded at build time
+     */
+    static final class ManifestEntry {
+        final String sha256;
+        final long size;
+
+        ManifestEntry(String sha256, long size) {
+            this.sha256 = sha256;
+            this.size = size;
+        }
+    }
+
+    /**
+     * Path of an up-to-date extracted copy of {@code assetName}, extracting it first if needed
+     */
     public static String assetFilePath(Context context, String assetName) throws IOException {
-        File file = new File(context.getFilesDir(), assetName.replace('/', '_'));
-        if (file.exists() && file.length() > 0) {
-            return file.getAbsolutePath();
+        File dir = new File(context.getFilesDir(), EXTRACT_DIR);
+        if (!dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory()) {
+            throw new IOException("Cannot create " + dir);
         }
-        AssetManager assetManager = context.getAssets();
-        try (InputStream is = assetManager.open(assetName); FileOutputStream os = new FileOutputStream(file)) {
-            byte[] buffer = new byte[4 * 1024];
-            int read;
-            while ((read = is.read(buffer)) != -1) {
-                os.write(buffer, 0, read);
+        ManifestEntry entry = loadManifest(context.getAssets()).get(assetName);
+        File file = new File(dir, extractedName(assetName, entry == null ? null : entry.sha256));
+
+        Object lock = extractLocks.computeIfAbsent(file.getName(), k -> new Object());
+        synchronized (lock) {
+            if (entry != null && file.length() == entry.size) {
+                return file.getAbsolutePath();
+            }
+            if (entry == null && file.length() > 0 && extractedWithoutManifest.contains(assetName)) {
+                return file.getAbsolutePath();
+            }
+            if (entry == null) {
+                Log.w(TAG, "No manifest entry for " + assetName + ", extracting without verification");
+            }
+
+            long startNanos = System.nanoTime();
+            extract(context.getAssets(), assetName, file, entry == null ? null : entry.sha256);
+            extractLatency.recordSince(startNanos);
+            Log.i(TAG, "Extracted " + assetName + " (" + file.length() + " bytes) in "
+                    + (System.nanoTime() - startNanos) / 1_000_000 + "ms");
+            if (entry == null) {
+                extractedWithoutManifest.add(assetName);
             }
-            os.flush();
+            deleteStaleCopies(context.getFilesDir(), dir, assetName, file);
         }
         return file.getAbsolutePath();
     }
-}
 
+    /**
+     * File name of the extracted copy: the flattened asset path with the first hex digits of the
+     * content hash before the extension, e.g. {@code hr_Fold-1_model_ts-3f2a9c01b7de.pt}
+     */
+    static String extractedName(String assetName, String sha256) {
+        String flat = assetName.replace('/', '_');
+        if (sha256 == null) {
+            return flat;
+        }
+        String hash = sha256.substring(0, Math.min(HASH_PREFIX_LENGTH, sha256.length()));
+        int dot = flat.lastIndexOf('.');
+        return dot > 0 ? flat.substring(0, dot) + "-" + hash + flat.substring(dot) : flat + "-" + hash;
+    }
+
+    private static Map<String, ManifestEntry> loadManifest(AssetManager assets) {
+        Map<String, ManifestEntry> loaded = manifest;
+        if (loaded != null) {
+            return loaded;
+        }
+        synchronized (AssetsUtils.class) {
+            if (manifest == null) {
+                try (Reader reader = new InputStreamReader(assets.open(MANIFEST_ASSET), StandardCharsets.UTF_8)) {
+                    manifest = parseManifest(reader);
+                    Log.i(TAG, "Model manifest: " + manifest.size() + " entries");
+                } catch (IOException e) {
+                    Log.w(TAG, "Model manifest not available, assets are extracted without verification", e);
+                    manifest = Collections.emptyMap();
+                }
+            }
+            return manifest;
+        }
+    }
+
+    /**
+     * Parse manifest lines of the form {@code <sha256> <size> <asset path>}; blank lines and lines
+     * starting with '#' are skipped, malformed lines are logged and ignored
+     */
+    static Map<String, ManifestEntry> parseManifest(Reader reader) throws IOException {
+        Map<String, ManifestEntry> entries = new HashMap<>();
+        BufferedReader in = new BufferedReader(reader);
+        String line;
+        while ((line = in.readLine()) != null) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] parts = line.split("\\s+", 3);
+            if (parts.length < 3 || parts[0].length() != 64) {
+                Log.w(TAG, "Ignoring malformed manifest line: " + line);
+                continue;
+            }
+            try {
+                entries.put(parts[2], new ManifestEntry(parts[0].toLowerCase(), Long.parseLong(parts[1])));
+            } catch (NumberFormatException e) {
+                Log.w(TAG, "Ignoring malformed manifest line: " + line);
+            }
+        }
+        return entries;
+    }
+
+    private static void extract(AssetManager assets, String assetName, File target, String expectedSha256)
+            throws IOException {
+        File tmp = new File(target.getParentFile(), target.getName() + ".tmp");
+        try {
+            String sha256;
+            AssetFileDescriptor fd = openFdOrNull(assets, assetName);
+            if (fd != null) {
+                try (AssetFileDescriptor afd = fd;
+                     FileInputStream apk = afd.createInputStream()) {
+                    sha256 = copyMapped(apk.getChannel(), afd.getStartOffset(), afd.getLength(), tmp);
+                }
+            } else {
+                try (InputStream in = assets.open(assetName)) {
+                    sha256 = copyStream(in, tmp);
+                }
+            }
+            if (expectedSha256 != null && !expectedSha256.equals(sha256)) {
+                throw new IOException("Checksum mismatch for " + assetName + ": expected " + expectedSha256
+                        + ", got " + sha256);
+            }
+            Files.move(tmp.toPath(), target.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            if (tmp.exists() && !tmp.delete()) {
+                Log.w(TAG, "Failed to delete " + tmp);
+            }
+        }
+    }
+
+    /**
+     * Assets stored uncompressed can be opened as a region of the APK; compressed ones cannot
+     */
+    private static AssetFileDescriptor openFdOrNull(AssetManager assets, String assetName) {
+        try {
+            return assets.openFd(assetName);
+        } catch (FileNotFoundException e) {
+            return null;  // compressed in the APK
+        } catch (IOException e) {
+            Log.w(TAG, "openFd failed for " + assetName + ", streaming instead", e);
+            return null;
+        }
+    }
+
+    /**
+     * Copy {@code length} bytes at {@code offset} of {@code src} to {@code dst} through a read-only
+     * mapping, hashing the same pages that are written. The copy is synced before returning.
+     *
+     * @return Lower-case hex SHA-256 of the copied bytes
+     */
+    static String copyMapped(FileChannel src, long offset, long length, File dst) throws IOException {
+        MessageDigest digest = UploadCodec.newSha256();
+        try (FileChannel out = new FileOutputStream(dst).getChannel()) {
+            long position = 0;
+            while (position < length) {
+                long chunk = Math.min(Integer.MAX_VALUE, length - position);
+                MappedByteBuffer mapped = src.map(FileChannel.MapMode.READ_ONLY, offset + position, chunk);
+                digest.update(mapped.duplicate());
+                while (mapped.hasRemaining()) {
+                    out.write(mapped);
+                }
+                position += chunk;
+            }
+            out.force(true);
+        }
+        return UploadCodec.toHex(digest.digest());
+    }
+
+    /**
+     * Streaming fallback of {@link #copyMapped}: {@link FileChannel#transferFrom} in 1 MB steps,
+     * hashing through a {@link DigestInputStream}
+     */
+    static String copyStream(InputStream in, File dst) throws IOException {
+        MessageDigest digest = UploadCodec.newSha256();
+        try (ReadableByteChannel src = Channels.newChannel(new DigestInputStream(in, digest));
+             FileChannel out = new FileOutputStream(dst).getChannel()) {
+            long position = 0;
+            long transferred;
+            while ((transferred = out.transferFrom(src, position, COPY_BUFFER_SIZE)) > 0) {
+                position += transferred;
+            }
+            out.force(true);
+        }
+        return UploadCodec.toHex(digest.digest());
+    }
 
+    /**
+     * Remove copies of the same asset left by earlier APK versions, including the pre-manifest
+     * location directly in filesDir
+     */
+    private static void deleteStaleCopies(File filesDir, File dir, String assetName, File current) {
+        String flat = assetName.replace('/', '_');
+        int dot = flat.lastIndexOf('.');
+        String base = dot > 0 ? flat.substring(0, dot) : flat;
+        String ext = dot > 0 ? flat.substring(dot) : "";
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                String name = f.getName();
+                if (f.equals(current) || !name.endsWith(ext)) continue;
+                boolean sameAsset = name.equals(flat)
+                        || (name.startsWith(base + "-") && name.length() == base.length() + 1 + HASH_PREFIX_LENGTH + ext.length());
+                if (sameAsset && f.delete()) {
+                    Log.i(TAG, "Deleted stale model copy " + name);
+                }
+            }
+        }
+        File legacy = new File(filesDir, flat);
+        if (legacy.isFile() && legacy.delete()) {
+            Log.i(TAG, "Deleted legacy model copy " + legacy.getName());
+        }
+    }
+}
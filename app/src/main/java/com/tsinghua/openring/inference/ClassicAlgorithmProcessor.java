@@ -2,6 +2,7 @@ package com.tsinghua.openring.inference;
 
 import android.util.Log;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
@@ -28,37 +29,6 @@ public class ClassicAlgorithmProcessor {
     private static final int WELCH_SEGMENT_SIZE = 512;  // FFT segment size (must be power of 2)
     private static final float WELCH_OVERLAP_RATIO = 0.5f;  // 50% overlap
 
-    /**
-     * Complex number class for FFT computation
-     */
-    public static class Complex {
-        public double real;
-        public double imag;
-
-        public Complex(double real, double imag) {
-            this.real = real;
-            this.imag = imag;
-        }
-
-        public Complex add(Complex other) {
-            return new Complex(this.real + other.real, this.imag + other.imag);
-        }
-
-        public Complex subtract(Complex other) {
-            return new Complex(this.real - other.real, this.imag - other.imag);
-        }
-
-        public Complex multiply(Complex other) {
-            double r = this.real * other.real - this.imag * other.imag;
-            double i = this.real * other.imag + this.imag * other.real;
-            return new Complex(r, i);
-        }
-
-        public double magnitude() {
-            return Math.sqrt(real * real + imag * imag);
-        }
-    }
-
     /**
      * Welch Power Spectral Density result
      */
@@ -136,17 +106,19 @@ public class ClassicAlgorithmProcessor {
      */
     public static float estimateHrByFFT(float[] irSignal, int sampleRate) {
         try {
-            float dominantFreq = estimateDominantFreqFFT(irSignal, sampleRate, 0.8f, MAX_HR_HZ);
+            SpectralEstimator.Peak peak = SpectralEstimator.findPeak(irSignal, sampleRate, 0.8f, MAX_HR_HZ);
 
-            if (Float.isNaN(dominantFreq)) {
+            if (!peak.isValid()) {
                 Log.d(TAG, "HR_FFT: No dominant frequency found");
                 return Float.NaN;
             }
 
             // Convert to BPM
+            float dominantFreq = (float) peak.frequencyHz;
             float heartRate = dominantFreq * 60f;
 
-            Log.d(TAG, String.format("HR_FFT: %.1f BPM (freq: %.3f Hz)", heartRate, dominantFreq));
+            Log.d(TAG, String.format("HR_FFT: %.1f BPM (freq: %.3f Hz, %d bins, %.2f ms)",
+                heartRate, dominantFreq, peak.binsEvaluated, peak.elapsedMillis()));
             return heartRate;
 
         } catch (Exception e) {
@@ -240,69 +212,6 @@ public class ClassicAlgorithmProcessor {
         }
     }
 
-    /**
-     * Estimate dominant frequency using a direct FFT on the full window,
-     * with zero-padding to the next power of two for finer resolution.
-     *
-     * @param signal     Input signal (already filtered)
-     * @param sampleRate Sampling rate in Hz
-     * @param minFreq    Minimum frequency of interest (Hz)
-     * @param maxFreq    Maximum frequency of interest (Hz)
-     * @return Dominant frequency in Hz, or NaN if not found
-     */
-    private static float estimateDominantFreqFFT(float[] signal, int sampleRate,
-                                                 float minFreq, float maxFreq) {
-        if (signal == null || signal.length < 4 || sampleRate <= 0) {
-            return Float.NaN;
-        }
-
-        int n = signal.length;
-        // Remove DC component
-        double mean = 0.0;
-        for (float v : signal) {
-            mean += v;
-        }
-        mean /= n;
-
-        // Zero-pad to next power of two for higher spectral resolution
-        int fftSize = 1;
-        while (fftSize < n) {
-            fftSize <<= 1;
-        }
-
-        Complex[] input = new Complex[fftSize];
-        for (int i = 0; i < n; i++) {
-            input[i] = new Complex(signal[i] - (float) mean, 0.0);
-        }
-        for (int i = n; i < fftSize; i++) {
-            input[i] = new Complex(0.0, 0.0);
-        }
-
-        Complex[] fft = computeFFT(input);
-
-        int maxIdx = -1;
-        double maxPower = Double.NEGATIVE_INFINITY;
-        int nyquistBin = fftSize / 2;
-
-        for (int k = 0; k <= nyquistBin; k++) {
-            double freq = (double) k * sampleRate / fftSize;
-            if (freq >= minFreq && freq <= maxFreq) {
-                double mag = fft[k].magnitude();
-                double power = mag * mag;
-                if (power > maxPower) {
-                    maxPower = power;
-                    maxIdx = k;
-                }
-            }
-        }
-
-        if (maxIdx == -1) {
-            return Float.NaN;
-        }
-
-        return (float) (maxIdx * (double) sampleRate / fftSize);
-    }
-
     /**
      * Detect peaks in signal using adaptive threshold and optional minimum distance.
      *
@@ -404,6 +313,11 @@ public class ClassicAlgorithmProcessor {
         // Initialize accumulated PSD
         double[] psd = new double[segmentSize / 2 + 1];
 
+        // Reuse one pair of FFT buffers for all segments
+        double[][] scratch = FftEngine.scratch(segmentSize);
+        double[] re = scratch[0];
+        double[] im = scratch[1];
+
         // Process each segment
         for (int seg = 0; seg < numSegments; seg++) {
             int start = seg * step;
@@ -411,23 +325,19 @@ public class ClassicAlgorithmProcessor {
             int actualSize = end - start;
 
             // Extract and window the segment
-            Complex[] segment = new Complex[segmentSize];
             for (int i = 0; i < actualSize; i++) {
-                double windowed = signal[start + i] * window[i];
-                segment[i] = new Complex(windowed, 0);
+                re[i] = signal[start + i] * window[i];
             }
             // Zero-pad if necessary
-            for (int i = actualSize; i < segmentSize; i++) {
-                segment[i] = new Complex(0, 0);
-            }
+            Arrays.fill(re, actualSize, segmentSize, 0.0);
+            Arrays.fill(im, 0, segmentSize, 0.0);
 
             // Compute FFT
-            Complex[] fft = computeFFT(segment);
+            FftEngine.forward(re, im, segmentSize);
 
             // Accumulate power (magnitude squared)
             for (int i = 0; i < psd.length; i++) {
-                double mag = fft[i].magnitude();
-                psd[i] += mag * mag;
+                psd[i] += re[i] * re[i] + im[i] * im[i];
             }
         }
 
@@ -485,50 +395,4 @@ public class ClassicAlgorithmProcessor {
         }
         return window;
     }
-
-    /**
-     * Compute Fast Fourier Transform using Cooley-Tukey algorithm
-     * Requires input size to be power of 2
-     *
-     * @param input Complex array (size must be power of 2)
-     * @return FFT result
-     */
-    private static Complex[] computeFFT(Complex[] input) {
-        int n = input.length;
-
-        // Base case
-        if (n == 1) {
-            return new Complex[] { input[0] };
-        }
-
-        // Ensure n is power of 2
-        if ((n & (n - 1)) != 0) {
-            throw new IllegalArgumentException("FFT size must be power of 2");
-        }
-
-        // Divide: split into even and odd indices
-        Complex[] even = new Complex[n / 2];
-        Complex[] odd = new Complex[n / 2];
-        for (int i = 0; i < n / 2; i++) {
-            even[i] = input[2 * i];
-            odd[i] = input[2 * i + 1];
-        }
-
-        // Conquer: recursively compute FFT of even and odd parts
-        Complex[] fftEven = computeFFT(even);
-        Complex[] fftOdd = computeFFT(odd);
-
-        // Combine: apply butterfly operations
-        Complex[] result = new Complex[n];
-        for (int k = 0; k < n / 2; k++) {
-            double angle = -2.0 * Math.PI * k / n;
-            Complex twiddle = new Complex(Math.cos(angle), Math.sin(angle));
-            Complex twiddledOdd = twiddle.multiply(fftOdd[k]);
-
-            result[k] = fftEven[k].add(twiddledOdd);
-            result[k + n / 2] = fftEven[k].subtract(twiddledOdd);
-        }
-
-        return result;
-    }
 }
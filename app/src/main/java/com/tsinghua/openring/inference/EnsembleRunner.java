@@ -0,0 +1,285 @@
+package com.tsinghua.openring.inference;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs a batch of independent tasks (one per fold/mission forward pass) on a small bounded pool
+ * and returns their results in submission order, so averaging over them is deterministic no matter
+ * which task finishes first.
+ *
+ * The pool never uses more than {@code availableProcessors - RESERVED_CORES} threads, leaving
+ * room for the BLE notification thread and the UI thread, and its threads run below normal priority.
+ * With a parallelism of 1 the tasks run sequentially on a single worker thread rather than on the
+ * caller, so a hung forward pass cannot block the inference thread past its timeout.
+ * Each task gets its own timeout measured from when it starts running; a task that times out,
+ * throws, or is still queued when the batch deadline passes yields a {@code null} result.
+ *
+ * A native forward pass ignores the interrupt sent on timeout, so a timed-out task may keep running.
+ * Each task carries a key (its Module); while the previous task with the same key is still running,
+ * later batches skip that key with a {@code null} result instead of running the same Module twice at
+ * once, and the pool grows by one thread for every such detached task so the remaining tasks do not
+ * queue behind it. The in-flight keys survive {@link #reconfigure}.
+ */
+final class EnsembleRunner {
+
+    static final int RESERVED_CORES = 2;
+
+    private final int parallelism;
+    private final long taskTimeoutNanos;
+    private final ThreadPoolExecutor pool;
+    private final Set<Object> inFlight;
+    private int detached;  // guarded by this
+
+    /**
+     * Outcome counters of the last batch, for logging
+     */
+    static final class BatchStats {
+        final int completed;
+        final int failed;
+        final int timedOut;
+        final int skipped;
+        final long elapsedNanos;
+
+        BatchStats(int completed, int failed, int timedOut, int skipped, long elapsedNanos) {
+            this.completed = completed;
+            this.failed = failed;
+            this.timedOut = timedOut;
+            this.skipped = skipped;
+            this.elapsedNanos = elapsedNanos;
+        }
+    }
+
+    private volatile BatchStats lastStats = new BatchStats(0, 0, 0, 0, 0);
+
+    /**
+     * @param requestedParallelism Desired number of worker threads; capped by the core budget
+     * @param taskTimeoutMs        Per-task timeout in milliseconds
+     */
+    EnsembleRunner(int requestedParallelism, long taskTimeoutMs) {
+        this(requestedParallelism, taskTimeoutMs, Runtime.getRuntime().availableProcessors());
+    }
+
+    EnsembleRunner(int requestedParallelism, long taskTimeoutMs, int availableProcessors) {
+        this(requestedParallelism, taskTimeoutMs, availableProcessors, ConcurrentHashMap.newKeySet());
+    }
+
+    private EnsembleRunner(int requestedParallelism, long taskTimeoutMs, int availableProcessors,
+                           Set<Object> inFlight) {
+        this.inFlight = inFlight;
+        this.parallelism = capParallelism(requestedParallelism, availableProcessors);
+        this.taskTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, taskTimeoutMs));
+        AtomicInteger threadIndex = new AtomicInteger();
+        pool = new ThreadPoolExecutor(parallelism, parallelism, 30L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                r -> {
+                    Thread t = new Thread(r, "ModelEnsemble-" + threadIndex.incrementAndGet());
+                    t.setDaemon(true);
+                    t.setPriority(Thread.NORM_PRIORITY - 1);
+                    return t;
+                });
+        pool.allowCoreThreadTimeOut(true);
+    }
+
+    static int capParallelism(int requested, int availableProcessors) {
+        int budget = Math.max(1, availableProcessors - RESERVED_CORES);
+        return Math.max(1, Math.min(requested, budget));
+    }
+
+    /**
+     * New runner with other settings that still skips the keys whose forward pass is running on this one
+     */
+    EnsembleRunner reconfigure(int requestedParallelism, long taskTimeoutMs) {
+        return new EnsembleRunner(requestedParallelism, taskTimeoutMs,
+                Runtime.getRuntime().availableProcessors(), inFlight);
+    }
+
+    int getParallelism() {
+        return parallelism;
+    }
+
+    BatchStats getLastStats() {
+        return lastStats;
+    }
+
+    /**
+     * Run all tasks and return their results in the same order as {@code tasks}.
+     * Failed or timed-out tasks yield {@code null}.
+     */
+    <T> List<T> invokeOrdered(List<? extends Callable<T>> tasks) {
+        return invokeOrdered(tasks, tasks);
+    }
+
+    /**
+     * Like {@link #invokeOrdered(List)}, but a task whose key ({@code keys.get(i)}) still has a
+     * forward pass running from an earlier batch is skipped and yields {@code null}.
+     */
+    <T> List<T> invokeOrdered(List<? extends Callable<T>> tasks, List<?> keys) {
+        long start = System.nanoTime();
+        int n = tasks.size();
+        List<T> results = new ArrayList<>(Collections.nCopies(n, (T) null));
+        int completed = 0;
+        int failed = 0;
+        int timedOut = 0;
+        int skipped = 0;
+
+        List<TimedTask<T>> timed = new ArrayList<>(n);
+        List<Future<T>> futures = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            Object key = keys.get(i);
+            TimedTask<T> task = null;
+            Future<T> future = null;
+            if (inFlight.add(key)) {
+                task = new TimedTask<>(tasks.get(i), key);
+                try {
+                    future = pool.submit(task);
+                } catch (RejectedExecutionException e) {
+                    inFlight.remove(key);
+                    failed++;
+                }
+            } else {
+                skipped++;
+            }
+            timed.add(task);
+            futures.add(future);
+        }
+
+        // Upper bound for the whole batch: every wave of tasks may use its full timeout
+        int waves = (n + parallelism - 1) / parallelism;
+        long batchDeadline = start + taskTimeoutNanos * (waves + 1);
+
+        for (int i = 0; i < n; i++) {
+            Future<T> future = futures.get(i);
+            if (future == null) {
+                continue;
+            }
+            TimedTask<T> task = timed.get(i);
+            while (true) {
+                long now = System.nanoTime();
+                long started = task.startNanos;
+                long deadline = started != 0 ? started + taskTimeoutNanos : now + taskTimeoutNanos;
+                deadline = Math.min(deadline, batchDeadline);
+                long waitNanos = deadline - now;
+                if (waitNanos <= 0 && !future.isDone()) {
+                    future.cancel(true);
+                    task.abandon();
+                    timedOut++;
+                    break;
+                }
+                try {
+                    results.set(i, future.get(Math.max(0, waitNanos), TimeUnit.NANOSECONDS));
+                    completed++;
+                    break;
+                } catch (TimeoutException e) {
+                    // Re-evaluate: the task may only just have started
+                } catch (ExecutionException | CancellationException e) {
+                    failed++;
+                    break;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    for (int j = i; j < n; j++) {
+                        if (futures.get(j) != null) {
+                            futures.get(j).cancel(true);
+                            timed.get(j).abandon();
+                            timedOut++;
+                        }
+                    }
+                    lastStats = new BatchStats(completed, failed, timedOut, skipped, System.nanoTime() - start);
+                    return results;
+                }
+            }
+        }
+        lastStats = new BatchStats(completed, failed, timedOut, skipped, System.nanoTime() - start);
+        return results;
+    }
+
+    void shutdown() {
+        pool.shutdownNow();
+    }
+
+    /**
+     * Grow (+1) or shrink (-1) the pool around a detached task that keeps its worker thread busy
+     */
+    private synchronized void resizeForDetached(int delta) {
+        detached += delta;
+        int size = parallelism + detached;
+        if (delta > 0) {
+            pool.setMaximumPoolSize(size);
+            pool.setCorePoolSize(size);
+        } else {
+            pool.setCorePoolSize(size);
+            pool.setMaximumPoolSize(size);
+        }
+    }
+
+    /**
+     * Records when the wrapped task actually starts so its timeout excludes queueing time, and
+     * releases its key once the task has really stopped running
+     */
+    private final class TimedTask<T> implements Callable<T> {
+        private final Callable<T> delegate;
+        private final Object key;
+        volatile long startNanos = 0;
+        // guarded by this
+        private boolean started;
+        private boolean finished;
+        private boolean detachedTask;
+
+        TimedTask(Callable<T> delegate, Object key) {
+            this.delegate = delegate;
+            this.key = key;
+        }
+
+        @Override
+        public T call() throws Exception {
+            synchronized (this) {
+                if (finished) {
+                    return null;  // abandoned while still queued
+                }
+                started = true;
+            }
+            startNanos = System.nanoTime();
+            try {
+                return delegate.call();
+            } finally {
+                synchronized (this) {
+                    finished = true;
+                    inFlight.remove(key);
+                    if (detachedTask) {
+                        resizeForDetached(-1);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Called after the future was cancelled. A task that never started releases its key now;
+         * one that is still running (the interrupt did not stop it) keeps the key until it returns.
+         */
+        synchronized void abandon() {
+            if (finished) {
+                return;
+            }
+            if (!started) {
+                finished = true;
+                inFlight.remove(key);
+            } else {
+                detachedTask = true;
+                resizeForDetached(1);
+            }
+        }
+    }
+}
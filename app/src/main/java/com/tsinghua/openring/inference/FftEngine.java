@@ -0,0 +1,139 @@
+package com.tsinghua.openring.inference;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Iterative in-place radix-2 FFT on split real/imaginary arrays.
+ * Bit-reversal permutation and twiddle factors are computed once per size and cached,
+ * so a transform allocates nothing once its plan exists.
+ */
+public final class FftEngine {
+
+    private static final ConcurrentHashMap<Integer, Plan> PLANS = new ConcurrentHashMap<>();
+
+    // Per-thread work buffers (real, imaginary), grown on demand and reused across transforms
+    private static final ThreadLocal<double[][]> SCRATCH = new ThreadLocal<>();
+
+    /**
+     * Precomputed tables for one transform size
+     */
+    private static final class Plan {
+        final int size;
+        final int[] bitReverse;
+        final double[] cos;   // cos(-2*pi*k/size), k in [0, size/2)
+        final double[] sin;   // sin(-2*pi*k/size), k in [0, size/2)
+
+        Plan(int size) {
+            this.size = size;
+            int bits = Integer.numberOfTrailingZeros(size);
+            bitReverse = new int[size];
+            for (int i = 0; i < size; i++) {
+                bitReverse[i] = bits == 0 ? 0 : Integer.reverse(i) >>> (32 - bits);
+            }
+            int half = size / 2;
+            cos = new double[half];
+            sin = new double[half];
+            for (int k = 0; k < half; k++) {
+                double angle = -2.0 * Math.PI * k / size;
+                cos[k] = Math.cos(angle);
+                sin[k] = Math.sin(angle);
+            }
+        }
+    }
+
+    private FftEngine() {
+    }
+
+    public static boolean isPowerOfTwo(int n) {
+        return n > 0 && (n & (n - 1)) == 0;
+    }
+
+    /**
+     * Smallest power of two that is >= n
+     */
+    public static int nextPowerOfTwo(int n) {
+        int size = 1;
+        while (size < n) {
+            size <<= 1;
+        }
+        return size;
+    }
+
+    /**
+     * Forward DFT of the first {@code n} elements of re/im, in place.
+     *
+     * @param re Real parts (input and output)
+     * @param im Imaginary parts (input and output)
+     * @param n  Transform size, must be a power of 2 and not larger than the arrays
+     */
+    public static void forward(double[] re, double[] im, int n) {
+        if (!isPowerOfTwo(n)) {
+            throw new IllegalArgumentException("FFT size must be power of 2");
+        }
+        if (re.length < n || im.length < n) {
+            throw new IllegalArgumentException("FFT buffers smaller than transform size " + n);
+        }
+        Plan plan = planFor(n);
+
+        // Bit-reversal permutation
+        int[] rev = plan.bitReverse;
+        for (int i = 0; i < n; i++) {
+            int j = rev[i];
+            if (j > i) {
+                double tr = re[i];
+                re[i] = re[j];
+                re[j] = tr;
+                double ti = im[i];
+                im[i] = im[j];
+                im[j] = ti;
+            }
+        }
+
+        // Butterflies, combining blocks of length 2, 4, ..., n
+        double[] cos = plan.cos;
+        double[] sin = plan.sin;
+        for (int len = 2; len <= n; len <<= 1) {
+            int half = len >> 1;
+            int stride = n / len;
+            for (int start = 0; start < n; start += len) {
+                for (int k = 0; k < half; k++) {
+                    double wr = cos[k * stride];
+                    double wi = sin[k * stride];
+                    int even = start + k;
+                    int odd = even + half;
+                    double oddRe = wr * re[odd] - wi * im[odd];
+                    double oddIm = wr * im[odd] + wi * re[odd];
+                    re[odd] = re[even] - oddRe;
+                    im[odd] = im[even] - oddIm;
+                    re[even] += oddRe;
+                    im[even] += oddIm;
+                }
+            }
+        }
+    }
+
+    /**
+     * Per-thread work buffers with room for at least {@code size} points.
+     * Contents are unspecified; callers overwrite the region they transform.
+     */
+    public static double[][] scratch(int size) {
+        double[][] scratch = SCRATCH.get();
+        if (scratch == null || scratch[0].length < size) {
+            scratch = new double[][] { new double[size], new double[size] };
+            SCRATCH.set(scratch);
+        }
+        return scratch;
+    }
+
+    private static Plan planFor(int n) {
+        Plan plan = PLANS.get(n);
+        if (plan == null) {
+            plan = new Plan(n);
+            Plan existing = PLANS.putIfAbsent(n, plan);
+            if (existing != null) {
+                plan = existing;
+            }
+        }
+        return plan;
+    }
+}
@@ -0,0 +1,98 @@
+package com.tsinghua.openring.inference;
+
+/**
+ * Decides when a sliding window is due for inference by counting samples at the stream rate
+ * instead of reading the phone clock.
+ *
+ * The first window fires as soon as {@code minSeconds} of data are buffered; after that one window
+ * fires every {@code hopMs} worth of samples. Because the decision only depends on how many samples
+ * have been appended, a BLE burst that delivers several frames at once neither doubles nor skips an
+ * inference, and replaying a recording faster than realtime schedules exactly the same windows as the
+ * live session did. If one ingest call carries more than a hop of samples, a single window fires
+ * and the remainder keeps the schedule on the hop grid.
+ * Only used from the ingest thread.
+ */
+final class InferenceScheduler {
+
+    private final int minSeconds;
+    private long hopMs;
+    private int fs;
+    private int hopSamples;
+    private int minSamples;
+    private long samplesSinceFire;
+    private boolean fired;
+
+    /**
+     * @param minSeconds Buffered data required before the first window
+     * @param hopMs      Data between two consecutive windows
+     * @param fs         Stream rate the samples are counted at
+     */
+    InferenceScheduler(int minSeconds, long hopMs, int fs) {
+        this.minSeconds = minSeconds;
+        this.hopMs = hopMs;
+        setSampleRate(fs);
+    }
+
+    void setHopMs(long hopMs) {
+        if (hopMs <= 0) {
+            throw new IllegalArgumentException("hopMs must be positive: " + hopMs);
+        }
+        this.hopMs = hopMs;
+        hopSamples = toSamples(hopMs, fs);
+    }
+
+    long getHopMs() {
+        return hopMs;
+    }
+
+    /**
+     * Change the counting rate (model reload); the schedule restarts
+     */
+    void setSampleRate(int fs) {
+        this.fs = fs;
+        hopSamples = toSamples(hopMs, fs);
+        minSamples = minSeconds * fs;
+        reset();
+    }
+
+    int getHopSamples() {
+        return hopSamples;
+    }
+
+    int getMinSamples() {
+        return minSamples;
+    }
+
+    /**
+     * Account for newly appended samples.
+     *
+     * @param produced Samples appended at the stream rate since the last call
+     * @param buffered Samples currently in the window
+     * @return true if a window should be cut now
+     */
+    boolean onSamples(int produced, int buffered) {
+        samplesSinceFire += produced;
+        if (buffered < minSamples) {
+            return false;
+        }
+        if (!fired) {
+            fired = true;
+            samplesSinceFire = 0;
+            return true;
+        }
+        if (samplesSinceFire >= hopSamples) {
+            samplesSinceFire %= hopSamples;
+            return true;
+        }
+        return false;
+    }
+
+    void reset() {
+        samplesSinceFire = 0;
+        fired = false;
+    }
+
+    private static int toSamples(long ms, int fs) {
+        return (int) Math.max(1, Math.round(ms * fs / 1000.0));
+    }
+}
@@ -10,22 +10,40 @@ import org.pytorch.IValue;
 import org.pytorch.Module;
 import org.pytorch.Tensor;
 
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.text.SimpleDateFormat;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
-import java.util.HashMap;
+import java.util.EnumMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 import android.os.Environment;
+import com.tsinghua.openring.utils.AsyncLogger;
+import com.tsinghua.openring.utils.BiquadFilter;
+import com.tsinghua.openring.utils.FloatRingBuffer;
+import com.tsinghua.openring.utils.LatencyHistogram;
+import com.tsinghua.openring.utils.PipelineMetrics;
 import com.tsinghua.openring.utils.VitalSignsProcessor;
 import com.tsinghua.openring.utils.SignalFilters;
+import com.tsinghua.openring.utils.StreamingResampler;
 
 public class ModelInferenceManager {
     public enum Mission { HR, BP_SYS, BP_DIA, SPO2, RR }
@@ -56,33 +74,106 @@ public class ModelInferenceManager {
     }
 
     private static final String TAG = "ModelInference";
+
+    // 各阶段耗时与计数，见 PipelineMetrics / 调试页面
+    private static final LatencyHistogram ingestLatency = PipelineMetrics.histogram("inference.ingest");
+    private static final LatencyHistogram queueWaitLatency = PipelineMetrics.histogram("inference.queue_wait");
+    private static final LatencyHistogram hrBpSpo2PrepLatency = PipelineMetrics.histogram("inference.hr_bp_spo2.prep");
+    private static final LatencyHistogram hrBpSpo2TotalLatency = PipelineMetrics.histogram("inference.hr_bp_spo2.total");
+    private static final LatencyHistogram rrTotalLatency = PipelineMetrics.histogram("inference.rr.total");
+    private static final LatencyHistogram forwardLatency = PipelineMetrics.histogram("inference.forward");
+    private static final PipelineMetrics.Counter samplesSkipped = PipelineMetrics.counter("inference.samples_skipped");
+    private static final PipelineMetrics.Counter windowsSubmitted = PipelineMetrics.counter("inference.windows_submitted");
+    private static final PipelineMetrics.Counter windowsReplaced = PipelineMetrics.counter("inference.windows_replaced");
+    private static final PipelineMetrics.Counter windowsRejected = PipelineMetrics.counter("inference.windows_rejected");
+    private static final PipelineMetrics.Gauge queueDepth = PipelineMetrics.gauge("inference.queue_depth");
+    private static final LatencyHistogram modelLoadLatency = PipelineMetrics.histogram("inference.model_load");
+    private static final LatencyHistogram warmupLatency = PipelineMetrics.histogram("inference.warmup");
+    private static final PipelineMetrics.Gauge modelsReadyGauge = PipelineMetrics.gauge("inference.models_ready_ms");
+    private static final PipelineMetrics.Gauge firstMeasurementGauge = PipelineMetrics.gauge("inference.first_measurement_ms");
     private final Context appContext;
     private final Listener listener;
     private final ObjectMapper mapper = new ObjectMapper();
 
-    private final Map<Mission, List<Module>> missionModules = new HashMap<>();
-    private final Map<Mission, JsonNode> missionConfigs = new HashMap<>();
+    private final Map<Mission, List<Module>> missionModules = new ConcurrentHashMap<>();
+    private final Map<Mission, JsonNode> missionConfigs = new ConcurrentHashMap<>();
+
+    // 融合多头模型：一个 TorchScript 模块以 tuple 输出多个任务头（BP_SYS/BP_DIA/SPO2），共享主干只需前向一次。
+    // 目录结构与单任务相同：<arch>-ring1-fused-all-irred/fused/Fold-X/{config.json, *_ts.pt}，
+    // config.json 中 dataset.label_type 给出各输出头的顺序。
+    private static final String FUSED_MISSION_KEY = "fused";
+    private static final Mission[] FUSABLE_MISSIONS = {Mission.BP_SYS, Mission.BP_DIA, Mission.SPO2};
+    private volatile FusedModel fusedModel;
+
+    // 模型加载：init() 立即返回，目录解析、各 fold 的 Module.load 与预热在后台线程池并行执行。
+    // 每个任务一个就绪 future；reloadModels() 递增 loadGeneration，旧一代的加载结果不再发布。
+    private static final int MAX_MODEL_LOADER_THREADS = 4;
+    private final ThreadPoolExecutor modelLoader;
+    private final Map<Mission, CompletableFuture<Boolean>> missionReady = new ConcurrentHashMap<>();
+    private final AtomicInteger loadGeneration = new AtomicInteger();
+    private volatile long loadStartNanos;
+    // 首次测量耗时：init() 之后第一个样本到达 -> 第一个结果输出
+    private volatile long firstSampleNanos;
+    private volatile boolean firstMeasurementReported;
     
     // Model selection configuration
-    private ModelSelectionConfig modelSelectionConfig;
+    private volatile ModelSelectionConfig modelSelectionConfig;
 
     private final int sampleRateHz = 25;
-    private int windowSeconds = 30;  // 所有模型统一使用 30 秒窗口
+    private volatile int windowSeconds = 30;  // 所有模型统一使用 30 秒窗口
     private static final int RR_WINDOW_SECONDS_OVERRIDE = 30;
-    private int windowSecondsRR = RR_WINDOW_SECONDS_OVERRIDE;  // RR 也使用 30 秒窗口
-    private int targetFs = 100;
-
-    private final ArrayDeque<Float> greenBuf = new ArrayDeque<>();
-    private final ArrayDeque<Float> redBuf = new ArrayDeque<>();
-    private final ArrayDeque<Float> irBuf = new ArrayDeque<>();
+    private volatile int windowSecondsRR = RR_WINDOW_SECONDS_OVERRIDE;  // RR 也使用 30 秒窗口
+    private volatile int targetFs = 100;
+
+    // 采样窗口：仅由数据接收线程（BLE 回调）读写，推理线程只接触快照副本
+    // 使用定长 float 环形缓冲区，写入样本时不装箱、不分配内存；窗口长度变化时在接收线程中重建
+    // 窗口保存的是已重采样到 targetFs 并带通滤波后的数据
+    private FloatRingBuffer redBuf = new FloatRingBuffer(windowSeconds * targetFs);
+    private FloatRingBuffer irBuf = new FloatRingBuffer(windowSeconds * targetFs);
     // RR 专用缓冲区（需要更长的数据窗口）
-    private final ArrayDeque<Float> irBufRR = new ArrayDeque<>();
+    private FloatRingBuffer irBufRR = new FloatRingBuffer(windowSecondsRR * targetFs);
+
+    // 流式预处理：每个 25Hz 样本到达时增量线性插值到 targetFs，再逐点带通滤波（每样本 O(阶数)），
+    // 推理时直接取窗口快照，无需对整个窗口重新重采样和滤波。仅由接收线程使用，targetFs 变化时重建。
+    private int streamFs;
+    private StreamingResampler redResampler;
+    private StreamingResampler irResampler;
+    private BiquadFilter redFilter;
+    private BiquadFilter irFilter;
+    private BiquadFilter irFilterRR;
+    private float[] redResampled;
+    private float[] irResampled;
+    private int samplesSinceBufferLog = 0;
     
-    // 推理间隔控制：每2秒推理一次，避免过于频繁
+    // 推理间隔控制：按到达的样本数（而非手机时钟）调度，默认每2秒数据推理一次 HR/BP/SpO2、每5秒数据推理一次 RR；
+    // 实时与离线加速回放得到相同的窗口序列。间隔可按任务配置，由接收线程在下一次接收时生效。
     private static final long INFERENCE_INTERVAL_MS = 2000; // 2秒 (HR/BP/SpO2)
     private static final long INFERENCE_INTERVAL_MS_RR = 5000; // 5秒 (RR)
-    private long lastInferenceTimeMs = 0;
-    private long lastInferenceTimeMsRR = 0;
+    private volatile long hopMs = INFERENCE_INTERVAL_MS;
+    private volatile long hopMsRR = INFERENCE_INTERVAL_MS_RR;
+    private InferenceScheduler hrBpSpo2Scheduler;
+    private InferenceScheduler rrScheduler;
+
+    // 设备时钟：窗口末尾样本对应的戒指时间戳（帧头 unix ms），帧间出现较大跳变时窗口不再连续，需要清空重来
+    private static final long MAX_FRAME_GAP_MS = 1000;
+    private long nextSampleTimestampMs = 0;
+    private volatile long lastWindowTimestampMs = 0;
+    private volatile boolean synchronousInference = false;
+
+    // 推理流水线：接收线程切出窗口快照后交给单线程推理执行器，模型前向不再阻塞 BLE 数据解码。
+    // 每类任务只保留一个待处理窗口（latest window wins），推理跟不上时旧窗口被新窗口覆盖。
+    private static final int INFERENCE_QUEUE_CAPACITY = 4;
+    private final ThreadPoolExecutor inferenceExecutor;
+    private final AtomicReference<SampleWindow> pendingHrBpSpo2Window = new AtomicReference<>();
+    private final AtomicReference<SampleWindow> pendingRrWindow = new AtomicReference<>();
+    private volatile boolean windowResetRequested = false;
+    private volatile boolean historyResetRequested = false;
+
+    // 多折/多任务并行前向：同一次推理中各 fold、各任务的 forward 分发到有界线程池，结果按提交顺序汇总
+    private static final int DEFAULT_ENSEMBLE_PARALLELISM = 4;
+    private static final long DEFAULT_ENSEMBLE_TASK_TIMEOUT_MS = 1500;
+    private volatile EnsembleRunner ensembleRunner =
+            new EnsembleRunner(DEFAULT_ENSEMBLE_PARALLELISM, DEFAULT_ENSEMBLE_TASK_TIMEOUT_MS);
     
     // 最小数据要求：至少需要5秒的数据才开始推理（避免过少数据影响精度）
     private static final int MIN_SECONDS_FOR_INFERENCE = 5;
@@ -100,19 +191,127 @@ public class ModelInferenceManager {
     private final ArrayDeque<Integer> spo2History = new ArrayDeque<>();
     private final ArrayDeque<Integer> rrHistory = new ArrayDeque<>();
     
-    // 文件日志相关
-    private static BufferedWriter fileLogWriter = null;
+    // 文件日志相关（异步写入，推理线程上不做格式化和磁盘IO）
+    private static AsyncLogger fileLogger = null;
     private static File logFile = null;
+    private static volatile int logLevel = Log.DEBUG;
     private static final String LOG_DIR = "OpenRingLogs";
     private static final String LOG_FILE_PREFIX = "ModelInference_";
     
     // Signal quality tracking
-    private VitalSignsProcessor.SignalQuality currentSignalQuality = VitalSignsProcessor.SignalQuality.NO_SIGNAL;
+    private volatile VitalSignsProcessor.SignalQuality currentSignalQuality = VitalSignsProcessor.SignalQuality.NO_SIGNAL;
+
+    /**
+     * Folds of a fused multi-head model; output i of every fold belongs to heads[i] (null if unused)
+     */
+    private static final class FusedModel {
+        final ModelArchitecture architecture;
+        final List<Module> modules;
+        final Mission[] heads;
+
+        FusedModel(ModelArchitecture architecture, List<Module> modules, Mission[] heads) {
+            this.architecture = architecture;
+            this.modules = modules;
+            this.heads = heads;
+        }
+
+        boolean covers(Mission mission) {
+            for (Mission head : heads) {
+                if (head == mission) return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Fold model paths and the first readable config of one model directory
+     */
+    private static final class FoldPlan {
+        final String root;
+        final List<String> modelPaths = new ArrayList<>();
+        JsonNode config;
+
+        FoldPlan(String root) {
+            this.root = root;
+        }
+    }
+
+    /**
+     * A fused model directory whose folds are about to be loaded
+     */
+    private static final class FusedPlan {
+        final ModelArchitecture architecture;
+        final FoldPlan plan;
+        final Mission[] heads;
+
+        FusedPlan(ModelArchitecture architecture, FoldPlan plan, Mission[] heads) {
+            this.architecture = architecture;
+            this.plan = plan;
+            this.heads = heads;
+        }
+
+        boolean covers(Mission mission) {
+            for (Mission head : heads) {
+                if (head == mission) return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * One forward pass of the ensemble batch; output i is attributed to targets[i]
+     */
+    private static final class ForwardJob {
+        final Module module;
+        final Tensor input;
+        final Mission[] targets;
+
+        ForwardJob(Module module, Tensor input, Mission[] targets) {
+            this.module = module;
+            this.input = input;
+            this.targets = targets;
+        }
+    }
+
+    /**
+     * Snapshot of a resampled, filtered window handed from the ingest thread to the inference executor
+     */
+    private static final class SampleWindow {
+        final float[] red;   // null for RR windows
+        final float[] ir;
+        final int fs;
+        final long endTimestampMs;  // device time of the newest sample, 0 if unknown
+
+        SampleWindow(float[] red, float[] ir, int fs, long endTimestampMs) {
+            this.red = red;
+            this.ir = ir;
+            this.fs = fs;
+            this.endTimestampMs = endTimestampMs;
+        }
+    }
 
     public ModelInferenceManager(Context context, Listener listener) {
         this.appContext = context.getApplicationContext();
         this.listener = listener;
         this.modelSelectionConfig = new ModelSelectionConfig();
+        rebuildStreamPipeline(targetFs);
+        this.inferenceExecutor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(INFERENCE_QUEUE_CAPACITY),
+                r -> {
+                    Thread t = new Thread(r, "ModelInference");
+                    t.setDaemon(true);
+                    return t;
+                });
+        int loaderThreads = Math.max(1, Math.min(MAX_MODEL_LOADER_THREADS,
+                Runtime.getRuntime().availableProcessors() - 1));
+        AtomicInteger loaderIndex = new AtomicInteger();
+        this.modelLoader = new ThreadPoolExecutor(loaderThreads, loaderThreads, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(),
+                r -> {
+                    Thread t = new Thread(r, "ModelLoader-" + loaderIndex.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
         initializeFileLogging();
     }
     
@@ -135,7 +334,10 @@ public class ModelInferenceManager {
             String fileName = LOG_FILE_PREFIX + sdf.format(new Date()) + ".txt";
             logFile = new File(logDir, fileName);
             
-            fileLogWriter = new BufferedWriter(new FileWriter(logFile, true));
+            if (fileLogger != null) {
+                fileLogger.close();
+            }
+            fileLogger = new AsyncLogger("ModelInferenceLog", AsyncLogger.textFileSink(logFile, true), Log.VERBOSE);
             writeToFile("=".repeat(80));
             writeToFile("Model Inference Log Started: " + new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.getDefault()).format(new Date()));
             writeToFile("Log File: " + logFile.getAbsolutePath());
@@ -149,17 +351,12 @@ public class ModelInferenceManager {
     }
     
     /**
-     * 写入日志到文件
+     * 写入日志到文件（仅入队，由后台线程批量写入）
      */
     private static void writeToFile(String message) {
-        if (fileLogWriter != null) {
-            try {
-                String timestamp = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS", Locale.getDefault()).format(new Date());
-                fileLogWriter.write("[" + timestamp + "] " + message + "\n");
-                fileLogWriter.flush();
-            } catch (IOException e) {
-                Log.e(TAG, "Failed to write to log file", e);
-            }
+        AsyncLogger logger = fileLogger;
+        if (logger != null) {
+            logger.log(Log.DEBUG, message);
         }
     }
     
@@ -167,21 +364,30 @@ public class ModelInferenceManager {
      * 关闭文件日志
      */
     public static void closeFileLogging() {
-        if (fileLogWriter != null) {
-            try {
-                writeToFile("=".repeat(80));
-                writeToFile("Model Inference Log Ended: " + new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.getDefault()).format(new Date()));
-                writeToFile("=".repeat(80));
-                fileLogWriter.close();
-                fileLogWriter = null;
-                if (logFile != null) {
-                    Log.i(TAG, "File logging closed. Log saved to: " + logFile.getAbsolutePath());
-                }
-            } catch (IOException e) {
-                Log.e(TAG, "Failed to close log file", e);
+        AsyncLogger logger = fileLogger;
+        if (logger != null) {
+            writeToFile("=".repeat(80));
+            writeToFile("Model Inference Log Ended: " + new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.getDefault()).format(new Date()));
+            writeToFile("=".repeat(80));
+            fileLogger = null;
+            logger.close();
+            if (logFile != null) {
+                Log.i(TAG, "File logging closed. Log saved to: " + logFile.getAbsolutePath());
             }
         }
     }
+
+    /**
+     * Minimum level (android.util.Log constants) of inference debug messages; lower levels are
+     * skipped before the message is built. Default {@link Log#DEBUG}.
+     */
+    public static void setLogLevel(int level) {
+        logLevel = level;
+    }
+
+    private static boolean isLogEnabled(int level) {
+        return level >= logLevel;
+    }
     
     /**
      * 获取当前日志文件路径（用于显示给用户）
@@ -213,79 +419,188 @@ public class ModelInferenceManager {
     public void reloadModels() {
         logDebug("Reloading models with new configuration");
 
-        // Clear existing models
-        missionModules.clear();
-        missionConfigs.clear();
+        // Drop the old models on the inference thread so no forward pass mixes old and new folds;
+        // the new ones are published mission by mission as they finish loading
+        try {
+            inferenceExecutor.execute(() -> {
+                // Clear existing models (a load still in flight no longer publishes)
+                loadGeneration.incrementAndGet();
+                missionModules.clear();
+                missionConfigs.clear();
+                fusedModel = null;
+
+                // Re-initialize
+                init();
+            });
+        } catch (RejectedExecutionException e) {
+            Log.w(TAG, "Model reload rejected", e);
+            logDebug("Model reload rejected: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Configure how fold/mission forward passes of one inference tick are executed.
+     *
+     * @param parallelism   Worker threads for the ensemble; 1 runs folds sequentially on one worker thread,
+     *                      still bounded by the timeout. Capped to the number of cores minus {@value EnsembleRunner#RESERVED_CORES}.
+     * @param taskTimeoutMs Timeout of a single forward pass; a fold that exceeds it is left out of the average
+     */
+    public void setEnsembleParallelism(int parallelism, long taskTimeoutMs) {
+        // Swap on the inference thread so a running batch keeps its pool until it finishes
+        try {
+            inferenceExecutor.execute(() -> {
+                EnsembleRunner previous = ensembleRunner;
+                ensembleRunner = previous.reconfigure(parallelism, taskTimeoutMs);
+                previous.shutdown();
+                logDebug("Ensemble parallelism set to " + ensembleRunner.getParallelism() +
+                        " (requested " + parallelism + "), task timeout " + taskTimeoutMs + "ms");
+            });
+        } catch (RejectedExecutionException e) {
+            Log.w(TAG, "Ensemble reconfiguration rejected", e);
+        }
+    }
 
-        // Re-initialize
-        init();
+    /**
+     * Stop the inference executor. Pending windows are dropped.
+     */
+    public void shutdown() {
+        pendingHrBpSpo2Window.set(null);
+        pendingRrWindow.set(null);
+        inferenceExecutor.shutdownNow();
+        modelLoader.shutdownNow();
+        ensembleRunner.shutdown();
+        logDebug("Inference executor shut down");
     }
 
+    /**
+     * Start loading the models of the current selection and return without waiting for them.
+     * Model directories and configs are resolved first on the loader pool (so the window length and
+     * target rate are known early), then every fold is copied out of the APK, loaded and warmed up in
+     * parallel. Each mission is published as soon as all of its folds are done; until then inference
+     * skips it (HR uses the classic Peak estimate). See {@link #whenReady}.
+     */
     public void init() {
         logDebug("ModelInferenceManager.init() called");
         logDebug("Listener is " + (listener == null ? "null" : listener.getClass().getName()));
-        
-        // List all top-level assets
+
+        int generation = loadGeneration.incrementAndGet();
+        Map<Mission, CompletableFuture<Boolean>> ready = new EnumMap<>(Mission.class);
+        for (Mission m : Mission.values()) {
+            ready.put(m, new CompletableFuture<>());
+        }
+        // 上一次加载被取代：其结果不会再发布，等待方收到 false
+        for (Mission m : Mission.values()) {
+            CompletableFuture<Boolean> previous = missionReady.put(m, ready.get(m));
+            if (previous != null) {
+                previous.complete(false);
+            }
+        }
+        loadStartNanos = System.nanoTime();
+        firstSampleNanos = 0;
+        firstMeasurementReported = false;
+
         try {
-            String[] rootAssets = appContext.getAssets().list("");
-            logDebug("=== Root Assets (total " + (rootAssets == null ? 0 : rootAssets.length) + ") ===");
-            if (rootAssets != null) {
-                for (String asset : rootAssets) {
-                    logDebug("  - " + asset);
-                    // For directories starting with "transformer", list subdirs
-                    if (asset.startsWith("transformer")) {
-                        try {
-                            String[] subDirs = appContext.getAssets().list(asset);
-                            if (subDirs != null && subDirs.length > 0) {
-                                for (String subDir : subDirs) {
-                                    logDebug("    - " + asset + "/" + subDir);
-                                    // List contents of each mission folder (e.g., hr, BP_sys)
-                                    try {
-                                        String[] foldDirs = appContext.getAssets().list(asset + "/" + subDir);
-                                        if (foldDirs != null && foldDirs.length > 0) {
-                                            for (String foldDir : foldDirs) {
-                                                logDebug("      - " + asset + "/" + subDir + "/" + foldDir);
-                                                // List files in each Fold-X directory
-                                                try {
-                                                    String[] files = appContext.getAssets().list(asset + "/" + subDir + "/" + foldDir);
-                                                    if (files != null && files.length > 0) {
-                                                        for (String file : files) {
-                                                            logDebug("        * " + file);
-                                                        }
-                                                    }
-                                                } catch (IOException ignored) {}
-                                            }
-                                        }
-                                    } catch (IOException ignored) {}
-                                }
-                            }
-                        } catch (IOException ignored) {}
+            modelLoader.execute(() -> {
+                try {
+                    loadModels(generation, ready);
+                } catch (RuntimeException e) {
+                    // Loader pool shut down mid-load, or an unexpected asset error
+                    Log.w(TAG, "Model loading aborted", e);
+                    logDebug("Model loading aborted: " + e.getMessage());
+                    for (CompletableFuture<Boolean> f : ready.values()) {
+                        f.complete(false);
                     }
                 }
+            });
+        } catch (RejectedExecutionException e) {
+            Log.w(TAG, "Model loading rejected", e);
+            for (CompletableFuture<Boolean> f : ready.values()) {
+                f.complete(false);
             }
-        } catch (IOException e) {
-            logDebug("Error listing root assets: " + e.getMessage());
         }
+        CompletableFuture.allOf(ready.values().toArray(new CompletableFuture[0])).thenRun(() -> {
+            if (generation == loadGeneration.get()) {
+                long elapsedMs = (System.nanoTime() - loadStartNanos) / 1_000_000;
+                modelsReadyGauge.set(elapsedMs);
+                logDebug("All models ready after " + elapsedMs + "ms");
+            }
+        });
+    }
 
-        // Try load five missions. Assets are mapped to app/models/** by Gradle.
-        ModelArchitecture.ClassicAlgorithmType hrClassicMode = getClassicAlgorithm(Mission.HR);
-        if (hrClassicMode != ModelArchitecture.ClassicAlgorithmType.NONE) {
-            logDebug("Mission HR configured for classic algorithm (" + hrClassicMode + ") - skipping model loading.");
-        } else {
-            loadMission(Mission.HR, findFirstMissionRoot("hr"));
-        }
-        loadMission(Mission.BP_SYS, findFirstMissionRoot("BP_sys"));
-        loadMission(Mission.BP_DIA, findFirstMissionRoot("BP_dia"));
-        loadMission(Mission.SPO2, findFirstMissionRoot("spo2"));
-        ModelArchitecture.ClassicAlgorithmType rrClassicMode = getClassicAlgorithm(Mission.RR);
-        if (rrClassicMode != ModelArchitecture.ClassicAlgorithmType.NONE) {
-            logDebug("Mission RR configured for classic algorithm (" + rrClassicMode + ") - skipping model loading.");
-        } else {
-            loadMission(Mission.RR, findFirstMissionRoot("rr"));
+    /**
+     * Completes once loading (and warmup) of {@code mission} for the current selection has finished:
+     * true if folds are available, false if the mission has no model (classic algorithm, missing
+     * assets, every fold failed) or the load was superseded by {@link #reloadModels}.
+     */
+    public CompletableFuture<Boolean> whenReady(Mission mission) {
+        CompletableFuture<Boolean> ready = missionReady.get(mission);
+        return ready != null ? ready : CompletableFuture.completedFuture(false);
+    }
+
+    /**
+     * Completes once every mission of the current selection has finished loading
+     */
+    public CompletableFuture<Void> whenAllReady() {
+        List<CompletableFuture<Boolean>> all = new ArrayList<>();
+        for (Mission m : Mission.values()) {
+            all.add(whenReady(m));
         }
+        return CompletableFuture.allOf(all.toArray(new CompletableFuture[0]));
+    }
+
+    private boolean isLoading(Mission mission) {
+        CompletableFuture<Boolean> ready = missionReady.get(mission);
+        return ready != null && !ready.isDone();
+    }
 
+    /**
+     * Resolve every mission's model directory and config, then start the fold loads. Runs on the loader pool.
+     */
+    private void loadModels(int generation, Map<Mission, CompletableFuture<Boolean>> ready) {
+        // 1. 解析模型目录并读取配置（只列目录、读 json，开销很小）
+        // BP_SYS / BP_DIA / SPO2 share the [IR, Red] input: prefer a fused multi-head model when one exists
+        FusedPlan fused = planFusedModel();
+        Map<Mission, FoldPlan> plans = new EnumMap<>(Mission.class);
+        for (Mission mission : Mission.values()) {
+            if (fused != null && fused.covers(mission)) {
+                continue;
+            }
+            ModelArchitecture.ClassicAlgorithmType classicMode = getClassicAlgorithm(mission);
+            if (classicMode != ModelArchitecture.ClassicAlgorithmType.NONE) {
+                logDebug("Mission " + mission + " configured for classic algorithm (" + classicMode + ") - skipping model loading.");
+                ready.get(mission).complete(false);
+                continue;
+            }
+            FoldPlan plan = planMission(mission);
+            if (plan == null) {
+                ready.get(mission).complete(false);
+            } else {
+                plans.put(mission, plan);
+            }
+        }
+        if (generation != loadGeneration.get()) {
+            return;
+        }
+        if (fused != null) {
+            for (Mission head : fused.heads) {
+                if (head != null) missionConfigs.put(head, fused.plan.config);
+            }
+        }
+        for (Map.Entry<Mission, FoldPlan> entry : plans.entrySet()) {
+            if (entry.getValue().config != null) {
+                missionConfigs.putIfAbsent(entry.getKey(), entry.getValue().config);
+            }
+        }
         inferWindowAndTargetFs();
         logDebug("Initialized. WindowSeconds=" + windowSeconds + ", targetFs=" + targetFs);
+
+        // 2. 所有 fold 并行加载并预热，某任务的全部 fold 完成后即发布该任务
+        if (fused != null) {
+            startFusedLoad(generation, fused, ready);
+        }
+        for (Map.Entry<Mission, FoldPlan> entry : plans.entrySet()) {
+            startMissionLoad(generation, entry.getKey(), entry.getValue(), ready);
+        }
     }
 
     private void inferWindowAndTargetFs() {
@@ -382,6 +697,24 @@ public class ModelInferenceManager {
         }
         
         logDebug("Searching for mission root: " + missionKey + " with architecture: " + selectedArch);
+        String root = firstExistingRoot(roots);
+        if (root == null) {
+            logDebug("Mission root not found for key: " + missionKey + " with architecture: " + selectedArch);
+        }
+        return root;
+    }
+
+    /**
+     * Root of a fused multi-head model for the given architecture, or null if the assets have none
+     */
+    private String findFusedRoot(ModelArchitecture arch) {
+        List<String> roots = new ArrayList<>();
+        roots.add(arch.getPathPrefix() + "-ring1-" + FUSED_MISSION_KEY + "-all-irred/" + FUSED_MISSION_KEY);
+        logDebug("Searching for fused root with architecture: " + arch);
+        return firstExistingRoot(roots);
+    }
+
+    private String firstExistingRoot(List<String> roots) {
         for (String r : roots) {
             try {
                 logDebug("Trying root path: " + r);
@@ -396,7 +729,6 @@ public class ModelInferenceManager {
                 logDebug("IOException checking root " + r + ": " + e.getMessage());
             }
         }
-        logDebug("Mission root not found for key: " + missionKey + " with architecture: " + selectedArch);
         return null;
     }
     
@@ -412,7 +744,13 @@ public class ModelInferenceManager {
     public String reportStatus() {
         logDebug("reportStatus() invoked");
         StringBuilder sb = new StringBuilder();
+        FusedModel fused = fusedModel;
         for (Mission m : Mission.values()) {
+            if (fused != null && fused.covers(m)) {
+                sb.append("[Model] ").append(m.name()).append(": folds=").append(fused.modules.size())
+                        .append(" (fused)").append('\n');
+                continue;
+            }
             List<Module> list = missionModules.get(m);
             int n = (list == null) ? 0 : list.size();
             sb.append("[Model] ").append(m.name()).append(": folds=").append(n).append('\n');
@@ -420,37 +758,179 @@ public class ModelInferenceManager {
         return sb.toString();
     }
 
-    private void loadMission(Mission mission, String missionRoot) {
-        logDebug("loadMission called: " + mission + " root=" + missionRoot);
+    private static String missionKey(Mission mission) {
+        switch (mission) {
+            case HR: return "hr";
+            case BP_SYS: return "BP_sys";
+            case BP_DIA: return "BP_dia";
+            case SPO2: return "spo2";
+            case RR: return "rr";
+            default: return null;
+        }
+    }
+
+    /**
+     * Fold paths of the mission's selected model directory, or null if the assets have none
+     */
+    private FoldPlan planMission(Mission mission) {
+        String missionRoot = findFirstMissionRoot(missionKey(mission));
+        logDebug("planMission: " + mission + " root=" + missionRoot);
         if (missionRoot == null) {
             Log.w(TAG, "Mission root not found: " + mission);
             logDebug("Mission root not found for " + mission);
-            return;
+            return null;
+        }
+        FoldPlan plan = planFolds(missionRoot, mission.name());
+        if (plan == null || plan.modelPaths.isEmpty()) {
+            logDebug("Mission " + mission + " has no loadable folds in " + missionRoot);
+            return null;
+        }
+        return plan;
+    }
+
+    private void startMissionLoad(int generation, Mission mission, FoldPlan plan,
+                                  Map<Mission, CompletableFuture<Boolean>> ready) {
+        loadFoldsAsync(plan, mission).thenAccept(modules -> {
+            if (generation != loadGeneration.get()) {
+                // reloadModels() 已开始新的加载，丢弃本次结果
+                destroyAll(modules);
+                return;
+            }
+            if (!modules.isEmpty()) {
+                missionModules.put(mission, modules);
+                Log.i(TAG, "Mission " + mission + " folds loaded: " + modules.size());
+                logDebug("Mission " + mission + " folds loaded: " + modules.size());
+            } else {
+                logDebug("Mission " + mission + " loaded 0 modules");
+            }
+            ready.get(mission).complete(!modules.isEmpty());
+        });
+    }
+
+    /**
+     * Fused multi-head model for BP_SYS / BP_DIA / SPO2 if the selected architecture ships one.
+     * Only heads whose mission is configured for that architecture are used; the other missions
+     * keep loading their own folds.
+     */
+    private FusedPlan planFusedModel() {
+        List<ModelArchitecture> candidates = new ArrayList<>();
+        for (Mission m : FUSABLE_MISSIONS) {
+            ModelArchitecture arch = modelSelectionConfig.getArchitecture(m);
+            if (arch != null && !arch.isClassicAlgorithm() && !candidates.contains(arch)) {
+                candidates.add(arch);
+            }
+        }
+        for (ModelArchitecture arch : candidates) {
+            String root = findFusedRoot(arch);
+            if (root == null) continue;
+
+            FoldPlan plan = planFolds(root, FUSED_MISSION_KEY);
+            if (plan == null || plan.modelPaths.isEmpty() || plan.config == null) {
+                logDebug("Fused model at " + root + " unusable (missing folds or config), using per-mission models");
+                continue;
+            }
+            Mission[] heads = parseFusedHeads(plan.config, arch);
+            boolean anyHead = false;
+            for (Mission head : heads) {
+                if (head != null) anyHead = true;
+            }
+            if (!anyHead) {
+                logDebug("Fused model at " + root + " has no usable heads, using per-mission models");
+                continue;
+            }
+            return new FusedPlan(arch, plan, heads);
         }
+        return null;
+    }
+
+    /**
+     * Load the fused folds; if none of them loads, fall back to the per-mission models of its heads
+     */
+    private void startFusedLoad(int generation, FusedPlan fused, Map<Mission, CompletableFuture<Boolean>> ready) {
+        loadFoldsAsync(fused.plan, Mission.BP_SYS).thenAccept(modules -> {
+            if (generation != loadGeneration.get()) {
+                destroyAll(modules);
+                return;
+            }
+            if (!modules.isEmpty()) {
+                fusedModel = new FusedModel(fused.architecture, modules, fused.heads);
+                Log.i(TAG, "Fused model loaded: " + fused.plan.root + " folds=" + modules.size());
+                logDebug("Fused model loaded from " + fused.plan.root + ": folds=" + modules.size() +
+                        ", heads=" + Arrays.toString(fused.heads));
+                for (Mission head : fused.heads) {
+                    if (head != null) ready.get(head).complete(true);
+                }
+                return;
+            }
+            logDebug("Fused model at " + fused.plan.root + " loaded 0 folds, using per-mission models");
+            for (Mission head : fused.heads) {
+                if (head == null) continue;
+                FoldPlan plan = planMission(head);
+                if (plan == null) {
+                    ready.get(head).complete(false);
+                    continue;
+                }
+                if (plan.config != null) {
+                    missionConfigs.put(head, plan.config);
+                }
+                startMissionLoad(generation, head, plan, ready);
+            }
+        });
+    }
+
+    /**
+     * Map the fused model's output order (dataset.label_type) to missions. Labels that are not
+     * fusable (HR and RR use other inputs) or whose mission is configured for another architecture map to null.
+     */
+    private Mission[] parseFusedHeads(JsonNode config, ModelArchitecture arch) {
+        JsonNode dataset = config.get("dataset");
+        JsonNode labels = dataset == null ? null : dataset.get("label_type");
+        if (labels == null || !labels.isArray()) {
+            logDebug("Fused config has no dataset.label_type");
+            return new Mission[0];
+        }
+        Mission[] heads = new Mission[labels.size()];
+        for (int i = 0; i < heads.length; i++) {
+            Mission m = getMissionFromKey(labels.get(i).asText());
+            boolean fusable = false;
+            for (Mission f : FUSABLE_MISSIONS) {
+                if (f == m) fusable = true;
+            }
+            if (fusable && modelSelectionConfig.getArchitecture(m) == arch) {
+                heads[i] = m;
+            }
+        }
+        return heads;
+    }
+
+    private boolean isFused(Mission mission) {
+        FusedModel fused = fusedModel;
+        return fused != null && fused.covers(mission);
+    }
+
+    /**
+     * Find every Fold-X of a model directory and read the first readable config. Only lists directories
+     * and parses json; the modules are loaded by {@link #loadFoldsAsync}. Returns null if the directory
+     * cannot be listed.
+     */
+    private FoldPlan planFolds(String missionRoot, String label) {
+        FoldPlan plan = new FoldPlan(missionRoot);
         try {
             String[] subDirs = appContext.getAssets().list(missionRoot);
             if (subDirs == null) {
                 logDebug("Mission root has no subdirs: " + missionRoot);
-                logDebug("Mission root has no subdirs: " + missionRoot);
-                return;
+                return null;
             }
 
             // Each Fold-X contains a json and a pt file
-            List<Module> modules = new ArrayList<>();
             logDebug("Found " + subDirs.length + " subdirs in " + missionRoot);
             for (String sub : subDirs) {
                 String foldDir = missionRoot + "/" + sub;
-                logDebug("Checking fold directory: " + foldDir);
                 String[] foldFiles = appContext.getAssets().list(foldDir);
                 if (foldFiles == null || foldFiles.length == 0) {
                     logDebug("Fold directory empty or not found: " + foldDir);
                     continue;
                 }
-                
-                logDebug("Fold " + sub + " contains " + foldFiles.length + " files:");
-                for (String f : foldFiles) {
-                    logDebug("  - " + f);
-                }
 
                 String jsonPath = null;
                 String ptPath = null;
@@ -458,89 +938,126 @@ public class ModelInferenceManager {
                 for (String f : foldFiles) {
                     if (f.endsWith(".json")) {
                         jsonPath = foldDir + "/" + f;
-                        logDebug("Found JSON: " + jsonPath);
                     }
                     if (f.endsWith("_ts.pt")) {
                         ptPath = foldDir + "/" + f;
-                        logDebug("Found PT (_ts): " + ptPath);
                     }
                 }
                 if (ptPath == null) {
                     for (String f : foldFiles) {
                         if (f.endsWith(".pt")) {
                             ptPath = foldDir + "/" + f;
-                            logDebug("Found PT: " + ptPath);
                             break;
                         }
                     }
                 }
-                
-                if (jsonPath == null) {
-                    logDebug("WARNING: No JSON file found in " + foldDir);
-                }
-                if (ptPath == null) {
-                    logDebug("WARNING: No PT file found in " + foldDir);
+
+                if (jsonPath == null || ptPath == null) {
+                    logDebug("Skipping fold " + sub + " - missing files (jsonPath=" + (jsonPath != null) + ", ptPath=" + (ptPath != null) + ")");
+                    continue;
                 }
-                
-                if (jsonPath != null && ptPath != null) {
-                    logDebug("Both JSON and PT files found, attempting to load...");
-                    // Load config (only once per mission, prefer first)
-                    if (!missionConfigs.containsKey(mission)) {
-                        logDebug("Loading config from: " + jsonPath);
-                        try (InputStream is = appContext.getAssets().open(jsonPath)) {
-                            missionConfigs.put(mission, mapper.readTree(is));
-                            logDebug("Config loaded successfully for " + mission);
-                        } catch (Exception e) {
-                            Log.w(TAG, "Failed reading config: " + jsonPath, e);
-                            logDebug("Failed reading config: " + jsonPath + " - " + e.getMessage());
-                            logDebug("Exception type: " + e.getClass().getName());
-                            if (e.getCause() != null) {
-                                logDebug("Cause: " + e.getCause().getMessage());
-                            }
-                        }
-                    } else {
-                        logDebug("Config already loaded for " + mission + ", skipping");
+                logDebug("Found fold " + foldDir + ": " + ptPath);
+                // Load config (only once per model directory, prefer first)
+                if (plan.config == null) {
+                    try (InputStream is = appContext.getAssets().open(jsonPath)) {
+                        plan.config = mapper.readTree(is);
+                        logDebug("Config loaded successfully for " + label);
+                    } catch (Exception e) {
+                        Log.w(TAG, "Failed reading config: " + jsonPath, e);
+                        logDebug("Failed reading config: " + jsonPath + " - " + e.getMessage());
                     }
-                    
-                    logDebug("Loading model from: " + ptPath);
-                    try {
-                        String localPath = AssetsUtils.assetFilePath(appContext, ptPath);
-                        logDebug("Model file copied to: " + localPath);
-                        Module m = Module.load(localPath);
-                        modules.add(m);
-                        Log.i(TAG, "Loaded module: " + ptPath);
-                        logDebug("Model loaded successfully: " + ptPath);
-                    } catch (Throwable t) {
-                        Log.w(TAG, "Skip module (load failed): " + ptPath, t);
-                        logDebug("Model load failed for " + ptPath);
-                        logDebug("Error message: " + t.getMessage());
-                        logDebug("Error type: " + t.getClass().getName());
-                        if (t.getCause() != null) {
-                            logDebug("Cause: " + t.getCause().getMessage());
-                        }
-                        // 打印完整的堆栈跟踪（仅前几行）
-                        StackTraceElement[] stack = t.getStackTrace();
-                        for (int i = 0; i < Math.min(5, stack.length); i++) {
-                            logDebug("  at " + stack[i].toString());
-                        }
-                    }
-                } else {
-                    logDebug("Skipping fold " + sub + " - missing files (jsonPath=" + (jsonPath != null) + ", ptPath=" + (ptPath != null) + ")");
                 }
+                plan.modelPaths.add(ptPath);
             }
-            if (!modules.isEmpty()) {
-                missionModules.put(mission, modules);
-                Log.i(TAG, "Mission " + mission + " folds loaded: " + modules.size());
-                logDebug("Mission " + mission + " folds loaded: " + modules.size());
-            } else {
-                logDebug("Mission " + mission + " loaded 0 modules");
-            }
+            return plan;
         } catch (IOException e) {
-            Log.e(TAG, "Error loading mission: " + mission, e);
-            logDebug("Error loading mission " + mission + ": " + e.getMessage());
+            Log.e(TAG, "Error listing mission: " + label, e);
+            logDebug("Error listing mission " + label + ": " + e.getMessage());
+            return null;
         }
     }
-    
+
+    /**
+     * Load and warm up every fold of {@code plan} in parallel on the loader pool. Completes with the
+     * modules that loaded, in fold order, so ensemble averages do not depend on which fold finished first.
+     *
+     * @param mission Decides the warmup input shape
+     */
+    private CompletableFuture<List<Module>> loadFoldsAsync(FoldPlan plan, Mission mission) {
+        List<CompletableFuture<Module>> folds = new ArrayList<>(plan.modelPaths.size());
+        for (String ptPath : plan.modelPaths) {
+            folds.add(CompletableFuture.supplyAsync(() -> loadModule(ptPath, mission), modelLoader));
+        }
+        return CompletableFuture.allOf(folds.toArray(new CompletableFuture[0])).thenApply(v -> {
+            List<Module> modules = new ArrayList<>(folds.size());
+            for (CompletableFuture<Module> fold : folds) {
+                Module m = fold.join();
+                if (m != null) modules.add(m);
+            }
+            return modules;
+        });
+    }
+
+    /**
+     * Copy one fold out of the APK, load it and warm it up. Returns null if loading failed.
+     */
+    private Module loadModule(String ptPath, Mission mission) {
+        long startNanos = System.nanoTime();
+        Module m;
+        try {
+            String localPath = AssetsUtils.assetFilePath(appContext, ptPath);
+            m = Module.load(localPath);
+        } catch (Throwable t) {
+            Log.w(TAG, "Skip module (load failed): " + ptPath, t);
+            logDebug("Model load failed for " + ptPath);
+            logDebug("Error message: " + t.getMessage());
+            logDebug("Error type: " + t.getClass().getName());
+            if (t.getCause() != null) {
+                logDebug("Cause: " + t.getCause().getMessage());
+            }
+            // 打印完整的堆栈跟踪（仅前几行）
+            StackTraceElement[] stack = t.getStackTrace();
+            for (int i = 0; i < Math.min(5, stack.length); i++) {
+                logDebug("  at " + stack[i].toString());
+            }
+            return null;
+        }
+        modelLoadLatency.recordSince(startNanos);
+        Log.i(TAG, "Loaded module: " + ptPath);
+        logDebug("Model loaded: " + ptPath + " (" + (System.nanoTime() - startNanos) / 1_000_000 + "ms)");
+        warmUp(m, ptPath, mission);
+        return m;
+    }
+
+    /**
+     * One forward pass on a zero tensor with the live [1, T, C] window shape, so the first real window
+     * does not pay for TorchScript optimisation and allocator growth. Failures are only logged;
+     * the same error would surface (and be handled) on the first real window.
+     */
+    private void warmUp(Module m, String ptPath, Mission mission) {
+        boolean singleChannel = mission == Mission.HR || mission == Mission.RR;
+        int channels = singleChannel ? 1 : 2;
+        int length = (mission == Mission.RR ? windowSecondsRR : windowSeconds) * targetFs;
+        long startNanos = System.nanoTime();
+        try {
+            m.forward(IValue.from(Tensor.fromBlob(new float[length * channels], new long[]{1, length, channels})));
+            warmupLatency.recordSince(startNanos);
+            logDebug("Warmup " + ptPath + " [1, " + length + ", " + channels + "]: " +
+                    (System.nanoTime() - startNanos) / 1_000_000 + "ms");
+        } catch (Throwable t) {
+            Log.w(TAG, "Warmup failed: " + ptPath, t);
+            logDebug("Warmup failed for " + ptPath + ": " + t.getMessage());
+        }
+    }
+
+    private static void destroyAll(List<Module> modules) {
+        for (Module m : modules) {
+            try {
+                m.destroy();
+            } catch (Throwable ignored) {}
+        }
+    }
+
     /**
      * Update the current signal quality
      * This should be called whenever signal quality changes
@@ -559,136 +1076,374 @@ public class ModelInferenceManager {
         }
     }
 
-    public synchronized void onSensorData(long green, long red, long ir, short accX, short accY, short accZ, long timestampMs) {
+    /**
+     * Set how much data separates two consecutive windows of a mission. HR, BP and SpO2 are computed
+     * from the same window, so setting any of them changes the shared hop; RR has its own.
+     * Takes effect on the next ingest call.
+     */
+    public void setInferenceHop(Mission mission, long hopMillis) {
+        if (hopMillis <= 0) {
+            throw new IllegalArgumentException("hopMillis must be positive: " + hopMillis);
+        }
+        if (mission == Mission.RR) {
+            hopMsRR = hopMillis;
+        } else {
+            hopMs = hopMillis;
+        }
+    }
+
+    public long getInferenceHop(Mission mission) {
+        return mission == Mission.RR ? hopMsRR : hopMs;
+    }
+
+    /**
+     * When enabled, each scheduled window is evaluated before the ingest call returns instead of
+     * going through the latest-window-wins mailbox. Offline replay uses this so that feeding a
+     * recording faster than realtime never drops a window and reproduces the live results.
+     */
+    public void setSynchronousInference(boolean synchronous) {
+        synchronousInference = synchronous;
+    }
+
+    /**
+     * Device timestamp (ring clock) of the newest sample in the most recently evaluated window
+     */
+    public long getLastWindowTimestampMs() {
+        return lastWindowTimestampMs;
+    }
+
+    /**
+     * Ingest one sample. Must be called from a single ingest thread (the BLE notification thread);
+     * it only appends to the sample windows and hands snapshots to the inference executor,
+     * so its cost does not depend on how expensive the models are.
+     * Prefer {@link #onSensorBlock} when a frame carries several samples.
+     *
+     * @param timestampMs Device timestamp of the sample (ring clock); 0 if unknown
+     */
+    public void onSensorData(long green, long red, long ir, short accX, short accY, short accZ, long timestampMs) {
+        long startNanos = System.nanoTime();
+        if (!prepareIngest(timestampMs, 1)) {
+            return;
+        }
+        int produced = appendSample(red, ir);
+        afterIngest(produced);
+        ingestLatency.recordSince(startNanos);
+    }
+
+    /**
+     * Ingest the first {@code count} samples of a block (one BLE frame). Same threading rules as
+     * {@link #onSensorData}; the window checks and the inference triggers run once per block.
+     *
+     * @param timestampMs Device timestamp of the first sample (the frame header timestamp); 0 if unknown
+     */
+    public void onSensorBlock(long[] green, long[] red, long[] ir, short[] accX, short[] accY, short[] accZ,
+                              int count, long timestampMs) {
+        long startNanos = System.nanoTime();
+        if (count <= 0 || !prepareIngest(timestampMs, count)) {
+            return;
+        }
+        int produced = 0;
+        for (int i = 0; i < count; i++) {
+            produced += appendSample(red[i], ir[i]);
+        }
+        afterIngest(produced);
+        ingestLatency.recordSince(startNanos);
+    }
+
+    /**
+     * Apply pending resets and rate changes before appending.
+     *
+     * @return false if samples must not be buffered (signal quality too low)
+     */
+    private boolean prepareIngest(long timestampMs, int count) {
+        if (firstSampleNanos == 0) {
+            firstSampleNanos = System.nanoTime();
+        }
+        if (windowResetRequested) {
+            windowResetRequested = false;
+            clearWindows();
+        }
+        trackDeviceClock(timestampMs, count);
+
         // Only buffer data if signal quality is acceptable
-        if (currentSignalQuality == VitalSignsProcessor.SignalQuality.GOOD ||
-            currentSignalQuality == VitalSignsProcessor.SignalQuality.EXCELLENT ||
-            currentSignalQuality == VitalSignsProcessor.SignalQuality.FAIR) {
-            
-            // Buffer for HR/BP/SpO2 (30 seconds)
-        greenBuf.addLast((float) green);
-        redBuf.addLast((float) red);
-        irBuf.addLast((float) ir);
-            int maxSize = windowSeconds * sampleRateHz;
-        while (greenBuf.size() > maxSize) greenBuf.removeFirst();
-        while (redBuf.size() > maxSize) redBuf.removeFirst();
-        while (irBuf.size() > maxSize) irBuf.removeFirst();
-
-            // Buffer for RR (30 seconds)
-            irBufRR.addLast((float) ir);
-            int maxSizeRR = windowSecondsRR * sampleRateHz;
-            while (irBufRR.size() > maxSizeRR) irBufRR.removeFirst();
-
-            // 调试：每100个样本记录一次缓冲区状态
-            if (greenBuf.size() % 100 == 0 && greenBuf.size() > 0) {
-                logDebug("Buffer: HR/BP/SpO2=" + greenBuf.size() + "/" + maxSize + 
-                        ", RR=" + irBufRR.size() + "/" + maxSizeRR + " samples" +
-                        " (RR needs " + (MIN_SECONDS_FOR_RR_INFERENCE * sampleRateHz) + " samples to start)");
+        if (currentSignalQuality != VitalSignsProcessor.SignalQuality.GOOD &&
+            currentSignalQuality != VitalSignsProcessor.SignalQuality.EXCELLENT &&
+            currentSignalQuality != VitalSignsProcessor.SignalQuality.FAIR) {
+            // Poor signal - skip buffering entirely
+            if (isLogEnabled(Log.DEBUG)) {
+                logDebug("Skipping data buffering due to poor signal quality: " + currentSignalQuality);
             }
+            samplesSkipped.add(count);
+            return false;
+        }
 
-            // HR/BP/SpO2 推理：至少需要5秒数据，每2秒推理一次
-            int minSize = MIN_SECONDS_FOR_INFERENCE * sampleRateHz;  // 5秒 × 25Hz = 125个样本
-            if (greenBuf.size() >= minSize && irBuf.size() >= minSize && redBuf.size() >= minSize) {
-                long currentTime = System.currentTimeMillis();
-                if (currentTime - lastInferenceTimeMs >= INFERENCE_INTERVAL_MS) {
-                    lastInferenceTimeMs = currentTime;
-                    int actualSeconds = Math.min(Math.min(greenBuf.size(), redBuf.size()), irBuf.size()) / sampleRateHz;
-                    logDebug("HR/BP/SpO2 inference with " + actualSeconds + "s data (target: " + windowSeconds + "s)");
-                    runHrBpSpo2Missions();
-                }
-            }
-            
-            // RR 推理：至少需要15秒数据，每5秒推理一次
-            int minSizeRR = MIN_SECONDS_FOR_RR_INFERENCE * sampleRateHz;  // 15秒 × 25Hz = 375个样本
-            if (irBufRR.size() >= minSizeRR) {
-                long currentTime = System.currentTimeMillis();
-                if (currentTime - lastInferenceTimeMsRR >= INFERENCE_INTERVAL_MS_RR) {
-                    lastInferenceTimeMsRR = currentTime;
-                    int actualSeconds = irBufRR.size() / sampleRateHz;
-                    logDebug("RR inference with " + actualSeconds + "s data (target: " + windowSecondsRR + "s)");
-                    runRRMission();
-                }
-            }
-        } else {
-            // Poor signal - skip buffering entirely
-            logDebug("Skipping data buffering due to poor signal quality: " + 
-                    currentSignalQuality);
+        int fs = targetFs;
+        if (fs != streamFs) {
+            // Output rate changed (model reload): windows at the old rate are no longer valid
+            rebuildStreamPipeline(fs);
+            clearWindows();
+        }
+        ensureWindowCapacity(windowSeconds * fs, windowSecondsRR * fs);
+        if (hrBpSpo2Scheduler.getHopMs() != hopMs) {
+            hrBpSpo2Scheduler.setHopMs(hopMs);
+        }
+        if (rrScheduler.getHopMs() != hopMsRR) {
+            rrScheduler.setHopMs(hopMsRR);
+        }
+        return true;
+    }
+
+    /**
+     * Follow the ring clock across frames. Samples are spaced 1/sampleRateHz apart, so each frame
+     * should start where the previous one ended; a lost or out-of-order stretch longer than
+     * {@link #MAX_FRAME_GAP_MS} means the window would splice unrelated data and is started over.
+     */
+    private void trackDeviceClock(long timestampMs, int count) {
+        if (timestampMs <= 0) {
+            nextSampleTimestampMs = 0;
+            return;
+        }
+        long expected = nextSampleTimestampMs;
+        if (expected > 0 && Math.abs(timestampMs - expected) > MAX_FRAME_GAP_MS) {
+            logDebug("Device clock jumped by " + (timestampMs - expected) + " ms, restarting windows");
+            clearWindows();
+        }
+        nextSampleTimestampMs = timestampMs + count * 1000L / sampleRateHz;
+    }
+
+    /**
+     * Resample to the stream rate, then buffer for HR/BP/SpO2 (0.5-3 Hz filtered) and
+     * RR (0.067-0.5 Hz filtered); the rings drop the oldest sample once full.
+     *
+     * @return Number of samples appended at the stream rate
+     */
+    private int appendSample(long red, long ir) {
+        int produced = redResampler.push(red, redResampled);
+        irResampler.push(ir, irResampled);
+        for (int i = 0; i < produced; i++) {
+            redBuf.add(redFilter.process(redResampled[i]));
+            irBuf.add(irFilter.process(irResampled[i]));
+            irBufRR.add(irFilterRR.process(irResampled[i]));
+        }
+        return produced;
+    }
+
+    /**
+     * Buffer status logging and inference triggers, evaluated once per ingest call
+     */
+    private void afterIngest(int produced) {
+        int fs = streamFs;
+        int maxSize = windowSeconds * fs;
+        int maxSizeRR = windowSecondsRR * fs;
+
+        // 调试：约每4秒记录一次缓冲区状态
+        samplesSinceBufferLog += produced;
+        if (samplesSinceBufferLog >= 4 * fs) {
+            samplesSinceBufferLog = 0;
+            logDebug("Buffer: HR/BP/SpO2=" + irBuf.size() + "/" + maxSize + 
+                    ", RR=" + irBufRR.size() + "/" + maxSizeRR + " samples @" + fs + "Hz" +
+                    " (RR needs " + (MIN_SECONDS_FOR_RR_INFERENCE * fs) + " samples to start)");
+        }
+        if (produced == 0) {
+            return;
+        }
+
+        // 窗口末尾样本的设备时间（未知时为0）
+        long windowEndMs = nextSampleTimestampMs > 0 ? nextSampleTimestampMs - 1000L / sampleRateHz : 0;
+
+        // HR/BP/SpO2 推理：至少需要5秒数据，默认每2秒数据推理一次
+        if (hrBpSpo2Scheduler.onSamples(produced, Math.min(redBuf.size(), irBuf.size()))) {
+            int actualSeconds = Math.min(redBuf.size(), irBuf.size()) / fs;
+            logDebug("HR/BP/SpO2 inference with " + actualSeconds + "s data (target: " + windowSeconds + "s)");
+            submitWindow(pendingHrBpSpo2Window,
+                    new SampleWindow(redBuf.toArray(), irBuf.toArray(), fs, windowEndMs),
+                    this::runHrBpSpo2Missions);
+        }
+        
+        // RR 推理：至少需要10秒数据，默认每5秒数据推理一次
+        if (rrScheduler.onSamples(produced, irBufRR.size())) {
+            int actualSeconds = irBufRR.size() / fs;
+            logDebug("RR inference with " + actualSeconds + "s data (target: " + windowSecondsRR + "s)");
+            submitWindow(pendingRrWindow, new SampleWindow(null, irBufRR.toArray(), fs, windowEndMs),
+                    this::runRRMission);
         }
     }
 
     /**
      * 重置所有缓冲区、历史记录和定时器，通常在开始/停止测量时调用，防止残留数据影响下一次推理。
+     * 可从任意线程调用：缓冲区由接收线程在下一个样本到达时清空，历史记录由推理线程在下一次推理前清空。
      */
-    public synchronized void reset() {
-        greenBuf.clear();
+    public void reset() {
+        windowResetRequested = true;
+        historyResetRequested = true;
+        pendingHrBpSpo2Window.set(null);
+        pendingRrWindow.set(null);
+
+        logDebug("Buffers, histories, and timers reset.");
+    }
+
+    /**
+     * Re-allocate the sample windows when the configured window length changes (e.g. after a model reload).
+     * Retained samples are carried over, newest first.
+     */
+    private void ensureWindowCapacity(int maxSize, int maxSizeRR) {
+        if (irBuf.capacity() != maxSize) {
+            redBuf = resizeWindow(redBuf, maxSize);
+            irBuf = resizeWindow(irBuf, maxSize);
+        }
+        if (irBufRR.capacity() != maxSizeRR) {
+            irBufRR = resizeWindow(irBufRR, maxSizeRR);
+        }
+    }
+
+    private static FloatRingBuffer resizeWindow(FloatRingBuffer old, int capacity) {
+        FloatRingBuffer resized = new FloatRingBuffer(capacity);
+        float[] retained = new float[Math.min(old.size(), capacity)];
+        int n = old.copyLatest(retained, retained.length);
+        for (int i = 0; i < n; i++) {
+            resized.add(retained[i]);
+        }
+        return resized;
+    }
+
+    /**
+     * Build the resamplers and filters for a new output rate
+     */
+    private void rebuildStreamPipeline(int fs) {
+        streamFs = fs;
+        redResampler = new StreamingResampler(sampleRateHz, fs);
+        irResampler = new StreamingResampler(sampleRateHz, fs);
+        redResampled = new float[redResampler.maxOutputsPerSample()];
+        irResampled = new float[irResampler.maxOutputsPerSample()];
+        hrBpSpo2Scheduler = new InferenceScheduler(MIN_SECONDS_FOR_INFERENCE, hopMs, fs);
+        rrScheduler = new InferenceScheduler(MIN_SECONDS_FOR_RR_INFERENCE, hopMsRR, fs);
+        redFilter = SignalFilters.PhysiologicalSignalFilter.create(fs);
+        irFilter = redFilter.copy();
+        irFilterRR = SignalFilters.RespiratoryRateFilter.create(fs);
+    }
+
+    private void clearWindows() {
         redBuf.clear();
         irBuf.clear();
         irBufRR.clear();
+        redResampler.reset();
+        irResampler.reset();
+        redFilter.reset();
+        irFilter.reset();
+        irFilterRR.reset();
+
+        hrBpSpo2Scheduler.reset();
+        rrScheduler.reset();
+        samplesSinceBufferLog = 0;
+    }
 
+    private void applyPendingHistoryReset() {
+        if (!historyResetRequested) {
+            return;
+        }
+        historyResetRequested = false;
         hrHistory.clear();
         bpSysHistory.clear();
         bpDiaHistory.clear();
         spo2History.clear();
         rrHistory.clear();
+    }
 
-        lastInferenceTimeMs = 0;
-        lastInferenceTimeMsRR = 0;
+    /**
+     * Publish a window snapshot to the inference executor. Only one window per slot is ever queued:
+     * if the previous one has not started yet it is replaced by the newer window.
+     */
+    private <T> void submitWindow(AtomicReference<T> slot, T window, Consumer<T> stage) {
+        if (synchronousInference) {
+            runAndWait(window, stage);
+            return;
+        }
+        windowsSubmitted.increment();
+        if (slot.getAndSet(window) != null) {
+            windowsReplaced.increment();
+            logDebug("Inference busy, replaced pending window with the latest one");
+            return;
+        }
+        long queuedAtNanos = System.nanoTime();
+        try {
+            inferenceExecutor.execute(() -> {
+                queueWaitLatency.recordSince(queuedAtNanos);
+                T latest = slot.getAndSet(null);
+                if (latest != null) {
+                    stage.accept(latest);
+                }
+            });
+            queueDepth.set(inferenceExecutor.getQueue().size());
+        } catch (RejectedExecutionException e) {
+            slot.set(null);
+            windowsRejected.increment();
+            logDebug("Inference window rejected: " + e.getMessage());
+        }
+    }
 
-        logDebug("Buffers, histories, and timers reset.");
+    /**
+     * Evaluate a window on the inference executor and wait for it, keeping model calls on one thread
+     */
+    private <T> void runAndWait(T window, Consumer<T> stage) {
+        try {
+            inferenceExecutor.submit(() -> stage.accept(window)).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            Log.e(TAG, "Inference failed", e.getCause());
+        } catch (RejectedExecutionException e) {
+            logDebug("Inference window rejected: " + e.getMessage());
+        }
     }
 
-    private void runHrBpSpo2Missions() {
+    private void runHrBpSpo2Missions(SampleWindow window) {
+        applyPendingHistoryReset();
+        lastWindowTimestampMs = window.endTimestampMs;
         long startTime = System.currentTimeMillis();
-
-        int availableSamples = Math.min(Math.min(greenBuf.size(), redBuf.size()), irBuf.size());
-        int requiredSamples = windowSeconds * sampleRateHz;
-        boolean hasFullHrWindow = availableSamples >= requiredSamples;
+        long startNanos = System.nanoTime();
+        int fs = window.fs;
 
         // Prepare input tensor [1, T, C] with C=2 (red, ir)
         // Model expects (batch, length, channels) format as per training
-        int targetLength = windowSeconds * targetFs;
+        int targetLength = windowSeconds * fs;
         if (targetLength <= 0) {
             logDebug("Target length invalid: " + targetLength);
             return;
         }
 
-        float[] resampledRed = resampleBufferWithPadding(redBuf, targetLength);
-        float[] resampledIr = resampleBufferWithPadding(irBuf, targetLength);
-        if (resampledRed == null || resampledIr == null) {
-            logDebug("Resample failed due to insufficient data");
+        int availableSamples = Math.min(window.red.length, window.ir.length);
+        boolean hasFullHrWindow = availableSamples >= targetLength;
+
+        // Window was resampled to targetFs and band-pass filtered (0.5-3 Hz) sample by sample on ingest,
+        // matching training preprocessing; only padding is left to do
+        float[] filteredRed = padWindow(window.red, targetLength);
+        float[] filteredIr = padWindow(window.ir, targetLength);
+        if (filteredRed == null || filteredIr == null) {
+            logDebug("Padding failed due to insufficient data");
             return;
         }
-        
-        // Apply bandpass filter (0.5-3 Hz) to match training preprocessing
-        logDebug("Applying physiological signal bandpass filter");
-        float[] filteredRed = SignalFilters.PhysiologicalSignalFilter.filter(resampledRed);
-        float[] filteredIr = SignalFilters.PhysiologicalSignalFilter.filter(resampledIr);
 
         ModelArchitecture.ClassicAlgorithmType hrClassicMode = getClassicAlgorithm(Mission.HR);
         if (hrClassicMode == ModelArchitecture.ClassicAlgorithmType.HR_PEAK ||
             hrClassicMode == ModelArchitecture.ClassicAlgorithmType.HR_FFT) {
-            emitClassicHrResult(filteredIr, targetFs, hrClassicMode);
+            emitClassicHrResult(filteredIr, fs, hrClassicMode);
         }
 
-        // Interleave channels: [t0_green, t0_ir, t1_green, t1_ir, ...]
+        // Interleave channels: channel 0 = IR, channel 1 = Red,
         // to match (batch=1, length=T, channels=2) layout
-        float[] input = new float[targetLength * 2];
-        for (int i = 0; i < targetLength; i++) {
-            input[i * 2] = filteredIr[i];        // channel 0 (IR)
-            input[i * 2 + 1] = filteredRed[i];   // channel 1 (Red)
-        }
+        float[] input = WindowPreprocessor.interleave(filteredIr, filteredRed, targetLength);
 
         // normalize per-channel (zero mean, unit var) for numerical stability
-        normalizeInPlace(input, targetLength);
+        WindowPreprocessor.normalizeInterleaved(input, targetLength, 2);
 
         long[] shape = new long[]{1, targetLength, 2};
         Tensor tensor = Tensor.fromBlob(input, shape);
         
         long prepTime = System.currentTimeMillis() - startTime;
+        hrBpSpo2PrepLatency.recordSince(startNanos);
         logDebug("Inference started: targetLength=" + targetLength + ", prep=" + prepTime + "ms");
 
         // HR - Check for classic algorithm first, then deep learning model
-        long hrStart = System.currentTimeMillis();
         ModelArchitecture.ClassicAlgorithmType hrClassicType = getClassicAlgorithm(Mission.HR);
         boolean useClassicHr = hrClassicType != ModelArchitecture.ClassicAlgorithmType.NONE;
         boolean classicHrFallback = false;
@@ -697,7 +1452,28 @@ public class ModelInferenceManager {
             useClassicHr = true;
             classicHrFallback = true;
             logDebug("HR fallback: insufficient data for DL, using classic PEAK temporarily");
+        } else if (!useClassicHr && isLoading(Mission.HR)) {
+            hrClassicType = ModelArchitecture.ClassicAlgorithmType.HR_PEAK;
+            useClassicHr = true;
+            classicHrFallback = true;
+            logDebug("HR fallback: models still loading, using classic PEAK temporarily");
+        }
+
+        // Run every deep learning fold of this tick (HR, BP_SYS, BP_DIA, SPO2) as one ensemble batch
+        long ensembleStart = System.currentTimeMillis();
+        Map<Mission, Tensor> dlInputs = new EnumMap<>(Mission.class);
+        if (!useClassicHr && hasMission(Mission.HR)) {
+            dlInputs.put(Mission.HR, buildHrTensor(input, targetLength));
         }
+        for (Mission m : new Mission[]{Mission.BP_SYS, Mission.BP_DIA, Mission.SPO2}) {
+            if (hasMission(m)) {
+                dlInputs.put(m, tensor);
+            }
+        }
+        Map<Mission, Float> predictions = averagePredictions(dlInputs);
+        long ensembleTime = System.currentTimeMillis() - ensembleStart;
+
+        long hrStart = System.currentTimeMillis();
         if (useClassicHr) {
             // Use classic algorithm (FFT or Peak) for HR estimation
             logDebug("Using classic algorithm for HR: " + hrClassicType +
@@ -707,10 +1483,10 @@ public class ModelInferenceManager {
             float hrValue = Float.NaN;
             try {
                 if (hrClassicType == ModelArchitecture.ClassicAlgorithmType.HR_FFT) {
-                    hrValue = ClassicAlgorithmProcessor.estimateHrByFFT(filteredIr, targetFs);
+                    hrValue = ClassicAlgorithmProcessor.estimateHrByFFT(filteredIr, fs);
                     logDebug("Classic HR FFT raw estimation: " + hrValue + " bpm");
                 } else if (hrClassicType == ModelArchitecture.ClassicAlgorithmType.HR_PEAK) {
-                    hrValue = ClassicAlgorithmProcessor.estimateHrByPeak(filteredIr, targetFs);
+                    hrValue = ClassicAlgorithmProcessor.estimateHrByPeak(filteredIr, fs);
                     logDebug("Classic HR Peak raw estimation: " + hrValue + " bpm");
                 }
             } catch (Exception e) {
@@ -724,46 +1500,23 @@ public class ModelInferenceManager {
                 int rawValue = Math.round(hrValue);
                 rawValue = Math.max(MIN_HR_BPM, Math.min(MAX_HR_BPM, rawValue));
                 int smoothedValue = smoothValue(hrHistory, rawValue);
+                reportFirstMeasurement();
                 listener.onHrPredicted(smoothedValue);
                 logDebug("HR=" + smoothedValue + " bpm (raw=" + rawValue + ", classic, " + hrTime + "ms)");
             } else {
                 logDebug("Classic HR estimation failed or invalid (" + hrTime + "ms)");
             }
-        } else if (hasMission(Mission.HR)) {
+        } else if (predictions.containsKey(Mission.HR)) {
             // Use deep learning model for HR estimation
-            // Extract IR channel only for HR model: [1, T, 1]
-            float[] hrInput = new float[targetLength];
-            for (int i = 0; i < targetLength; i++) {
-                hrInput[i] = input[i * 2];  // Extract IR channel (index 0)
-            }
-            // Normalize single channel
-            double mean = 0;
-            for (int i = 0; i < targetLength; i++) {
-                mean += hrInput[i];
-            }
-            mean /= targetLength;
-            double var = 0;
-            for (int i = 0; i < targetLength; i++) {
-                double v = hrInput[i] - mean;
-                var += v * v;
-            }
-            double std = Math.sqrt(var / Math.max(1, targetLength - 1));
-            if (std < 1e-6) std = 1.0;
-            for (int i = 0; i < targetLength; i++) {
-                hrInput[i] = (float) ((hrInput[i] - mean) / std);
-            }
-            
-            long[] hrShape = new long[]{1, targetLength, 1};
-            Tensor hrTensor = Tensor.fromBlob(hrInput, hrShape);
-            float pred = averagePrediction(missionModules.get(Mission.HR), hrTensor);
-            long hrTime = System.currentTimeMillis() - hrStart;
+            float pred = predictions.get(Mission.HR);
+            long hrTime = ensembleTime;
             if (listener != null && !Float.isNaN(pred) && pred > 0) {
                 int dlRawValue = Math.round(pred);
                 int finalRawValue = dlRawValue;
 
                 // 当深度学习 HR 结果偏低时，尝试使用 Peak 回退，以提升低值区间的稳定性
                 if (dlRawValue < DL_HR_FALLBACK_THRESHOLD_BPM) {
-                    float peakHr = ClassicAlgorithmProcessor.estimateHrByPeak(filteredIr, targetFs);
+                    float peakHr = ClassicAlgorithmProcessor.estimateHrByPeak(filteredIr, fs);
                     if (!Float.isNaN(peakHr) && peakHr > 0) {
                         int peakRaw = Math.round(peakHr);
                         peakRaw = Math.max(MIN_HR_BPM, Math.min(MAX_HR_BPM, peakRaw));
@@ -777,6 +1530,7 @@ public class ModelInferenceManager {
 
                 finalRawValue = Math.max(MIN_HR_BPM, Math.min(MAX_HR_BPM, finalRawValue));
                 int smoothedValue = smoothValue(hrHistory, finalRawValue);
+                reportFirstMeasurement();
                 listener.onHrPredicted(smoothedValue);
                 logDebug("HR=" + smoothedValue + " bpm (raw=" + finalRawValue + ", dl_raw=" + dlRawValue +
                         ", " + hrTime + "ms)");
@@ -785,15 +1539,15 @@ public class ModelInferenceManager {
         } 
         
         // BP SYS
-        long bpSysStart = System.currentTimeMillis();
-        if (hasMission(Mission.BP_SYS)) {
-            float pred = averagePrediction(missionModules.get(Mission.BP_SYS), tensor);
-            long bpSysTime = System.currentTimeMillis() - bpSysStart;
+        if (predictions.containsKey(Mission.BP_SYS)) {
+            float pred = predictions.get(Mission.BP_SYS);
+            long bpSysTime = ensembleTime;
             if (listener != null && !Float.isNaN(pred) && pred > 0) {
                 int rawValue = Math.round(pred);
                 // Check physiological range
                 if (rawValue >= BP_SYS_MIN && rawValue <= BP_SYS_MAX) {
                     int smoothedValue = smoothValue(bpSysHistory, rawValue);
+                    reportFirstMeasurement();
                     listener.onBpSysPredicted(smoothedValue);
                     logDebug("BP_SYS=" + smoothedValue + " mmHg (raw=" + rawValue + ", " + bpSysTime + "ms)");
                 } else {
@@ -804,15 +1558,15 @@ public class ModelInferenceManager {
         }
         
         // BP DIA
-        long bpDiaStart = System.currentTimeMillis();
-        if (hasMission(Mission.BP_DIA)) {
-            float pred = averagePrediction(missionModules.get(Mission.BP_DIA), tensor);
-            long bpDiaTime = System.currentTimeMillis() - bpDiaStart;
+        if (predictions.containsKey(Mission.BP_DIA)) {
+            float pred = predictions.get(Mission.BP_DIA);
+            long bpDiaTime = ensembleTime;
             if (listener != null && !Float.isNaN(pred) && pred > 0) {
                 int rawValue = Math.round(pred);
                 // Check physiological range
                 if (rawValue >= BP_DIA_MIN && rawValue <= BP_DIA_MAX) {
                     int smoothedValue = smoothValue(bpDiaHistory, rawValue);
+                    reportFirstMeasurement();
                     listener.onBpDiaPredicted(smoothedValue);
                     logDebug("BP_DIA=" + smoothedValue + " mmHg (raw=" + rawValue + ", " + bpDiaTime + "ms)");
                 } else {
@@ -823,15 +1577,15 @@ public class ModelInferenceManager {
         }
         
         // SpO2
-        long spo2Start = System.currentTimeMillis();
-        if (hasMission(Mission.SPO2)) {
-            float pred = averagePrediction(missionModules.get(Mission.SPO2), tensor);
-            long spo2Time = System.currentTimeMillis() - spo2Start;
+        if (predictions.containsKey(Mission.SPO2)) {
+            float pred = predictions.get(Mission.SPO2);
+            long spo2Time = ensembleTime;
             if (listener != null && !Float.isNaN(pred) && pred > 0) {
                 int rawValue = Math.round(pred);
                 // Check physiological range
                 if (rawValue >= SPO2_MIN && rawValue <= SPO2_MAX) {
                     int smoothedValue = smoothValue(spo2History, rawValue);
+                    reportFirstMeasurement();
                     listener.onSpo2Predicted(smoothedValue);
                     logDebug("SPO2=" + smoothedValue + "% (raw=" + rawValue + ", " + spo2Time + "ms)");
                 } else {
@@ -842,58 +1596,46 @@ public class ModelInferenceManager {
         }
         
         long totalTime = System.currentTimeMillis() - startTime;
+        hrBpSpo2TotalLatency.recordSince(startNanos);
         logDebug("HR/BP/SpO2 total inference time: " + totalTime + "ms");
     }
     
-    private void runRRMission() {
+    private void runRRMission(SampleWindow window) {
+        applyPendingHistoryReset();
+        lastWindowTimestampMs = window.endTimestampMs;
         long startTime = System.currentTimeMillis();
+        long startNanos = System.nanoTime();
+        int fs = window.fs;
         
         // Prepare input tensor for RR: [1, T, 1] with 30-second window
-        int targetLength = windowSecondsRR * targetFs;  // 30秒 × 100Hz = 3000 samples
+        int targetLength = windowSecondsRR * fs;  // 30秒 × 100Hz = 3000 samples
         if (targetLength <= 0) {
             logDebug("RR target length invalid: " + targetLength);
             return;
         }
 
-        int requiredSamples = windowSecondsRR * sampleRateHz;
-        boolean hasFullRrWindow = irBufRR.size() >= requiredSamples;
+        boolean hasFullRrWindow = window.ir.length >= targetLength;
 
-        float[] resampledIr = resampleBufferWithPadding(irBufRR, targetLength);
-        if (resampledIr == null) {
-            logDebug("RR resample failed due to insufficient data");
+        // Window was resampled on ingest and filtered with the respiratory rate band-pass (0.067-0.5 Hz),
+        // matching the "ir-filtered-rr" preprocessing used in training
+        float[] filteredIr = padWindow(window.ir, targetLength);
+        if (filteredIr == null) {
+            logDebug("RR padding failed due to insufficient data");
             return;
         }
-        
-        // Apply respiratory rate specific filtering (0.067-0.5 Hz bandpass)
-        // This matches the "ir-filtered-rr" preprocessing used in training
-        logDebug("Applying respiratory rate bandpass filter");
-        float[] filteredIr = SignalFilters.RespiratoryRateFilter.filter(resampledIr);
 
         ModelArchitecture.ClassicAlgorithmType rrClassicMode = getClassicAlgorithm(Mission.RR);
         if (rrClassicMode == ModelArchitecture.ClassicAlgorithmType.RR_FFT ||
             rrClassicMode == ModelArchitecture.ClassicAlgorithmType.RR_PEAK) {
-            emitClassicRrResult(filteredIr, targetFs, rrClassicMode);
+            emitClassicRrResult(filteredIr, fs, rrClassicMode);
             long totalTime = System.currentTimeMillis() - startTime;
+            rrTotalLatency.recordSince(startNanos);
             logDebug("RR classic " + rrClassicMode + " total time: " + totalTime + "ms");
             return;
         }
 
         // Normalize single channel (filtered IR)
-        double mean = 0;
-        for (int i = 0; i < targetLength; i++) {
-            mean += filteredIr[i];
-        }
-        mean /= targetLength;
-        double var = 0;
-        for (int i = 0; i < targetLength; i++) {
-            double v = filteredIr[i] - mean;
-            var += v * v;
-        }
-        double std = Math.sqrt(var / Math.max(1, targetLength - 1));
-        if (std < 1e-6) std = 1.0;
-        for (int i = 0; i < targetLength; i++) {
-            filteredIr[i] = (float) ((filteredIr[i] - mean) / std);
-        }
+        WindowPreprocessor.normalize(filteredIr, targetLength);
         
         long prepTime = System.currentTimeMillis() - startTime;
         logDebug("RR inference started: targetLength=" + targetLength + ", prep=" + prepTime + "ms");
@@ -919,10 +1661,10 @@ public class ModelInferenceManager {
             float rrValue = Float.NaN;
             try {
                 if (rrClassicType == ModelArchitecture.ClassicAlgorithmType.RR_FFT) {
-                    rrValue = ClassicAlgorithmProcessor.estimateRrByFFT(filteredIr, targetFs);
+                    rrValue = ClassicAlgorithmProcessor.estimateRrByFFT(filteredIr, fs);
                     logDebug("Classic RR FFT raw estimation: " + rrValue + " brpm");
                 } else if (rrClassicType == ModelArchitecture.ClassicAlgorithmType.RR_PEAK) {
-                    rrValue = ClassicAlgorithmProcessor.estimateRrByPeak(filteredIr, targetFs);
+                    rrValue = ClassicAlgorithmProcessor.estimateRrByPeak(filteredIr, fs);
                     logDebug("Classic RR Peak raw estimation: " + rrValue + " brpm");
                 }
             } catch (Exception e) {
@@ -935,6 +1677,7 @@ public class ModelInferenceManager {
             if (listener != null && !Float.isNaN(rrValue) && rrValue > 0) {
                 int rawValue = Math.max(8, Math.min(30, Math.round(rrValue)));  // 正常呼吸率范围 8-30 brpm
                 int smoothedValue = smoothValue(rrHistory, rawValue);
+                reportFirstMeasurement();
                 listener.onRrPredicted(smoothedValue);
                 logDebug("RR=" + smoothedValue + " brpm (raw=" + rawValue + ", classic, " + rrTime + "ms)");
             } else {
@@ -945,7 +1688,7 @@ public class ModelInferenceManager {
             float pred = Float.NaN;
             try {
                 Tensor rrTensor = Tensor.fromBlob(filteredIr, new long[]{1, targetLength, 1}); // (B, T, C) with filtered data
-                pred = averagePrediction(missionModules.get(Mission.RR), rrTensor);
+                pred = averagePrediction(Mission.RR, rrTensor);
             } catch (Throwable e) {
                 Log.e(TAG, "RR inference failed", e);
                 logDebug("RR inference failed: " + e.getMessage());
@@ -958,6 +1701,7 @@ public class ModelInferenceManager {
                 // Check physiological range
                 if (rawValue >= RR_MIN && rawValue <= RR_MAX) {
                     int smoothedValue = smoothValue(rrHistory, rawValue);
+                    reportFirstMeasurement();
                     listener.onRrPredicted(smoothedValue);
                     logDebug("RR=" + smoothedValue + " brpm (raw=" + rawValue + ", " + rrTime + "ms)");
                 } else {
@@ -969,10 +1713,28 @@ public class ModelInferenceManager {
         }
         
         long totalTime = System.currentTimeMillis() - startTime;
+        rrTotalLatency.recordSince(startNanos);
         logDebug("RR total inference time: " + totalTime + "ms");
     }
 
+    /**
+     * Publish time-to-first-measurement (first sample after {@link #init} to the first emitted value), once per load
+     */
+    private void reportFirstMeasurement() {
+        if (firstMeasurementReported) {
+            return;
+        }
+        firstMeasurementReported = true;
+        long start = firstSampleNanos;
+        if (start != 0) {
+            long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+            firstMeasurementGauge.set(elapsedMs);
+            logDebug("Time to first measurement: " + elapsedMs + "ms");
+        }
+    }
+
     private boolean hasMission(Mission m) {
+        if (isFused(m)) return true;
         List<Module> list = missionModules.get(m);
         return list != null && !list.isEmpty();
     }
@@ -988,44 +1750,160 @@ public class ModelInferenceManager {
         return ModelArchitecture.ClassicAlgorithmType.NONE;
     }
 
-    private float averagePrediction(List<Module> modules, Tensor input) {
-        if (modules == null || modules.isEmpty()) return Float.NaN;
-        float sum = 0f;
-        int n = 0;
-        for (Module m : modules) {
-            try {
-                IValue out = m.forward(IValue.from(input));
+    /**
+     * Extract the IR channel of the interleaved [IR, Red] input and normalise it for the HR model: [1, T, 1]
+     */
+    private static Tensor buildHrTensor(float[] input, int targetLength) {
+        float[] hrInput = new float[targetLength];
+        for (int i = 0; i < targetLength; i++) {
+            hrInput[i] = input[i * 2];  // Extract IR channel (index 0)
+        }
+        // Normalize single channel
+        WindowPreprocessor.normalize(hrInput, targetLength);
+        return Tensor.fromBlob(hrInput, new long[]{1, targetLength, 1});
+    }
+
+    private float averagePrediction(Mission mission, Tensor input) {
+        Float pred = averagePredictions(Collections.singletonMap(mission, input)).get(mission);
+        return pred != null ? pred : Float.NaN;
+    }
 
-                // Handle both single tensor and tuple outputs
-                Tensor t;
-                if (out.isTuple()) {
+    /**
+     * Fold-averaged prediction for every mission in {@code inputs}.
+     * All folds of all missions are submitted as one batch to the ensemble runner; results come back
+     * in submission order and are summed in fold order, so the average does not depend on scheduling.
+     * Missions served by the fused model run one forward per fold for all of their heads (they share
+     * the [IR, Red] input tensor). Missions without loaded folds are omitted; a mission whose folds
+     * all failed maps to NaN.
+     */
+    private Map<Mission, Float> averagePredictions(Map<Mission, Tensor> inputs) {
+        List<ForwardJob> jobs = new ArrayList<>();
+        FusedModel fused = fusedModel;
+        Tensor fusedInput = null;
+        for (Map.Entry<Mission, Tensor> entry : inputs.entrySet()) {
+            Mission mission = entry.getKey();
+            if (fused != null && fused.covers(mission)) {
+                fusedInput = entry.getValue();
+                continue;
+            }
+            List<Module> modules = missionModules.get(mission);
+            if (modules == null || modules.isEmpty()) continue;
+            Mission[] targets = {mission};
+            for (Module m : modules) {
+                jobs.add(new ForwardJob(m, entry.getValue(), targets));
+            }
+        }
+        if (fusedInput != null) {
+            for (Module m : fused.modules) {
+                jobs.add(new ForwardJob(m, fusedInput, fused.heads));
+            }
+        }
+
+        Map<Mission, Float> averages = new EnumMap<>(Mission.class);
+        if (jobs.isEmpty()) return averages;
+
+        List<Callable<float[]>> tasks = new ArrayList<>(jobs.size());
+        List<Module> keys = new ArrayList<>(jobs.size());
+        for (ForwardJob job : jobs) {
+            tasks.add(() -> forwardHeads(job.module, job.input, job.targets.length));
+            keys.add(job.module);
+        }
+        // 以 Module 为键：上一次超时仍未返回的 forward（原生调用不响应中断）所在的 fold 本次跳过
+        EnsembleRunner runner = ensembleRunner;
+        List<float[]> outputs = runner.invokeOrdered(tasks, keys);
+        EnsembleRunner.BatchStats stats = runner.getLastStats();
+        if (tasks.size() > 1) {
+            if (isLogEnabled(Log.DEBUG)) {
+                logDebug(String.format(Locale.US, "Ensemble: %d forwards on %d thread(s) in %.1f ms (failed=%d, timed out=%d, skipped=%d)",
+                        tasks.size(), runner.getParallelism(), stats.elapsedNanos / 1_000_000.0,
+                        stats.failed, stats.timedOut, stats.skipped));
+            }
+        }
+
+        Map<Mission, float[]> sums = new EnumMap<>(Mission.class);  // {sum, count}
+        for (int i = 0; i < jobs.size(); i++) {
+            Mission[] targets = jobs.get(i).targets;
+            float[] out = outputs.get(i);
+            for (int h = 0; h < targets.length; h++) {
+                Mission target = targets[h];
+                if (target == null || !inputs.containsKey(target)) continue;
+                float[] acc = sums.computeIfAbsent(target, k -> new float[2]);
+                if (out != null) {
+                    acc[0] += out[h];
+                    acc[1]++;
+                }
+            }
+        }
+        for (Map.Entry<Mission, float[]> entry : sums.entrySet()) {
+            float[] acc = entry.getValue();
+            averages.put(entry.getKey(), acc[1] > 0 ? acc[0] / acc[1] : Float.NaN);
+        }
+        return averages;
+    }
+
+    /**
+     * One fold's forward pass. With a single head, returns the last element of the (first) output tensor;
+     * with several heads, output i is the last element of tuple element i, or element i of a stacked
+     * [1, heads] tensor. Returns null if the fold failed.
+     */
+    private float[] forwardHeads(Module m, Tensor input, int headCount) {
+        try {
+            long forwardStart = System.nanoTime();
+            IValue out = m.forward(IValue.from(input));
+            forwardLatency.recordSince(forwardStart);
+
+            float[] values = new float[headCount];
+            if (out.isTuple()) {
+                IValue[] elements = out.toTuple();
+                if (headCount == 1) {
                     // For tuple output, use the first element (prediction)
-                    IValue[] elements = out.toTuple();
                     if (elements.length > 0 && elements[0].isTensor()) {
-                        t = elements[0].toTensor();
-                    } else {
-                        logDebug("Tuple output but first element is not a tensor");
-                        continue;
+                        return lastValue(elements[0].toTensor(), values, 0) ? values : null;
                     }
-                } else if (out.isTensor()) {
-                    t = out.toTensor();
-                } else {
-                    logDebug("Output is neither tensor nor tuple");
-                    continue;
+                    logDebug("Tuple output but first element is not a tensor");
+                    return null;
+                }
+                if (elements.length < headCount) {
+                    logDebug("Fused output has " + elements.length + " heads, expected " + headCount);
+                    return null;
+                }
+                for (int h = 0; h < headCount; h++) {
+                    if (!elements[h].isTensor() || !lastValue(elements[h].toTensor(), values, h)) {
+                        logDebug("Fused output head " + h + " is not a non-empty tensor");
+                        return null;
+                    }
+                }
+                return values;
+            } else if (out.isTensor()) {
+                Tensor t = out.toTensor();
+                if (headCount == 1) {
+                    return lastValue(t, values, 0) ? values : null;
                 }
-
                 float[] arr = t.getDataAsFloatArray();
-                if (arr.length > 0) {
-                    sum += arr[arr.length - 1]; // support either scalar or last-step output
-                    n++;
+                if (arr.length != headCount) {
+                    logDebug("Fused tensor output has " + arr.length + " values, expected " + headCount);
+                    return null;
                 }
-                if (arr.length == 0) logDebug("Empty output tensor from module");
-            } catch (Throwable e) {
-                Log.w(TAG, "Forward failed on one fold", e);
-                 logDebug("Forward failed: " + e.getMessage());
+                return arr;
+            } else {
+                logDebug("Output is neither tensor nor tuple");
+                return null;
             }
+        } catch (Throwable e) {
+            Log.w(TAG, "Forward failed on one fold", e);
+            logDebug("Forward failed: " + e.getMessage());
+            return null;
         }
-        return n > 0 ? sum / n : Float.NaN;
+    }
+
+    private boolean lastValue(Tensor t, float[] dst, int index) {
+        float[] arr = t.getDataAsFloatArray();
+        if (arr.length == 0) {
+            logDebug("Empty output tensor from module");
+            return false;
+        }
+        dst[index] = arr[arr.length - 1]; // support either scalar or last-step output
+        return true;
     }
 
     private void emitClassicHrResult(float[] irSignal, int sampleRate, ModelArchitecture.ClassicAlgorithmType mode) {
@@ -1041,6 +1919,7 @@ public class ModelInferenceManager {
         }
         int output = smoothValue(hrHistory, hrValue);
         if (listener != null) {
+            reportFirstMeasurement();
             listener.onHrPredicted(output);
         }
         logDebug("HR (classic " + mode + ")=" + output + " bpm (raw=" + hrValue + ")");
@@ -1059,6 +1938,7 @@ public class ModelInferenceManager {
         }
         int output = smoothValue(rrHistory, rrValue);
         if (listener != null) {
+            reportFirstMeasurement();
             listener.onRrPredicted(output);
         }
         logDebug("RR (classic " + mode + ")=" + output + " brpm (raw=" + rrValue + ")");
@@ -1102,34 +1982,16 @@ public class ModelInferenceManager {
         if (signal == null || sampleRate <= 0 || signal.length < sampleRate) {
             return null;
         }
-        int n = signal.length;
-        double mean = 0.0;
-        for (float v : signal) {
-            mean += v;
+        // Only the bins inside the HR band are evaluated (Goertzel), with sub-bin peak interpolation
+        SpectralEstimator.Peak peak = SpectralEstimator.findPeak(signal, sampleRate, HR_MIN_HZ, HR_MAX_HZ);
+        if (isLogEnabled(Log.DEBUG)) {
+            logDebug(String.format(Locale.US, "Classic HR spectrum: %d bins (%s) in %.2f ms",
+                    peak.binsEvaluated, peak.usedFft ? "fft" : "goertzel", peak.elapsedMillis()));
         }
-        mean /= n;
-        double bestMagnitude = 0.0;
-        double bestFreq = 0.0;
-        for (int k = 1; k <= n / 2; k++) {
-            double real = 0.0;
-            double imag = 0.0;
-            double angleFactor = -2.0 * Math.PI * k / n;
-            for (int i = 0; i < n; i++) {
-                double sample = signal[i] - mean;
-                double angle = angleFactor * i;
-                real += sample * Math.cos(angle);
-                imag += sample * Math.sin(angle);
-            }
-            double magnitude = Math.hypot(real, imag);
-            if (magnitude > bestMagnitude) {
-                bestMagnitude = magnitude;
-                bestFreq = (double) k * sampleRate / n;
-            }
-        }
-        if (bestFreq <= 0) {
+        if (!peak.isValid() || peak.frequencyHz <= 0) {
             return null;
         }
-        double hrBpm = bestFreq * 60.0;
+        double hrBpm = peak.frequencyHz * 60.0;
         if (!Double.isFinite(hrBpm)) {
             return null;
         }
@@ -1164,131 +2026,17 @@ public class ModelInferenceManager {
         return rounded;
     }
 
-    private float[] resampleBuffer(ArrayDeque<Float> buffer, int targetLength) {
-        int srcSize = buffer.size();
-        if (srcSize < 2 || targetLength < 2) {
-            return null;
-        }
-        float[] src = new float[srcSize];
-        int idx = 0;
-        for (Float v : buffer) {
-            src[idx++] = v;
-        }
-
-        float[] out = new float[targetLength];
-        float ratio = (float) sampleRateHz / targetFs;
-        for (int i = 0; i < targetLength; i++) {
-            float srcPos = i * ratio;
-            int idx0 = (int) Math.floor(srcPos);
-            int idx1 = Math.min(srcSize - 1, idx0 + 1);
-            float frac = srcPos - idx0;
-            if (idx0 >= srcSize) {
-                out[i] = src[srcSize - 1];
-            } else {
-                float v0 = src[idx0];
-                float v1 = src[idx1];
-                out[i] = v0 + (v1 - v0) * frac;
-            }
-        }
-        return out;
-    }
-    
     /**
-     * 重采样缓冲区数据并在数据不足时进行填充
-     * 使用镜像填充策略：如果数据不足30秒，则循环重复现有数据
+     * 数据不足目标长度时进行填充：循环重复现有数据（与此前重采样后的填充策略一致）
      */
-    private float[] resampleBufferWithPadding(ArrayDeque<Float> buffer, int targetLength) {
-        int srcSize = buffer.size();
-        if (srcSize < 2 || targetLength < 2) {
-            return null;
-        }
-        
-        // 将缓冲区数据转换为数组
-        float[] src = new float[srcSize];
-        int idx = 0;
-        for (Float v : buffer) {
-            src[idx++] = v;
-        }
-        
-        // 计算原始数据对应的目标长度（重采样后）
-        float ratio = (float) sampleRateHz / targetFs;
-        int srcTargetLength = (int) (srcSize / ratio);
-        
-        float[] out = new float[targetLength];
-        
-        if (srcTargetLength >= targetLength) {
-            // 数据足够，正常重采样
-            for (int i = 0; i < targetLength; i++) {
-                float srcPos = i * ratio;
-                int idx0 = (int) Math.floor(srcPos);
-                int idx1 = Math.min(srcSize - 1, idx0 + 1);
-                float frac = srcPos - idx0;
-                if (idx0 >= srcSize) {
-                    out[i] = src[srcSize - 1];
-                } else {
-                    float v0 = src[idx0];
-                    float v1 = src[idx1];
-                    out[i] = v0 + (v1 - v0) * frac;
-                }
-            }
-        } else {
-            // 数据不足，先重采样现有数据，然后循环填充
-            // 第1步：重采样现有数据
-            float[] resampled = new float[srcTargetLength];
-            for (int i = 0; i < srcTargetLength; i++) {
-                float srcPos = i * ratio;
-                int idx0 = (int) Math.floor(srcPos);
-                int idx1 = Math.min(srcSize - 1, idx0 + 1);
-                float frac = srcPos - idx0;
-                if (idx0 >= srcSize) {
-                    resampled[i] = src[srcSize - 1];
-                } else {
-                    float v0 = src[idx0];
-                    float v1 = src[idx1];
-                    resampled[i] = v0 + (v1 - v0) * frac;
-                }
-            }
-            
-            // 第2步：循环填充到目标长度
-            for (int i = 0; i < targetLength; i++) {
-                out[i] = resampled[i % srcTargetLength];
-            }
-            
-            logDebug("Data padded: " + srcTargetLength + " -> " + targetLength + " samples");
+    private float[] padWindow(float[] src, int targetLength) {
+        float[] out = WindowPreprocessor.padWindow(src, targetLength);
+        if (out != null && src.length < targetLength) {
+            logDebug("Data padded: " + src.length + " -> " + targetLength + " samples");
         }
-        
         return out;
     }
 
-    private void normalizeInPlace(float[] data, int lengthPerChannel) {
-        int channels = 2;
-        // Data is interleaved: [t0_c0, t0_c1, t1_c0, t1_c1, ...]
-        // Normalize each channel separately
-        for (int c = 0; c < channels; c++) {
-            // Calculate mean for channel c
-            double mean = 0;
-            for (int t = 0; t < lengthPerChannel; t++) {
-                mean += data[t * channels + c];
-            }
-            mean /= lengthPerChannel;
-            
-            // Calculate variance for channel c
-            double var = 0;
-            for (int t = 0; t < lengthPerChannel; t++) {
-                double v = data[t * channels + c] - mean;
-                var += v * v;
-            }
-            double std = Math.sqrt(var / Math.max(1, lengthPerChannel - 1));
-            if (std < 1e-6) std = 1.0;
-            
-            // Normalize channel c
-            for (int t = 0; t < lengthPerChannel; t++) {
-                int idx = t * channels + c;
-                data[idx] = (float) ((data[idx] - mean) / std);
-            }
-        }
-    }
-
     /**
      * 平滑滤波：计算历史值的移动平均
      */
@@ -1311,6 +2059,9 @@ public class ModelInferenceManager {
     }
     
     private void logDebug(String message) {
+        if (!isLogEnabled(Log.DEBUG)) {
+            return;
+        }
         // 输出到Logcat
         Log.d(TAG, message);
         
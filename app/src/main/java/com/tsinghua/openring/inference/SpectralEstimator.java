@@ -0,0 +1,151 @@
+package com.tsinghua.openring.inference;
+
+import java.util.Arrays;
+
+/**
+ * Dominant-frequency estimation restricted to a frequency band.
+ *
+ * The signal is (virtually) zero-padded to the next power of two and only the bins inside
+ * [minHz, maxHz] are evaluated, using the Goertzel recurrence when the band is narrow and a
+ * full FFT when evaluating every bin would be cheaper. The peak bin is refined with parabolic
+ * interpolation over its neighbours. Every call reports how long it took so the CPU cost of
+ * classic HR estimation can be tracked on-device.
+ */
+public final class SpectralEstimator {
+
+    // Rough flop counts: Goertzel ~3 per sample per bin, radix-2 FFT ~5*N*log2(N) for all bins
+    private static final int GOERTZEL_FLOPS_PER_SAMPLE = 3;
+    private static final int FFT_FLOPS_FACTOR = 5;
+
+    /**
+     * Result of a band-limited peak search
+     */
+    public static final class Peak {
+        public final double frequencyHz;   // interpolated peak frequency, NaN if none
+        public final double power;         // |X(k)|^2 at the peak bin
+        public final int binsEvaluated;
+        public final boolean usedFft;
+        public final long elapsedNanos;
+
+        Peak(double frequencyHz, double power, int binsEvaluated, boolean usedFft, long elapsedNanos) {
+            this.frequencyHz = frequencyHz;
+            this.power = power;
+            this.binsEvaluated = binsEvaluated;
+            this.usedFft = usedFft;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public boolean isValid() {
+            return !Double.isNaN(frequencyHz);
+        }
+
+        public double elapsedMillis() {
+            return elapsedNanos / 1_000_000.0;
+        }
+    }
+
+    private SpectralEstimator() {
+    }
+
+    /**
+     * Find the strongest frequency in [minHz, maxHz].
+     *
+     * @param signal     Input signal (DC is removed internally)
+     * @param sampleRate Sampling rate in Hz
+     * @param minHz      Lower band edge (Hz)
+     * @param maxHz      Upper band edge (Hz)
+     * @return Peak; {@link Peak#frequencyHz} is NaN if the band contains no bin
+     */
+    public static Peak findPeak(float[] signal, int sampleRate, double minHz, double maxHz) {
+        long start = System.nanoTime();
+        if (signal == null || signal.length < 4 || sampleRate <= 0 || maxHz < minHz) {
+            return new Peak(Double.NaN, 0, 0, false, System.nanoTime() - start);
+        }
+
+        int n = signal.length;
+        double mean = 0.0;
+        for (float v : signal) {
+            mean += v;
+        }
+        mean /= n;
+
+        int fftSize = FftEngine.nextPowerOfTwo(n);
+        int nyquistBin = fftSize / 2;
+        int kMin = Math.max(0, (int) Math.ceil(minHz * fftSize / sampleRate));
+        int kMax = Math.min(nyquistBin, (int) Math.floor(maxHz * fftSize / sampleRate));
+        if (kMin > kMax) {
+            return new Peak(Double.NaN, 0, 0, false, System.nanoTime() - start);
+        }
+
+        // Evaluate one extra bin on each side so the peak can be interpolated at the band edges
+        int lo = Math.max(0, kMin - 1);
+        int hi = Math.min(nyquistBin, kMax + 1);
+        int bins = hi - lo + 1;
+        double[] power = new double[bins];
+
+        int log2 = Integer.numberOfTrailingZeros(fftSize);
+        boolean useFft = (long) GOERTZEL_FLOPS_PER_SAMPLE * bins * n > (long) FFT_FLOPS_FACTOR * fftSize * log2;
+        if (useFft) {
+            fftPower(signal, mean, fftSize, lo, power);
+        } else {
+            for (int k = lo; k <= hi; k++) {
+                power[k - lo] = goertzelPower(signal, mean, 2.0 * Math.PI * k / fftSize);
+            }
+        }
+
+        int peak = -1;
+        double peakPower = Double.NEGATIVE_INFINITY;
+        for (int k = kMin; k <= kMax; k++) {
+            double p = power[k - lo];
+            if (p > peakPower) {
+                peakPower = p;
+                peak = k;
+            }
+        }
+
+        double offset = 0.0;
+        if (peak - 1 >= lo && peak + 1 <= hi) {
+            double a = Math.sqrt(power[peak - 1 - lo]);
+            double b = Math.sqrt(peakPower);
+            double c = Math.sqrt(power[peak + 1 - lo]);
+            double denom = a - 2 * b + c;
+            if (denom != 0) {
+                offset = Math.max(-0.5, Math.min(0.5, 0.5 * (a - c) / denom));
+            }
+        }
+        double frequency = (peak + offset) * sampleRate / fftSize;
+        return new Peak(frequency, peakPower, bins, useFft, System.nanoTime() - start);
+    }
+
+    /**
+     * |X(w)|^2 of the mean-removed signal via the Goertzel recurrence
+     */
+    private static double goertzelPower(float[] signal, double mean, double omega) {
+        double coeff = 2.0 * Math.cos(omega);
+        double s1 = 0.0;
+        double s2 = 0.0;
+        for (float v : signal) {
+            double s0 = (v - mean) + coeff * s1 - s2;
+            s2 = s1;
+            s1 = s0;
+        }
+        return s1 * s1 + s2 * s2 - coeff * s1 * s2;
+    }
+
+    private static void fftPower(float[] signal, double mean, int fftSize, int lo, double[] power) {
+        double[][] scratch = FftEngine.scratch(fftSize);
+        double[] re = scratch[0];
+        double[] im = scratch[1];
+        int n = signal.length;
+        for (int i = 0; i < n; i++) {
+            re[i] = signal[i] - mean;
+        }
+        Arrays.fill(re, n, fftSize, 0.0);
+        Arrays.fill(im, 0, fftSize, 0.0);
+        FftEngine.forward(re, im, fftSize);
+        for (int i = 0; i < power.length; i++) {
+            int k = lo + i;
+            power[i] = re[k] * re[k] + im[k] * im[k];
+        }
+    }
+}
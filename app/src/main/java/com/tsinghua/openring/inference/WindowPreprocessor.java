@@ -0,0 +1,85 @@
+package com.tsinghua.openring.inference;
+
+import java.util.Arrays;
+
+/**
+ * Model input preparation for a window that was already resampled and band-pass filtered on ingest:
+ * padding to the model length, channel interleaving and per-channel z-score normalisation.
+ * Pure Java with no Android dependencies, so it is shared with the benchmark module.
+ */
+public final class WindowPreprocessor {
+
+    private WindowPreprocessor() {
+    }
+
+    /**
+     * Fit a window to {@code targetLength} samples: keep the newest samples if it is longer,
+     * repeat it cyclically if it is shorter.
+     *
+     * @return {@code src} itself if it already has the target length, or null if either length is below 2
+     */
+    public static float[] padWindow(float[] src, int targetLength) {
+        int srcSize = src.length;
+        if (srcSize < 2 || targetLength < 2) {
+            return null;
+        }
+        if (srcSize >= targetLength) {
+            return srcSize == targetLength ? src : Arrays.copyOfRange(src, srcSize - targetLength, srcSize);
+        }
+        float[] out = new float[targetLength];
+        for (int i = 0; i < targetLength; i++) {
+            out[i] = src[i % srcSize];
+        }
+        return out;
+    }
+
+    /**
+     * Interleave two channels to the (length, channels) layout the models were trained on:
+     * [t0_c0, t0_c1, t1_c0, t1_c1, ...]
+     */
+    public static float[] interleave(float[] channel0, float[] channel1, int length) {
+        float[] out = new float[length * 2];
+        for (int i = 0; i < length; i++) {
+            out[i * 2] = channel0[i];
+            out[i * 2 + 1] = channel1[i];
+        }
+        return out;
+    }
+
+    /**
+     * Normalise each channel of interleaved data to zero mean and unit (sample) variance.
+     * A flat channel (std below 1e-6) is only centred.
+     */
+    public static void normalizeInterleaved(float[] data, int lengthPerChannel, int channels) {
+        for (int c = 0; c < channels; c++) {
+            normalize(data, c, channels, lengthPerChannel);
+        }
+    }
+
+    /**
+     * Normalise the first {@code length} values of a single channel in place
+     */
+    public static void normalize(float[] data, int length) {
+        normalize(data, 0, 1, length);
+    }
+
+    private static void normalize(float[] data, int offset, int stride, int length) {
+        double mean = 0;
+        for (int t = 0, i = offset; t < length; t++, i += stride) {
+            mean += data[i];
+        }
+        mean /= length;
+
+        double var = 0;
+        for (int t = 0, i = offset; t < length; t++, i += stride) {
+            double v = data[i] - mean;
+            var += v * v;
+        }
+        double std = Math.sqrt(var / Math.max(1, length - 1));
+        if (std < 1e-6) std = 1.0;
+
+        for (int t = 0, i = offset; t < length; t++, i += stride) {
+            data[i] = (float) ((data[i] - mean) / std);
+        }
+    }
+}
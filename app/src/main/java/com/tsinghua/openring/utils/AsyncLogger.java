@@ -0,0 +1,301 @@
+package com.tsinghua.openring.utils;
+
+import android.util.Log;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Asynchronous log writer with group commit.
+ *
+ * Producers (BLE callback, inference, UI threads) only enqueue an entry on a lock-free queue with
+ * the raw {@code System.currentTimeMillis()} timestamp; they never format a timestamp or touch the
+ * file. A single background thread drains the queue in batches into a {@link Sink} and flushes the
+ * sink once {@code maxBatch} entries are pending or {@code flushIntervalMs} has passed since the
+ * previous flush, whichever comes first. When more than {@code capacity} entries are queued new
+ * entries are dropped (and counted) rather than blocking the producer.
+ *
+ * Levels use the {@link Log} constants; call {@link #isEnabled} before building an
+ * expensive message.
+ */
+public final class AsyncLogger implements Closeable {
+
+    public static final int DEFAULT_MAX_BATCH = 256;
+    public static final long DEFAULT_FLUSH_INTERVAL_MS = 500;
+    public static final int DEFAULT_CAPACITY = 16384;
+
+    /**
+     * Destination of drained entries; only ever called from the writer thread
+     */
+    public interface Sink {
+        void writeLog(long timeMillis, int level, String message) throws IOException;
+
+        default void writePacket(long timeMillis, byte[] packet) throws IOException {
+        }
+
+        void flush() throws IOException;
+
+        void close() throws IOException;
+    }
+
+    private static final class Entry {
+        final long timeMillis;
+        final int level;
+        final String message;   // null for packets
+        final byte[] packet;
+
+        Entry(long timeMillis, int level, String message, byte[] packet) {
+            this.timeMillis = timeMillis;
+            this.level = level;
+            this.message = message;
+            this.packet = packet;
+        }
+    }
+
+    private final String name;
+    private final Sink sink;
+    private final int maxBatch;
+    private final long flushIntervalNanos;
+    private final int capacity;
+
+    private final ConcurrentLinkedQueue<Entry> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong flushes = new AtomicLong();
+    private final Thread writer;
+
+    private volatile int minLevel;
+    private volatile boolean running = true;
+    private volatile boolean flushRequested = false;
+
+    public AsyncLogger(String name, Sink sink, int minLevel) {
+        this(name, sink, minLevel, DEFAULT_MAX_BATCH, DEFAULT_FLUSH_INTERVAL_MS, DEFAULT_CAPACITY);
+    }
+
+    public AsyncLogger(String name, Sink sink, int minLevel, int maxBatch, long flushIntervalMs, int capacity) {
+        if (maxBatch <= 0 || flushIntervalMs <= 0 || capacity <= 0) {
+            throw new IllegalArgumentException("maxBatch, flushIntervalMs and capacity must be positive");
+        }
+        this.name = name;
+        this.sink = sink;
+        this.minLevel = minLevel;
+        this.maxBatch = maxBatch;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+        this.capacity = capacity;
+        this.writer = new Thread(this::drainLoop, name + "-writer");
+        writer.setDaemon(true);
+        writer.setPriority(Thread.MIN_PRIORITY);
+        writer.start();
+    }
+
+    public boolean isEnabled(int level) {
+        return running && level >= minLevel;
+    }
+
+    public void setMinLevel(int level) {
+        minLevel = level;
+    }
+
+    /**
+     * Queue a message; returns immediately
+     */
+    public void log(int level, String message) {
+        if (level >= minLevel) {
+            enqueue(new Entry(System.currentTimeMillis(), level, message, null));
+        }
+    }
+
+    /**
+     * Queue a raw packet. The array is kept as-is until written, so pass a copy if the caller reuses it.
+     */
+    public void packet(byte[] packet) {
+        enqueue(new Entry(System.currentTimeMillis(), 0, null, packet));
+    }
+
+    private void enqueue(Entry entry) {
+        if (!running) {
+            return;
+        }
+        int size = pending.incrementAndGet();
+        if (size > capacity) {
+            pending.decrementAndGet();
+            dropped.incrementAndGet();
+            return;
+        }
+        queue.offer(entry);
+        // The writer wakes up on its own every flush interval; only a full batch needs a nudge
+        if (size == maxBatch) {
+            LockSupport.unpark(writer);
+        }
+    }
+
+    /**
+     * Ask the writer to flush everything queued so far without waiting for the thresholds
+     */
+    public void flush() {
+        flushRequested = true;
+        LockSupport.unpark(writer);
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    public long getFlushCount() {
+        return flushes.get();
+    }
+
+    public int getPendingCount() {
+        return pending.get();
+    }
+
+    private void drainLoop() {
+        int unflushed = 0;
+        long lastFlush = System.nanoTime();
+        while (true) {
+            // Never let one flush cover more than maxBatch entries
+            int limit = maxBatch - unflushed;
+            int drained = 0;
+            Entry entry;
+            while (drained < limit && (entry = queue.poll()) != null) {
+                pending.decrementAndGet();
+                write(entry);
+                drained++;
+            }
+            unflushed += drained;
+
+            long now = System.nanoTime();
+            boolean stopping = !running && queue.isEmpty();
+            if (unflushed > 0 && (unflushed >= maxBatch || now - lastFlush >= flushIntervalNanos
+                    || flushRequested || stopping)) {
+                flushSink();
+                unflushed = 0;
+                lastFlush = now;
+            }
+            if (flushRequested && queue.isEmpty()) {
+                flushRequested = false;
+            }
+            if (stopping) {
+                break;
+            }
+            if (drained < limit && queue.isEmpty() && running && !flushRequested) {
+                long wait = unflushed > 0 ? flushIntervalNanos - (now - lastFlush) : flushIntervalNanos;
+                LockSupport.parkNanos(this, Math.max(1, wait));
+            }
+        }
+        try {
+            sink.close();
+        } catch (IOException e) {
+            Log.e(name, "Failed to close log sink", e);
+        }
+    }
+
+    private void write(Entry entry) {
+        try {
+            if (entry.message != null) {
+                sink.writeLog(entry.timeMillis, entry.level, entry.message);
+            } else {
+                sink.writePacket(entry.timeMillis, entry.packet);
+            }
+        } catch (IOException e) {
+            Log.e(name, "Failed to write log entry: " + e.getMessage());
+        }
+    }
+
+    private void flushSink() {
+        try {
+            sink.flush();
+            flushes.incrementAndGet();
+        } catch (IOException e) {
+            Log.e(name, "Failed to flush log: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Stop accepting entries, write out what is queued and close the sink
+     */
+    @Override
+    public void close() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Plain text file sink: "[yyyy-MM-dd HH:mm:ss.SSS] message" per line, formatted on the writer thread
+     */
+    public static Sink textFileSink(File file, boolean append) throws IOException {
+        BufferedWriter out = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(file, append), StandardCharsets.UTF_8), 64 * 1024);
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS", Locale.getDefault());
+        Date date = new Date();
+        return new Sink() {
+            @Override
+            public void writeLog(long timeMillis, int level, String message) throws IOException {
+                date.setTime(timeMillis);
+                out.write('[');
+                out.write(format.format(date));
+                out.write("] ");
+                out.write(message);
+                out.write('\n');
+            }
+
+            @Override
+            public void flush() throws IOException {
+                out.flush();
+            }
+
+            @Override
+            public void close() throws IOException {
+                out.close();
+            }
+        };
+    }
+
+    /**
+     * Binary recording sink: log messages become log frames and packets become packet frames
+     */
+    public static Sink recordingSink(RingRecordingWriter recording) {
+        return new Sink() {
+            @Override
+            public void writeLog(long timeMillis, int level, String message) throws IOException {
+                recording.writeLog(timeMillis, message);
+            }
+
+            @Override
+            public void writePacket(long timeMillis, byte[] packet) throws IOException {
+                recording.writePacket(timeMillis, packet);
+            }
+
+            @Override
+            public void flush() throws IOException {
+                recording.flush();
+            }
+
+            @Override
+            public void close() throws IOException {
+                recording.close();
+            }
+        };
+    }
+}
@@ -0,0 +1,223 @@
+package com.tsinghua.openring.utils;
+
+/**
+ * Cascade of second-order IIR sections (transposed direct form II) with streaming state.
+ * {@link #process(float)} costs O(sections) per sample regardless of the filter's time constants,
+ * and {@link #filtfilt(float[])} gives a zero-phase result for offline windows.
+ *
+ * Coefficients for Butterworth band-pass filters are designed at runtime for any sample rate
+ * via the bilinear transform with pre-warped band edges.
+ */
+public class BiquadFilter {
+    // Per-section coefficients, a0 normalised to 1
+    private final double[] b0, b1, b2, a1, a2;
+    // Per-section state
+    private final double[] z1, z2;
+    private boolean primed = false;
+
+    private BiquadFilter(double[] b0, double[] b1, double[] b2, double[] a1, double[] a2) {
+        this.b0 = b0;
+        this.b1 = b1;
+        this.b2 = b2;
+        this.a1 = a1;
+        this.a2 = a2;
+        this.z1 = new double[b0.length];
+        this.z2 = new double[b0.length];
+    }
+
+    /**
+     * Design a Butterworth band-pass filter.
+     *
+     * @param order  Prototype order (the band-pass has 2*order poles, i.e. {@code order} biquads)
+     * @param lowHz  Lower -3 dB edge (Hz)
+     * @param highHz Upper -3 dB edge (Hz)
+     * @param fs     Sample rate (Hz)
+     */
+    public static BiquadFilter butterworthBandpass(int order, double lowHz, double highHz, double fs) {
+        if (order < 1) {
+            throw new IllegalArgumentException("Order must be >= 1: " + order);
+        }
+        if (!(lowHz > 0 && lowHz < highHz && highHz < fs / 2)) {
+            throw new IllegalArgumentException("Invalid band [" + lowHz + ", " + highHz + "] Hz for fs=" + fs);
+        }
+
+        // Pre-warped analog band edges
+        double k = 2.0 * fs;
+        double w1 = k * Math.tan(Math.PI * lowHz / fs);
+        double w2 = k * Math.tan(Math.PI * highHz / fs);
+        double bw = w2 - w1;
+        double w0sq = w1 * w2;
+
+        // Low-pass prototype poles -> band-pass poles -> digital poles (bilinear transform)
+        int poleCount = 2 * order;
+        double[] zr = new double[poleCount];
+        double[] zi = new double[poleCount];
+        for (int i = 0; i < order; i++) {
+            double theta = Math.PI * (2 * i + order + 1) / (2.0 * order);
+            // h = p * bw / 2
+            double hr = Math.cos(theta) * bw / 2;
+            double hi = Math.sin(theta) * bw / 2;
+            // d = sqrt(h^2 - w0^2)
+            double dr = hr * hr - hi * hi - w0sq;
+            double di = 2 * hr * hi;
+            double mod = Math.sqrt(Math.hypot(dr, di));
+            double arg = Math.atan2(di, dr) / 2;
+            double sqr = mod * Math.cos(arg);
+            double sqi = mod * Math.sin(arg);
+            bilinear(hr + sqr, hi + sqi, k, zr, zi, 2 * i);
+            bilinear(hr - sqr, hi - sqi, k, zr, zi, 2 * i + 1);
+        }
+
+        // Pair conjugate poles (and the two real poles odd orders may produce) into sections
+        double[] b0 = new double[order];
+        double[] b1 = new double[order];
+        double[] b2 = new double[order];
+        double[] a1 = new double[order];
+        double[] a2 = new double[order];
+        boolean[] used = new boolean[poleCount];
+        int section = 0;
+        int pendingReal = -1;
+        for (int i = 0; i < poleCount; i++) {
+            if (used[i]) continue;
+            used[i] = true;
+            if (Math.abs(zi[i]) > 1e-12) {
+                // Complex pole: consume its conjugate
+                for (int j = i + 1; j < poleCount; j++) {
+                    if (!used[j] && Math.abs(zr[j] - zr[i]) < 1e-9 && Math.abs(zi[j] + zi[i]) < 1e-9) {
+                        used[j] = true;
+                        break;
+                    }
+                }
+                a1[section] = -2 * zr[i];
+                a2[section] = zr[i] * zr[i] + zi[i] * zi[i];
+                section++;
+            } else if (pendingReal < 0) {
+                pendingReal = i;
+            } else {
+                a1[section] = -(zr[i] + zr[pendingReal]);
+                a2[section] = zr[i] * zr[pendingReal];
+                pendingReal = -1;
+                section++;
+            }
+        }
+
+        // Each section gets one zero at z=1 and one at z=-1, normalised to unit gain at the centre frequency
+        double centre = 2 * Math.atan(Math.sqrt(w0sq) / k);
+        double cr = Math.cos(centre), ci = Math.sin(centre);
+        double c2r = Math.cos(2 * centre), c2i = Math.sin(2 * centre);
+        for (int s = 0; s < order; s++) {
+            // H(z) = (1 - z^-2) / (1 + a1 z^-1 + a2 z^-2) at z = e^{j*centre}
+            double numR = 1 - c2r, numI = c2i;
+            double denR = 1 + a1[s] * cr + a2[s] * c2r;
+            double denI = -(a1[s] * ci + a2[s] * c2i);
+            double gain = Math.hypot(numR, numI) / Math.hypot(denR, denI);
+            b0[s] = 1 / gain;
+            b1[s] = 0;
+            b2[s] = -1 / gain;
+        }
+        return new BiquadFilter(b0, b1, b2, a1, a2);
+    }
+
+    private static void bilinear(double sr, double si, double k, double[] zr, double[] zi, int idx) {
+        // z = (k + s) / (k - s)
+        double nr = k + sr, ni = si;
+        double dr = k - sr, di = -si;
+        double den = dr * dr + di * di;
+        zr[idx] = (nr * dr + ni * di) / den;
+        zi[idx] = (ni * dr - nr * di) / den;
+    }
+
+    /**
+     * New filter with the same coefficients and cleared state
+     */
+    public BiquadFilter copy() {
+        return new BiquadFilter(b0, b1, b2, a1, a2);
+    }
+
+    public int getSectionCount() {
+        return b0.length;
+    }
+
+    /**
+     * Filter one sample. The first sample after construction or {@link #reset()} primes the state
+     * to the steady state for a constant input, so a large DC offset does not ring through.
+     */
+    public float process(float x) {
+        if (!primed) {
+            prime(x);
+        }
+        return (float) step(x);
+    }
+
+    private double step(double x) {
+        double v = x;
+        for (int s = 0; s < b0.length; s++) {
+            double y = b0[s] * v + z1[s];
+            z1[s] = b1[s] * v - a1[s] * y + z2[s];
+            z2[s] = b2[s] * v - a2[s] * y;
+            v = y;
+        }
+        return v;
+    }
+
+    /**
+     * Set the state to the steady state reached after a long run of constant input {@code x0}
+     */
+    public void prime(double x0) {
+        double v = x0;
+        for (int s = 0; s < b0.length; s++) {
+            double dcGain = (b0[s] + b1[s] + b2[s]) / (1 + a1[s] + a2[s]);
+            double y = v * dcGain;
+            z2[s] = b2[s] * v - a2[s] * y;
+            z1[s] = b1[s] * v - a1[s] * y + z2[s];
+            v = y;
+        }
+        primed = true;
+    }
+
+    public void reset() {
+        for (int s = 0; s < b0.length; s++) {
+            z1[s] = 0;
+            z2[s] = 0;
+        }
+        primed = false;
+    }
+
+    /**
+     * Zero-phase forward-backward filtering of a whole window (like scipy's sosfiltfilt):
+     * odd extension at both ends, steady-state initial conditions, then a forward and a reverse pass.
+     * Does not touch the streaming state of this instance.
+     */
+    public float[] filtfilt(float[] signal) {
+        int n = signal.length;
+        if (n < 2) {
+            return signal.clone();
+        }
+        int padLen = Math.min(3 * (2 * b0.length + 1), n - 1);
+        int extLen = n + 2 * padLen;
+        double[] ext = new double[extLen];
+        for (int i = 0; i < padLen; i++) {
+            ext[i] = 2.0 * signal[0] - signal[padLen - i];
+            ext[padLen + n + i] = 2.0 * signal[n - 1] - signal[n - 2 - i];
+        }
+        for (int i = 0; i < n; i++) {
+            ext[padLen + i] = signal[i];
+        }
+
+        BiquadFilter pass = copy();
+        pass.prime(ext[0]);
+        for (int i = 0; i < extLen; i++) {
+            ext[i] = pass.step(ext[i]);
+        }
+        pass.prime(ext[extLen - 1]);
+        for (int i = extLen - 1; i >= 0; i--) {
+            ext[i] = pass.step(ext[i]);
+        }
+
+        float[] out = new float[n];
+        for (int i = 0; i < n; i++) {
+            out[i] = (float) ext[padLen + i];
+        }
+        return out;
+    }
+}
@@ -19,6 +19,9 @@ public class CloudConfig {
     public static final String KEY_ENABLED = "cloud_sync_enabled";
     public static final String KEY_LAST_SYNC = "last_sync_time";
     public static final String KEY_DEVICE_ID = "device_id";
+    public static final String KEY_UPLOAD_PARALLELISM = "upload_parallelism";
+    public static final String KEY_UPLOAD_COMPRESSION = "upload_compression";
+    public static final String KEY_BACKGROUND_SYNC_IDLE_ONLY = "background_sync_idle_only";
 
     // 用户认证相关配置（新增）
     public static final String KEY_AUTH_TOKEN = "auth_token";
@@ -30,6 +33,10 @@ public class CloudConfig {
     // 默认配置
     public static final String DEFAULT_SERVER_URL = "https://your-domain.com/api";
     public static final boolean DEFAULT_ENABLED = false;
+    public static final int DEFAULT_UPLOAD_PARALLELISM = UploadScheduler.DEFAULT_PARALLEL_SLOTS;
+    // 默认关闭：现有服务器只支持 files/upload，不识别 gzip 请求体
+    public static final boolean DEFAULT_UPLOAD_COMPRESSION = false;
+    public static final boolean DEFAULT_BACKGROUND_SYNC_IDLE_ONLY = true;
 
     private Context context;
     private SharedPreferences prefs;
@@ -119,6 +126,49 @@ public class CloudConfig {
         prefs.edit().putString(KEY_DEVICE_ID, deviceId).apply();
     }
 
+    /**
+     * 获取同时上传的文件数（上传调度器的并行槽位，下次启动应用时生效）
+     */
+    public int getUploadParallelism() {
+        return Math.max(1, prefs.getInt(KEY_UPLOAD_PARALLELISM, DEFAULT_UPLOAD_PARALLELISM));
+    }
+
+    /**
+     * 设置同时上传的文件数
+     */
+    public void setUploadParallelism(int parallelism) {
+        prefs.edit().putInt(KEY_UPLOAD_PARALLELISM, Math.max(1, parallelism)).apply();
+    }
+
+    /**
+     * 上传时是否请求 gzip 压缩（二进制 .bin 记录的压缩收益有限，主要来自时间戳、帧头和样本高位字节）。
+     * 仅用于分块会话（服务器确认后）和批量上传接口；files/upload 单次上传始终发送原始内容。
+     */
+    public boolean isUploadCompressionEnabled() {
+        return prefs.getBoolean(KEY_UPLOAD_COMPRESSION, DEFAULT_UPLOAD_COMPRESSION);
+    }
+
+    /**
+     * 设置上传压缩开关（服务器的会话/批量接口支持 gzip 请求体时开启）
+     */
+    public void setUploadCompressionEnabled(boolean enabled) {
+        prefs.edit().putBoolean(KEY_UPLOAD_COMPRESSION, enabled).apply();
+    }
+
+    /**
+     * 后台同步是否只在设备空闲时运行（另外始终要求充电且使用不计流量的网络）
+     */
+    public boolean isBackgroundSyncIdleOnly() {
+        return prefs.getBoolean(KEY_BACKGROUND_SYNC_IDLE_ONLY, DEFAULT_BACKGROUND_SYNC_IDLE_ONLY);
+    }
+
+    /**
+     * 设置后台同步是否只在设备空闲时运行（下次安排后台同步时生效）
+     */
+    public void setBackgroundSyncIdleOnly(boolean idleOnly) {
+        prefs.edit().putBoolean(KEY_BACKGROUND_SYNC_IDLE_ONLY, idleOnly).apply();
+    }
+
     /**
      * 验证配置是否有效
      */
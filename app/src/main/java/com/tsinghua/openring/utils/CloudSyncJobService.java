@@ -0,0 +1,163 @@
+package com.tsinghua.openring.utils;
+
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 后台云端同步任务
+ *
+ * 由 JobScheduler 在不计流量的网络、充电中且（默认）设备空闲时运行，每次最多上传
+ * {@link #MAX_FILES_PER_RUN} 个文件 / {@link #MAX_BYTES_PER_RUN} 字节，避免与实时 BLE 采集争用 CPU 和射频。
+ * 小文件由上传调度器合并为多文件请求。还有剩余文件时安排一次相同约束的后续任务；
+ * 约束不再满足时（拔掉电源、离开 Wi-Fi）取消未完成的上传，进度保留在上传台账中，下次继续。
+ */
+public class CloudSyncJobService extends JobService {
+    private static final String TAG = "CloudSyncJobService";
+
+    private static final int JOB_ID_PERIODIC = 0x5C01;
+    private static final int JOB_ID_FOLLOW_UP = 0x5C02;
+    private static final long PERIOD_MS = TimeUnit.HOURS.toMillis(6);
+    private static final long FOLLOW_UP_DELAY_MS = TimeUnit.MINUTES.toMillis(15);
+
+    static final int MAX_FILES_PER_RUN = 200;
+    static final long MAX_BYTES_PER_RUN = 256L * 1024 * 1024;
+
+    // 周期任务和后续任务可能同时运行，按 job ID 分别记录；onStopJob 移除对应条目后，
+    // 该任务的完成回调不能再安排后续任务或调用 jobFinished
+    private final Map<Integer, Run> runs = new ConcurrentHashMap<>();
+
+    private static final class Run {
+        volatile UploadScheduler.Handle handle;
+        volatile boolean stopped;
+    }
+
+    /**
+     * 安排周期性后台同步；已安排时不重复提交（避免重置周期）
+     */
+    public static void schedule(Context context) {
+        JobScheduler jobScheduler = context.getSystemService(JobScheduler.class);
+        if (jobScheduler == null) {
+            return;
+        }
+        CloudConfig config = new CloudConfig(context);
+        JobInfo pending = jobScheduler.getPendingJob(JOB_ID_PERIODIC);
+        if (pending != null && pending.isRequireDeviceIdle() == config.isBackgroundSyncIdleOnly()) {
+            return;
+        }
+        JobInfo job = constraints(context, JOB_ID_PERIODIC, config)
+                .setPeriodic(PERIOD_MS)
+                .setPersisted(true)
+                .build();
+        int result = jobScheduler.schedule(job);
+        Log.d(TAG, "Background sync scheduled: " + (result == JobScheduler.RESULT_SUCCESS ? "ok" : "failed"));
+    }
+
+    /**
+     * 取消后台同步（关闭云端同步时调用）
+     */
+    public static void cancel(Context context) {
+        JobScheduler jobScheduler = context.getSystemService(JobScheduler.class);
+        if (jobScheduler != null) {
+            jobScheduler.cancel(JOB_ID_PERIODIC);
+            jobScheduler.cancel(JOB_ID_FOLLOW_UP);
+            Log.d(TAG, "Background sync cancelled");
+        }
+    }
+
+    private static void scheduleFollowUp(Context context) {
+        JobScheduler jobScheduler = context.getSystemService(JobScheduler.class);
+        if (jobScheduler == null) {
+            return;
+        }
+        JobInfo job = constraints(context, JOB_ID_FOLLOW_UP, new CloudConfig(context))
+                .setMinimumLatency(FOLLOW_UP_DELAY_MS)
+                .build();
+        jobScheduler.schedule(job);
+    }
+
+    private static JobInfo.Builder constraints(Context context, int jobId, CloudConfig config) {
+        return new JobInfo.Builder(jobId, new ComponentName(context, CloudSyncJobService.class))
+                .setRequiredNetworkType(JobInfo.NETWORK_TYPE_UNMETERED)
+                .setRequiresCharging(true)
+                .setRequiresDeviceIdle(config.isBackgroundSyncIdleOnly())
+                .setRequiresStorageNotLow(true);
+    }
+
+    @Override
+    public boolean onStartJob(JobParameters params) {
+        CloudConfig config = new CloudConfig(this);
+        if (!config.isCloudSyncEnabled() || !config.isConfigValid() || !config.isLoggedIn()) {
+            Log.d(TAG, "Cloud sync not configured, skipping background run");
+            return false;
+        }
+        // 与设置页同步按钮使用相同的用户信息
+        SharedPreferences userInfo = getSharedPreferences("UserInfo", MODE_PRIVATE);
+        String userName = userInfo.getString("user_name", "");
+        String userDescription = userInfo.getString("user_description", "");
+        if (userName.isEmpty()) {
+            Log.d(TAG, "User info not set, skipping background run");
+            return false;
+        }
+
+        int jobId = params.getJobId();
+        Run run = new Run();
+        runs.put(jobId, run);
+        CloudSyncService service = new CloudSyncService(getApplicationContext());
+        UploadScheduler.Handle handle = service.uploadPendingFiles(MAX_FILES_PER_RUN, MAX_BYTES_PER_RUN, userName, userDescription,
+                new CloudSyncService.UploadProgressCallback() {
+                    @Override
+                    public void onProgress(int current, int total, String fileName) {
+                    }
+
+                    @Override
+                    public void onFileCompleted(String fileName, boolean success, String message) {
+                    }
+
+                    @Override
+                    public void onAllCompleted(int uploaded, int failed) {
+                        Log.d(TAG, "Background run finished: " + uploaded + " uploaded, " + failed + " failed");
+                        if (!runs.remove(jobId, run)) {
+                            return;  // 已被 onStopJob 停止
+                        }
+                        if (uploaded > 0 && service.hasPendingFiles()) {
+                            scheduleFollowUp(getApplicationContext());
+                        }
+                        jobFinished(params, false);
+                    }
+                });
+        if (handle == null) {
+            runs.remove(jobId, run);
+            return false;
+        }
+        run.handle = handle;
+        if (run.stopped) {
+            handle.cancel();  // onStopJob 在句柄返回之前到达
+        }
+        return true;
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        Run run = runs.remove(params.getJobId());
+        if (run == null) {
+            return false;
+        }
+        run.stopped = true;
+        UploadScheduler.Handle handle = run.handle;
+        if (handle != null) {
+            Log.d(TAG, "Constraints no longer met, stopping background uploads");
+            handle.cancel();
+        }
+        return false;  // 周期任务会再次运行；未完成的文件由下次运行继续
+    }
+}
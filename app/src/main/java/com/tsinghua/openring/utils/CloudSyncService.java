@@ -5,17 +5,22 @@ import android.content.SharedPreferences;
 import android.os.Environment;
 import android.util.Log;
 
+import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.io.File;
-import java.io.FileInputStream;
+import java.io.FilenameFilter;
 import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 
 import okhttp3.Call;
@@ -26,6 +31,7 @@ import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.RequestBody;
 import okhttp3.Response;
+import okio.BufferedSink;
 
 /**
  * 云端同步服务类
@@ -35,22 +41,47 @@ public class CloudSyncService {
     private static final String TAG = "CloudSyncService";
 
     // 按照实际文件结构定义的常量
-    private static final String ONLINE_DIR = "/Sample/RingLog/";  // 在线数据：MainSession_*.txt
+    private static final String ONLINE_DIR = "/Sample/RingLog/";  // 在线数据：MainSession_*.bin（旧版为 .txt）
     private static final String OFFLINE_DIR = "/Sample/RingLog/BatchDownloads/";  // 离线数据：*.bin
     private static final int HTTP_TIMEOUT = 30000; // 30秒
     private static final int MAX_RETRY_COUNT = 3;
-    private static final long RETRY_DELAY = 5000; // 5秒
-
-    // 上传状态存储
-    private static final String UPLOAD_STATUS_PREF = "UploadStatus";
-    private static final String STATUS_UPLOADED = "uploaded";
-    private static final String STATUS_FAILED = "failed";
-    private static final String STATUS_PENDING = "pending";
+    private static final long RETRY_DELAY = 5000; // 5秒，之后每次重试翻倍
+    private static final long MAX_RETRY_DELAY = 5 * 60 * 1000;
+    private static final int UPLOAD_CHUNK_SIZE = 1024 * 1024;
+    // 小文件合并为一次多文件请求
+    private static final long SMALL_FILE_BYTES = 256 * 1024;
+    private static final int MAX_FILES_PER_REQUEST = 32;
+    private static final long MAX_BYTES_PER_REQUEST = 4 * 1024 * 1024;
+    // 最近仍在写入的文件（正在进行的采集会话）不参与后台同步
+    private static final long RECENT_WRITE_GUARD_MS = 5 * 60 * 1000;
+    // 连续失败次数达到该值的文件不再由后台同步重试
+    static final int MAX_BACKGROUND_FAILURES = 3;
+    private static final MediaType JSON = MediaType.parse("application/json; charset=utf-8");
+    private static final MediaType OCTET_STREAM = MediaType.parse("application/octet-stream");
+
+    // 上传状态、分块续传进度和已上传内容的摘要都记录在上传台账中（filesDir 下的追加写日志）
+    private static final String UPLOAD_LEDGER_FILE = "upload_ledger.log";
+    // 旧版本按文件路径保存在 SharedPreferences 中的状态，首次打开台账时迁移
+    private static final String LEGACY_UPLOAD_STATUS_PREF = "UploadStatus";
+    private static final String LEGACY_UPLOAD_SESSIONS_PREF = "UploadSessions";
+    private static final String STATUS_UPLOADED = UploadLedger.STATUS_UPLOADED;
+    private static final String STATUS_FAILED = UploadLedger.STATUS_FAILED;
+    private static final String STATUS_PENDING = UploadLedger.STATUS_PENDING;
+
+    private static final FilenameFilter OFFLINE_FILES = (dir, name) ->
+            !name.startsWith(".") && name.endsWith(".bin");
+    private static final FilenameFilter ONLINE_FILES = (dir, name) ->
+            !name.startsWith(".") && name.startsWith("MainSession_")
+                    && (name.endsWith(".bin") || name.endsWith(".txt"));
+
+    // 进程内唯一的台账和上传调度器：多个页面各自创建 CloudSyncService，但同一文件只上传一次，且并发数有上限
+    private static UploadLedger uploadLedger;
+    private static UploadScheduler uploadScheduler;
 
     private Context context;
     private CloudConfig cloudConfig;
     private OkHttpClient httpClient;
-    private SharedPreferences uploadStatusPrefs;
+    private UploadLedger ledger;
 
     // 上传进度回调接口
     public interface UploadProgressCallback {
@@ -81,7 +112,7 @@ public class CloudSyncService {
     public CloudSyncService(Context context) {
         this.context = context;
         this.cloudConfig = new CloudConfig(context);
-        this.uploadStatusPrefs = context.getSharedPreferences(UPLOAD_STATUS_PREF, Context.MODE_PRIVATE);
+        this.ledger = getUploadLedger(context.getApplicationContext());
 
         // 初始化HTTP客户端
         this.httpClient = new OkHttpClient.Builder()
@@ -91,6 +122,74 @@ public class CloudSyncService {
                 .build();
     }
 
+    private static synchronized UploadLedger getUploadLedger(Context appContext) {
+        if (uploadLedger == null) {
+            File file = new File(appContext.getFilesDir(), UPLOAD_LEDGER_FILE);
+            try {
+                uploadLedger = new UploadLedger(file);
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to open upload ledger, starting a new one", e);
+                if (!file.delete()) {
+                    Log.w(TAG, "Failed to delete " + file);
+                }
+                try {
+                    uploadLedger = new UploadLedger(file);
+                } catch (IOException retry) {
+                    throw new IllegalStateException("Cannot open upload ledger " + file, retry);
+                }
+            }
+            migrateLegacyStatus(appContext, uploadLedger);
+        }
+        return uploadLedger;
+    }
+
+    /**
+     * 将旧版 SharedPreferences 中的上传状态和续传进度导入台账，然后清空旧数据
+     */
+    private static void migrateLegacyStatus(Context appContext, UploadLedger ledger) {
+        SharedPreferences statusPrefs = appContext.getSharedPreferences(LEGACY_UPLOAD_STATUS_PREF, Context.MODE_PRIVATE);
+        SharedPreferences sessionPrefs = appContext.getSharedPreferences(LEGACY_UPLOAD_SESSIONS_PREF, Context.MODE_PRIVATE);
+        Map<String, ?> statuses = statusPrefs.getAll();
+        Map<String, ?> sessions = sessionPrefs.getAll();
+        if (statuses.isEmpty() && sessions.isEmpty()) {
+            return;
+        }
+        int migrated = 0;
+        for (Map.Entry<String, ?> entry : statuses.entrySet()) {
+            File file = new File(entry.getKey());
+            if (entry.getValue() instanceof String && file.isFile()) {
+                ledger.setStatus(file, (String) entry.getValue());
+                migrated++;
+            }
+        }
+        for (Map.Entry<String, ?> entry : sessions.entrySet()) {
+            if (entry.getValue() instanceof String) {
+                UploadScheduler.UploadState state = UploadScheduler.UploadState.decode(entry.getKey(), (String) entry.getValue());
+                if (state != null) {
+                    ledger.save(state);
+                }
+            }
+        }
+        statusPrefs.edit().clear().apply();
+        sessionPrefs.edit().clear().apply();
+        Log.d(TAG, "Migrated " + migrated + " upload status entries to the upload ledger");
+    }
+
+    private UploadScheduler getUploadScheduler() {
+        synchronized (CloudSyncService.class) {
+            if (uploadScheduler == null) {
+                Context appContext = context.getApplicationContext();
+                uploadScheduler = new UploadScheduler(new HttpTransport(new CloudConfig(appContext), httpClient),
+                        ledger, cloudConfig.getUploadParallelism());
+                uploadScheduler.setChunkSize(UPLOAD_CHUNK_SIZE);
+                uploadScheduler.setRetryPolicy(MAX_RETRY_COUNT, RETRY_DELAY, MAX_RETRY_DELAY);
+                uploadScheduler.setCoalescing(SMALL_FILE_BYTES, MAX_FILES_PER_REQUEST, MAX_BYTES_PER_REQUEST);
+                Log.d(TAG, "Upload scheduler started with " + uploadScheduler.getParallelSlots() + " parallel slots");
+            }
+            return uploadScheduler;
+        }
+    }
+
     /**
      * 扫描本地文件（包含所有类型）
      */
@@ -110,8 +209,7 @@ public class CloudSyncService {
         File offlineDir = new File(Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_DOCUMENTS)
                 + OFFLINE_DIR);
         if (offlineDir.exists()) {
-            File[] dataFiles = offlineDir.listFiles((dir, name) ->
-                !name.startsWith(".") && name.endsWith(".bin"));
+            File[] dataFiles = offlineDir.listFiles(OFFLINE_FILES);
             if (dataFiles != null) {
                 for (File file : dataFiles) {
                     files.add(file);
@@ -123,22 +221,21 @@ public class CloudSyncService {
     }
 
     /**
-     * 扫描在线测量文件 (RingLog目录下的MainSession_*.txt文件)
+     * 扫描在线测量文件 (RingLog目录下的MainSession_*.bin文件，以及旧版的MainSession_*.txt)
      */
     public List<File> scanOnlineFiles() {
         List<File> files = new ArrayList<>();
         File onlineDir = new File(Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_DOCUMENTS)
                 + ONLINE_DIR);
         if (onlineDir.exists()) {
-            File[] dataFiles = onlineDir.listFiles((dir, name) ->
-                !name.startsWith(".") && name.startsWith("MainSession_") && name.endsWith(".txt"));
+            File[] dataFiles = onlineDir.listFiles(ONLINE_FILES);
             if (dataFiles != null) {
                 for (File file : dataFiles) {
                     files.add(file);
                 }
             }
         }
-        Log.d(TAG, "Scanned " + files.size() + " online measurement files (MainSession_*.txt)");
+        Log.d(TAG, "Scanned " + files.size() + " online measurement files (MainSession_*)");
         return files;
     }
 
@@ -146,49 +243,31 @@ public class CloudSyncService {
      * 检查文件是否已上传
      */
     public boolean isFileUploaded(File file) {
-        String status = uploadStatusPrefs.getString(file.getAbsolutePath(), STATUS_PENDING);
-        return STATUS_UPLOADED.equals(status);
+        return STATUS_UPLOADED.equals(ledger.getStatus(file));
     }
 
     /**
-     * 获取文件上传状态
+     * 获取文件上传状态（文件大小或修改时间变化后视为待上传）
      */
     public String getFileUploadStatus(File file) {
-        return uploadStatusPrefs.getString(file.getAbsolutePath(), STATUS_PENDING);
+        return ledger.getStatus(file);
     }
 
     /**
      * 设置文件上传状态
      */
-    private void setFileUploadStatus(String filePath, String status) {
-        uploadStatusPrefs.edit().putString(filePath, status).apply();
+    private void setFileUploadStatus(File file, String status) {
+        ledger.setStatus(file, status);
     }
 
     /**
      * 获取文件统计信息
      */
     public FileStatistics getFileStatistics() {
-        List<File> allFiles = scanLocalFiles();
-        int uploaded = 0;
-        int pending = 0;
-        int failed = 0;
-
-        for (File file : allFiles) {
-            String status = getFileUploadStatus(file);
-            switch (status) {
-                case STATUS_UPLOADED:
-                    uploaded++;
-                    break;
-                case STATUS_FAILED:
-                    failed++;
-                    break;
-                default:
-                    pending++;
-                    break;
-            }
-        }
-
-        return new FileStatistics(allFiles.size(), uploaded, pending, failed);
+        FileStatistics offline = getOfflineFileStatistics();
+        FileStatistics online = getOnlineFileStatistics();
+        return new FileStatistics(offline.total + online.total, offline.uploaded + online.uploaded,
+                offline.pending + online.pending, offline.failed + online.failed);
     }
 
     /**
@@ -209,7 +288,7 @@ public class CloudSyncService {
     }
 
     /**
-     * 上传单个文件
+     * 上传单个文件（经由上传调度器：分块、可续传、失败自动重试）
      */
     public void uploadFile(File file, String deviceId, String userName, String userDescription, UploadProgressCallback callback) {
         if (!cloudConfig.isConfigValid()) {
@@ -218,84 +297,9 @@ public class CloudSyncService {
             }
             return;
         }
-
-        try {
-            // 按照技术设计文档构建上传请求
-            String apiUrl = cloudConfig.getApiBaseUrl() + "files/upload";
-
-            // 构建multipart请求体
-            MultipartBody.Builder builder = new MultipartBody.Builder()
-                    .setType(MultipartBody.FORM)
-                    .addFormDataPart("deviceId", deviceId)
-                    .addFormDataPart("userName", userName != null ? userName : "")
-                    .addFormDataPart("userDescription", userDescription != null ? userDescription : "");
-
-            // 添加文件
-            RequestBody fileBody = RequestBody.create(MediaType.parse("application/octet-stream"), file);
-            builder.addFormDataPart("file", file.getName(), fileBody);
-
-            // 添加元数据
-            JSONObject metadata = new JSONObject();
-            metadata.put("originalPath", file.getAbsolutePath());
-            metadata.put("uploadTime", new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'", Locale.US).format(new Date()));
-            builder.addFormDataPart("metadata", metadata.toString());
-
-            RequestBody requestBody = builder.build();
-
-            // 构建请求
-            Request.Builder requestBuilder = new Request.Builder()
-                    .url(apiUrl)
-                    .post(requestBody);
-
-            // 添加认证头（优先使用JWT Token，向下兼容API Key）
-            addAuthHeaders(requestBuilder);
-
-            Request request = requestBuilder.build();
-
-            Log.d(TAG, "Uploading file: " + file.getName() + " to " + apiUrl);
-
-            // 发送请求
-            httpClient.newCall(request).enqueue(new Callback() {
-                @Override
-                public void onFailure(Call call, IOException e) {
-                    Log.e(TAG, "Upload failed for " + file.getName() + ": " + e.getMessage());
-                    setFileUploadStatus(file.getAbsolutePath(), STATUS_FAILED);
-                    if (callback != null) {
-                        callback.onFileCompleted(file.getName(), false, "网络错误: " + e.getMessage());
-                    }
-                }
-
-                @Override
-                public void onResponse(Call call, Response response) throws IOException {
-                    try {
-                        if (response.isSuccessful()) {
-                            String responseBody = response.body().string();
-                            Log.d(TAG, "Upload successful for " + file.getName() + ": " + responseBody);
-                            setFileUploadStatus(file.getAbsolutePath(), STATUS_UPLOADED);
-                            if (callback != null) {
-                                callback.onFileCompleted(file.getName(), true, "Upload successful");
-                            }
-                        } else {
-                            String errorBody = response.body() != null ? response.body().string() : "Unknown error";
-                            Log.e(TAG, "Upload failed for " + file.getName() + " - HTTP " + response.code() + ": " + errorBody);
-                            setFileUploadStatus(file.getAbsolutePath(), STATUS_FAILED);
-                            if (callback != null) {
-                                callback.onFileCompleted(file.getName(), false, "服务器错误: HTTP " + response.code());
-                            }
-                        }
-                    } finally {
-                        response.close();
-                    }
-                }
-            });
-
-        } catch (JSONException e) {
-            Log.e(TAG, "Failed to create metadata for " + file.getName(), e);
-            setFileUploadStatus(file.getAbsolutePath(), STATUS_FAILED);
-            if (callback != null) {
-                callback.onFileCompleted(file.getName(), false, "Failed to create metadata");
-            }
-        }
+        List<File> files = new ArrayList<>();
+        files.add(file);
+        submitUploads(files, "single", deviceId, userName, userDescription, callback);
     }
 
     /**
@@ -343,59 +347,111 @@ public class CloudSyncService {
 
         String deviceId = cloudConfig.getDeviceId();
         Log.d(TAG, "Starting " + category + " upload of " + filesToUpload.size() + " files with deviceId: " + deviceId);
+        submitUploads(filesToUpload, category, deviceId, userName, userDescription, callback);
+    }
 
-        // 统计变量
-        final int[] completed = {0};
-        final int[] succeeded = {0};
-        final int[] failed = {0};
-        final int totalFiles = filesToUpload.size();
-
-        // 逐个上传文件
-        for (int i = 0; i < filesToUpload.size(); i++) {
-            final File file = filesToUpload.get(i);
-            final int currentIndex = i;
-
-            uploadFile(file, deviceId, userName, userDescription, new UploadProgressCallback() {
-                @Override
-                public void onProgress(int current, int total, String fileName) {
-                    if (callback != null) {
-                        callback.onProgress(currentIndex + 1, totalFiles, fileName);
-                    }
+    /**
+     * 提交给上传调度器：并行槽位有上限，每个文件分块上传并在失败时指数退避重试
+     */
+    private UploadScheduler.Handle submitUploads(List<File> files, String category, String deviceId, String userName,
+                                                 String userDescription, UploadProgressCallback callback) {
+        Map<String, String> fields = new HashMap<>();
+        fields.put("deviceId", deviceId != null ? deviceId : "");
+        fields.put("userName", userName != null ? userName : "");
+        fields.put("userDescription", userDescription != null ? userDescription : "");
+
+        return getUploadScheduler().submit(files, fields, new UploadScheduler.Listener() {
+            @Override
+            public void onFileStarted(File file, int index, int total) {
+                if (callback != null) {
+                    callback.onProgress(index, total, file.getName());
                 }
+            }
 
-                @Override
-                public void onFileCompleted(String fileName, boolean success, String message) {
-                    completed[0]++;
-                    if (success) {
-                        succeeded[0]++;
-                    } else {
-                        failed[0]++;
-                    }
+            @Override
+            public void onFileCompleted(File file, boolean success, String message) {
+                if (!UploadScheduler.CANCELLED_MESSAGE.equals(message)) {
+                    setFileUploadStatus(file, success ? STATUS_UPLOADED : STATUS_FAILED);
+                }
+                Log.d(TAG, String.format("%s file completed: %s - %s",
+                        category, file.getName(), success ? "SUCCESS" : "FAILED"));
+                if (callback != null) {
+                    callback.onFileCompleted(file.getName(), success, success ? message : "上传失败: " + message);
+                }
+            }
 
-                    Log.d(TAG, String.format("%s file %d/%d completed: %s - %s",
-                            category, completed[0], totalFiles, fileName, success ? "SUCCESS" : "FAILED"));
+            @Override
+            public void onAllCompleted(int succeeded, int failed) {
+                Log.d(TAG, String.format("%s upload completed: %d succeeded, %d failed",
+                        category, succeeded, failed));
+                if (callback != null) {
+                    callback.onAllCompleted(succeeded, failed);
+                }
+            }
+        });
+    }
 
-                    if (callback != null) {
-                        callback.onFileCompleted(fileName, success, message);
-                    }
+    /**
+     * 后台同步：上传最早的一批待上传文件，每次最多 {@code maxFiles} 个、约 {@code maxBytes} 字节
+     * （至少一个文件），跳过最近仍在写入的文件
+     *
+     * @return 可用于取消本次上传的句柄；没有可上传的文件或配置无效时为 null（此时不会回调）
+     */
+    public UploadScheduler.Handle uploadPendingFiles(int maxFiles, long maxBytes, String userName,
+                                                     String userDescription, UploadProgressCallback callback) {
+        if (!cloudConfig.isCloudSyncEnabled() || !cloudConfig.isConfigValid()) {
+            Log.w(TAG, "Cloud sync is disabled or config is invalid");
+            return null;
+        }
+        List<File> files = selectPendingFiles(maxFiles, maxBytes);
+        if (files.isEmpty()) {
+            Log.d(TAG, "No files to upload in background");
+            return null;
+        }
+        Log.d(TAG, "Background upload of " + files.size() + " files");
+        return submitUploads(files, "background", cloudConfig.getDeviceId(), userName, userDescription, callback);
+    }
 
-                    // 检查是否全部完成
-                    if (completed[0] >= totalFiles) {
-                        Log.d(TAG, String.format("%s upload completed: %d succeeded, %d failed",
-                                category, succeeded[0], failed[0]));
-                        if (callback != null) {
-                            callback.onAllCompleted(succeeded[0], failed[0]);
-                        }
-                    }
-                }
+    /**
+     * 是否还有可由后台同步上传的文件
+     */
+    public boolean hasPendingFiles() {
+        return !selectPendingFiles(1, Long.MAX_VALUE).isEmpty();
+    }
 
-                @Override
-                public void onAllCompleted(int uploaded, int failed) {
-                    // 这个方法在单个文件上传时不会被调用
-                    // 它由上面的检查逻辑处理
-                }
-            });
+    /**
+     * 待上传文件按时间从早到晚排列；上传失败过的文件排在从未失败的文件之后，连续失败
+     * {@link #MAX_BACKGROUND_FAILURES} 次（例如被服务器拒绝）后不再由后台同步重试，只能手动同步。
+     * 否则一批始终失败的旧文件会占满每次运行的配额，新文件永远轮不到。
+     */
+    private List<File> selectPendingFiles(int maxFiles, long maxBytes) {
+        long writeGuard = System.currentTimeMillis() - RECENT_WRITE_GUARD_MS;
+        List<File> candidates = new ArrayList<>();
+        List<File> retries = new ArrayList<>();
+        for (File file : scanLocalFiles()) {
+            if (file.lastModified() >= writeGuard || isFileUploaded(file)) {
+                continue;
+            }
+            int failures = ledger.getFailureCount(file);
+            if (failures == 0) {
+                candidates.add(file);
+            } else if (failures < MAX_BACKGROUND_FAILURES) {
+                retries.add(file);
+            }
         }
+        candidates.sort((a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        retries.sort((a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        candidates.addAll(retries);
+        List<File> selected = new ArrayList<>();
+        long bytes = 0;
+        for (File file : candidates) {
+            if (selected.size() >= maxFiles || (!selected.isEmpty() && bytes + file.length() > maxBytes)) {
+                break;
+            }
+            selected.add(file);
+            bytes += file.length();
+        }
+        return selected;
     }
 
     /**
@@ -409,40 +465,24 @@ public class CloudSyncService {
      * 获取离线文件统计信息
      */
     public FileStatistics getOfflineFileStatistics() {
-        return getFileStatisticsForList(scanOfflineFiles());
+        return getDirectoryStatistics(OFFLINE_DIR, OFFLINE_FILES);
     }
 
     /**
      * 获取在线文件统计信息
      */
     public FileStatistics getOnlineFileStatistics() {
-        return getFileStatisticsForList(scanOnlineFiles());
+        return getDirectoryStatistics(ONLINE_DIR, ONLINE_FILES);
     }
 
     /**
-     * 通用文件统计方法
+     * 通用文件统计方法：台账缓存各目录的计数，只查看上次统计之后新增的文件
      */
-    private FileStatistics getFileStatisticsForList(List<File> files) {
-        int uploaded = 0;
-        int pending = 0;
-        int failed = 0;
-
-        for (File file : files) {
-            String status = getFileUploadStatus(file);
-            switch (status) {
-                case STATUS_UPLOADED:
-                    uploaded++;
-                    break;
-                case STATUS_FAILED:
-                    failed++;
-                    break;
-                default:
-                    pending++;
-                    break;
-            }
-        }
-
-        return new FileStatistics(files.size(), uploaded, pending, failed);
+    private FileStatistics getDirectoryStatistics(String relativeDir, FilenameFilter filter) {
+        File dir = new File(Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_DOCUMENTS)
+                + relativeDir);
+        UploadLedger.Counts counts = ledger.countDirectory(dir, filter);
+        return new FileStatistics(counts.total, counts.uploaded, counts.pending(), counts.failed);
     }
 
     /**
@@ -509,7 +549,7 @@ public class CloudSyncService {
      * 清除所有上传状态记录
      */
     public void clearAllUploadStatus() {
-        uploadStatusPrefs.edit().clear().apply();
+        ledger.clear();
         Log.d(TAG, "All upload status cleared");
     }
 
@@ -517,6 +557,10 @@ public class CloudSyncService {
      * 添加认证头到HTTP请求（新增，支持JWT和API Key）
      */
     private void addAuthHeaders(Request.Builder requestBuilder) {
+        addAuthHeaders(cloudConfig, requestBuilder);
+    }
+
+    private static void addAuthHeaders(CloudConfig cloudConfig, Request.Builder requestBuilder) {
         // 优先使用JWT Token认证
         String authToken = cloudConfig.getAuthToken();
         if (!authToken.isEmpty()) {
@@ -533,4 +577,246 @@ public class CloudSyncService {
         }
         // 如果都没有配置，将以匿名方式访问（如果服务器支持的话）
     }
-}
\ No newline at end of file
+
+    /**
+     * 分块续传协议（服务器端）：
+     * POST files/upload/sessions 创建会话，返回 {uploadId, offset}；
+     * PUT files/upload/sessions/{uploadId}（请求头 Upload-Offset）上传一个分块，返回服务器已确认的 {offset}；
+     * GET files/upload/sessions/{uploadId} 查询已确认的偏移。
+     * 服务器不支持会话接口（404/405/501）时退回原有的 files/upload 单次 multipart 上传。
+     * 多个小文件合并为一次 POST files/upload/batch（多个 "files" 部分，metadata 为按顺序的数组）；
+     * 不支持时调度器改为逐个上传。
+     * 创建会话时带上文件的 sha256，服务器已有相同内容时可直接返回 offset = fileSize。
+     * 开启压缩时创建会话请求 contentEncoding = gzip，服务器在响应中回显 gzip 才压缩该会话的分块：
+     * 每个分块是独立的 gzip 流（Content-Encoding: gzip），偏移仍按原始字节计算。
+     * 批量接口仅在开启压缩时发送 gzip 内容；files/upload 是现有服务器的接口，始终发送原始内容。
+     */
+    private static final class HttpTransport implements UploadScheduler.Transport {
+        private static final PipelineMetrics.Counter rawBytes = PipelineMetrics.counter("upload.raw_bytes");
+        private static final PipelineMetrics.Counter wireBytes = PipelineMetrics.counter("upload.wire_bytes");
+
+        private final CloudConfig config;
+        private final OkHttpClient client;
+        // 服务器确认接受 gzip 分块的会话；重启后未知的会话按原始内容续传
+        private final Set<String> gzipSessions = ConcurrentHashMap.newKeySet();
+
+        HttpTransport(CloudConfig config, OkHttpClient client) {
+            this.config = config;
+            this.client = client;
+        }
+
+        @Override
+        public void uploadBatch(List<File> files, List<String> sha256, Map<String, String> fields) throws IOException {
+            boolean gzip = config.isUploadCompressionEnabled();
+            MultipartBody.Builder body = new MultipartBody.Builder().setType(MultipartBody.FORM);
+            for (Map.Entry<String, String> field : fields.entrySet()) {
+                body.addFormDataPart(field.getKey(), field.getValue());
+            }
+            body.addFormDataPart("contentEncoding", gzip ? "gzip" : "identity");
+            try {
+                JSONArray metadata = new JSONArray();
+                for (int i = 0; i < files.size(); i++) {
+                    JSONObject item = createMetadata(files.get(i));
+                    item.put("fileName", files.get(i).getName());
+                    item.put("sha256", sha256.get(i));
+                    metadata.put(item);
+                }
+                body.addFormDataPart("metadata", metadata.toString());
+            } catch (JSONException e) {
+                throw new UploadScheduler.UploadException("Failed to create metadata: " + e.getMessage(), false);
+            }
+            for (File file : files) {
+                body.addFormDataPart("files", file.getName(),
+                        new FileRegionBody(file, 0, file.length(), gzip, rawBytes, wireBytes));
+            }
+            Request.Builder builder = new Request.Builder()
+                    .url(config.getApiBaseUrl() + "files/upload/batch")
+                    .post(body.build());
+            addAuthHeaders(config, builder);
+            try (Response response = client.newCall(builder.build()).execute()) {
+                int code = response.code();
+                if (code == 404 || code == 405 || code == 501) {
+                    throw UploadScheduler.UploadException.unsupported("HTTP " + code);
+                }
+                checkStatus(response);
+            }
+        }
+
+        private String sessionsUrl() {
+            return config.getApiBaseUrl() + "files/upload/sessions";
+        }
+
+        @Override
+        public UploadScheduler.Session openSession(File file, String sha256, Map<String, String> fields) throws IOException {
+            JSONObject body = new JSONObject();
+            try {
+                body.put("fileName", file.getName());
+                body.put("fileSize", file.length());
+                body.put("sha256", sha256);
+                body.put("contentEncoding", config.isUploadCompressionEnabled() ? "gzip" : "identity");
+                for (Map.Entry<String, String> field : fields.entrySet()) {
+                    body.put(field.getKey(), field.getValue());
+                }
+                body.put("metadata", createMetadata(file));
+            } catch (JSONException e) {
+                throw new UploadScheduler.UploadException("Failed to create metadata: " + e.getMessage(), false);
+            }
+            Request.Builder builder = new Request.Builder()
+                    .url(sessionsUrl())
+                    .post(RequestBody.create(JSON, body.toString()));
+            addAuthHeaders(config, builder);
+            try (Response response = client.newCall(builder.build()).execute()) {
+                int code = response.code();
+                if (code == 404 || code == 405 || code == 501) {
+                    throw UploadScheduler.UploadException.unsupported("HTTP " + code);
+                }
+                JSONObject json = readJson(response);
+                String uploadId = json.optString("uploadId", "");
+                if (uploadId.isEmpty()) {
+                    throw new UploadScheduler.UploadException("Session response without uploadId", true);
+                }
+                if (config.isUploadCompressionEnabled() && "gzip".equals(json.optString("contentEncoding", ""))) {
+                    gzipSessions.add(uploadId);
+                }
+                Log.d(TAG, "Opened upload session " + uploadId + " for " + file.getName());
+                return new UploadScheduler.Session(uploadId, json.optLong("offset", 0));
+            }
+        }
+
+        @Override
+        public long queryOffset(String uploadId) throws IOException {
+            Request.Builder builder = new Request.Builder().url(sessionsUrl() + "/" + uploadId).get();
+            addAuthHeaders(config, builder);
+            try (Response response = client.newCall(builder.build()).execute()) {
+                if (response.code() == 404 || response.code() == 410) {
+                    return -1;
+                }
+                return readJson(response).optLong("offset", -1);
+            }
+        }
+
+        @Override
+        public long sendChunk(String uploadId, File file, long offset, int length) throws IOException {
+            boolean gzip = gzipSessions.contains(uploadId);
+            Request.Builder builder = new Request.Builder()
+                    .url(sessionsUrl() + "/" + uploadId)
+                    .header("Upload-Offset", String.valueOf(offset))
+                    .put(new FileRegionBody(file, offset, length, gzip, rawBytes, wireBytes));
+            if (gzip) {
+                builder.header("Content-Encoding", "gzip");
+            }
+            addAuthHeaders(config, builder);
+            try (Response response = client.newCall(builder.build()).execute()) {
+                if (response.code() == 409) {
+                    // 偏移冲突：服务器返回其已确认的偏移，由调度器从该处继续
+                    return readJsonBody(response).optLong("offset", -1);
+                }
+                long confirmed = readJson(response).optLong("offset", -1);
+                if (confirmed >= file.length()) {
+                    gzipSessions.remove(uploadId);
+                }
+                return confirmed;
+            }
+        }
+
+        @Override
+        public void uploadWhole(File file, String sha256, Map<String, String> fields) throws IOException {
+            // 现有服务器的接口：按原始文件存储，不能发送压缩内容
+            MultipartBody.Builder body = new MultipartBody.Builder().setType(MultipartBody.FORM);
+            for (Map.Entry<String, String> field : fields.entrySet()) {
+                body.addFormDataPart(field.getKey(), field.getValue());
+            }
+            body.addFormDataPart("sha256", sha256);
+            body.addFormDataPart("file", file.getName(),
+                    new FileRegionBody(file, 0, file.length(), false, rawBytes, wireBytes));
+            try {
+                body.addFormDataPart("metadata", createMetadata(file).toString());
+            } catch (JSONException e) {
+                throw new UploadScheduler.UploadException("Failed to create metadata: " + e.getMessage(), false);
+            }
+            Request.Builder builder = new Request.Builder()
+                    .url(config.getApiBaseUrl() + "files/upload")
+                    .post(body.build());
+            addAuthHeaders(config, builder);
+            Log.d(TAG, "Uploading file: " + file.getName() + " in one request");
+            try (Response response = client.newCall(builder.build()).execute()) {
+                checkStatus(response);
+            }
+        }
+
+        private JSONObject readJson(Response response) throws IOException {
+            checkStatus(response);
+            return readJsonBody(response);
+        }
+
+        private JSONObject readJsonBody(Response response) throws IOException {
+            String text = response.body() != null ? response.body().string() : "";
+            try {
+                return new JSONObject(text.isEmpty() ? "{}" : text);
+            } catch (JSONException e) {
+                throw new UploadScheduler.UploadException("Invalid server response: " + e.getMessage(), true);
+            }
+        }
+
+        private void checkStatus(Response response) throws IOException {
+            if (!response.isSuccessful()) {
+                int code = response.code();
+                throw new UploadScheduler.UploadException("服务器错误: HTTP " + code,
+                        UploadScheduler.UploadException.isRetryableStatus(code));
+            }
+        }
+    }
+
+    private static JSONObject createMetadata(File file) throws JSONException {
+        JSONObject metadata = new JSONObject();
+        metadata.put("originalPath", file.getAbsolutePath());
+        metadata.put("uploadTime", new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'", Locale.US).format(new Date()));
+        return metadata;
+    }
+
+    /**
+     * Request body streaming {@code length} bytes of a file from {@code offset}, optionally gzipped on the
+     * fly (no temp copy, constant memory). Re-read on every write so OkHttp can retry it.
+     */
+    private static final class FileRegionBody extends RequestBody {
+        private final File file;
+        private final long offset;
+        private final long length;
+        private final boolean gzip;
+        private final PipelineMetrics.Counter rawBytes;
+        private final PipelineMetrics.Counter wireBytes;
+
+        FileRegionBody(File file, long offset, long length, boolean gzip,
+                       PipelineMetrics.Counter rawBytes, PipelineMetrics.Counter wireBytes) {
+            this.file = file;
+            this.offset = offset;
+            this.length = length;
+            this.gzip = gzip;
+            this.rawBytes = rawBytes;
+            this.wireBytes = wireBytes;
+        }
+
+        @Override
+        public MediaType contentType() {
+            return OCTET_STREAM;
+        }
+
+        @Override
+        public long contentLength() {
+            return gzip ? -1 : length;  // 压缩后的长度事先未知，使用 chunked 传输
+        }
+
+        @Override
+        public void writeTo(BufferedSink sink) throws IOException {
+            long written;
+            if (gzip) {
+                written = UploadCodec.gzipRegion(file, offset, length, sink.outputStream());
+            } else {
+                UploadCodec.copyRegion(file, offset, length, sink.outputStream());
+                written = length;
+            }
+            rawBytes.add(length);
+            wireBytes.add(written);
+        }
+    }
+}
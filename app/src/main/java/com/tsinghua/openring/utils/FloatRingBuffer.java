@@ -0,0 +1,107 @@
+package com.tsinghua.openring.utils;
+
+/**
+ * Fixed-capacity ring buffer of primitive floats.
+ * Once full, every add overwrites the oldest sample, so appending never allocates or shifts.
+ * Not thread-safe: each buffer is expected to be owned by a single thread.
+ */
+public class FloatRingBuffer {
+    private final float[] data;
+    private int head = 0;   // index where the next sample is written
+    private int size = 0;
+
+    public FloatRingBuffer(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        this.data = new float[capacity];
+    }
+
+    /**
+     * Append a sample, overwriting the oldest one when the buffer is full
+     */
+    public void add(float value) {
+        data[head] = value;
+        head++;
+        if (head == data.length) {
+            head = 0;
+        }
+        if (size < data.length) {
+            size++;
+        }
+    }
+
+    /**
+     * Get the i-th retained sample, 0 being the oldest
+     */
+    public float get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of range [0, " + size + ")");
+        }
+        int pos = head - size + index;
+        if (pos < 0) {
+            pos += data.length;
+        }
+        return data[pos];
+    }
+
+    /**
+     * Most recently added sample
+     */
+    public float latest() {
+        return get(size - 1);
+    }
+
+    /**
+     * Copy the latest {@code n} samples (or all retained samples if fewer) into {@code dst},
+     * oldest first, starting at dst[0].
+     *
+     * @return number of samples copied
+     */
+    public int copyLatest(float[] dst, int n) {
+        int count = Math.min(Math.min(n, size), dst.length);
+        if (count <= 0) {
+            return 0;
+        }
+        int start = head - count;
+        if (start < 0) {
+            start += data.length;
+        }
+        int firstPart = Math.min(count, data.length - start);
+        System.arraycopy(data, start, dst, 0, firstPart);
+        if (firstPart < count) {
+            System.arraycopy(data, 0, dst, firstPart, count - firstPart);
+        }
+        return count;
+    }
+
+    /**
+     * Copy all retained samples into a new array, oldest first
+     */
+    public float[] toArray() {
+        float[] out = new float[size];
+        copyLatest(out, size);
+        return out;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return data.length;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean isFull() {
+        return size == data.length;
+    }
+
+    public void clear() {
+        head = 0;
+        size = 0;
+    }
+}
@@ -5,6 +5,7 @@ import com.tsinghua.openring.PlotView;
 
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public class NotificationHandler {
     private static final String TAG = "NotificationHandler";
@@ -131,18 +132,23 @@ public class NotificationHandler {
     }
 
     private static LogRecorder logRecorder;
-    private static VitalSignsProcessor vitalSignsProcessor;
-    private static com.tsinghua.openring.inference.ModelInferenceManager inferenceManager;
+    // Raw realtime packets go to the session recording instead of one formatted log line per sample
+    private static volatile AsyncLogger packetLogger;
+    // Minimum level (android.util.Log constants) of messages built by this class
+    private static volatile int logLevel = Log.DEBUG;
+    // Realtime frames are decoded once into the dispatcher's reused block and delivered to all consumers;
+    // SessionReplayer feeds recordings through the same dispatcher code
+    private static final SampleDispatcher sampleDispatcher = new SampleDispatcher();
 
     // Add method to set vital signs processor
     public static void setVitalSignsProcessor(VitalSignsProcessor processor) {
-        vitalSignsProcessor = processor;
+        sampleDispatcher.setProcessor(processor);
         recordLog("VitalSignsProcessor connected to NotificationHandler");
     }
 
     // Inference manager setter
     public static void setInferenceManager(com.tsinghua.openring.inference.ModelInferenceManager manager) {
-        inferenceManager = manager;
+        sampleDispatcher.setInferenceManager(manager);
         recordLog("InferenceManager connected to NotificationHandler");
     }
 
@@ -154,8 +160,57 @@ public class NotificationHandler {
         }
     }
 
+    private static final List<SampleBlock.Subscriber> sampleSubscribers = new CopyOnWriteArrayList<>();
+
+    // Per-stage metrics of the realtime path
+    private static final LatencyHistogram decodeLatency = PipelineMetrics.histogram("ble.decode");
+    private static final LatencyHistogram chartsLatency = PipelineMetrics.histogram("ble.charts");
+    private static final LatencyHistogram deliverLatency = PipelineMetrics.histogram("ble.deliver");
+    private static final PipelineMetrics.Counter framesReceived = PipelineMetrics.counter("ble.frames");
+    private static final PipelineMetrics.Counter framesInvalid = PipelineMetrics.counter("ble.frames_invalid");
+    private static final PipelineMetrics.Counter framesLost = PipelineMetrics.counter("ble.frames_lost");
+    private static final PipelineMetrics.Counter samplesReceived = PipelineMetrics.counter("ble.samples");
+    // 仅由 BLE 线程更新；开始新的采集时由 UI 线程重置
+    private static volatile int lastFrameSequence = -1;
+
+    // Register an extra consumer of decoded realtime sample blocks (called on the BLE thread)
+    public static void addSampleBlockSubscriber(SampleBlock.Subscriber subscriber) {
+        if (subscriber != null && !sampleSubscribers.contains(subscriber)) {
+            sampleSubscribers.add(subscriber);
+        }
+    }
+
+    public static void removeSampleBlockSubscriber(SampleBlock.Subscriber subscriber) {
+        sampleSubscribers.remove(subscriber);
+    }
+
+    // Set (or clear with null) the session logger that receives raw realtime packets
+    public static void setPacketLogger(AsyncLogger logger) {
+        packetLogger = logger;
+    }
+
+    // Set the minimum log level; messages below it are not formatted at all
+    public static void setLogLevel(int level) {
+        logLevel = level;
+    }
+
+    public static boolean isLogEnabled(int level) {
+        return level >= logLevel;
+    }
+
+    private static void recordPacket(byte[] data) {
+        AsyncLogger logger = packetLogger;
+        if (logger != null) {
+            // The BLE stack may reuse the notification buffer, keep a copy until it is written
+            logger.packet(data.clone());
+        }
+    }
+
     // Add internal recordLog method
     static void recordLog(String message) {
+        if (!isLogEnabled(Log.DEBUG)) {
+            return;
+        }
         // Output to Android Log (maintain original functionality)
         Log.d(TAG, message);
 
@@ -236,6 +291,8 @@ public class NotificationHandler {
         }
 
         try {
+            resetFrameSequence();
+
             // Generate active measurement command
             byte[] command = buildActiveMeasurementCommand(config);
             deviceCommandCallback.sendCommand(command);
@@ -244,8 +301,9 @@ public class NotificationHandler {
             isMeasurementOngoing = true; // New: mark measurement in progress
 
             // Reset vital signs processor for new measurement
-            if (vitalSignsProcessor != null) {
-                vitalSignsProcessor.reset();
+            VitalSignsProcessor processor = sampleDispatcher.getProcessor();
+            if (processor != null) {
+                processor.reset();
             }
 
             deviceCommandCallback.onMeasurementStarted();
@@ -344,6 +402,7 @@ public class NotificationHandler {
         try {
             isExercising = true;
             currentSegment = 0;
+            resetFrameSequence();
 
             // Send exercise start command
             byte[] command = buildStartExerciseCommand(config);
@@ -612,29 +671,6 @@ public class NotificationHandler {
     }
 
 
-    /**
-     * Little endian read 4-byte unsigned integer
-     */
-    private static long readUInt32LE(byte[] data, int offset) {
-        if (offset + 4 > data.length) {
-            throw new IndexOutOfBoundsException("Not enough data to read uint32");
-        }
-        return ((long)(data[offset] & 0xFF)) |
-                ((long)(data[offset + 1] & 0xFF) << 8) |
-                ((long)(data[offset + 2] & 0xFF) << 16) |
-                ((long)(data[offset + 3] & 0xFF) << 24);
-    }
-
-    /**
-     * Little endian read 2-byte signed integer
-     */
-    private static short readInt16LE(byte[] data, int offset) {
-        if (offset + 2 > data.length) {
-            throw new IndexOutOfBoundsException("Not enough data to read int16");
-        }
-        return (short)(((data[offset + 1] & 0xFF) << 8) | (data[offset] & 0xFF));
-    }
-
     /**
      * Little endian read 8-byte timestamp
      */
@@ -885,14 +921,22 @@ public class NotificationHandler {
      * Handle real-time data (Cmd = 0x3C)
      */
     private static String handleRealtimeData(byte[] data, int frameId, int subcmd) {
-        Log.d(TAG, String.format("Handling realtime data: Subcmd=0x%02X", subcmd));
+        if (isLogEnabled(Log.VERBOSE)) {
+            Log.v(TAG, String.format("Handling realtime data: Subcmd=0x%02X", subcmd));
+        }
+
+        // Waveform packets (0x01 longer than the start timestamp, 0x02) are routed by the shared dispatcher
+        if (SampleDispatcher.classify(data, data.length) == SampleDispatcher.PACKET_WAVEFORM) {
+            return dispatchWaveformFrame(data, frameId,
+                    subcmd == SampleDispatcher.SUBCMD_WAVEFORM ? "Realtime Waveform" : "Standard Waveform");
+        }
 
         switch (subcmd) {
             case 0x00: // Start measurement response
                 return handleStartMeasurementResponse(data, frameId);
 
-            case 0x01: // Real-time data or time response
-                if (data.length == 13) {
+            case 0x01: // Time response
+                if (data.length == SampleDispatcher.START_TIMESTAMP_PACKET_LENGTH) {
                     // 13-byte packet: measurement start timestamp confirmation
                     // This is sent by the ring after starting measurement to confirm the start time
                     long timestamp = readUInt64LE(data, 4);
@@ -900,18 +944,12 @@ public class NotificationHandler {
                     recordLog(String.format("[Measurement Start Timestamp] timestamp=%d (%s), timezone=%d",
                         timestamp, formatTimestamp(timestamp), timezone));
                     return String.format("Measurement started at %s", formatTimestamp(timestamp));
-                } else if (data.length >= 14) {
-                    // Real-time waveform data packet
-                    return handleRealtimeWaveformData(data, frameId);
                 } else {
                     String result = "Invalid packet length for subcmd 0x01: " + data.length;
                     Log.w(TAG, result);
                     return result;
                 }
 
-            case 0x02: // Standard waveform response packet
-                return handleStandardWaveformResponse(data, frameId);
-
             case 0x03: // Stop response (Modified: handle new stop collection response)
                 return handleStopCollectionResponse(data, frameId);
 
@@ -1003,148 +1041,146 @@ public class NotificationHandler {
     }
 
     /**
-     * Handle real-time waveform data and update charts
+     * Decode a waveform frame once into the shared SampleBlock and hand it to every consumer:
+     * charts, vital signs processor, inference manager and registered subscribers.
      */
-    private static String handleRealtimeWaveformData(byte[] data, int frameId) {
-        if (data.length < 14) {
-            return "Invalid realtime waveform packet length";
-        }
-
-        StringBuilder result = new StringBuilder();
-        result.append("Realtime Waveform (Frame ID: ").append(frameId).append("):\n");
-
-        // Align with Python: seq = ppg_led_data[0], data_num = ppg_led_data[1]
-        int seq = data[4] & 0xFF;  // First byte after 4-byte offset
-        int dataNum = data[5] & 0xFF;  // Second byte after 4-byte offset
+    private static String dispatchWaveformFrame(byte[] data, int frameId, String kind) {
+        SampleBlock sampleBlock = sampleDispatcher.block;
+        synchronized (sampleBlock) {
+            long start = System.nanoTime();
+            int count = sampleDispatcher.decodeWaveform(data, data.length);
+            decodeLatency.recordSince(start);
+            framesReceived.increment();
+            if (count < 0) {
+                framesInvalid.increment();
+                String error = "Incomplete " + kind + " frame (" + data.length + " bytes)";
+                Log.w(TAG, error);
+                return error;
+            }
+            samplesReceived.add(count);
+            trackFrameSequence(sampleBlock.sequence);
+            recordPacket(data);
+            sampleBlock.receivedAtMs = System.currentTimeMillis();
+            if (isLogEnabled(Log.VERBOSE)) {
+                Log.v(TAG, "Frame timestamp: " + sampleBlock.frameTimestampMs);
+            }
 
-        result.append("Sequence: ").append(seq).append(", Data Count: ").append(dataNum).append("\n");
+            long deliverStart = System.nanoTime();
+            deliverSampleBlock(sampleBlock);
+            deliverLatency.recordSince(deliverStart);
 
-        // Align with Python: 10-byte header + data_num * 30-byte data
-        int expectedLength = 4 + 10 + dataNum * 30;  // 4-byte frame header + 10-byte data header + data
-        if (data.length < expectedLength) {
-            String error = "Incomplete realtime data. Expected: " + expectedLength + ", Got: " + data.length;
-            Log.w(TAG, error);
-            return result.append(error).toString();
+            if (isLogEnabled(Log.VERBOSE)) {
+                Log.v(TAG, "Processed " + count + " realtime data points");
+            }
+            if (!isLogEnabled(Log.DEBUG)) {
+                return kind;
+            }
+            return kind + " (Frame ID: " + frameId + "): seq " + sampleBlock.sequence + ", " + count + " points";
         }
+    }
 
-        // Read timestamp (align with Python: unix_ms = int.from_bytes(ppg_led_data[2:10], byteorder='little'))
-        long frameTimestamp = readUInt64LE(data, 6);  // Offset 4-byte frame header + 2 bytes(seq+data_num)
-        Log.e("TAG",String.valueOf(frameTimestamp));
-        result.append("Frame Time: ").append(formatTimestamp(frameTimestamp)).append("\n");
-
-        // Process real-time data points and update charts - align with Python logic
-        int validPoints = 0;
-        for (int i = 0; i < dataNum && i < 20; i++) { // Limit max processing count
-            // Align with Python: offset = 10 + group_idx * 30
-            int offset = 4 + 10 + i * 30;  // 4-byte frame header + 10-byte data header + i * 30
+    /**
+     * Forget the last frame sequence so the first frame of a new collection is not counted as a loss
+     */
+    private static void resetFrameSequence() {
+        lastFrameSequence = -1;
+    }
 
-            if (offset + 30 <= data.length) {
-                if (parseAndUpdateRealtimeDataPoint(data, offset)) {
-                    validPoints++;
-                }
-            } else {
-                Log.w(TAG, "Incomplete data point " + i);
-                break;
+    /**
+     * Count frames missing between consecutive sequence numbers (8-bit, wrapping). A jump of more than
+     * half the range is treated as a new stream rather than a loss.
+     */
+    private static void trackFrameSequence(int sequence) {
+        if (lastFrameSequence >= 0) {
+            int gap = (sequence - lastFrameSequence - 1) & 0xFF;
+            if (gap > 0 && gap < 128) {
+                framesLost.add(gap);
             }
         }
-        result.append("Updated ").append(validPoints).append(" data points to charts");
-        Log.d(TAG, "Processed " + validPoints + " realtime data points");
-        return result.toString();
+        lastFrameSequence = sequence;
     }
 
-    /**
-     * Parse single real-time data point and update charts
-     */
-    private static boolean parseAndUpdateRealtimeDataPoint(byte[] data, int offset) {
+    private static void deliverSampleBlock(SampleBlock block) {
+        long chartsStart = System.nanoTime();
         try {
-            // PPG data (first 12 bytes, 4 bytes each)
-            long green = readUInt32LE(data, offset);
-            long red = readUInt32LE(data, offset + 4);
-            long ir = readUInt32LE(data, offset + 8);
-
-            // Accelerometer data (12-17 bytes, 2 bytes signed each)
-            short accX = readInt16LE(data, offset + 12);
-            short accY = readInt16LE(data, offset + 14);
-            short accZ = readInt16LE(data, offset + 16);
-
-            // Gyroscope data (18-23 bytes, 2 bytes signed each)
-            short gyroX = readInt16LE(data, offset + 18);
-            short gyroY = readInt16LE(data, offset + 20);
-            short gyroZ = readInt16LE(data, offset + 22);
-
-            // Temperature data (24-29 bytes, 2 bytes signed each)
-            short temp0 = readInt16LE(data, offset + 24);
-            short temp1 = readInt16LE(data, offset + 26);
-            short temp2 = readInt16LE(data, offset + 28);
-
-            // Update real-time chart display
-            updateRealtimeCharts(green, red, ir, accX, accY, accZ, gyroX, gyroY, gyroZ, temp0, temp1, temp2);
-
-            // Feed data to vital signs processor
-            if (vitalSignsProcessor != null) {
-                long timestamp = System.currentTimeMillis();
-                vitalSignsProcessor.addDataPoint(green, ir, accX, accY, accZ, timestamp);
-            }
+            updateRealtimeCharts(block);
+        } catch (Exception e) {
+            Log.e(TAG, "Error updating realtime charts", e);
+        }
+        chartsLatency.recordSince(chartsStart);
 
-            // Feed data to inference manager
-            if (inferenceManager != null) {
-                long ts = System.currentTimeMillis();
-                inferenceManager.onSensorData(green, red, ir, accX, accY, accZ, ts);
-            } else {
-                // 调试：如果inferenceManager为null，记录警告（但不要每次都记录，避免日志过多）
-                if (System.currentTimeMillis() % 5000 < 100) { // 每5秒记录一次
-                    Log.w(TAG, "InferenceManager is null! Data not being processed.");
-                }
+        int n = block.count;
+        long timestamp = block.receivedAtMs;
+
+        // Feed data to vital signs processor (phone time) and inference manager (ring time)
+        sampleDispatcher.deliver(timestamp);
+        if (sampleDispatcher.getInferenceManager() == null) {
+            // 调试：如果inferenceManager为null，记录警告（但不要每次都记录，避免日志过多）
+            if (timestamp % 5000 < 100) { // 每5秒记录一次
+                Log.w(TAG, "InferenceManager is null! Data not being processed.");
             }
+        }
 
-            Log.v(TAG, String.format("Realtime point: G:%d, R:%d, IR:%d, AccX:%d, AccY:%d, AccZ:%d, GyroX:%d, GyroY:%d, GyroZ:%d, T0:%d, T1:%d, T2:%d",
-                    green, red, ir, accX, accY, accZ, gyroX, gyroY, gyroZ, temp0, temp1, temp2));
-            recordLog(String.format("Realtime data point: Green=%d, Red=%d, IR=%d, AccX=%d, AccY=%d, AccZ=%d, GyroX=%d, GyroY=%d, GyroZ=%d, Temp0=%d, Temp1=%d, Temp2=%d",
-                    green, red, ir, accX, accY, accZ, gyroX, gyroY, gyroZ, temp0, temp1, temp2));
+        for (SampleBlock.Subscriber subscriber : sampleSubscribers) {
+            try {
+                subscriber.onSampleBlock(block);
+            } catch (Exception e) {
+                Log.e(TAG, "Sample block subscriber failed", e);
+            }
+        }
 
-            return true;
-        } catch (Exception e) {
-            Log.e(TAG, "Error parsing realtime data point", e);
-            return false;
+        if (isLogEnabled(Log.VERBOSE)) {
+            for (int i = 0; i < n; i++) {
+                Log.v(TAG, String.format("Realtime point: G:%d, R:%d, IR:%d, AccX:%d, AccY:%d, AccZ:%d, GyroX:%d, GyroY:%d, GyroZ:%d, T0:%d, T1:%d, T2:%d",
+                        block.green[i], block.red[i], block.ir[i], block.accX[i], block.accY[i], block.accZ[i],
+                        block.gyroX[i], block.gyroY[i], block.gyroZ[i], block.temp0[i], block.temp1[i], block.temp2[i]));
+            }
         }
     }
 
     /**
      * Update real-time charts
      */
-    private static void updateRealtimeCharts(long green, long red, long ir,
-                                             short accX, short accY, short accZ,
-                                             short gyroX, short gyroY, short gyroZ,
-                                             short temp0, short temp1, short temp2) {
-        try {
-            // Update PPG data charts
-            if (plotViewG != null) plotViewG.addValue((int)green);
-            if (plotViewR != null) plotViewR.addValue((int)red);
-            if (plotViewI != null) plotViewI.addValue((int)ir);
-
-            // Lightweight smoothing for HR waveform display (moving average over last N points)
-            if (plotViewHRWave != null) {
-                int filtered = (int) simpleSMA((int)green);
-                plotViewHRWave.addValue(filtered);
+    private static void updateRealtimeCharts(SampleBlock block) {
+        int n = block.count;
+        addValues(plotViewG, block.green, n);
+        addValues(plotViewR, block.red, n);
+        addValues(plotViewI, block.ir, n);
+
+        // Lightweight smoothing for HR waveform display (moving average over last N points)
+        if (plotViewHRWave != null) {
+            for (int i = 0; i < n; i++) {
+                plotViewHRWave.addValue((int) simpleSMA((int) block.green[i]));
             }
+        }
 
-            // Update acceleration charts
-            if (plotViewX != null) plotViewX.addValue(accX);
-            if (plotViewY != null) plotViewY.addValue(accY);
-            if (plotViewZ != null) plotViewZ.addValue(accZ);
+        // Update acceleration charts
+        addValues(plotViewX, block.accX, n);
+        addValues(plotViewY, block.accY, n);
+        addValues(plotViewZ, block.accZ, n);
 
-            // New: Update gyroscope charts
-            if (plotViewGyroX != null) plotViewGyroX.addValue(gyroX);
-            if (plotViewGyroY != null) plotViewGyroY.addValue(gyroY);
-            if (plotViewGyroZ != null) plotViewGyroZ.addValue(gyroZ);
+        // New: Update gyroscope charts
+        addValues(plotViewGyroX, block.gyroX, n);
+        addValues(plotViewGyroY, block.gyroY, n);
+        addValues(plotViewGyroZ, block.gyroZ, n);
 
-            // New: Update temperature charts
-            if (plotViewTemp0 != null) plotViewTemp0.addValue(temp0);
-            if (plotViewTemp1 != null) plotViewTemp1.addValue(temp1);
-            if (plotViewTemp2 != null) plotViewTemp2.addValue(temp2);
+        // New: Update temperature charts
+        addValues(plotViewTemp0, block.temp0, n);
+        addValues(plotViewTemp1, block.temp1, n);
+        addValues(plotViewTemp2, block.temp2, n);
+    }
 
-        } catch (Exception e) {
-            Log.e(TAG, "Error updating realtime charts", e);
+    private static void addValues(PlotView view, long[] values, int n) {
+        if (view == null) return;
+        for (int i = 0; i < n; i++) {
+            view.addValue((int) values[i]);
+        }
+    }
+
+    private static void addValues(PlotView view, short[] values, int n) {
+        if (view == null) return;
+        for (int i = 0; i < n; i++) {
+            view.addValue(values[i]);
         }
     }
 
@@ -1161,48 +1197,6 @@ public class NotificationHandler {
         return (int)(hrSmaSum / hrSmaBuffer.size());
     }
 
-    /**
-     * Handle standard waveform response
-     */
-    private static String handleStandardWaveformResponse(byte[] data, int frameId) {
-        if (data.length < 6) {
-            return "Invalid standard waveform response packet length";
-        }
-
-        StringBuilder result = new StringBuilder();
-        result.append("Standard Waveform (Frame ID: ").append(frameId).append("):\n");
-
-        int seq = data[4] & 0xFF;
-        int dataNum = data[5] & 0xFF;
-
-        result.append("Sequence: ").append(seq).append(", Data Count: ").append(dataNum).append("\n");
-
-        int expectedLength = 4 + 10 + dataNum * 30;
-        if (data.length < expectedLength) {
-            String error = "Incomplete standard waveform. Expected: " + expectedLength + ", Got: " + data.length;
-            Log.w(TAG, error);
-            return result.append(error).toString();
-        }
-
-        long frameTimestamp = readUInt64LE(data, 6);
-        Log.e("TAG",String.valueOf(frameTimestamp));
-        result.append("Frame Time: ").append(formatTimestamp(frameTimestamp)).append("\n");
-
-        // Process data points
-        int validPoints = 0;
-        for (int i = 0; i < dataNum; i++) {
-            int offset = 4 + 10 + i * 30;
-            if (offset + 30 <= data.length) {
-                if (parseAndUpdateRealtimeDataPoint(data, offset)) {
-                    validPoints++;
-                }
-            }
-        }
-
-        result.append("Processed ").append(validPoints).append(" standard waveform points");
-        return result.toString();
-    }
-
     /**
      * Handle progress response
      */
@@ -0,0 +1,171 @@
+package com.tsinghua.openring.utils;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process metrics for the sensing pipeline: counters, gauges and latency histograms by name.
+ *
+ * Metrics are created once (typically into static final fields) and then updated without locks or
+ * allocation, so they can sit on the BLE notification and inference hot paths. Stage names use
+ * "component.stage" (e.g. "ble.decode", "inference.forward"). {@link #format} renders a snapshot as
+ * text for the debug screen and {@link #dump} appends one to a file.
+ */
+public final class PipelineMetrics {
+
+    /**
+     * Monotonic count (frames, samples, dropped windows...)
+     */
+    public static final class Counter {
+        public final String name;
+        private final AtomicLong value = new AtomicLong();
+
+        Counter(String name) {
+            this.name = name;
+        }
+
+        public void increment() {
+            value.incrementAndGet();
+        }
+
+        public void add(long delta) {
+            value.addAndGet(delta);
+        }
+
+        public long get() {
+            return value.get();
+        }
+
+        void reset() {
+            value.set(0);
+        }
+    }
+
+    /**
+     * Last observed value (queue depth, buffered samples...)
+     */
+    public static final class Gauge {
+        public final String name;
+        private volatile long value;
+
+        Gauge(String name) {
+            this.name = name;
+        }
+
+        public void set(long value) {
+            this.value = value;
+        }
+
+        public long get() {
+            return value;
+        }
+    }
+
+    private static final Map<String, Counter> counters = new ConcurrentHashMap<>();
+    private static final Map<String, Gauge> gauges = new ConcurrentHashMap<>();
+    private static final Map<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+    private static volatile long startedAtMs = System.currentTimeMillis();
+
+    private PipelineMetrics() {
+    }
+
+    public static Counter counter(String name) {
+        return counters.computeIfAbsent(name, Counter::new);
+    }
+
+    public static Gauge gauge(String name) {
+        return gauges.computeIfAbsent(name, Gauge::new);
+    }
+
+    public static LatencyHistogram histogram(String name) {
+        return histograms.computeIfAbsent(name, LatencyHistogram::new);
+    }
+
+    /**
+     * Clear counters and histograms; gauges keep their last value
+     */
+    public static void reset() {
+        for (Counter counter : counters.values()) {
+            counter.reset();
+        }
+        for (LatencyHistogram histogram : histograms.values()) {
+            histogram.reset();
+        }
+        startedAtMs = System.currentTimeMillis();
+    }
+
+    public static List<LatencyHistogram.Snapshot> histogramSnapshots() {
+        List<String> names = new ArrayList<>(histograms.keySet());
+        Collections.sort(names);
+        List<LatencyHistogram.Snapshot> snapshots = new ArrayList<>(names.size());
+        for (String name : names) {
+            snapshots.add(histograms.get(name).snapshot());
+        }
+        return snapshots;
+    }
+
+    /**
+     * Render all metrics as aligned text: one line per stage with count, p50, p99 and max in
+     * milliseconds, then counters (with a per-second rate since the last reset) and gauges.
+     */
+    public static String format() {
+        StringBuilder sb = new StringBuilder(2048);
+        long elapsedMs = Math.max(1, System.currentTimeMillis() - startedAtMs);
+        sb.append(String.format(Locale.US, "%-28s %8s %9s %9s %9s%n", "stage", "count", "p50 ms", "p99 ms", "max ms"));
+        for (LatencyHistogram.Snapshot s : histogramSnapshots()) {
+            sb.append(String.format(Locale.US, "%-28s %8d %9.3f %9.3f %9.3f%n", s.name, s.count,
+                    s.percentileNanos(50) / 1e6, s.percentileNanos(99) / 1e6, s.maxNanos / 1e6));
+        }
+        sb.append('\n');
+        sb.append(String.format(Locale.US, "%-28s %12s %10s%n", "counter", "total", "per s"));
+        for (String name : sortedKeys(counters)) {
+            long value = counters.get(name).get();
+            sb.append(String.format(Locale.US, "%-28s %12d %10.1f%n", name, value, value * 1000.0 / elapsedMs));
+        }
+        sb.append('\n');
+        sb.append(String.format(Locale.US, "%-28s %12s%n", "gauge", "value"));
+        for (String name : sortedKeys(gauges)) {
+            sb.append(String.format(Locale.US, "%-28s %12d%n", name, gauges.get(name).get()));
+        }
+        return sb.toString();
+    }
+
+    private static List<String> sortedKeys(Map<String, ?> map) {
+        List<String> names = new ArrayList<>(map.keySet());
+        Collections.sort(names);
+        return names;
+    }
+
+    /**
+     * Append a timestamped snapshot to {@code file}
+     */
+    public static void dump(File file) throws IOException {
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(file, true), StandardCharsets.UTF_8))) {
+            dump(out);
+        }
+    }
+
+    public static void dump(Writer out) throws IOException {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS", Locale.getDefault());
+        out.write("# Pipeline metrics " + format.format(new Date())
+                + " (since " + format.format(new Date(startedAtMs)) + ")\n");
+        out.write(format());
+        out.write('\n');
+        out.flush();
+    }
+}
@@ -0,0 +1,117 @@
+package com.tsinghua.openring.utils;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Decodes realtime waveform frames (Cmd 0x3C, Subcmd 0x01/0x02) into a {@link SampleBlock}.
+ *
+ * Frame layout: 4-byte frame header, then seq(1) + data_num(1) + unix ms(8), then data_num
+ * 30-byte samples: green, red, ir as uint32 LE followed by acc xyz, gyro xyz and three temperatures
+ * as int16 LE. The frame is read in place through a little-endian ByteBuffer view; nothing is copied.
+ * File data pushed during a download (Cmd 0x36, Subcmd 0x11) uses the same sample layout after a
+ * 25-byte file packet header and is decoded by {@link #decodeFileData}.
+ * Not thread-safe: use one decoder per ingest thread.
+ */
+public final class RealtimeFrameDecoder {
+    public static final int FRAME_HEADER_SIZE = 4;
+    public static final int DATA_HEADER_SIZE = 10;
+    public static final int SAMPLE_SIZE = 30;
+    public static final int SAMPLES_OFFSET = FRAME_HEADER_SIZE + DATA_HEADER_SIZE;
+
+    // File packet header: status(1) + file size(4) + total packets(4) + packet index(4) + length(4) + unix ms(8)
+    public static final int FILE_HEADER_SIZE = 25;
+    public static final int FILE_TIMESTAMP_OFFSET = 17;
+
+    private byte[] wrapped;
+    private ByteBuffer view;
+
+    /**
+     * Decode a frame into {@code block}.
+     *
+     * @return Number of samples decoded (at most {@link SampleBlock#MAX_SAMPLES}), or -1 if the
+     * frame is shorter than its header or than data_num samples
+     */
+    public int decode(byte[] frame, SampleBlock block) {
+        return decode(frame, frame == null ? 0 : frame.length, block);
+    }
+
+    /**
+     * Decode the first {@code length} bytes of {@code frame} into {@code block}; bytes past
+     * {@code length} (e.g. left in a reused buffer by an earlier, longer frame) are never read.
+     *
+     * @return Number of samples decoded, or -1 if those bytes are shorter than the header or than
+     * data_num samples
+     */
+    public int decode(byte[] frame, int length, SampleBlock block) {
+        block.count = 0;
+        if (frame == null || length < SAMPLES_OFFSET || length > frame.length) {
+            return -1;
+        }
+        ByteBuffer buf = wrap(frame);
+        int dataNum = buf.get(FRAME_HEADER_SIZE + 1) & 0xFF;
+        if (length < SAMPLES_OFFSET + dataNum * SAMPLE_SIZE) {
+            return -1;
+        }
+        block.sequence = buf.get(FRAME_HEADER_SIZE) & 0xFF;
+        block.frameTimestampMs = buf.getLong(FRAME_HEADER_SIZE + 2);
+        return decodeSamples(buf, SAMPLES_OFFSET, Math.min(dataNum, SampleBlock.MAX_SAMPLES), block);
+    }
+
+    /**
+     * Decode up to {@link SampleBlock#MAX_SAMPLES} samples of a file data packet, starting at sample
+     * {@code firstSample}. {@code frameTimestampMs} is set to the packet timestamp, i.e. the time of
+     * sample 0 and not of {@code firstSample}.
+     *
+     * @param offset Start of the 25-byte file packet header in {@code data} (4 for a whole notification,
+     *               0 for a stored file chunk)
+     * @return Number of samples decoded, or -1 if the packet is shorter than its header
+     */
+    public int decodeFileData(byte[] data, int offset, int length, int firstSample, SampleBlock block) {
+        block.count = 0;
+        if (data == null || length < FILE_HEADER_SIZE || offset + length > data.length) {
+            return -1;
+        }
+        ByteBuffer buf = wrap(data);
+        int available = (length - FILE_HEADER_SIZE) / SAMPLE_SIZE - firstSample;
+        block.sequence = firstSample;
+        block.frameTimestampMs = buf.getLong(offset + FILE_TIMESTAMP_OFFSET);
+        return decodeSamples(buf, offset + FILE_HEADER_SIZE + firstSample * SAMPLE_SIZE,
+                Math.max(0, Math.min(available, SampleBlock.MAX_SAMPLES)), block);
+    }
+
+    /**
+     * Number of whole samples in a file data packet of the given length
+     */
+    public static int fileSampleCount(int length) {
+        return length < FILE_HEADER_SIZE ? 0 : (length - FILE_HEADER_SIZE) / SAMPLE_SIZE;
+    }
+
+    private ByteBuffer wrap(byte[] frame) {
+        // BLE stacks often hand out the same array for every notification; only rewrap when it changes
+        if (frame != wrapped) {
+            wrapped = frame;
+            view = ByteBuffer.wrap(frame).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        return view;
+    }
+
+    private static int decodeSamples(ByteBuffer buf, int start, int n, SampleBlock block) {
+        for (int i = 0, o = start; i < n; i++, o += SAMPLE_SIZE) {
+            block.green[i] = buf.getInt(o) & 0xFFFFFFFFL;
+            block.red[i] = buf.getInt(o + 4) & 0xFFFFFFFFL;
+            block.ir[i] = buf.getInt(o + 8) & 0xFFFFFFFFL;
+            block.accX[i] = buf.getShort(o + 12);
+            block.accY[i] = buf.getShort(o + 14);
+            block.accZ[i] = buf.getShort(o + 16);
+            block.gyroX[i] = buf.getShort(o + 18);
+            block.gyroY[i] = buf.getShort(o + 20);
+            block.gyroZ[i] = buf.getShort(o + 22);
+            block.temp0[i] = buf.getShort(o + 24);
+            block.temp1[i] = buf.getShort(o + 26);
+            block.temp2[i] = buf.getShort(o + 28);
+        }
+        block.count = n;
+        return n;
+    }
+}
@@ -0,0 +1,161 @@
+package com.tsinghua.openring.utils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Binary recording container used for session logs and downloaded ring files.
+ *
+ * Layout (all little-endian):
+ * <pre>
+ * header: int magic "ORRC" | short version | short entryCount
+ *         | entryCount * (short keyLen, key UTF-8, short valueLen, value UTF-8) | int crc32
+ * frame:  byte type | int payloadLength | long timestampMillis | payload | int crc32
+ * </pre>
+ * The frame CRC covers type, length, timestamp and payload. Packets are stored exactly as received
+ * from the ring; {@link #exportCsv} turns a recording back into CSV when it is needed.
+ */
+public final class RingRecording {
+    public static final int MAGIC = 0x4352524F; // "ORRC" little-endian
+    public static final int VERSION = 1;
+
+    public static final int FRAME_HEADER_SIZE = 1 + 4 + 8;
+    public static final int CRC_SIZE = 4;
+
+    // Frame types
+    public static final int TYPE_PACKET = 1;      // raw BLE notification (realtime waveform, file data...)
+    public static final int TYPE_LOG = 2;         // UTF-8 log message
+    public static final int TYPE_FILE_CHUNK = 3;  // file payload pushed by the ring during batch download
+
+    // Common header keys
+    public static final String KEY_KIND = "kind";
+    public static final String KEY_CREATED = "created";
+    public static final String KEY_DEVICE = "device";
+    public static final String KEY_MAC = "mac";
+    public static final String KEY_USER = "user";
+    public static final String KEY_FILE_NAME = "file_name";
+
+    public static final String KIND_SESSION = "session";
+    public static final String KIND_DOWNLOAD = "download";
+    public static final String KIND_BATCH_DOWNLOAD = "batch_download";
+
+    // Realtime sample layout: green, red, ir (uint32) + acc, gyro, temperature (3 x int16 each)
+    static final int SAMPLE_SIZE = 30;
+
+    private static final String CSV_COLUMNS =
+            "received_ms,device_ms,index,green,red,ir,acc_x,acc_y,acc_z,gyro_x,gyro_y,gyro_z,temp0,temp1,temp2";
+
+    private RingRecording() {
+    }
+
+    /**
+     * Check the magic number, to tell recordings apart from legacy hex text files
+     */
+    public static boolean isRecording(File file) {
+        if (file == null || file.length() < 4) {
+            return false;
+        }
+        try (FileInputStream in = new FileInputStream(file)) {
+            byte[] magic = new byte[4];
+            if (in.read(magic) != 4) {
+                return false;
+            }
+            int value = (magic[0] & 0xFF) | (magic[1] & 0xFF) << 8 | (magic[2] & 0xFF) << 16 | (magic[3] & 0xFF) << 24;
+            return value == MAGIC;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Decode a recording to CSV.
+     * Header entries and log messages become '#' comment lines; realtime waveform and file data
+     * packets are expanded into one row per sample; other frames are written as hex comments.
+     *
+     * @return Number of sample rows written
+     */
+    public static int exportCsv(File recording, Writer out) throws IOException {
+        int rows = 0;
+        try (RingRecordingReader reader = new RingRecordingReader(recording)) {
+            for (Map.Entry<String, String> entry : reader.getHeader().entrySet()) {
+                out.write("# " + entry.getKey() + ": " + entry.getValue() + "\n");
+            }
+            out.write(CSV_COLUMNS + "\n");
+
+            StringBuilder line = new StringBuilder(160);
+            RingRecordingReader.Frame frame = new RingRecordingReader.Frame();
+            while (reader.next(frame)) {
+                ByteBuffer buf = frame.buffer;
+                int p = frame.payloadOffset;
+                int len = frame.payloadLength;
+                if (frame.type == TYPE_LOG) {
+                    byte[] text = new byte[len];
+                    for (int i = 0; i < len; i++) {
+                        text[i] = buf.get(p + i);
+                    }
+                    out.write("# [" + frame.timestampMillis + "] "
+                            + new String(text, StandardCharsets.UTF_8).replace('\n', ' ') + "\n");
+                    continue;
+                }
+
+                int samplesOffset = -1;
+                int sampleCount = 0;
+                long deviceMs = 0;
+                if (frame.type == TYPE_PACKET && len >= 4) {
+                    int cmd = buf.get(p + 2) & 0xFF;
+                    int subcmd = buf.get(p + 3) & 0xFF;
+                    if (cmd == 0x3C && (subcmd == 0x01 || subcmd == 0x02) && len >= 14) {
+                        // 4-byte frame header + seq(1) + count(1) + unix ms(8)
+                        deviceMs = buf.getLong(p + 6);
+                        samplesOffset = 14;
+                        sampleCount = Math.min(buf.get(p + 5) & 0xFF, (len - 14) / SAMPLE_SIZE);
+                    } else if (cmd == 0x36 && subcmd == 0x11 && len >= 29) {
+                        // 4-byte frame header + 25-byte file packet header (timestamp at +17)
+                        deviceMs = buf.getLong(p + 21);
+                        samplesOffset = 29;
+                        sampleCount = (len - 29) / SAMPLE_SIZE;
+                    }
+                }
+                if (samplesOffset < 0) {
+                    line.setLength(0);
+                    line.append("# ").append(frame.type == TYPE_FILE_CHUNK ? "chunk" : "packet")
+                            .append(" [").append(frame.timestampMillis).append("] ");
+                    appendHex(line, buf, p, len);
+                    out.write(line.append('\n').toString());
+                    continue;
+                }
+                for (int i = 0; i < sampleCount; i++) {
+                    int o = p + samplesOffset + i * SAMPLE_SIZE;
+                    line.setLength(0);
+                    line.append(frame.timestampMillis).append(',').append(deviceMs).append(',').append(i);
+                    for (int c = 0; c < 3; c++) {
+                        line.append(',').append(buf.getInt(o + c * 4) & 0xFFFFFFFFL);
+                    }
+                    for (int c = 0; c < 9; c++) {
+                        line.append(',').append(buf.getShort(o + 12 + c * 2));
+                    }
+                    out.write(line.append('\n').toString());
+                    rows++;
+                }
+            }
+            if (reader.isTruncated()) {
+                out.write("# truncated at byte " + reader.getPosition() + "\n");
+            }
+        }
+        out.flush();
+        return rows;
+    }
+
+    private static void appendHex(StringBuilder sb, ByteBuffer buf, int offset, int length) {
+        final char[] digits = "0123456789ABCDEF".toCharArray();
+        for (int i = 0; i < length; i++) {
+            int b = buf.get(offset + i) & 0xFF;
+            sb.append(digits[b >>> 4]).append(digits[b & 0x0F]);
+        }
+    }
+}
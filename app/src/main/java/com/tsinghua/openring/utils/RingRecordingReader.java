@@ -0,0 +1,173 @@
+package com.tsinghua.openring.utils;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Sequential reader for {@link RingRecording} files.
+ * The file is memory-mapped; frames are exposed as offsets into the mapped buffer, so iterating
+ * does not copy or allocate. Reading stops at the first incomplete or corrupt frame, which is
+ * what a recording interrupted mid-write looks like.
+ */
+public class RingRecordingReader implements Closeable {
+
+    /**
+     * Reusable view of one frame; the payload is {@code buffer[payloadOffset, payloadOffset + payloadLength)}
+     */
+    public static final class Frame {
+        public int type;
+        public long timestampMillis;
+        public ByteBuffer buffer;
+        public int payloadOffset;
+        public int payloadLength;
+
+        public byte[] copyPayload() {
+            byte[] copy = new byte[payloadLength];
+            for (int i = 0; i < payloadLength; i++) {
+                copy[i] = buffer.get(payloadOffset + i);
+            }
+            return copy;
+        }
+    }
+
+    private final FileChannel channel;
+    private final MappedByteBuffer map;
+    private final ByteBuffer crcView;
+    private final CRC32 crc = new CRC32();
+    private final Map<String, String> header;
+    private final int dataStart;
+    private int position;
+    private boolean truncated = false;
+
+    public RingRecordingReader(File file) throws IOException {
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Recording too large: " + file);
+            }
+            map = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            map.order(ByteOrder.LITTLE_ENDIAN);
+            crcView = map.duplicate();
+            header = readHeader(file);
+            dataStart = map.position();
+            position = dataStart;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e instanceof IOException ? (IOException) e : new IOException("Invalid recording: " + file, e);
+        }
+    }
+
+    private Map<String, String> readHeader(File file) throws IOException {
+        try {
+            if (map.getInt() != RingRecording.MAGIC) {
+                throw new IOException("Not a ring recording: " + file);
+            }
+            int version = map.getShort() & 0xFFFF;
+            if (version != RingRecording.VERSION) {
+                throw new IOException("Unsupported recording version " + version + ": " + file);
+            }
+            int count = map.getShort() & 0xFFFF;
+            Map<String, String> entries = new LinkedHashMap<>();
+            for (int i = 0; i < count; i++) {
+                String key = readString();
+                entries.put(key, readString());
+            }
+            int end = map.position();
+            int expected = map.getInt();
+            if (expected != checksum(0, end)) {
+                throw new IOException("Recording header checksum mismatch: " + file);
+            }
+            return Collections.unmodifiableMap(entries);
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated recording header: " + file);
+        }
+    }
+
+    private String readString() {
+        int length = map.getShort() & 0xFFFF;
+        byte[] bytes = new byte[length];
+        map.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private int checksum(int from, int to) {
+        crcView.limit(to).position(from);
+        crc.reset();
+        crc.update(crcView);
+        return (int) crc.getValue();
+    }
+
+    public Map<String, String> getHeader() {
+        return header;
+    }
+
+    /**
+     * Advance to the next frame.
+     *
+     * @return false at the end of the recording, or at the first truncated / corrupt frame
+     */
+    public boolean next(Frame frame) {
+        int limit = map.limit();
+        if (position == limit) {
+            return false;
+        }
+        if (limit - position < RingRecording.FRAME_HEADER_SIZE + RingRecording.CRC_SIZE) {
+            truncated = true;
+            return false;
+        }
+        int type = map.get(position) & 0xFF;
+        int length = map.getInt(position + 1);
+        long payloadEnd = (long) position + RingRecording.FRAME_HEADER_SIZE + length;
+        if (length < 0 || payloadEnd + RingRecording.CRC_SIZE > limit) {
+            truncated = true;
+            return false;
+        }
+        if (map.getInt((int) payloadEnd) != checksum(position, (int) payloadEnd)) {
+            truncated = true;
+            return false;
+        }
+        frame.type = type;
+        frame.timestampMillis = map.getLong(position + 5);
+        frame.buffer = map;
+        frame.payloadOffset = position + RingRecording.FRAME_HEADER_SIZE;
+        frame.payloadLength = length;
+        position = (int) payloadEnd + RingRecording.CRC_SIZE;
+        return true;
+    }
+
+    /**
+     * True if reading stopped before the end of the file because of a damaged frame
+     */
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    /**
+     * Byte offset just past the last frame read (the valid length of the file after a full scan)
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    public long getDataStart() {
+        return dataStart;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,207 @@
+package com.tsinghua.openring.utils;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Writes {@link RingRecording} files.
+ * Frames are staged in one reused direct buffer and handed to the FileChannel when it fills up,
+ * at most {@link #FLUSH_INTERVAL_MS} after the previous write, or on {@link #flush()}/{@link #close()},
+ * so a 30-minute session costs a few large writes instead of one formatted line per sample.
+ * All methods are synchronized; packets and log messages may come from different threads.
+ */
+public class RingRecordingWriter implements Closeable {
+    static final int BUFFER_SIZE = 64 * 1024;
+    public static final long FLUSH_INTERVAL_MS = 1000;
+
+    private final File file;
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    private final byte[] frameHeader = new byte[RingRecording.FRAME_HEADER_SIZE];
+    private final ByteBuffer frameHeaderBuf = ByteBuffer.wrap(frameHeader).order(ByteOrder.LITTLE_ENDIAN);
+    private final CRC32 crc = new CRC32();
+    private long lastFlushNanos = System.nanoTime();
+    private long frameCount = 0;
+    private boolean closed = false;
+
+    private RingRecordingWriter(File file, FileChannel channel) {
+        this.file = file;
+        this.channel = channel;
+    }
+
+    /**
+     * Create (or overwrite) a recording with the given header entries
+     */
+    public static RingRecordingWriter create(File file, Map<String, String> header) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            writeHeader(channel, header);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        return new RingRecordingWriter(file, channel);
+    }
+
+    /**
+     * Continue an existing recording after its last intact frame, or create it if the file is
+     * missing or not a recording.
+     */
+    public static RingRecordingWriter openForAppend(File file, Map<String, String> header) throws IOException {
+        if (!RingRecording.isRecording(file)) {
+            return create(file, header);
+        }
+        long validEnd;
+        try (RingRecordingReader reader = new RingRecordingReader(file)) {
+            RingRecordingReader.Frame frame = new RingRecordingReader.Frame();
+            while (reader.next(frame)) {
+                // scan to the end of the intact frames
+            }
+            validEnd = reader.getPosition();
+        } catch (IOException e) {
+            return create(file, header);
+        }
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE);
+        try {
+            channel.truncate(validEnd);
+            channel.position(validEnd);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return new RingRecordingWriter(file, channel);
+    }
+
+    private static void writeHeader(FileChannel channel, Map<String, String> header) throws IOException {
+        if (header.size() > 0xFFFF) {
+            throw new IllegalArgumentException("Too many header entries: " + header.size());
+        }
+        int size = 4 + 2 + 2 + RingRecording.CRC_SIZE;
+        byte[][] encoded = new byte[header.size() * 2][];
+        int i = 0;
+        for (Map.Entry<String, String> entry : header.entrySet()) {
+            encoded[i] = utf8(entry.getKey());
+            encoded[i + 1] = utf8(String.valueOf(entry.getValue()));
+            size += 4 + encoded[i].length + encoded[i + 1].length;
+            i += 2;
+        }
+        ByteBuffer buf = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        buf.putInt(RingRecording.MAGIC)
+                .putShort((short) RingRecording.VERSION)
+                .putShort((short) header.size());
+        for (byte[] bytes : encoded) {
+            buf.putShort((short) bytes.length).put(bytes);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buf.array(), 0, buf.position());
+        buf.putInt((int) crc.getValue());
+        buf.flip();
+        while (buf.hasRemaining()) {
+            channel.write(buf);
+        }
+    }
+
+    private static byte[] utf8(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > 0xFFFF) {
+            throw new IllegalArgumentException("Header entry too long: " + bytes.length + " bytes");
+        }
+        return bytes;
+    }
+
+    /**
+     * Record one raw packet as received from the ring
+     */
+    public void writePacket(long timestampMillis, byte[] packet) throws IOException {
+        writeFrame(RingRecording.TYPE_PACKET, timestampMillis, packet, 0, packet.length);
+    }
+
+    public void writeLog(long timestampMillis, String message) throws IOException {
+        byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+        writeFrame(RingRecording.TYPE_LOG, timestampMillis, bytes, 0, bytes.length);
+    }
+
+    public synchronized void writeFrame(int type, long timestampMillis, byte[] data, int offset, int length)
+            throws IOException {
+        if (closed) {
+            throw new IOException("Recording closed: " + file);
+        }
+        frameHeaderBuf.clear();
+        frameHeaderBuf.put((byte) type).putInt(length).putLong(timestampMillis);
+        crc.reset();
+        crc.update(frameHeader, 0, frameHeader.length);
+        crc.update(data, offset, length);
+        int checksum = (int) crc.getValue();
+
+        int frameSize = RingRecording.FRAME_HEADER_SIZE + length + RingRecording.CRC_SIZE;
+        if (frameSize > buffer.remaining()) {
+            drain();
+        }
+        if (frameSize > buffer.capacity()) {
+            // Larger than the staging buffer: write the pieces directly
+            writeFully(ByteBuffer.wrap(frameHeader));
+            writeFully(ByteBuffer.wrap(data, offset, length));
+            buffer.putInt(checksum);
+        } else {
+            buffer.put(frameHeader).put(data, offset, length).putInt(checksum);
+        }
+        frameCount++;
+        if (System.nanoTime() - lastFlushNanos >= TimeUnit.MILLISECONDS.toNanos(FLUSH_INTERVAL_MS)) {
+            drain();
+        }
+    }
+
+    private void drain() throws IOException {
+        buffer.flip();
+        writeFully(buffer);
+        buffer.clear();
+        lastFlushNanos = System.nanoTime();
+    }
+
+    private void writeFully(ByteBuffer src) throws IOException {
+        while (src.hasRemaining()) {
+            channel.write(src);
+        }
+    }
+
+    /**
+     * Hand buffered frames to the file
+     */
+    public synchronized void flush() throws IOException {
+        if (!closed) {
+            drain();
+        }
+    }
+
+    public synchronized long getFrameCount() {
+        return frameCount;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            drain();
+            channel.force(false);
+        } finally {
+            closed = true;
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.tsinghua.openring.utils;
+
+/**
+ * Samples of one realtime waveform frame, stored as one primitive array per channel.
+ * Instances are reused from frame to frame: subscribers must copy what they need before returning.
+ */
+public final class SampleBlock {
+    /**
+     * Upper bound of samples decoded from one frame
+     */
+    public static final int MAX_SAMPLES = 20;
+
+    /**
+     * Receives each decoded block once, on the BLE notification thread
+     */
+    public interface Subscriber {
+        void onSampleBlock(SampleBlock block);
+    }
+
+    public int count;
+    public int sequence;
+    public long frameTimestampMs;   // ring clock (unix ms) of the first sample
+    public long receivedAtMs;       // phone clock when the frame arrived
+
+    // PPG channels are uint32 on the wire
+    public final long[] green = new long[MAX_SAMPLES];
+    public final long[] red = new long[MAX_SAMPLES];
+    public final long[] ir = new long[MAX_SAMPLES];
+
+    public final short[] accX = new short[MAX_SAMPLES];
+    public final short[] accY = new short[MAX_SAMPLES];
+    public final short[] accZ = new short[MAX_SAMPLES];
+    public final short[] gyroX = new short[MAX_SAMPLES];
+    public final short[] gyroY = new short[MAX_SAMPLES];
+    public final short[] gyroZ = new short[MAX_SAMPLES];
+    public final short[] temp0 = new short[MAX_SAMPLES];
+    public final short[] temp1 = new short[MAX_SAMPLES];
+    public final short[] temp2 = new short[MAX_SAMPLES];
+
+    public void clear() {
+        count = 0;
+        sequence = 0;
+        frameTimestampMs = 0;
+        receivedAtMs = 0;
+    }
+}
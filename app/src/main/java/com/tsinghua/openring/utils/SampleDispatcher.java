@@ -0,0 +1,107 @@
+package com.tsinghua.openring.utils;
+
+import com.tsinghua.openring.inference.ModelInferenceManager;
+
+/**
+ * Routes ring notifications that carry samples and hands decoded blocks to the vital signs processor
+ * and the inference manager. NotificationHandler uses it for the live stream and SessionReplayer for
+ * recordings, so a replay feeds the pipeline through exactly the same code as the ring.
+ *
+ * Each dispatcher owns one decoder and one reused {@link SampleBlock}; it is not thread-safe, callers
+ * decode and deliver from one thread at a time.
+ */
+final class SampleDispatcher {
+    static final int CMD_FILE = 0x36;
+    static final int CMD_REALTIME = 0x3C;
+    static final int SUBCMD_WAVEFORM = 0x01;
+    static final int SUBCMD_STANDARD_WAVEFORM = 0x02;
+    static final int SUBCMD_FILE_DATA = 0x11;
+    // 0x3C/0x01 packets up to this length carry the measurement start time instead of samples
+    static final int START_TIMESTAMP_PACKET_LENGTH = 13;
+
+    // Kinds of packets returned by classify()
+    static final int PACKET_OTHER = 0;
+    static final int PACKET_WAVEFORM = 1;
+    static final int PACKET_FILE_DATA = 2;
+
+    final SampleBlock block = new SampleBlock();
+    private final RealtimeFrameDecoder decoder = new RealtimeFrameDecoder();
+
+    private volatile VitalSignsProcessor processor;
+    private volatile ModelInferenceManager inferenceManager;
+
+    /**
+     * Which kind of samples the first {@code length} bytes of {@code packet} carry, if any
+     */
+    static int classify(byte[] packet, int length) {
+        if (length < RealtimeFrameDecoder.FRAME_HEADER_SIZE) {
+            return PACKET_OTHER;
+        }
+        int cmd = packet[2] & 0xFF;
+        int subcmd = packet[3] & 0xFF;
+        if (cmd == CMD_REALTIME) {
+            if (subcmd == SUBCMD_WAVEFORM) {
+                return length > START_TIMESTAMP_PACKET_LENGTH ? PACKET_WAVEFORM : PACKET_OTHER;
+            }
+            if (subcmd == SUBCMD_STANDARD_WAVEFORM) {
+                return PACKET_WAVEFORM;
+            }
+        } else if (cmd == CMD_FILE && subcmd == SUBCMD_FILE_DATA) {
+            return PACKET_FILE_DATA;
+        }
+        return PACKET_OTHER;
+    }
+
+    void setProcessor(VitalSignsProcessor processor) {
+        this.processor = processor;
+    }
+
+    VitalSignsProcessor getProcessor() {
+        return processor;
+    }
+
+    void setInferenceManager(ModelInferenceManager manager) {
+        inferenceManager = manager;
+    }
+
+    ModelInferenceManager getInferenceManager() {
+        return inferenceManager;
+    }
+
+    /**
+     * Decode a waveform packet into {@link #block}
+     *
+     * @return Number of samples, or -1 if the frame is incomplete
+     */
+    int decodeWaveform(byte[] packet, int length) {
+        return decoder.decode(packet, length, block);
+    }
+
+    /**
+     * Decode up to {@link SampleBlock#MAX_SAMPLES} samples of a file data payload into {@link #block}
+     *
+     * @see RealtimeFrameDecoder#decodeFileData
+     */
+    int decodeFileData(byte[] data, int offset, int length, int firstSample) {
+        return decoder.decodeFileData(data, offset, length, firstSample, block);
+    }
+
+    /**
+     * Hand {@link #block} to the processor and the inference manager. Inference is aligned on the
+     * ring timestamp from the frame header, live and in replays alike.
+     *
+     * @param processorTimestampMs Time the processor stamps its heart rate updates with
+     */
+    void deliver(long processorTimestampMs) {
+        SampleBlock b = block;
+        int n = b.count;
+        VitalSignsProcessor p = processor;
+        if (p != null) {
+            p.onSensorBlock(b.green, b.ir, b.accX, b.accY, b.accZ, n, processorTimestampMs);
+        }
+        ModelInferenceManager manager = inferenceManager;
+        if (manager != null) {
+            manager.onSensorBlock(b.green, b.red, b.ir, b.accX, b.accY, b.accZ, n, b.frameTimestampMs);
+        }
+    }
+}
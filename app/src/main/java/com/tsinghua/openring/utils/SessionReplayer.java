@@ -0,0 +1,435 @@
+package com.tsinghua.openring.utils;
+
+import android.util.Log;
+
+import com.tsinghua.openring.inference.ModelInferenceManager;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Replays recorded sessions through the sample pipeline as fast as possible.
+ *
+ * Supported inputs:
+ * <ul>
+ * <li>{@link RingRecording} files: MainSession_*.bin (realtime waveform packets) and
+ * BatchDownloads/*.bin (file data chunks)</li>
+ * <li>Legacy text files: MainSession_*.txt ("Realtime data point: Green=..." log lines) and
+ * downloads saved as "# Raw data: HEX" packet dumps</li>
+ * </ul>
+ * Packets are routed, decoded and handed to a fresh {@link VitalSignsProcessor} and to the inference
+ * manager by the same {@link SampleDispatcher} NotificationHandler uses live, with the ring timestamps
+ * from the packets. Inference runs
+ * synchronously during a replay so no window is dropped, and every result is stamped with the ring
+ * time of its window.
+ *
+ * To include model results, create the {@link ModelInferenceManager} with this replayer as its
+ * listener, init() it and pass it to {@link #setInferenceManager}; without a manager only decoding
+ * and the processor run, which is enough to measure pipeline throughput without models.
+ * A replayer runs one replay at a time.
+ */
+public class SessionReplayer implements ModelInferenceManager.Listener {
+    private static final String TAG = "SessionReplayer";
+
+    // Realtime and stored samples are 25 Hz
+    static final long SAMPLE_INTERVAL_MS = 40;
+
+    /**
+     * One value of a series
+     */
+    public static final class Measurement {
+        public final long timestampMs;  // ring clock, 0 if the recording has none
+        public final int value;
+
+        Measurement(long timestampMs, int value) {
+            this.timestampMs = timestampMs;
+            this.value = value;
+        }
+    }
+
+    /**
+     * Series and throughput of a replay
+     */
+    public static final class Result {
+        public final Map<ModelInferenceManager.Mission, List<Measurement>> series =
+                new EnumMap<>(ModelInferenceManager.Mission.class);
+        public final List<Measurement> processorHeartRate = new ArrayList<>();
+        public int files;
+        public long samples;
+        public long elapsedNanos;
+
+        Result() {
+            for (ModelInferenceManager.Mission mission : ModelInferenceManager.Mission.values()) {
+                series.put(mission, new ArrayList<>());
+            }
+        }
+
+        public List<Measurement> getSeries(ModelInferenceManager.Mission mission) {
+            return Collections.unmodifiableList(series.get(mission));
+        }
+
+        public double getSamplesPerSecond() {
+            return elapsedNanos > 0 ? samples * 1e9 / elapsedNanos : 0;
+        }
+
+        /**
+         * Write all series as "timestamp_ms,metric,value" rows; the processor heart rate is metric "HR_PPG"
+         */
+        public void writeCsv(Writer out) throws IOException {
+            out.write("timestamp_ms,metric,value\n");
+            for (Map.Entry<ModelInferenceManager.Mission, List<Measurement>> entry : series.entrySet()) {
+                writeRows(out, entry.getKey().name(), entry.getValue());
+            }
+            writeRows(out, "HR_PPG", processorHeartRate);
+            out.flush();
+        }
+
+        private static void writeRows(Writer out, String metric, List<Measurement> rows) throws IOException {
+            for (Measurement m : rows) {
+                out.write(m.timestampMs + "," + metric + "," + m.value + "\n");
+            }
+        }
+    }
+
+    public interface Callback {
+        default void onFileStarted(File file, int index, int total) {}
+        void onComplete(Result result);
+        void onError(Exception e);
+    }
+
+    // Legacy session log line written once per sample by NotificationHandler
+    private static final Pattern LEGACY_SAMPLE = Pattern.compile(
+            "Realtime data point: Green=(\\d+), Red=(\\d+), IR=(\\d+), AccX=(-?\\d+), AccY=(-?\\d+), AccZ=(-?\\d+)"
+                    + "(?:, GyroX=(-?\\d+), GyroY=(-?\\d+), GyroZ=(-?\\d+), Temp0=(-?\\d+), Temp1=(-?\\d+), Temp2=(-?\\d+))?");
+    private static final Pattern LEGACY_TIME = Pattern.compile("^\\[(\\d{4}-\\d{2}-\\d{2} \\d{2}:\\d{2}:\\d{2}\\.\\d{3})]");
+    private static final DateTimeFormatter LEGACY_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS");
+    private static final String RAW_DATA_PREFIX = "# Raw data: ";
+
+    private final SampleDispatcher dispatcher = new SampleDispatcher();
+    private final SampleBlock block = dispatcher.block;
+    private byte[] scratch = new byte[256];
+
+    private volatile ModelInferenceManager inferenceManager;
+    private Result result;
+    private long lastSampleTimestampMs;
+
+    public void setInferenceManager(ModelInferenceManager manager) {
+        inferenceManager = manager;
+    }
+
+    /**
+     * Replay the files in order on a background thread; the callback is invoked on that thread
+     */
+    public void replayAsync(List<File> files, Callback callback) {
+        List<File> copy = new ArrayList<>(files);
+        Thread thread = new Thread(() -> {
+            try {
+                Result r = replay(copy, callback);
+                Log.i(TAG, String.format(Locale.US, "Replayed %d files, %d samples in %d ms (%.0f samples/s)",
+                        r.files, r.samples, r.elapsedNanos / 1_000_000, r.getSamplesPerSecond()));
+                callback.onComplete(r);
+            } catch (Exception e) {
+                Log.e(TAG, "Replay failed", e);
+                callback.onError(e);
+            }
+        }, TAG);
+        thread.setPriority(Thread.NORM_PRIORITY - 1);
+        thread.start();
+    }
+
+    /**
+     * Replay the files in order on the calling thread. Each file starts with cleared windows and histories.
+     */
+    public synchronized Result replay(List<File> files, Callback callback) throws IOException {
+        result = new Result();
+        ModelInferenceManager manager = inferenceManager;
+        dispatcher.setInferenceManager(manager);
+        if (manager != null) {
+            // Models load in the background; a replay must see the same missions from the first window
+            manager.whenAllReady().join();
+            manager.setSynchronousInference(true);
+        }
+        long start = System.nanoTime();
+        try {
+            for (int i = 0; i < files.size(); i++) {
+                File file = files.get(i);
+                if (callback != null) {
+                    callback.onFileStarted(file, i, files.size());
+                }
+                replayFile(file, manager);
+                result.files++;
+            }
+        } finally {
+            result.elapsedNanos = System.nanoTime() - start;
+            if (manager != null) {
+                manager.setSynchronousInference(false);
+            }
+        }
+        return result;
+    }
+
+    public Result replay(File file) throws IOException {
+        return replay(Collections.singletonList(file), null);
+    }
+
+    private void replayFile(File file, ModelInferenceManager manager) throws IOException {
+        dispatcher.setProcessor(new VitalSignsProcessor(new VitalSignsProcessor.VitalSignsCallback() {
+            @Override
+            public void onHeartRateUpdate(int heartRate) {
+                result.processorHeartRate.add(new Measurement(lastSampleTimestampMs, heartRate));
+            }
+
+            @Override
+            public void onSignalQualityUpdate(VitalSignsProcessor.SignalQuality quality) {
+                ModelInferenceManager m = inferenceManager;
+                if (m != null) {
+                    m.updateSignalQuality(quality);
+                }
+            }
+        }));
+        if (manager != null) {
+            manager.reset();
+        }
+        lastSampleTimestampMs = 0;
+        if (RingRecording.isRecording(file)) {
+            replayRecording(file);
+        } else {
+            replayText(file);
+        }
+    }
+
+    private void replayRecording(File file) throws IOException {
+        try (RingRecordingReader reader = new RingRecordingReader(file)) {
+            RingRecordingReader.Frame frame = new RingRecordingReader.Frame();
+            while (reader.next(frame)) {
+                if (frame.type != RingRecording.TYPE_PACKET && frame.type != RingRecording.TYPE_FILE_CHUNK) {
+                    continue;
+                }
+                int length = frame.payloadLength;
+                if (scratch.length < length) {
+                    scratch = new byte[Math.max(length, scratch.length * 2)];
+                }
+                for (int i = 0; i < length; i++) {
+                    scratch[i] = frame.buffer.get(frame.payloadOffset + i);
+                }
+                if (frame.type == RingRecording.TYPE_FILE_CHUNK) {
+                    replayFileData(scratch, 0, length);
+                } else {
+                    replayPacket(scratch, length);
+                }
+            }
+            if (reader.isTruncated()) {
+                Log.w(TAG, "Recording truncated at byte " + reader.getPosition() + ": " + file.getName());
+            }
+        }
+    }
+
+    /**
+     * Route a whole notification: realtime waveform frames and file data pushes carry samples
+     */
+    private void replayPacket(byte[] packet, int length) {
+        switch (SampleDispatcher.classify(packet, length)) {
+            case SampleDispatcher.PACKET_WAVEFORM:
+                if (dispatcher.decodeWaveform(packet, length) > 0) {
+                    deliver();
+                }
+                break;
+            case SampleDispatcher.PACKET_FILE_DATA:
+                int header = RealtimeFrameDecoder.FRAME_HEADER_SIZE;
+                replayFileData(packet, header, length - header);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void replayFileData(byte[] data, int offset, int length) {
+        int total = RealtimeFrameDecoder.fileSampleCount(length);
+        for (int first = 0; first < total; first += SampleBlock.MAX_SAMPLES) {
+            if (dispatcher.decodeFileData(data, offset, length, first) <= 0) {
+                return;
+            }
+            if (block.frameTimestampMs > 0) {
+                block.frameTimestampMs += first * SAMPLE_INTERVAL_MS;
+            }
+            deliver();
+        }
+    }
+
+    private void replayText(File file) throws IOException {
+        boolean batchFile = false;
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(
+                new FileInputStream(file), StandardCharsets.UTF_8), 64 * 1024)) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.startsWith(RAW_DATA_PREFIX)) {
+                    flushLegacySamples();
+                    int length = parseHex(line, RAW_DATA_PREFIX.length());
+                    if (length < 0) {
+                        continue;
+                    }
+                    // Batch downloads stored the payload without the 4-byte frame header
+                    if (batchFile) {
+                        replayFileData(scratch, 0, length);
+                    } else {
+                        replayPacket(scratch, length);
+                    }
+                } else if (line.startsWith("# ========== Hardware Batch Download File")) {
+                    batchFile = true;
+                } else {
+                    Matcher m = LEGACY_SAMPLE.matcher(line);
+                    if (m.find()) {
+                        addLegacySample(line, m);
+                    } else {
+                        flushLegacySamples();
+                    }
+                }
+            }
+        }
+        flushLegacySamples();
+    }
+
+    /**
+     * Legacy logs have one line per sample and only the phone time. The samples of one notification
+     * were logged back to back, so consecutive lines within half a sample interval of each other are
+     * grouped back into a block stamped with the log time of its first sample.
+     */
+    private void addLegacySample(String line, Matcher m) {
+        long time = parseLegacyTime(line);
+        if (block.count > 0 && Math.abs(time - block.frameTimestampMs) >= SAMPLE_INTERVAL_MS / 2) {
+            flushLegacySamples();
+        }
+        int i = block.count;
+        if (i == 0) {
+            block.frameTimestampMs = time;
+            block.sequence = 0;
+        }
+        block.green[i] = Long.parseLong(m.group(1));
+        block.red[i] = Long.parseLong(m.group(2));
+        block.ir[i] = Long.parseLong(m.group(3));
+        block.accX[i] = Short.parseShort(m.group(4));
+        block.accY[i] = Short.parseShort(m.group(5));
+        block.accZ[i] = Short.parseShort(m.group(6));
+        block.gyroX[i] = m.group(7) != null ? Short.parseShort(m.group(7)) : 0;
+        block.gyroY[i] = m.group(8) != null ? Short.parseShort(m.group(8)) : 0;
+        block.gyroZ[i] = m.group(9) != null ? Short.parseShort(m.group(9)) : 0;
+        block.temp0[i] = m.group(10) != null ? Short.parseShort(m.group(10)) : 0;
+        block.temp1[i] = m.group(11) != null ? Short.parseShort(m.group(11)) : 0;
+        block.temp2[i] = m.group(12) != null ? Short.parseShort(m.group(12)) : 0;
+        block.count = i + 1;
+        if (block.count == SampleBlock.MAX_SAMPLES) {
+            flushLegacySamples();
+        }
+    }
+
+    private void flushLegacySamples() {
+        if (block.count > 0) {
+            deliver();
+        }
+    }
+
+    private static long parseLegacyTime(String line) {
+        Matcher m = LEGACY_TIME.matcher(line);
+        if (!m.find()) {
+            return 0;
+        }
+        try {
+            return LocalDateTime.parse(m.group(1), LEGACY_TIME_FORMAT)
+                    .atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Parse hex digits starting at {@code from} into {@link #scratch}
+     *
+     * @return Number of bytes, or -1 if the text is not valid hex
+     */
+    private int parseHex(String line, int from) {
+        int end = line.length();
+        while (end > from && Character.isWhitespace(line.charAt(end - 1))) {
+            end--;
+        }
+        int digits = end - from;
+        if (digits <= 0 || digits % 2 != 0) {
+            return -1;
+        }
+        int length = digits / 2;
+        if (scratch.length < length) {
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+        }
+        for (int i = 0; i < length; i++) {
+            int hi = Character.digit(line.charAt(from + 2 * i), 16);
+            int lo = Character.digit(line.charAt(from + 2 * i + 1), 16);
+            if (hi < 0 || lo < 0) {
+                return -1;
+            }
+            scratch[i] = (byte) (hi << 4 | lo);
+        }
+        return length;
+    }
+
+    /**
+     * Hand the block to the processor and inference manager; without a phone receive time the
+     * processor is stamped with ring time as well
+     */
+    private void deliver() {
+        int n = block.count;
+        long timestamp = block.frameTimestampMs;
+        lastSampleTimestampMs = timestamp > 0 ? timestamp + (n - 1) * SAMPLE_INTERVAL_MS : 0;
+        dispatcher.deliver(timestamp);
+        result.samples += n;
+        block.count = 0;
+    }
+
+    // ModelInferenceManager.Listener: called on the inference thread while the replay thread waits
+
+    private void addPrediction(ModelInferenceManager.Mission mission, int value) {
+        ModelInferenceManager manager = inferenceManager;
+        long timestamp = manager != null ? manager.getLastWindowTimestampMs() : 0;
+        result.series.get(mission).add(new Measurement(timestamp, value));
+    }
+
+    @Override
+    public void onHrPredicted(int bpm) {
+        addPrediction(ModelInferenceManager.Mission.HR, bpm);
+    }
+
+    @Override
+    public void onBpSysPredicted(int mmHg) {
+        addPrediction(ModelInferenceManager.Mission.BP_SYS, mmHg);
+    }
+
+    @Override
+    public void onBpDiaPredicted(int mmHg) {
+        addPrediction(ModelInferenceManager.Mission.BP_DIA, mmHg);
+    }
+
+    @Override
+    public void onSpo2Predicted(int percent) {
+        addPrediction(ModelInferenceManager.Mission.SPO2, percent);
+    }
+
+    @Override
+    public void onRrPredicted(int brpm) {
+        addPrediction(ModelInferenceManager.Mission.RR, brpm);
+    }
+}
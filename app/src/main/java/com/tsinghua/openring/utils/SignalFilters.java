@@ -1,119 +1,76 @@
 package com.tsinghua.openring.utils;
 
-import java.util.Arrays;
-
 /**
- * Signal processing filters for physiological signals
+ * Signal processing filters for physiological signals.
+ *
+ * Each filter is a Butterworth band-pass built from biquad sections. {@code create(fs)} returns a
+ * streaming instance for sample-by-sample use at any rate; {@code filter(signal)} applies the
+ * zero-phase (forward-backward) version to a whole window sampled at {@link #DEFAULT_FS}.
  */
 public class SignalFilters {
 
+    public static final double DEFAULT_FS = 100.0;
+    private static final int ORDER = 3;
+
     /**
-     * Butterworth filter coefficients for respiratory rate
-     * Designed for fs=100Hz, order=3, [0.067, 0.5] Hz passband
+     * Butterworth filter for respiratory rate
+     * order=3, [0.067, 0.5] Hz passband
      * Equivalent to [4, 30] breaths per minute
      */
     public static class RespiratoryRateFilter {
-        // These coefficients should be calculated using signal processing tools
-        // For now, using a simple moving average as placeholder
-        // TODO: Implement proper Butterworth filter coefficients
+        public static final double LOW_HZ = 0.067;
+        public static final double HIGH_HZ = 0.5;
 
-        private static final int WINDOW_SIZE = 300; // 3 seconds at 100Hz
+        private static final BiquadFilter DEFAULT = create(DEFAULT_FS);
+
+        /**
+         * Streaming filter designed for the given sample rate
+         */
+        public static BiquadFilter create(double fs) {
+            return BiquadFilter.butterworthBandpass(ORDER, LOW_HZ, HIGH_HZ, fs);
+        }
 
         /**
-         * Apply respiratory rate bandpass filter
+         * Apply respiratory rate bandpass filter (zero-phase, fs=100Hz)
          * @param signal Input signal
          * @return Filtered signal
          */
         public static float[] filter(float[] signal) {
-            if (signal == null || signal.length < WINDOW_SIZE) {
+            if (signal == null || signal.length < 2) {
                 return signal;
             }
-
-            // Simple moving average as placeholder
-            // This removes high-frequency noise but doesn't implement proper bandpass
-            float[] filtered = new float[signal.length];
-
-            for (int i = 0; i < signal.length; i++) {
-                int startIdx = Math.max(0, i - WINDOW_SIZE/2);
-                int endIdx = Math.min(signal.length, i + WINDOW_SIZE/2);
-
-                float sum = 0;
-                for (int j = startIdx; j < endIdx; j++) {
-                    sum += signal[j];
-                }
-                filtered[i] = sum / (endIdx - startIdx);
-            }
-
-            // Apply high-pass to remove DC component
-            float mean = 0;
-            for (float v : filtered) {
-                mean += v;
-            }
-            mean /= filtered.length;
-
-            for (int i = 0; i < filtered.length; i++) {
-                filtered[i] -= mean;
-            }
-
-            return filtered;
+            return DEFAULT.filtfilt(signal);
         }
     }
 
     /**
-     * Butterworth filter coefficients for heart rate / BP / SpO2
-     * Designed for fs=100Hz, order=3, [0.5, 3] Hz passband
+     * Butterworth filter for heart rate / BP / SpO2
+     * order=3, [0.5, 3] Hz passband
      * Equivalent to [30, 180] beats per minute
      */
     public static class PhysiologicalSignalFilter {
-        private static final int WINDOW_SIZE = 50; // 0.5 seconds at 100Hz
+        public static final double LOW_HZ = 0.5;
+        public static final double HIGH_HZ = 3.0;
+
+        private static final BiquadFilter DEFAULT = create(DEFAULT_FS);
 
         /**
-         * Apply bandpass filter for HR/BP/SpO2 signals
+         * Streaming filter designed for the given sample rate
+         */
+        public static BiquadFilter create(double fs) {
+            return BiquadFilter.butterworthBandpass(ORDER, LOW_HZ, HIGH_HZ, fs);
+        }
+
+        /**
+         * Apply bandpass filter for HR/BP/SpO2 signals (zero-phase, fs=100Hz)
          * @param signal Input signal
          * @return Filtered signal
          */
         public static float[] filter(float[] signal) {
-            if (signal == null || signal.length < WINDOW_SIZE) {
+            if (signal == null || signal.length < 2) {
                 return signal;
             }
-
-            // Simple moving average to remove high frequency noise
-            float[] filtered = new float[signal.length];
-
-            // First pass - moving average (low-pass)
-            for (int i = 0; i < signal.length; i++) {
-                int startIdx = Math.max(0, i - WINDOW_SIZE/2);
-                int endIdx = Math.min(signal.length, i + WINDOW_SIZE/2);
-
-                float sum = 0;
-                for (int j = startIdx; j < endIdx; j++) {
-                    sum += signal[j];
-                }
-                filtered[i] = sum / (endIdx - startIdx);
-            }
-
-            // Second pass - remove DC component (high-pass at 0.5 Hz)
-            // Calculate trend using larger window
-            int trendWindow = 200; // 2 seconds at 100Hz
-            float[] trend = new float[signal.length];
-
-            for (int i = 0; i < signal.length; i++) {
-                int startIdx = Math.max(0, i - trendWindow/2);
-                int endIdx = Math.min(signal.length, i + trendWindow/2);
-
-                float sum = 0;
-                for (int j = startIdx; j < endIdx; j++) {
-                    sum += filtered[j];
-                }
-                trend[i] = sum / (endIdx - startIdx);
-            }
-
-            // Subtract trend to get bandpass filtered signal
-            for (int i = 0; i < signal.length; i++) {
-                filtered[i] -= trend[i];
-            }
-
-            return filtered;
+            return DEFAULT.filtfilt(signal);
         }
     }
 }
@@ -0,0 +1,167 @@
+package com.tsinghua.openring.utils;
+
+/**
+ * Fixed-length sliding window with O(1) amortised min/max/mean/variance.
+ *
+ * Min and max are tracked with monotonic deques of sample sequence numbers; mean and variance come
+ * from a running sum and sum of squares, which are recomputed from the window once per wrap to keep
+ * floating-point drift bounded. Samples are stored as primitive doubles, nothing is boxed or
+ * allocated after construction. Not thread-safe.
+ */
+public class SlidingWindowStats {
+    private final double[] values;
+    private int head = 0;          // index where the next sample is written
+    private int size = 0;
+    private long count = 0;        // sequence number of the next sample
+
+    private double sum = 0;
+    private double sumSq = 0;
+
+    // Monotonic deques (ring-based) of sequence numbers: values increasing for min, decreasing for max
+    private final long[] minDeque;
+    private int minHead = 0, minSize = 0;
+    private final long[] maxDeque;
+    private int maxHead = 0, maxSize = 0;
+
+    public SlidingWindowStats(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        values = new double[capacity];
+        minDeque = new long[capacity];
+        maxDeque = new long[capacity];
+    }
+
+    /**
+     * Append a sample, evicting the oldest one when the window is full
+     */
+    public void add(double value) {
+        int capacity = values.length;
+        if (size == capacity) {
+            double evicted = values[head];
+            sum -= evicted;
+            sumSq -= evicted * evicted;
+        } else {
+            size++;
+        }
+        values[head] = value;
+        sum += value;
+        sumSq += value * value;
+        long seq = count++;
+        head++;
+        if (head == capacity) {
+            head = 0;
+            recomputeSums();
+        }
+
+        // Drop sequence numbers that left the window
+        long oldest = count - size;
+        if (minSize > 0 && minDeque[minHead] < oldest) {
+            minHead = (minHead + 1) % capacity;
+            minSize--;
+        }
+        if (maxSize > 0 && maxDeque[maxHead] < oldest) {
+            maxHead = (maxHead + 1) % capacity;
+            maxSize--;
+        }
+
+        // Pop dominated samples from the back, then push this one
+        while (minSize > 0 && valueAt(minDeque[(minHead + minSize - 1) % capacity]) >= value) {
+            minSize--;
+        }
+        minDeque[(minHead + minSize) % capacity] = seq;
+        minSize++;
+
+        while (maxSize > 0 && valueAt(maxDeque[(maxHead + maxSize - 1) % capacity]) <= value) {
+            maxSize--;
+        }
+        maxDeque[(maxHead + maxSize) % capacity] = seq;
+        maxSize++;
+    }
+
+    private double valueAt(long seq) {
+        return values[(int) (seq % values.length)];
+    }
+
+    private void recomputeSums() {
+        double s = 0, sq = 0;
+        for (int i = 0; i < size; i++) {
+            double v = values[i];
+            s += v;
+            sq += v * v;
+        }
+        sum = s;
+        sumSq = sq;
+    }
+
+    /**
+     * Get the i-th sample in the window, 0 being the oldest
+     */
+    public double get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of range [0, " + size + ")");
+        }
+        return valueAt(count - size + index);
+    }
+
+    public double min() {
+        return minSize == 0 ? Double.NaN : valueAt(minDeque[minHead]);
+    }
+
+    public double max() {
+        return maxSize == 0 ? Double.NaN : valueAt(maxDeque[maxHead]);
+    }
+
+    public double range() {
+        return max() - min();
+    }
+
+    public double sum() {
+        return sum;
+    }
+
+    public double mean() {
+        return size == 0 ? Double.NaN : sum / size;
+    }
+
+    /**
+     * Population variance of the samples in the window
+     */
+    public double variance() {
+        if (size == 0) {
+            return Double.NaN;
+        }
+        double mean = sum / size;
+        return Math.max(0.0, sumSq / size - mean * mean);
+    }
+
+    public double stdDev() {
+        return Math.sqrt(variance());
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return values.length;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean isFull() {
+        return size == values.length;
+    }
+
+    public void clear() {
+        head = 0;
+        size = 0;
+        count = 0;
+        sum = 0;
+        sumSq = 0;
+        minHead = minSize = 0;
+        maxHead = maxSize = 0;
+    }
+}
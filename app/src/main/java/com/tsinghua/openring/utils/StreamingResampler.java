@@ -0,0 +1,59 @@
+package com.tsinghua.openring.utils;
+
+/**
+ * Incremental linear-interpolation resampler.
+ * Each input sample produces the output samples that fall between it and the previous input,
+ * so a window can be kept at the output rate as data arrives instead of being resampled as a whole.
+ * Output k lies at input position k * inFs / outFs, the same grid as resampling a full window that
+ * starts at the first input sample. Not thread-safe.
+ */
+public class StreamingResampler {
+    private final double step;      // input samples per output sample
+    private final int maxOutputs;
+    private double phase = 0.0;     // position of the next output, relative to the previous input
+    private float previous;
+    private boolean hasPrevious = false;
+
+    public StreamingResampler(double inFs, double outFs) {
+        if (!(inFs > 0) || !(outFs > 0)) {
+            throw new IllegalArgumentException("Sample rates must be positive: " + inFs + " -> " + outFs);
+        }
+        this.step = inFs / outFs;
+        this.maxOutputs = (int) Math.ceil(outFs / inFs);
+    }
+
+    /**
+     * Upper bound of outputs produced by one {@link #push} call; size the output buffer with it
+     */
+    public int maxOutputsPerSample() {
+        return maxOutputs;
+    }
+
+    /**
+     * Feed one input sample.
+     *
+     * @param x   Input sample
+     * @param out Receives the produced output samples, starting at out[0]
+     * @return Number of output samples written (0 for the very first input)
+     */
+    public int push(float x, float[] out) {
+        if (!hasPrevious) {
+            previous = x;
+            hasPrevious = true;
+            return 0;
+        }
+        int count = 0;
+        while (phase < 1.0 && count < out.length) {
+            out[count++] = (float) (previous + (x - previous) * phase);
+            phase += step;
+        }
+        phase -= 1.0;
+        previous = x;
+        return count;
+    }
+
+    public void reset() {
+        phase = 0.0;
+        hasPrevious = false;
+    }
+}
@@ -0,0 +1,133 @@
+package com.tsinghua.openring.utils;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Streaming encodings for uploads: content digest of a file and gzip of a file region.
+ *
+ * Both read the file through one fixed buffer and never hold more than that in memory or write a temp
+ * copy, so they are safe on multi-hundred-MB session recordings. The binary .bin recordings hold noisy
+ * sensor samples and compress far less than the legacy hex-text MainSession_*.txt logs; the savings come
+ * mostly from timestamps, frame headers and the slowly varying high bytes of each sample.
+ */
+public final class UploadCodec {
+    static final int BUFFER_SIZE = 64 * 1024;
+    // 上传时 CPU 与流量的折中：级别 3 的压缩率接近默认级别 6，速度约快一倍
+    static final int GZIP_LEVEL = 3;
+
+    private UploadCodec() {
+    }
+
+    /**
+     * Lower-case hex SHA-256 of the whole file
+     */
+    public static String sha256(File file) throws IOException {
+        MessageDigest digest = newSha256();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try (InputStream in = new FileInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Write {@code length} bytes of {@code file} from {@code offset} to {@code out} as one complete gzip
+     * member. {@code out} is flushed but not closed.
+     *
+     * @return Number of compressed bytes written to {@code out}
+     */
+    public static long gzipRegion(File file, long offset, long length, OutputStream out) throws IOException {
+        CountingOutputStream counted = new CountingOutputStream(out);
+        // 关闭 gzip 流会释放 Deflater 并写出尾部，但 CountingOutputStream 不会关闭 out
+        try (GZIPOutputStream gzip = new GZIPOutputStream(counted, BUFFER_SIZE) {
+            {
+                def.setLevel(GZIP_LEVEL);
+            }
+        }) {
+            copyRegion(file, offset, length, gzip);
+        }
+        return counted.count;
+    }
+
+    /**
+     * Write {@code length} bytes of {@code file} from {@code offset} to {@code out} unchanged
+     */
+    public static void copyRegion(File file, long offset, long length, OutputStream out) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            raf.seek(offset);
+            byte[] buffer = new byte[BUFFER_SIZE];
+            long remaining = length;
+            while (remaining > 0) {
+                int read = raf.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (read < 0) {
+                    throw new EOFException(file.getName() + " is shorter than expected");
+                }
+                out.write(buffer, 0, read);
+                remaining -= read;
+            }
+        }
+    }
+
+    /**
+     * New SHA-256 digest; shared by the upload and model-asset code
+     */
+    public static MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);  // every Android and JVM runtime provides SHA-256
+        }
+    }
+
+    /**
+     * Lower-case hex of {@code bytes}
+     */
+    public static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Pass-through stream that counts bytes; {@link #close} does not close the wrapped stream
+     */
+    private static final class CountingOutputStream extends FilterOutputStream {
+        long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+}
@@ -0,0 +1,478 @@
+package com.tsinghua.openring.utils;
+
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Upload status of local data files, kept in one append-only log instead of a SharedPreferences key
+ * per path.
+ *
+ * Every change appends one line, so a status update costs O(1) regardless of how many files are
+ * tracked. The log is replayed into memory when opened and compacted (rewritten with only the live
+ * entries, then renamed into place) once superseded lines outnumber live ones. A status belongs to
+ * a file identity: if the file's size or modification time no longer match, it counts as pending
+ * again. Consecutive failures are counted per file identity so background sync can stop retrying
+ * files the server keeps rejecting. The ledger also stores the resumable-upload progress of {@link UploadScheduler} and the
+ * digests of uploaded content, so it serves as the scheduler's {@link UploadScheduler.StateStore}.
+ *
+ * {@link #countDirectory} keeps per-directory counters that are updated with each status change and
+ * by diffing the directory listing against the previous one, so opening the settings screen only
+ * re-evaluates files that appeared or whose size or modification time changed.
+ *
+ * Line format (tab-separated, one record per line):
+ * <pre>
+ * S path size lastModified status sha256|- failures    file status (failures absent in older logs)
+ * P path encodedUploadState                  upload progress
+ * R path                                     upload progress removed
+ * D sha256                                   content uploaded
+ * C                                          everything cleared
+ * </pre>
+ */
+public class UploadLedger implements Closeable, UploadScheduler.StateStore {
+    private static final String TAG = "UploadLedger";
+
+    public static final String STATUS_UPLOADED = "uploaded";
+    public static final String STATUS_FAILED = "failed";
+    public static final String STATUS_PENDING = "pending";
+
+    private static final int MIN_RECORDS_BEFORE_COMPACTION = 256;
+
+    /**
+     * Status of one file identity
+     */
+    private static final class Entry {
+        final String path;
+        long size;
+        long lastModified;
+        String status = STATUS_PENDING;
+        String sha256;
+        int failures;  // 当前文件身份下连续失败的次数
+        String progress;  // UploadScheduler.UploadState#encode
+        String completedProgress;  // 刚完成的上传进度（不持久化），用于取得文件摘要
+
+        Entry(String path) {
+            this.path = path;
+        }
+
+        boolean matches(long size, long lastModified) {
+            return this.size == size && this.lastModified == lastModified;
+        }
+    }
+
+    /**
+     * Uploaded / failed / total counts of a directory
+     */
+    public static final class Counts {
+        public final int total;
+        public final int uploaded;
+        public final int failed;
+
+        Counts(int total, int uploaded, int failed) {
+            this.total = total;
+            this.uploaded = uploaded;
+            this.failed = failed;
+        }
+
+        public int pending() {
+            return total - uploaded - failed;
+        }
+    }
+
+    /**
+     * Status a file was counted with, and the file identity it was counted for
+     */
+    private static final class Counted {
+        final String status;
+        final long size;
+        final long lastModified;
+
+        Counted(String status, long size, long lastModified) {
+            this.status = status;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+    }
+
+    /**
+     * Files of a directory seen by the last {@link #countDirectory} call and the status each was counted with
+     */
+    private static final class DirectoryCache {
+        final Map<String, Counted> counted = new HashMap<>();  // path -> counted status
+        int uploaded;
+        int failed;
+
+        void add(String path, String status, long size, long lastModified) {
+            Counted previous = counted.put(path, new Counted(status, size, lastModified));
+            adjust(previous == null ? null : previous.status, -1);
+            adjust(status, 1);
+        }
+
+        void remove(String path) {
+            Counted previous = counted.remove(path);
+            adjust(previous == null ? null : previous.status, -1);
+        }
+
+        private void adjust(String status, int delta) {
+            if (STATUS_UPLOADED.equals(status)) {
+                uploaded += delta;
+            } else if (STATUS_FAILED.equals(status)) {
+                failed += delta;
+            }
+        }
+    }
+
+    private final File file;
+    private final Map<String, Entry> entries = new HashMap<>();
+    private final Set<String> uploadedDigests = new HashSet<>();
+    private final Map<String, DirectoryCache> directories = new HashMap<>();
+    private Writer writer;
+    private int records;
+    private int compactAt;  // 记录数超过该值时检查是否需要压缩
+
+    public UploadLedger(File file) throws IOException {
+        this.file = file;
+        replay();
+        writer = openAppend();
+        maybeCompact();
+    }
+
+    private void replay() throws IOException {
+        if (!file.exists()) {
+            return;
+        }
+        dropTornTail();
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (!line.isEmpty()) {
+                    apply(line.split("\t", -1));
+                    records++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Truncate a last line left without its newline by an interrupted append, so the next record
+     * does not run into it
+     */
+    private void dropTornTail() throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            long end = raf.length();
+            while (end > 0) {
+                raf.seek(end - 1);
+                if (raf.read() == '\n') break;
+                end--;
+            }
+            if (end < raf.length()) {
+                Log.w(TAG, "Dropping " + (raf.length() - end) + " bytes of an incomplete ledger record");
+                raf.setLength(end);
+            }
+        }
+    }
+
+    /**
+     * Apply one record to the in-memory state; unknown or malformed records are skipped
+     */
+    private void apply(String[] f) {
+        try {
+            switch (f[0]) {
+                case "S":
+                    Entry e = entry(f[1]);
+                    e.size = Long.parseLong(f[2]);
+                    e.lastModified = Long.parseLong(f[3]);
+                    e.status = f[4];
+                    e.sha256 = "-".equals(f[5]) ? null : f[5];
+                    e.failures = f.length > 6 ? Integer.parseInt(f[6]) : 0;
+                    break;
+                case "P":
+                    entry(f[1]).progress = f[2];
+                    break;
+                case "R":
+                    Entry r = entries.get(f[1]);
+                    if (r != null) r.progress = null;
+                    break;
+                case "D":
+                    uploadedDigests.add(f[1]);
+                    break;
+                case "C":
+                    entries.clear();
+                    uploadedDigests.clear();
+                    break;
+                default:
+                    Log.w(TAG, "Skipping unknown ledger record " + f[0]);
+            }
+        } catch (RuntimeException e) {
+            // 写入中断留下的不完整行
+            Log.w(TAG, "Skipping malformed ledger record: " + String.join("\t", f));
+        }
+    }
+
+    private Entry entry(String path) {
+        return entries.computeIfAbsent(path, Entry::new);
+    }
+
+    private int liveRecordCount() {
+        int live = uploadedDigests.size();
+        for (Entry e : entries.values()) {
+            live += e.progress != null ? 2 : 1;
+        }
+        return live;
+    }
+
+    private Writer openAppend() throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8));
+    }
+
+    private void append(String... fields) {
+        for (String field : fields) {
+            if (field.indexOf('\t') >= 0 || field.indexOf('\n') >= 0) {
+                Log.w(TAG, "Not recording field with tab or newline: " + field);
+                return;
+            }
+        }
+        try {
+            writer.write(String.join("\t", fields));
+            writer.write('\n');
+            writer.flush();
+            records++;
+            maybeCompact();
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to append to upload ledger", e);
+        }
+    }
+
+    /**
+     * Compact once at least half of the records are superseded. Counting live records is O(n), so it
+     * is only done when the record count has doubled since the last check.
+     */
+    private void maybeCompact() throws IOException {
+        if (records <= compactAt) {
+            return;
+        }
+        int live = liveRecordCount();
+        if (records > MIN_RECORDS_BEFORE_COMPACTION && records > 2 * live) {
+            compact();
+            live = records;
+        }
+        compactAt = Math.max(MIN_RECORDS_BEFORE_COMPACTION, 2 * live);
+    }
+
+    /**
+     * Rewrite the log with one record per live entry and rename it into place. Entries of files that
+     * were deleted and have no upload progress are dropped, so the ledger does not grow with every file
+     * ever recorded.
+     */
+    private void compact() throws IOException {
+        entries.values().removeIf(e -> e.progress == null && !new File(e.path).exists());
+        File tmp = new File(file.getParentFile(), file.getName() + ".tmp");
+        int written = 0;
+        try (FileOutputStream out = new FileOutputStream(tmp);
+             Writer w = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8))) {
+            for (Entry e : entries.values()) {
+                w.write(String.join("\t", "S", e.path, String.valueOf(e.size), String.valueOf(e.lastModified),
+                        e.status, e.sha256 == null ? "-" : e.sha256, String.valueOf(e.failures)));
+                w.write('\n');
+                written++;
+                if (e.progress != null) {
+                    w.write(String.join("\t", "P", e.path, e.progress));
+                    w.write('\n');
+                    written++;
+                }
+            }
+            for (String digest : uploadedDigests) {
+                w.write("D\t" + digest + "\n");
+                written++;
+            }
+            w.flush();
+            out.getFD().sync();
+        }
+        writer.close();
+        try {
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            Log.d(TAG, "Compacted upload ledger from " + records + " to " + written + " records");
+            records = written;
+        } finally {
+            writer = openAppend();
+        }
+    }
+
+    /**
+     * Status of {@code file}: {@link #STATUS_PENDING} unless a status was recorded for its current size
+     * and modification time
+     */
+    public synchronized String getStatus(File file) {
+        return statusOf(file.getAbsolutePath(), file.length(), file.lastModified());
+    }
+
+    private String statusOf(String path, long size, long lastModified) {
+        Entry e = entries.get(path);
+        return e != null && e.matches(size, lastModified) ? e.status : STATUS_PENDING;
+    }
+
+    /**
+     * Number of consecutive failed uploads of {@code file} in its current size and modification time
+     */
+    public synchronized int getFailureCount(File file) {
+        Entry e = entries.get(file.getAbsolutePath());
+        return e != null && e.matches(file.length(), file.lastModified()) ? e.failures : 0;
+    }
+
+    public synchronized void setStatus(File file, String status) {
+        String path = file.getAbsolutePath();
+        long size = file.length();
+        long lastModified = file.lastModified();
+        Entry e = entry(path);
+        if (!e.matches(size, lastModified)) {
+            e.sha256 = null;  // 文件内容已变化，之前的摘要和失败次数不再有效
+            e.failures = 0;
+        }
+        e.failures = STATUS_FAILED.equals(status) ? e.failures + 1 : STATUS_UPLOADED.equals(status) ? 0 : e.failures;
+        e.size = size;
+        e.lastModified = lastModified;
+        e.status = status;
+        String digest = digestOf(path, e.progress != null ? e.progress : e.completedProgress, size, lastModified);
+        if (digest != null) {
+            e.sha256 = digest;
+        }
+        e.completedProgress = null;
+        append("S", path, String.valueOf(size), String.valueOf(lastModified), status, e.sha256 == null ? "-" : e.sha256,
+                String.valueOf(e.failures));
+
+        DirectoryCache dir = directories.get(file.getAbsoluteFile().getParent());
+        if (dir != null && dir.counted.containsKey(path)) {
+            dir.add(path, status, size, lastModified);
+        }
+    }
+
+    /**
+     * SHA-256 recorded in upload progress, if the progress belongs to this file identity
+     */
+    private static String digestOf(String path, String progress, long size, long lastModified) {
+        UploadScheduler.UploadState state = UploadScheduler.UploadState.decode(path, progress);
+        if (state == null || state.size != size || state.lastModified != lastModified) {
+            return null;
+        }
+        return state.getSha256();
+    }
+
+    /**
+     * Counts for the files of {@code dir} accepted by {@code filter}. Each file is stat'ed, but its status
+     * is only looked up again if it appeared or was rewritten (size or modification time changed) since
+     * the previous call for the same directory.
+     */
+    public synchronized Counts countDirectory(File dir, FilenameFilter filter) {
+        String[] names = dir.list(filter);
+        DirectoryCache cache = directories.computeIfAbsent(dir.getAbsolutePath(), k -> new DirectoryCache());
+        if (names == null) {
+            directories.remove(dir.getAbsolutePath());
+            return new Counts(0, 0, 0);
+        }
+        Set<String> current = new HashSet<>(names.length * 2);
+        for (String name : names) {
+            String path = new File(dir, name).getAbsolutePath();
+            current.add(path);
+            File f = new File(path);
+            long size = f.length();
+            long lastModified = f.lastModified();
+            Counted counted = cache.counted.get(path);
+            // 仍在写入的会话日志等文件会变化：身份不同则按当前状态重新计数
+            if (counted == null || counted.size != size || counted.lastModified != lastModified) {
+                cache.add(path, statusOf(path, size, lastModified), size, lastModified);
+            }
+        }
+        if (cache.counted.size() > current.size()) {
+            List<String> removed = new ArrayList<>();
+            for (String path : cache.counted.keySet()) {
+                if (!current.contains(path)) removed.add(path);
+            }
+            for (String path : removed) {
+                cache.remove(path);
+            }
+        }
+        return new Counts(cache.counted.size(), cache.uploaded, cache.failed);
+    }
+
+    /**
+     * Forget all statuses, upload progress and digests
+     */
+    public synchronized void clear() {
+        entries.clear();
+        uploadedDigests.clear();
+        directories.clear();
+        append("C");
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    // ---- UploadScheduler.StateStore ----
+
+    @Override
+    public synchronized UploadScheduler.UploadState load(String path) {
+        Entry e = entries.get(path);
+        return e == null ? null : UploadScheduler.UploadState.decode(path, e.progress);
+    }
+
+    @Override
+    public synchronized void save(UploadScheduler.UploadState state) {
+        String encoded = state.encode();
+        Entry e = entry(state.path);
+        if (encoded.equals(e.progress)) {
+            return;
+        }
+        e.progress = encoded;
+        append("P", state.path, encoded);
+    }
+
+    @Override
+    public synchronized void remove(String path) {
+        Entry e = entries.get(path);
+        if (e == null || e.progress == null) {
+            return;
+        }
+        // 上传完成后调度器先移除进度再回调；保留它，供随后的 setStatus 记录文件摘要
+        e.completedProgress = e.progress;
+        e.progress = null;
+        append("R", path);
+    }
+
+    @Override
+    public synchronized boolean isUploaded(String sha256) {
+        return uploadedDigests.contains(sha256);
+    }
+
+    @Override
+    public synchronized void markUploaded(String sha256) {
+        if (uploadedDigests.add(sha256)) {
+            append("D", sha256);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        writer.close();
+    }
+}
@@ -0,0 +1,750 @@
+package com.tsinghua.openring.utils;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Upload engine behind {@link CloudSyncService}: runs file uploads in a bounded number of parallel
+ * slots, sends each file in chunks and only advances past bytes the server has acknowledged.
+ *
+ * Per file, a server-side upload session is opened once and its id and acknowledged offset are
+ * persisted after every chunk, so after a failure or an app restart the upload resumes at the
+ * acknowledged offset instead of starting over. Failed attempts are retried with exponential backoff
+ * (with jitter); a waiting retry does not hold a slot, and its due time is persisted as well. A file
+ * that is modified after its session was opened starts a new session.
+ *
+ * Before the first byte is sent the file's SHA-256 is computed (and persisted with the progress). A
+ * file whose content was already uploaded, under any path, is completed without sending it again; the
+ * digest also goes to the server with the session so it can do the same.
+ *
+ * With {@link #setCoalescing} enabled, small files that have no upload in progress are grouped and
+ * sent in one multi-file request ({@link Transport#uploadBatch}) instead of one request each; a
+ * transport without batch support makes the scheduler fall back to single files for good.
+ *
+ * The same file submitted by two batches is uploaded once and reported to both. A batch can be
+ * cancelled through the {@link Handle} returned by {@link #submit}; uploads stop at the next chunk
+ * boundary with their progress kept.
+ */
+public class UploadScheduler {
+    private static final String TAG = "UploadScheduler";
+
+    public static final int DEFAULT_PARALLEL_SLOTS = 2;
+    public static final int DEFAULT_CHUNK_SIZE = 1024 * 1024;
+    public static final int DEFAULT_MAX_RETRIES = 3;
+    public static final long DEFAULT_BASE_DELAY_MS = 5000;
+    public static final long DEFAULT_MAX_DELAY_MS = 5 * 60 * 1000;
+    public static final String CANCELLED_MESSAGE = "Cancelled";
+
+    private static final LatencyHistogram digestLatency = PipelineMetrics.histogram("upload.digest");
+    private static final LatencyHistogram chunkLatency = PipelineMetrics.histogram("upload.chunk");
+    private static final LatencyHistogram fileLatency = PipelineMetrics.histogram("upload.file");
+    private static final PipelineMetrics.Counter filesUploaded = PipelineMetrics.counter("upload.files_uploaded");
+    private static final PipelineMetrics.Counter filesDeduplicated = PipelineMetrics.counter("upload.files_deduplicated");
+    private static final PipelineMetrics.Counter batchRequests = PipelineMetrics.counter("upload.batch_requests");
+
+    /**
+     * Server side of a resumable upload. Calls are blocking and made from the scheduler's slot threads.
+     */
+    public interface Transport {
+        /**
+         * Create an upload session for {@code file}. A server that already holds content with this digest
+         * may answer with an offset equal to the file size; nothing is sent then.
+         *
+         * @param sha256 Lower-case hex SHA-256 of the whole file
+         * @param fields Form fields of the batch (device id, user name...)
+         * @throws UploadException with {@link UploadException#unsupported} set if the server has no
+         *                         resumable upload API; the file is then sent with {@link #uploadWhole}
+         */
+        Session openSession(File file, String sha256, Map<String, String> fields) throws IOException;
+
+        /**
+         * Offset the server has acknowledged for the session, or -1 if the session no longer exists
+         */
+        long queryOffset(String uploadId) throws IOException;
+
+        /**
+         * Send {@code length} bytes of {@code file} starting at {@code offset}
+         *
+         * @return Offset acknowledged by the server after this chunk
+         */
+        long sendChunk(String uploadId, File file, long offset, int length) throws IOException;
+
+        /**
+         * Single-request upload for servers without resumable sessions
+         */
+        void uploadWhole(File file, String sha256, Map<String, String> fields) throws IOException;
+
+        /**
+         * Upload several small files in one request; all succeed or the whole request fails
+         *
+         * @param sha256 Digests in the order of {@code files}
+         * @throws UploadException with {@link UploadException#unsupported} set if the server cannot take
+         *                         multi-file requests
+         */
+        default void uploadBatch(List<File> files, List<String> sha256, Map<String, String> fields) throws IOException {
+            throw UploadException.unsupported("Batch upload not implemented");
+        }
+    }
+
+    /**
+     * A newly opened upload session; {@code offset} is non-zero if the server already holds a prefix
+     */
+    public static final class Session {
+        public final String uploadId;
+        public final long offset;
+
+        public Session(String uploadId, long offset) {
+            this.uploadId = uploadId;
+            this.offset = offset;
+        }
+    }
+
+    /**
+     * Upload failure with a retry classification
+     */
+    public static class UploadException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        public final boolean retryable;
+        public final boolean unsupported;
+
+        public UploadException(String message, boolean retryable) {
+            this(message, retryable, false);
+        }
+
+        private UploadException(String message, boolean retryable, boolean unsupported) {
+            super(message);
+            this.retryable = retryable;
+            this.unsupported = unsupported;
+        }
+
+        public static UploadException unsupported(String message) {
+            return new UploadException(message, false, true);
+        }
+
+        /**
+         * Timeouts, throttling and server errors are worth retrying; other client errors are not
+         */
+        public static boolean isRetryableStatus(int httpCode) {
+            return httpCode == 408 || httpCode == 429 || httpCode >= 500;
+        }
+    }
+
+    /**
+     * Persisted progress of one file
+     */
+    public static final class UploadState {
+        final String path;
+        long size;
+        long lastModified;
+        String sha256;
+        String uploadId;
+        long offset;
+        int attempts;
+        long nextAttemptAtMs;
+
+        UploadState(String path, long size, long lastModified) {
+            this.path = path;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+
+        /**
+         * {@code size|lastModified|offset|attempts|nextAttemptAtMs|sha256|uploadId}
+         */
+        String encode() {
+            return size + "|" + lastModified + "|" + offset + "|" + attempts + "|" + nextAttemptAtMs + "|"
+                    + (sha256 == null ? "" : sha256) + "|" + (uploadId == null ? "" : uploadId);
+        }
+
+        static UploadState decode(String path, String encoded) {
+            if (encoded == null) return null;
+            String[] parts = encoded.split("\\|", 7);
+            if (parts.length < 6) return null;
+            try {
+                UploadState state = new UploadState(path, Long.parseLong(parts[0]), Long.parseLong(parts[1]));
+                state.offset = Long.parseLong(parts[2]);
+                state.attempts = Integer.parseInt(parts[3]);
+                state.nextAttemptAtMs = Long.parseLong(parts[4]);
+                // 旧格式（6 段）没有摘要字段
+                String id = parts[parts.length - 1];
+                state.uploadId = id.isEmpty() ? null : id;
+                if (parts.length == 7 && !parts[5].isEmpty()) {
+                    state.sha256 = parts[5];
+                }
+                return state;
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        public long getOffset() {
+            return offset;
+        }
+
+        public String getUploadId() {
+            return uploadId;
+        }
+
+        public String getSha256() {
+            return sha256;
+        }
+    }
+
+    /**
+     * Where upload progress survives restarts
+     */
+    public interface StateStore {
+        UploadState load(String path);
+
+        void save(UploadState state);
+
+        void remove(String path);
+
+        /**
+         * Whether content with this digest has been uploaded before
+         */
+        default boolean isUploaded(String sha256) {
+            return false;
+        }
+
+        default void markUploaded(String sha256) {
+        }
+    }
+
+    /**
+     * Batch progress; callbacks arrive on the scheduler's threads
+     */
+    public interface Listener {
+        default void onFileStarted(File file, int index, int total) {}
+
+        default void onFileProgress(File file, long acknowledgedBytes, long totalBytes) {}
+
+        void onFileCompleted(File file, boolean success, String message);
+
+        void onAllCompleted(int succeeded, int failed);
+    }
+
+    /**
+     * Returned by {@link #submit}
+     */
+    public interface Handle {
+        /**
+         * Stop the files of this batch that no other batch is waiting for. They complete with
+         * {@link #CANCELLED_MESSAGE}; their upload progress is kept for the next submit.
+         */
+        void cancel();
+    }
+
+    private static final class Batch implements Handle {
+        final Listener listener;
+        final int total;
+        final AtomicInteger started = new AtomicInteger();
+        final AtomicInteger completed = new AtomicInteger();
+        final AtomicInteger succeeded = new AtomicInteger();
+        final AtomicInteger failed = new AtomicInteger();
+        volatile boolean cancelled;
+
+        Batch(Listener listener, int total) {
+            this.listener = listener;
+            this.total = total;
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+    }
+
+    /**
+     * One file, or (with {@code members} set) a group of small files sent in one request
+     */
+    private final class Job {
+        final File file;
+        final Map<String, String> fields;
+        final List<Batch> batches = new CopyOnWriteArrayList<>();
+        List<Job> members;
+        UploadState state;
+        boolean started;
+        boolean wholeFile;
+        long startNanos;
+        int groupAttempts;
+
+        Job(File file, Map<String, String> fields) {
+            this.file = file;
+            this.fields = fields;
+        }
+
+        Job(List<Job> members, Map<String, String> fields) {
+            this.file = null;
+            this.fields = fields;
+            this.members = members;
+        }
+
+        boolean isCancelled() {
+            if (batches.isEmpty()) return false;
+            for (Batch batch : batches) {
+                if (!batch.cancelled) return false;
+            }
+            return true;
+        }
+    }
+
+    private final Transport transport;
+    private final StateStore store;
+    private final int parallelSlots;
+    private final ScheduledThreadPoolExecutor executor;
+    private final Map<String, Job> active = new HashMap<>();
+    private final Random random = new Random();
+    private volatile int chunkSize = DEFAULT_CHUNK_SIZE;
+    private volatile int maxRetries = DEFAULT_MAX_RETRIES;
+    private volatile long baseDelayMs = DEFAULT_BASE_DELAY_MS;
+    private volatile long maxDelayMs = DEFAULT_MAX_DELAY_MS;
+    private volatile long coalesceFileBytes;  // 0 表示不合并
+    private volatile int coalesceMaxFiles;
+    private volatile long coalesceMaxBytes;
+    private volatile boolean batchUnsupported;
+
+    public UploadScheduler(Transport transport, StateStore store, int parallelSlots) {
+        this.transport = transport;
+        this.store = store;
+        this.parallelSlots = Math.max(1, parallelSlots);
+        AtomicInteger threadIndex = new AtomicInteger();
+        // 核心线程数即并行槽位数；等待重试的任务在延迟队列中，不占用槽位
+        this.executor = new ScheduledThreadPoolExecutor(this.parallelSlots, r -> {
+            Thread t = new Thread(r, "CloudUpload-" + threadIndex.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public int getParallelSlots() {
+        return parallelSlots;
+    }
+
+    public void setChunkSize(int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunkSize must be positive: " + chunkSize);
+        }
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * @param maxRetries  Retries after the first attempt of each batch before a file is reported failed
+     * @param baseDelayMs Delay before the first retry; doubled for every further retry
+     * @param maxDelayMs  Upper bound of a single delay
+     */
+    public void setRetryPolicy(int maxRetries, long baseDelayMs, long maxDelayMs) {
+        this.maxRetries = Math.max(0, maxRetries);
+        this.baseDelayMs = Math.max(0, baseDelayMs);
+        this.maxDelayMs = Math.max(this.baseDelayMs, maxDelayMs);
+    }
+
+    /**
+     * Send files of at most {@code smallFileBytes} together, up to {@code maxFiles} files and
+     * {@code maxBatchBytes} per request. {@code smallFileBytes} of 0 turns coalescing off (the default).
+     */
+    public void setCoalescing(long smallFileBytes, int maxFiles, long maxBatchBytes) {
+        this.coalesceMaxFiles = Math.max(1, maxFiles);
+        this.coalesceMaxBytes = Math.max(smallFileBytes, maxBatchBytes);
+        this.coalesceFileBytes = Math.max(0, smallFileBytes);
+    }
+
+    /**
+     * Delay before retry number {@code retry} (1-based): {@code base * 2^(retry-1)} capped at {@code max},
+     * of which the upper half is randomised so that files failing together do not retry in lockstep
+     */
+    static long backoffDelayMs(int retry, long baseDelayMs, long maxDelayMs, Random random) {
+        int shift = Math.min(Math.max(0, retry - 1), 30);
+        long delay = Math.min(maxDelayMs, baseDelayMs << shift);
+        long half = delay / 2;
+        return half + (long) (random.nextDouble() * (delay - half));
+    }
+
+    /**
+     * Upload {@code files}; {@code listener} gets one completion per file and then
+     * {@link Listener#onAllCompleted}. Returns immediately.
+     *
+     * @param fields Passed to the transport with every file of the batch; a file that is already
+     *               uploading keeps the fields of the batch that started it
+     */
+    public Handle submit(List<File> files, Map<String, String> fields, Listener listener) {
+        Batch batch = new Batch(listener, files.size());
+        if (files.isEmpty()) {
+            if (listener != null) listener.onAllCompleted(0, 0);
+            return batch;
+        }
+        List<Job> newJobs = new ArrayList<>();
+        synchronized (active) {
+            for (File file : files) {
+                Job job = active.get(file.getAbsolutePath());
+                if (job == null) {
+                    job = new Job(file, fields);
+                    active.put(file.getAbsolutePath(), job);
+                    newJobs.add(job);
+                } else {
+                    Log.d(TAG, "Already uploading " + file.getName() + ", joining the running upload");
+                }
+                job.batches.add(batch);
+            }
+        }
+        for (Job job : newJobs) {
+            job.state = restoreState(job.file);
+            // 本批次重新给予完整的重试次数；持久化的等待时间仍然生效
+            job.state.attempts = 0;
+        }
+        for (Job job : coalesce(newJobs, fields)) {
+            long delay = Math.min(maxDelayMs, Math.max(0, job.state.nextAttemptAtMs - System.currentTimeMillis()));
+            schedule(job, delay);
+        }
+        return batch;
+    }
+
+    /**
+     * Schedule groups of small fresh files as batch jobs
+     *
+     * @return The jobs left to run one by one
+     */
+    private List<Job> coalesce(List<Job> jobs, Map<String, String> fields) {
+        long smallFileBytes = coalesceFileBytes;
+        if (smallFileBytes <= 0 || batchUnsupported) {
+            return jobs;
+        }
+        long now = System.currentTimeMillis();
+        List<Job> singles = new ArrayList<>();
+        List<Job> group = new ArrayList<>();
+        long groupBytes = 0;
+        for (Job job : jobs) {
+            UploadState state = job.state;
+            boolean small = state.uploadId == null && state.offset == 0 && state.nextAttemptAtMs <= now
+                    && state.size <= smallFileBytes;
+            if (!small) {
+                singles.add(job);
+                continue;
+            }
+            if (!group.isEmpty() && (group.size() >= coalesceMaxFiles || groupBytes + state.size > coalesceMaxBytes)) {
+                scheduleGroup(group, fields, singles);
+                group = new ArrayList<>();
+                groupBytes = 0;
+            }
+            group.add(job);
+            groupBytes += state.size;
+        }
+        scheduleGroup(group, fields, singles);
+        return singles;
+    }
+
+    private void scheduleGroup(List<Job> group, Map<String, String> fields, List<Job> singles) {
+        if (group.size() < 2) {
+            singles.addAll(group);
+            return;
+        }
+        schedule(new Job(group, fields), 0);
+    }
+
+    /**
+     * Progress saved for the file by an earlier run, or a fresh state if there is none or the file changed
+     */
+    private UploadState restoreState(File file) {
+        String path = file.getAbsolutePath();
+        UploadState saved = store.load(path);
+        if (saved != null && saved.size == file.length() && saved.lastModified == file.lastModified()) {
+            if (saved.offset > 0) {
+                Log.d(TAG, "Resuming " + file.getName() + " at " + saved.offset + "/" + saved.size);
+            }
+            return saved;
+        }
+        if (saved != null) {
+            Log.d(TAG, file.getName() + " changed since its upload started, starting over");
+        }
+        return new UploadState(path, file.length(), file.lastModified());
+    }
+
+    private void schedule(Job job, long delayMs) {
+        try {
+            executor.schedule(() -> {
+                if (job.members != null) {
+                    runGroupAttempt(job);
+                } else {
+                    runAttempt(job);
+                }
+            }, delayMs, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            if (job.members != null) {
+                for (Job member : job.members) {
+                    finish(member, false, "Upload scheduler shut down");
+                }
+            } else {
+                finish(job, false, "Upload scheduler shut down");
+            }
+        }
+    }
+
+    private void notifyStarted(Job job) {
+        if (job.started) {
+            return;
+        }
+        job.started = true;
+        job.startNanos = System.nanoTime();
+        for (Batch batch : job.batches) {
+            int index = batch.started.incrementAndGet();
+            if (batch.listener != null) batch.listener.onFileStarted(job.file, index, batch.total);
+        }
+    }
+
+    /**
+     * Compute the file's digest if not known yet, then complete the job if that content was uploaded before
+     *
+     * @return true if the job was completed
+     */
+    private boolean completeIfDuplicate(Job job) throws IOException {
+        UploadState state = job.state;
+        if (state.sha256 == null) {
+            long digestStart = System.nanoTime();
+            state.sha256 = UploadCodec.sha256(job.file);
+            digestLatency.recordSince(digestStart);
+            store.save(state);
+        }
+        if (!store.isUploaded(state.sha256)) {
+            return false;
+        }
+        Log.d(TAG, job.file.getName() + " has the same content as an uploaded file, skipping");
+        filesDeduplicated.increment();
+        store.remove(state.path);
+        finish(job, true, "Already uploaded");
+        return true;
+    }
+
+    private void completeUploaded(Job job) {
+        store.remove(job.state.path);
+        store.markUploaded(job.state.sha256);
+        fileLatency.recordSince(job.startNanos);
+        filesUploaded.increment();
+        finish(job, true, "Upload successful");
+    }
+
+    private void runAttempt(Job job) {
+        UploadState state = job.state;
+        if (job.isCancelled()) {
+            finish(job, false, CANCELLED_MESSAGE);
+            return;
+        }
+        notifyStarted(job);
+        try {
+            if (completeIfDuplicate(job)) {
+                return;
+            }
+            if (job.wholeFile) {
+                transport.uploadWhole(job.file, state.sha256, job.fields);
+            } else {
+                uploadChunks(job);
+            }
+            completeUploaded(job);
+        } catch (UploadException e) {
+            if (e.unsupported && !job.wholeFile) {
+                Log.d(TAG, "Resumable upload not supported (" + e.getMessage() + "), sending " + job.file.getName() + " in one request");
+                job.wholeFile = true;
+                runAttempt(job);
+                return;
+            }
+            onAttemptFailed(job, e, e.retryable);
+        } catch (IOException e) {
+            onAttemptFailed(job, e, true);
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Unexpected upload error for " + job.file.getName(), e);
+            onAttemptFailed(job, new IOException(e), false);
+        }
+    }
+
+    private void uploadChunks(Job job) throws IOException {
+        UploadState state = job.state;
+        File file = job.file;
+        if (!file.isFile()) {
+            throw new UploadException("File no longer exists", false);
+        }
+        if (state.uploadId != null) {
+            long acknowledged = transport.queryOffset(state.uploadId);
+            if (acknowledged < 0 || acknowledged > state.size) {
+                Log.d(TAG, "Upload session of " + file.getName() + " expired, opening a new one");
+                state.uploadId = null;
+                state.offset = 0;
+            } else {
+                state.offset = acknowledged;
+            }
+        }
+        if (state.uploadId == null) {
+            Session session = transport.openSession(file, state.sha256, job.fields);
+            state.uploadId = session.uploadId;
+            state.offset = Math.max(0, Math.min(session.offset, state.size));
+            store.save(state);
+            if (state.offset == state.size && state.size > 0) {
+                Log.d(TAG, "Server already has the content of " + file.getName());
+                filesDeduplicated.increment();
+            }
+        }
+
+        while (state.offset < state.size) {
+            if (job.isCancelled()) {
+                throw new UploadException(CANCELLED_MESSAGE, false);
+            }
+            int length = (int) Math.min(chunkSize, state.size - state.offset);
+            long chunkStart = System.nanoTime();
+            long acknowledged = transport.sendChunk(state.uploadId, file, state.offset, length);
+            chunkLatency.recordSince(chunkStart);
+            if (acknowledged <= state.offset || acknowledged > state.size) {
+                // 服务器未确认新的数据（或回退了偏移）：以服务器为准，计为一次失败的尝试
+                long previous = state.offset;
+                if (acknowledged >= 0 && acknowledged <= state.size) {
+                    state.offset = acknowledged;
+                    store.save(state);
+                }
+                throw new UploadException("Server acknowledged offset " + acknowledged + " after sending from " + previous, true);
+            }
+            state.offset = acknowledged;
+            state.attempts = 0;
+            state.nextAttemptAtMs = 0;
+            store.save(state);
+            for (Batch batch : job.batches) {
+                if (batch.listener != null) batch.listener.onFileProgress(file, state.offset, state.size);
+            }
+        }
+    }
+
+    /**
+     * Send the members of a group job in one request; members whose content is already uploaded are
+     * completed first, and a group that shrinks to one file continues as a single-file job
+     */
+    private void runGroupAttempt(Job group) {
+        List<Job> pending = new ArrayList<>();
+        for (Job member : group.members) {
+            if (member.isCancelled()) {
+                finish(member, false, CANCELLED_MESSAGE);
+                continue;
+            }
+            notifyStarted(member);
+            try {
+                if (!completeIfDuplicate(member)) {
+                    pending.add(member);
+                }
+            } catch (IOException e) {
+                Log.e(TAG, "Cannot read " + member.file.getName() + ": " + e.getMessage());
+                finish(member, false, e.getMessage());
+            }
+        }
+        group.members = pending;
+        if (pending.isEmpty()) {
+            return;
+        }
+        if (pending.size() == 1) {
+            runAttempt(pending.get(0));
+            return;
+        }
+
+        List<File> files = new ArrayList<>(pending.size());
+        List<String> digests = new ArrayList<>(pending.size());
+        for (Job member : pending) {
+            files.add(member.file);
+            digests.add(member.state.sha256);
+        }
+        try {
+            transport.uploadBatch(files, digests, group.fields);
+            batchRequests.increment();
+            Log.d(TAG, "Uploaded " + files.size() + " files in one request");
+            for (Job member : pending) {
+                completeUploaded(member);
+            }
+        } catch (UploadException e) {
+            if (e.unsupported) {
+                Log.d(TAG, "Batch upload not supported (" + e.getMessage() + "), sending files one by one");
+                batchUnsupported = true;
+                for (Job member : pending) {
+                    schedule(member, 0);
+                }
+                return;
+            }
+            onGroupFailed(group, e, e.retryable);
+        } catch (IOException e) {
+            onGroupFailed(group, e, true);
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Unexpected batch upload error", e);
+            onGroupFailed(group, new IOException(e), false);
+        }
+    }
+
+    private void onGroupFailed(Job group, IOException e, boolean retryable) {
+        group.groupAttempts++;
+        if (!retryable || group.groupAttempts > maxRetries) {
+            Log.e(TAG, "Batch upload of " + group.members.size() + " files failed after " + group.groupAttempts
+                    + " attempt(s): " + e.getMessage());
+            for (Job member : group.members) {
+                finish(member, false, e.getMessage());
+            }
+            return;
+        }
+        long delay = backoffDelayMs(group.groupAttempts, baseDelayMs, maxDelayMs, random);
+        Log.w(TAG, "Batch upload attempt " + group.groupAttempts + " failed: " + e.getMessage()
+                + ", retrying in " + delay + "ms");
+        schedule(group, delay);
+    }
+
+    private void onAttemptFailed(Job job, IOException e, boolean retryable) {
+        UploadState state = job.state;
+        if (job.isCancelled()) {
+            store.save(state);  // 保留已确认的偏移，下次提交时继续
+            finish(job, false, CANCELLED_MESSAGE);
+            return;
+        }
+        state.attempts++;
+        if (!retryable || state.attempts > maxRetries) {
+            Log.e(TAG, "Upload failed for " + job.file.getName() + " after " + state.attempts + " attempt(s): " + e.getMessage());
+            state.nextAttemptAtMs = 0;
+            store.save(state);  // 保留已确认的偏移，下次同步从该处继续
+            finish(job, false, e.getMessage());
+            return;
+        }
+        long delay = backoffDelayMs(state.attempts, baseDelayMs, maxDelayMs, random);
+        state.nextAttemptAtMs = System.currentTimeMillis() + delay;
+        store.save(state);
+        Log.w(TAG, "Upload attempt " + state.attempts + " failed for " + job.file.getName() + ": " + e.getMessage()
+                + ", retrying in " + delay + "ms");
+        schedule(job, delay);
+    }
+
+    private void finish(Job job, boolean success, String message) {
+        synchronized (active) {
+            active.remove(job.file.getAbsolutePath());
+        }
+        for (Batch batch : job.batches) {
+            if (success) {
+                batch.succeeded.incrementAndGet();
+            } else {
+                batch.failed.incrementAndGet();
+            }
+            if (batch.listener != null) {
+                batch.listener.onFileCompleted(job.file, success, message);
+            }
+            if (batch.completed.incrementAndGet() == batch.total && batch.listener != null) {
+                batch.listener.onAllCompleted(batch.succeeded.get(), batch.failed.get());
+            }
+        }
+    }
+
+    /**
+     * Stop starting new attempts; running chunks finish and their progress stays persisted
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -5,17 +5,14 @@ import android.util.Log;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ArrayNode;
-import com.fasterxml.jackson.databind.node.ObjectNode;
 
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.time.LocalDate;
 import java.util.ArrayList;
-import java.util.Calendar;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
@@ -24,22 +21,44 @@ import java.util.Map;
 
 /**
  * Manager class for vital signs history records
- * Stores and retrieves history data in JSON format
+ * Stores records in an append-only binary log ({@link VitalSignsRecordLog}); saving a record appends
+ * 18 bytes instead of rewriting the whole history. A JSON history written by earlier versions is
+ * migrated into the log once, on first start.
  */
 public class VitalSignsHistoryManager {
     private static final String TAG = "VitalSignsHistory";
-    private static final String HISTORY_FILE = "vital_signs_history.json";
+    private static final String HISTORY_FILE = "vital_signs_history.bin";
+    private static final String LEGACY_HISTORY_FILE = "vital_signs_history.json";
+    private static final String MIGRATED_SUFFIX = ".migrated";
     private static final SimpleDateFormat DATE_FORMAT = new SimpleDateFormat("yyyy-MM-dd", Locale.US);
     private static final SimpleDateFormat TIMESTAMP_FORMAT = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss", Locale.US);
 
+    // One log per process: every manager instance appends through the same channel and index
+    private static VitalSignsRecordLog sharedLog;
+
     private final Context context;
-    private final ObjectMapper mapper;
     private final File historyFile;
+    private final File legacyFile;
 
     public VitalSignsHistoryManager(Context context) {
         this.context = context.getApplicationContext();
-        this.mapper = new ObjectMapper();
         this.historyFile = new File(context.getFilesDir(), HISTORY_FILE);
+        this.legacyFile = new File(context.getFilesDir(), LEGACY_HISTORY_FILE);
+    }
+
+    /**
+     * Open the shared log, migrating the legacy JSON history first if needed
+     */
+    private VitalSignsRecordLog getLog() throws IOException {
+        synchronized (VitalSignsHistoryManager.class) {
+            if (sharedLog == null || !sharedLog.getFile().equals(historyFile)) {
+                if (legacyFile.exists()) {
+                    migrateLegacyHistory();
+                }
+                sharedLog = new VitalSignsRecordLog(historyFile);
+            }
+            return sharedLog;
+        }
     }
 
     /**
@@ -47,36 +66,75 @@ public class VitalSignsHistoryManager {
      */
     public synchronized void saveRecord(VitalSignsRecord record) {
         try {
-            // Load existing data
-            Map<String, List<VitalSignsRecord>> historyData = loadAllRecords();
-
-            // Get date from timestamp
-            String date = record.getTimestamp().substring(0, 10); // Extract yyyy-MM-dd
-
-            // Add record to the date's list
-            List<VitalSignsRecord> dayRecords = historyData.computeIfAbsent(date, k -> new ArrayList<>());
-            dayRecords.add(record);
-
-            // Save back to file
-            saveAllRecords(historyData);
-
-            Log.d(TAG, "Record saved for date: " + date);
+            getLog().append(record);
+            Log.d(TAG, "Record saved for date: " + record.getTimestamp().substring(0, 10));
         } catch (Exception e) {
             Log.e(TAG, "Error saving record", e);
         }
     }
 
     /**
-     * Load all records from file
+     * One-time conversion of the JSON history into the binary log.
+     * Records are written in timestamp order to a temporary log which is then renamed into place,
+     * so an interrupted migration is simply redone; the JSON file is kept with a .migrated suffix.
      */
-    private synchronized Map<String, List<VitalSignsRecord>> loadAllRecords() {
-        Map<String, List<VitalSignsRecord>> result = new HashMap<>();
+    private void migrateLegacyHistory() {
+        if (historyFile.exists()) {
+            // Log already written by a previous run that could not rename the JSON file
+            renameLegacyFile();
+            return;
+        }
+        List<VitalSignsRecord> records = new ArrayList<>();
+        for (List<VitalSignsRecord> dayRecords : loadLegacyRecords().values()) {
+            records.addAll(dayRecords);
+        }
+        Collections.sort(records, (a, b) -> a.getTimestamp().compareTo(b.getTimestamp()));
+
+        File tempFile = new File(historyFile.getPath() + ".tmp");
+        if (tempFile.exists() && !tempFile.delete()) {
+            Log.w(TAG, "Could not delete stale migration file: " + tempFile);
+            return;
+        }
+        int migrated = 0;
+        try (VitalSignsRecordLog tempLog = new VitalSignsRecordLog(tempFile)) {
+            for (VitalSignsRecord record : records) {
+                try {
+                    tempLog.append(record);
+                    migrated++;
+                } catch (RuntimeException e) {
+                    Log.w(TAG, "Skipping record with invalid timestamp: " + record.getTimestamp());
+                }
+            }
+            tempLog.sync();
+        } catch (IOException e) {
+            Log.e(TAG, "Error migrating history", e);
+            tempFile.delete();
+            return;
+        }
+        if (!tempFile.renameTo(historyFile)) {
+            Log.e(TAG, "Could not move migrated history into place");
+            tempFile.delete();
+            return;
+        }
+        renameLegacyFile();
+        Log.i(TAG, "Migrated " + migrated + "/" + records.size() + " records from " + LEGACY_HISTORY_FILE);
+    }
 
-        if (!historyFile.exists()) {
-            return result;
+    private void renameLegacyFile() {
+        File migratedFile = new File(legacyFile.getPath() + MIGRATED_SUFFIX);
+        if (!legacyFile.renameTo(migratedFile)) {
+            Log.w(TAG, "Could not rename legacy history file: " + legacyFile);
         }
+    }
+
+    /**
+     * Load all records from the legacy JSON file
+     */
+    private Map<String, List<VitalSignsRecord>> loadLegacyRecords() {
+        Map<String, List<VitalSignsRecord>> result = new HashMap<>();
+        ObjectMapper mapper = new ObjectMapper();
 
-        try (FileInputStream fis = new FileInputStream(historyFile)) {
+        try (FileInputStream fis = new FileInputStream(legacyFile)) {
             JsonNode rootNode = mapper.readTree(fis);
 
             if (rootNode.isObject()) {
@@ -107,48 +165,16 @@ public class VitalSignsHistoryManager {
         return result;
     }
 
-    /**
-     * Save all records to file
-     */
-    private synchronized void saveAllRecords(Map<String, List<VitalSignsRecord>> data) {
-        try {
-            ObjectNode rootNode = mapper.createObjectNode();
-
-            for (Map.Entry<String, List<VitalSignsRecord>> entry : data.entrySet()) {
-                String date = entry.getKey();
-                List<VitalSignsRecord> records = entry.getValue();
-
-                ArrayNode recordsArray = mapper.createArrayNode();
-                for (VitalSignsRecord record : records) {
-                    ObjectNode recordNode = mapper.createObjectNode();
-                    recordNode.put("timestamp", record.getTimestamp());
-                    recordNode.put("hr", record.getHr());
-                    recordNode.put("bp_sys", record.getBp_sys());
-                    recordNode.put("bp_dia", record.getBp_dia());
-                    recordNode.put("spo2", record.getSpo2());
-                    recordNode.put("rr", record.getRr());
-                    recordsArray.add(recordNode);
-                }
-
-                rootNode.set(date, recordsArray);
-            }
-
-            try (FileOutputStream fos = new FileOutputStream(historyFile)) {
-                mapper.writerWithDefaultPrettyPrinter().writeValue(fos, rootNode);
-            }
-
-            Log.d(TAG, "All records saved to file");
-        } catch (IOException e) {
-            Log.e(TAG, "Error saving all records", e);
-        }
-    }
-
     /**
      * Get records for a specific date
      */
     public synchronized List<VitalSignsRecord> getRecordsForDate(String date) {
-        Map<String, List<VitalSignsRecord>> allRecords = loadAllRecords();
-        return allRecords.getOrDefault(date, new ArrayList<>());
+        try {
+            return getLog().readDay(LocalDate.parse(date).toEpochDay());
+        } catch (Exception e) {
+            Log.e(TAG, "Error loading records for " + date, e);
+            return new ArrayList<>();
+        }
     }
 
     /**
@@ -156,16 +182,12 @@ public class VitalSignsHistoryManager {
      * Returns a map: date -> list of records
      */
     public synchronized Map<String, List<VitalSignsRecord>> getRecordsForPastWeek() {
-        Map<String, List<VitalSignsRecord>> allRecords = loadAllRecords();
         Map<String, List<VitalSignsRecord>> weekRecords = new HashMap<>();
-
-        Calendar calendar = Calendar.getInstance();
+        LocalDate day = LocalDate.now();
         for (int i = 0; i < 7; i++) {
-            String date = DATE_FORMAT.format(calendar.getTime());
-            weekRecords.put(date, allRecords.getOrDefault(date, new ArrayList<>()));
-            calendar.add(Calendar.DAY_OF_YEAR, -1);
+            weekRecords.put(day.toString(), getRecordsForDate(day.toString()));
+            day = day.minusDays(1);
         }
-
         return weekRecords;
     }
 
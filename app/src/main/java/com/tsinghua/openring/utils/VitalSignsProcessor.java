@@ -1,9 +1,7 @@
 package com.tsinghua.openring.utils;
 
 import android.util.Log;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
+import java.util.Arrays;
 
 /**
  * Real-time Heart Rate and Respiratory Rate Processing
@@ -26,13 +24,18 @@ public class VitalSignsProcessor {
     private static final int MIN_SPO2 = 70;
     private static final int MAX_SPO2 = 100;
     
-    // Data buffers for processing
-    private final List<Long> ppgGreenBuffer = new ArrayList<>();
-    private final List<Long> ppgIrBuffer = new ArrayList<>();
-    private final List<Short> accXBuffer = new ArrayList<>();
-    private final List<Short> accYBuffer = new ArrayList<>();
-    private final List<Short> accZBuffer = new ArrayList<>();
-    private final List<Long> timestampBuffer = new ArrayList<>();
+    private static final int SMOOTHING_WINDOW = Math.max(1, SAMPLE_RATE / 5); // 0.2 second moving average
+    
+    // Sliding windows for processing (primitive, O(1) amortised per sample)
+    // Raw green PPG: min/max/mean drive signal quality
+    private final SlidingWindowStats greenWindow = new SlidingWindowStats(HR_WINDOW_SIZE);
+    // Moving-average input and its output: the smoothed window feeds the peak detector
+    private final SlidingWindowStats smoothingWindow = new SlidingWindowStats(SMOOTHING_WINDOW);
+    private final SlidingWindowStats smoothedGreenWindow = new SlidingWindowStats(HR_WINDOW_SIZE);
+    
+    // Reused scratch for peak detection
+    private final int[] peakScratch = new int[HR_WINDOW_SIZE];
+    private final double[] intervalScratch = new double[HR_WINDOW_SIZE];
     
     // Current vital signs
     private volatile int currentHeartRate = -1;
@@ -40,16 +43,18 @@ public class VitalSignsProcessor {
     private volatile long lastUpdateTime = 0;
     
     // HR/SpO2 smoothing and validation
-    private final List<Integer> hrHistory = new ArrayList<>(); // Recent HR values for smoothing (5 seconds)
-    private final List<Integer> spo2History = new ArrayList<>(); // Recent SpO2 values for smoothing
     private static final int HR_HISTORY_SIZE = 5; // Keep last 5 HR readings (5 seconds, 1 per second)
-    private static final int SPO2_HISTORY_SIZE = 5; // Keep last 5 SpO2 readings
+    private final int[] hrHistory = new int[HR_HISTORY_SIZE]; // Recent HR values for smoothing, oldest first
+    private int hrHistorySize = 0;
     private static final int MAX_HR_CHANGE_BPM = 10; // Maximum HR change per 1s update
     private static final int OUTLIER_THRESHOLD_BPM = 30; // If change > 30 BPM, treat as outlier
     private static final int MIN_CONFIRMATIONS = 3; // Need 3 similar readings to accept large change
     
     // Sample counter for update interval
     private int samplesSinceLastHRUpdate = 0;
+
+    private static final LatencyHistogram blockLatency = PipelineMetrics.histogram("vitals.block");
+    private static final LatencyHistogram heartRateLatency = PipelineMetrics.histogram("vitals.heart_rate");
         // Callback interface for vital signs updates
     public interface VitalSignsCallback {
         void onHeartRateUpdate(int heartRate);
@@ -82,80 +87,99 @@ public class VitalSignsProcessor {
     }
     
     /**
-     * Add new sensor data point for processing
+     * Add new sensor data point for processing.
+     * Heart rate and signal quality are derived from green PPG only; IR, accelerometer and
+     * timestamp are not buffered.
      */
     public synchronized void addDataPoint(long green, long ir, short accX, short accY, short accZ, long timestamp) {
-        // Add data to buffers
-        ppgGreenBuffer.add(green);
-        ppgIrBuffer.add(ir);
-        accXBuffer.add(accX);
-        accYBuffer.add(accY);
-        accZBuffer.add(accZ);
-        timestampBuffer.add(timestamp);
-        
-        // Maintain buffer size for HR calculation (5 second sliding window)
-        if (ppgGreenBuffer.size() > HR_WINDOW_SIZE) {
-            ppgGreenBuffer.remove(0);
-            ppgIrBuffer.remove(0);
-            timestampBuffer.remove(0);
+        long start = System.nanoTime();
+        appendGreen(green);
+        afterAppend();
+        blockLatency.recordSince(start);
+    }
+
+    /**
+     * Add the first {@code count} samples of a block (one BLE frame) under a single lock.
+     * Heart rate is updated at the same sample positions as per-sample ingest, even when an update
+     * interval ends inside the block; signal quality is evaluated once for the whole block.
+     */
+    public synchronized void onSensorBlock(long[] green, long[] ir, short[] accX, short[] accY, short[] accZ,
+                                           int count, long timestamp) {
+        if (count <= 0) {
+            return;
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            appendGreen(green[i]);
+            maybeUpdateHeartRate();
         }
+        updateSignalQuality();
+        lastUpdateTime = System.currentTimeMillis();
+        blockLatency.recordSince(start);
+    }
+
+    private void appendGreen(long green) {
+        // 5 second sliding windows; the oldest sample is evicted once full
+        greenWindow.add(green);
         
-        // Maintain buffer size for accelerometer (keep same window)
-        if (accXBuffer.size() > HR_WINDOW_SIZE) {
-            accXBuffer.remove(0);
-            accYBuffer.remove(0);
-            accZBuffer.remove(0);
+        // Trailing moving average (0.2 s) of the latest samples, emitted once its window is full
+        smoothingWindow.add(green);
+        if (smoothingWindow.isFull()) {
+            smoothedGreenWindow.add(smoothingWindow.mean());
         }
         
         // Increment sample counter
         samplesSinceLastHRUpdate++;
-        
-        // Update HR every 1 second (every 25 samples at 25Hz)
-        if (ppgGreenBuffer.size() >= HR_WINDOW_SIZE && samplesSinceLastHRUpdate >= HR_UPDATE_INTERVAL) {
-            processHeartRate();
-            samplesSinceLastHRUpdate = 0; // Reset counter
-        }
-        
+    }
+
+    private void afterAppend() {
+        maybeUpdateHeartRate();
+
         // Update signal quality
         updateSignalQuality();
         
         lastUpdateTime = System.currentTimeMillis();
     }
     
+    private void maybeUpdateHeartRate() {
+        // Update HR every 1 second (every 25 samples at 25Hz)
+        if (greenWindow.size() >= HR_WINDOW_SIZE && samplesSinceLastHRUpdate >= HR_UPDATE_INTERVAL) {
+            long start = System.nanoTime();
+            processHeartRate();
+            heartRateLatency.recordSince(start);
+            samplesSinceLastHRUpdate = 0; // Reset counter
+        }
+    }
+
     /**
      * Process heart rate from PPG data using peak detection
      * Updates every 1 second with 5-second sliding window
      */
     private void processHeartRate() {
         try {
-            // Use Green PPG for heart rate calculation (typically best signal)
-            List<Long> ppgData = new ArrayList<>(ppgGreenBuffer);
-            
-            // Apply bandpass filter (0.5-4Hz = 30-240 BPM)
-            List<Double> filteredPPG = applyBandpassFilter(ppgData, 0.5, 4.0);
-            
+            // Green PPG (typically best signal), already smoothed sample by sample on arrival
             // Detect peaks with adaptive threshold
-            List<Integer> peaks = detectPeaks(filteredPPG, 0.5); // Lower threshold for better detection
+            int peakCount = detectPeaks(smoothedGreenWindow, 0.5, peakScratch); // Lower threshold for better detection
             
-            if (peaks.size() >= MIN_PEAKS_FOR_HR) {
+            if (peakCount >= MIN_PEAKS_FOR_HR) {
                 // Calculate intervals between peaks
-                List<Double> intervals = new ArrayList<>();
-                for (int i = 1; i < peaks.size(); i++) {
-                    double interval = (peaks.get(i) - peaks.get(i-1)) / (double) SAMPLE_RATE;
+                int intervalCount = 0;
+                for (int i = 1; i < peakCount; i++) {
+                    double interval = (peakScratch[i] - peakScratch[i-1]) / (double) SAMPLE_RATE;
                     // Filter out unreasonable intervals (< 0.3s or > 2.0s)
                     if (interval >= 0.3 && interval <= 2.0) {
-                        intervals.add(interval);
+                        intervalScratch[intervalCount++] = interval;
                     }
                 }
                 
-                if (intervals.isEmpty()) {
+                if (intervalCount == 0) {
                     Log.v(TAG, "HR: No valid intervals after filtering");
                     return;
                 }
                 
                 // Calculate median interval for robustness
-                Collections.sort(intervals);
-                double medianInterval = intervals.get(intervals.size() / 2);
+                Arrays.sort(intervalScratch, 0, intervalCount);
+                double medianInterval = intervalScratch[intervalCount / 2];
                 
                 // Convert to BPM
                 int heartRate = (int) Math.round(60.0 / medianInterval);
@@ -170,14 +194,14 @@ public class VitalSignsProcessor {
                             callback.onHeartRateUpdate(smoothedHR);
                         }
                         Log.d(TAG, String.format("HR: %d BPM (raw: %d, peaks: %d)", 
-                            smoothedHR, heartRate, peaks.size()));
+                            smoothedHR, heartRate, peakCount));
                     }
                 } else {
                     Log.v(TAG, String.format("HR: %d BPM out of range [%d-%d]", 
                         heartRate, MIN_HR_BPM, MAX_HR_BPM));
                 }
             } else {
-                Log.v(TAG, String.format("HR: Only %d peaks (need %d)", peaks.size(), MIN_PEAKS_FOR_HR));
+                Log.v(TAG, String.format("HR: Only %d peaks (need %d)", peakCount, MIN_PEAKS_FOR_HR));
             }
         } catch (Exception e) {
             Log.e(TAG, "Error processing heart rate", e);
@@ -190,30 +214,6 @@ public class VitalSignsProcessor {
      */
     // SpO2 processing removed as per request
     
-    /**
-     * Calculate AC component (peak-to-peak amplitude) of PPG signal
-     */
-    private double calculateAC(List<Long> ppgData) {
-        if (ppgData.isEmpty()) return 0;
-        
-        long max = Collections.max(ppgData);
-        long min = Collections.min(ppgData);
-        return (max - min) / 2.0; // Half of peak-to-peak
-    }
-    
-    /**
-     * Calculate DC component (average) of PPG signal
-     */
-    private double calculateDC(List<Long> ppgData) {
-        if (ppgData.isEmpty()) return 0;
-        
-        long sum = 0;
-        for (long value : ppgData) {
-            sum += value;
-        }
-        return sum / (double) ppgData.size();
-    }
-    
     /**
      * Smooth heart rate with 5-second history (simplified algorithm)
      * - Rejects outliers (>30 BPM change)
@@ -222,10 +222,11 @@ public class VitalSignsProcessor {
      */
     private int smoothHeartRateWith5SecHistory(int rawHR) {
         // Add to history (keeps last 5 readings = 5 seconds at 1 Hz)
-        hrHistory.add(rawHR);
-        if (hrHistory.size() > HR_HISTORY_SIZE) {
-            hrHistory.remove(0);
+        if (hrHistorySize == HR_HISTORY_SIZE) {
+            System.arraycopy(hrHistory, 1, hrHistory, 0, HR_HISTORY_SIZE - 1);
+            hrHistorySize--;
         }
+        hrHistory[hrHistorySize++] = rawHR;
         
         // First reading - accept it
         if (currentHeartRate == -1) {
@@ -240,8 +241,8 @@ public class VitalSignsProcessor {
             Log.w(TAG, String.format("HR: Outlier rejected %d->%d (%d BPM)", 
                 currentHeartRate, rawHR, hrChange));
             // Remove outlier from history
-            if (!hrHistory.isEmpty()) {
-                hrHistory.remove(hrHistory.size() - 1);
+            if (hrHistorySize > 0) {
+                hrHistorySize--;
             }
             return currentHeartRate; // Keep current value
         }
@@ -257,92 +258,68 @@ public class VitalSignsProcessor {
         }
         
         // Level 3: Smooth with 5-second history
-        if (hrHistory.size() >= 3) {
+        if (hrHistorySize >= 3) {
             // Calculate weighted average: more weight on recent values
             int smoothedHR = 0;
             int totalWeight = 0;
             
-            for (int i = 0; i < hrHistory.size(); i++) {
+            for (int i = 0; i < hrHistorySize; i++) {
                 int weight = i + 1; // Linear weights: 1, 2, 3, 4, 5 (newer values have more weight)
-                smoothedHR += hrHistory.get(i) * weight;
+                smoothedHR += hrHistory[i] * weight;
                 totalWeight += weight;
             }
             smoothedHR = Math.round((float) smoothedHR / totalWeight);
             
             Log.v(TAG, String.format("HR: Smoothed %d->%d BPM (history size: %d)", 
-                rawHR, smoothedHR, hrHistory.size()));
+                rawHR, smoothedHR, hrHistorySize));
             return smoothedHR;
         }
         
         // Not enough history - simple average
-        if (hrHistory.size() >= 2) {
+        if (hrHistorySize >= 2) {
             int sum = 0;
-            for (int hr : hrHistory) {
-                sum += hr;
+            for (int i = 0; i < hrHistorySize; i++) {
+                sum += hrHistory[i];
             }
-            return sum / hrHistory.size();
+            return sum / hrHistorySize;
         }
         
         return rawHR;
     }
     
     
-    /**
-     * Simple bandpass filter implementation
-     */
-    private List<Double> applyBandpassFilter(List<? extends Number> data, double lowFreq, double highFreq) {
-        List<Double> filtered = new ArrayList<>();
-        
-        // Simple moving average for demonstration (replace with proper filter if needed)
-        int windowSize = Math.max(1, SAMPLE_RATE / 5); // 0.2 second window
-        
-        for (int i = 0; i < data.size(); i++) {
-            double sum = 0;
-            int count = 0;
-            
-            int start = Math.max(0, i - windowSize/2);
-            int end = Math.min(data.size(), i + windowSize/2 + 1);
-            
-            for (int j = start; j < end; j++) {
-                sum += data.get(j).doubleValue();
-                count++;
-            }
-            
-            filtered.add(sum / count);
-        }
-        
-        return filtered;
-    }
-    
     /**
      * Peak detection using threshold-based approach
+     * @return Number of peak indices (relative to the window's oldest sample) written to {@code peaks}
      */
-    private List<Integer> detectPeaks(List<Double> data, double threshold) {
-        List<Integer> peaks = new ArrayList<>();
-        
-        if (data.size() < 3) return peaks;
+    private static int detectPeaks(SlidingWindowStats data, double threshold, int[] peaks) {
+        int n = data.size();
+        if (n < 3) return 0;
         
-        // Calculate dynamic threshold based on data range
-        double min = Collections.min(data);
-        double max = Collections.max(data);
+        // Calculate dynamic threshold based on data range (window min/max are tracked incrementally)
+        double min = data.min();
+        double max = data.max();
         double dynamicThreshold = min + (max - min) * threshold;
         
         // Find peaks
-        for (int i = 1; i < data.size() - 1; i++) {
-            double current = data.get(i);
-            double prev = data.get(i - 1);
+        int count = 0;
+        double prev = data.get(0);
+        double current = data.get(1);
+        for (int i = 1; i < n - 1; i++) {
             double next = data.get(i + 1);
             
             // Peak criteria: local maximum above threshold
             if (current > prev && current > next && current > dynamicThreshold) {
                 // Avoid peaks too close together (minimum distance)
-                if (peaks.isEmpty() || i - peaks.get(peaks.size() - 1) > SAMPLE_RATE / 4) {
-                    peaks.add(i);
+                if (count == 0 || i - peaks[count - 1] > SAMPLE_RATE / 4) {
+                    peaks[count++] = i;
                 }
             }
+            prev = current;
+            current = next;
         }
         
-        return peaks;
+        return count;
     }
     
     /**
@@ -351,12 +328,10 @@ public class VitalSignsProcessor {
     private void updateSignalQuality() {
         SignalQuality quality = SignalQuality.NO_SIGNAL;
         
-        if (!ppgGreenBuffer.isEmpty()) {
+        if (!greenWindow.isEmpty()) {
             // Calculate signal-to-noise ratio
-            long min = Collections.min(ppgGreenBuffer);
-            long max = Collections.max(ppgGreenBuffer);
-            double range = max - min;
-            double mean = ppgGreenBuffer.stream().mapToLong(Long::longValue).average().orElse(0);
+            double range = greenWindow.range();
+            double mean = greenWindow.mean();
             
             // Simple quality assessment based on signal range and mean
             if (mean > 1000 && range > 500) {
@@ -387,15 +362,11 @@ public class VitalSignsProcessor {
      * Clear all buffers and reset state
      */
     public synchronized void reset() {
-        ppgGreenBuffer.clear();
-        ppgIrBuffer.clear();
-        accXBuffer.clear();
-        accYBuffer.clear();
-        accZBuffer.clear();
-        timestampBuffer.clear();
+        greenWindow.clear();
+        smoothingWindow.clear();
+        smoothedGreenWindow.clear();
         
-        hrHistory.clear();
-        spo2History.clear();
+        hrHistorySize = 0;
         
         currentHeartRate = -1;
         currentSignalQuality = SignalQuality.NO_SIGNAL;
@@ -414,8 +385,8 @@ public class VitalSignsProcessor {
      * Get buffer sizes for debugging
      */
     public String getBufferStatus() {
-        return String.format("PPG: %d/%d, ACC: %d/%d", 
-                ppgGreenBuffer.size(), HR_WINDOW_SIZE,
-                accXBuffer.size(), HR_WINDOW_SIZE);
+        return String.format("PPG: %d/%d, smoothed: %d/%d", 
+                greenWindow.size(), HR_WINDOW_SIZE,
+                smoothedGreenWindow.size(), HR_WINDOW_SIZE);
     }
 }
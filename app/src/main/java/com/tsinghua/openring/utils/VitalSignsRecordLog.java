@@ -0,0 +1,235 @@
+package com.tsinghua.openring.utils;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Append-only binary log of vital signs records.
+ *
+ * File layout (little-endian): an 8-byte header (magic "VSH1", int version) followed by fixed-width
+ * 18-byte records: long epoch-millis timestamp, then short hr, bp_sys, bp_dia, spo2, rr.
+ * Appending writes one record at the end of the file; a per-day index of record runs (built by one
+ * scan when the log is opened and extended as records are appended) lets a day be read by mapping
+ * only the regions that hold its records. A partially written trailing record is truncated on open.
+ */
+public class VitalSignsRecordLog implements Closeable {
+    public static final int HEADER_SIZE = 8;
+    public static final int RECORD_SIZE = 18;
+    private static final int MAGIC = 0x31485356; // "VSH1" little-endian
+    private static final int VERSION = 1;
+
+    private static final DateTimeFormatter TIMESTAMP_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss");
+
+    private final File file;
+    private final ZoneId zone;
+    private final FileChannel channel;
+    private final ByteBuffer writeBuffer = ByteBuffer.allocate(RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+    // epochDay -> runs of consecutive record indices belonging to that day
+    private final Map<Long, DayRuns> dayIndex = new HashMap<>();
+    private int indexedCount = 0;
+
+    /**
+     * Runs stored as (firstIndex, count) pairs; records appended back to back extend the last run
+     */
+    private static final class DayRuns {
+        int[] runs = new int[4];
+        int size = 0;     // number of ints used (2 per run)
+
+        void add(int index) {
+            if (size > 0 && runs[size - 2] + runs[size - 1] == index) {
+                runs[size - 1]++;
+                return;
+            }
+            if (size == runs.length) {
+                int[] grown = new int[runs.length * 2];
+                System.arraycopy(runs, 0, grown, 0, size);
+                runs = grown;
+            }
+            runs[size++] = index;
+            runs[size++] = 1;
+        }
+
+        int recordCount() {
+            int n = 0;
+            for (int i = 1; i < size; i += 2) {
+                n += runs[i];
+            }
+            return n;
+        }
+    }
+
+    public VitalSignsRecordLog(File file) throws IOException {
+        this(file, ZoneId.systemDefault());
+    }
+
+    public VitalSignsRecordLog(File file, ZoneId zone) throws IOException {
+        this.file = file;
+        this.zone = zone;
+        this.channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            initHeader();
+            indexNewRecords();
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private void initHeader() throws IOException {
+        long length = channel.size();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        if (length < HEADER_SIZE) {
+            header.putInt(MAGIC).putInt(VERSION).flip();
+            channel.truncate(0);
+            channel.write(header, 0);
+            return;
+        }
+        channel.read(header, 0);
+        header.flip();
+        int magic = header.getInt();
+        int version = header.getInt();
+        if (magic != MAGIC || version != VERSION) {
+            throw new IOException("Not a vital signs log (magic=" + Integer.toHexString(magic) +
+                    ", version=" + version + "): " + file);
+        }
+        // Drop a torn trailing record left by an interrupted append
+        long tail = (length - HEADER_SIZE) % RECORD_SIZE;
+        if (tail != 0) {
+            channel.truncate(length - tail);
+        }
+    }
+
+    /**
+     * Index records written since the last scan (by this or another instance on the same file)
+     */
+    private void indexNewRecords() throws IOException {
+        long length = channel.size();
+        int total = (int) ((length - HEADER_SIZE) / RECORD_SIZE);
+        if (total <= indexedCount) {
+            return;
+        }
+        long start = HEADER_SIZE + (long) indexedCount * RECORD_SIZE;
+        MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, start, (long) (total - indexedCount) * RECORD_SIZE);
+        map.order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = indexedCount; i < total; i++) {
+            long millis = map.getLong((i - indexedCount) * RECORD_SIZE);
+            dayIndex.computeIfAbsent(epochDay(millis), k -> new DayRuns()).add(i);
+        }
+        indexedCount = total;
+    }
+
+    private long epochDay(long epochMillis) {
+        return Instant.ofEpochMilli(epochMillis).atZone(zone).toLocalDate().toEpochDay();
+    }
+
+    /**
+     * Append one record (values are clamped to the short range)
+     */
+    public synchronized void append(long epochMillis, int hr, int bpSys, int bpDia, int spo2, int rr) throws IOException {
+        indexNewRecords();
+        writeBuffer.clear();
+        writeBuffer.putLong(epochMillis)
+                .putShort(clamp(hr))
+                .putShort(clamp(bpSys))
+                .putShort(clamp(bpDia))
+                .putShort(clamp(spo2))
+                .putShort(clamp(rr))
+                .flip();
+        long position = HEADER_SIZE + (long) indexedCount * RECORD_SIZE;
+        while (writeBuffer.hasRemaining()) {
+            position += channel.write(writeBuffer, position);
+        }
+        dayIndex.computeIfAbsent(epochDay(epochMillis), k -> new DayRuns()).add(indexedCount);
+        indexedCount++;
+    }
+
+    public synchronized void append(VitalSignsRecord record) throws IOException {
+        append(parseTimestamp(record.getTimestamp()), record.getHr(), record.getBp_sys(),
+                record.getBp_dia(), record.getSpo2(), record.getRr());
+    }
+
+    private static short clamp(int value) {
+        return (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, value));
+    }
+
+    /**
+     * Records of one local calendar day, in append order
+     */
+    public synchronized List<VitalSignsRecord> readDay(long epochDay) throws IOException {
+        indexNewRecords();
+        DayRuns day = dayIndex.get(epochDay);
+        if (day == null) {
+            return new ArrayList<>();
+        }
+        List<VitalSignsRecord> records = new ArrayList<>(day.recordCount());
+        for (int r = 0; r < day.size; r += 2) {
+            int first = day.runs[r];
+            int count = day.runs[r + 1];
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY,
+                    HEADER_SIZE + (long) first * RECORD_SIZE, (long) count * RECORD_SIZE);
+            map.order(ByteOrder.LITTLE_ENDIAN);
+            for (int i = 0; i < count; i++) {
+                records.add(decode(map, i * RECORD_SIZE));
+            }
+        }
+        return records;
+    }
+
+    private VitalSignsRecord decode(ByteBuffer buf, int offset) {
+        long millis = buf.getLong(offset);
+        return new VitalSignsRecord(formatTimestamp(millis),
+                buf.getShort(offset + 8),
+                buf.getShort(offset + 10),
+                buf.getShort(offset + 12),
+                buf.getShort(offset + 14),
+                buf.getShort(offset + 16));
+    }
+
+    public synchronized int size() throws IOException {
+        indexNewRecords();
+        return indexedCount;
+    }
+
+    /**
+     * Parse a "yyyy-MM-dd'T'HH:mm:ss" local timestamp (as used by {@link VitalSignsRecord})
+     */
+    public long parseTimestamp(String timestamp) {
+        return LocalDateTime.parse(timestamp, TIMESTAMP_FORMAT).atZone(zone).toInstant().toEpochMilli();
+    }
+
+    public String formatTimestamp(long epochMillis) {
+        return TIMESTAMP_FORMAT.format(Instant.ofEpochMilli(epochMillis).atZone(zone));
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Flush appended records to storage
+     */
+    public synchronized void sync() throws IOException {
+        channel.force(false);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,79 @@
+package com.tsinghua.openring.inference;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.io.StringReader;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class AssetsUtilsTest {
+
+    // sha256("abc")
+    private static final String ABC_SHA256 = "ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad";
+
+    @Test
+    public void parseManifest_skipsCommentsAndMalformedLines() throws Exception {
+        String text = "# sha256 size path\n"
+                + ABC_SHA256 + " 3 resnet-ring1-hr-all-irred/hr/Fold-1/model_ts.pt\n"
+                + "\n"
+                + "not-a-hash 3 broken.pt\n"
+                + ABC_SHA256.toUpperCase() + " x bad-size.pt\n";
+        Map<String, AssetsUtils.ManifestEntry> manifest = AssetsUtils.parseManifest(new StringReader(text));
+
+        assertEquals(1, manifest.size());
+        AssetsUtils.ManifestEntry entry = manifest.get("resnet-ring1-hr-all-irred/hr/Fold-1/model_ts.pt");
+        assertEquals(ABC_SHA256, entry.sha256);
+        assertEquals(3, entry.size);
+    }
+
+    @Test
+    public void extractedName_embedsHashPrefixBeforeExtension() {
+        assertEquals("hr_Fold-1_model_ts-ba7816bf8f01.pt",
+                AssetsUtils.extractedName("hr/Fold-1/model_ts.pt", ABC_SHA256));
+        assertEquals("hr_Fold-1_model_ts.pt", AssetsUtils.extractedName("hr/Fold-1/model_ts.pt", null));
+        assertEquals("model-ba7816bf8f01", AssetsUtils.extractedName("model", ABC_SHA256));
+    }
+
+    @Test
+    public void copyStream_copiesAndHashes() throws Exception {
+        File dst = File.createTempFile("asset", ".pt");
+        try {
+            String sha = AssetsUtils.copyStream(
+                    new ByteArrayInputStream("abc".getBytes(StandardCharsets.US_ASCII)), dst);
+            assertEquals(ABC_SHA256, sha);
+            assertArrayEquals("abc".getBytes(StandardCharsets.US_ASCII), Files.readAllBytes(dst.toPath()));
+        } finally {
+            assertTrue(dst.delete());
+        }
+    }
+
+    @Test
+    public void copyMapped_copiesOnlyTheAssetRegion() throws Exception {
+        // 模拟 APK 中未压缩的资源：前后都有其他数据
+        File apk = File.createTempFile("apk", ".bin");
+        File dst = File.createTempFile("asset", ".pt");
+        try {
+            Files.write(apk.toPath(), "headerabctrailer".getBytes(StandardCharsets.US_ASCII));
+            try (RandomAccessFile raf = new RandomAccessFile(apk, "r");
+                 FileChannel channel = raf.getChannel()) {
+                assertEquals(ABC_SHA256, AssetsUtils.copyMapped(channel, 6, 3, dst));
+            }
+            assertArrayEquals("abc".getBytes(StandardCharsets.US_ASCII), Files.readAllBytes(dst.toPath()));
+            assertFalse(ABC_SHA256.equals(AssetsUtils.copyStream(
+                    new ByteArrayInputStream("abd".getBytes(StandardCharsets.US_ASCII)), dst)));
+        } finally {
+            assertTrue(apk.delete());
+            assertTrue(dst.delete());
+        }
+    }
+}
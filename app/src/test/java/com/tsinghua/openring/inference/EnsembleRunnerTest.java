@@ -0,0 +1,155 @@
+package com.tsinghua.openring.inference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class EnsembleRunnerTest {
+
+    @Test
+    public void capParallelism_reservesCoresForIngestAndUi() {
+        assertEquals(6, EnsembleRunner.capParallelism(8, 8));
+        assertEquals(4, EnsembleRunner.capParallelism(4, 8));
+        assertEquals(1, EnsembleRunner.capParallelism(4, 2));
+        assertEquals(1, EnsembleRunner.capParallelism(0, 8));
+    }
+
+    @Test
+    public void invokeOrdered_returnsResultsInSubmissionOrder() {
+        EnsembleRunner runner = new EnsembleRunner(4, 5000, 8);
+        try {
+            List<Callable<Float>> tasks = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                final int index = i;
+                // Later tasks finish first
+                tasks.add(() -> {
+                    Thread.sleep(20 - index);
+                    return (float) index;
+                });
+            }
+            tasks.add(() -> {
+                throw new IllegalStateException("fold failed");
+            });
+            List<Float> results = runner.invokeOrdered(tasks);
+            assertEquals(4, runner.getParallelism());
+            assertEquals(21, results.size());
+            for (int i = 0; i < 20; i++) {
+                assertEquals(i, results.get(i), 0.0f);
+            }
+            assertNull(results.get(20));
+            assertEquals(20, runner.getLastStats().completed);
+            assertEquals(1, runner.getLastStats().failed);
+        } finally {
+            runner.shutdown();
+        }
+    }
+
+    @Test
+    public void invokeOrdered_dropsTasksThatExceedTheirTimeout() {
+        EnsembleRunner runner = new EnsembleRunner(4, 100, 8);
+        try {
+            List<Callable<Float>> tasks = new ArrayList<>();
+            tasks.add(() -> 1f);
+            tasks.add(() -> {
+                Thread.sleep(5000);
+                return 2f;
+            });
+            tasks.add(() -> 3f);
+            long start = System.nanoTime();
+            List<Float> results = runner.invokeOrdered(tasks);
+            long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+            assertEquals(1f, results.get(0), 0.0f);
+            assertNull(results.get(1));
+            assertEquals(3f, results.get(2), 0.0f);
+            assertEquals(1, runner.getLastStats().timedOut);
+            assertTrue("batch took " + elapsedMs + "ms", elapsedMs < 2000);
+        } finally {
+            runner.shutdown();
+        }
+    }
+
+    @Test
+    public void invokeOrdered_timesOutASingleTaskWithoutParallelism() {
+        // 单个任务、并行度 1（最常见的单模型配置）也必须受超时约束，不能阻塞调用线程
+        EnsembleRunner runner = new EnsembleRunner(1, 100, 2);
+        try {
+            List<Callable<Float>> tasks = new ArrayList<>();
+            tasks.add(() -> {
+                Thread.sleep(5000);
+                return 1f;
+            });
+            long start = System.nanoTime();
+            List<Float> results = runner.invokeOrdered(tasks);
+            long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+            assertEquals(1, runner.getParallelism());
+            assertNull(results.get(0));
+            assertEquals(1, runner.getLastStats().timedOut);
+            assertTrue("batch took " + elapsedMs + "ms", elapsedMs < 2000);
+
+            // 超时任务被中断后，工作线程可继续处理下一批
+            tasks.clear();
+            tasks.add(() -> 2f);
+            assertEquals(2f, runner.invokeOrdered(tasks).get(0), 0.0f);
+        } finally {
+            runner.shutdown();
+        }
+    }
+
+    @Test
+    public void invokeOrdered_skipsAKeyWhoseForwardIgnoredTheInterrupt() throws Exception {
+        // 原生 forward 不响应中断：超时后同一 Module 不能再次并发运行，其余 fold 也不能排在它后面
+        EnsembleRunner runner = new EnsembleRunner(1, 100, 2);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch returned = new CountDownLatch(1);
+        Object hung = new Object();
+        Object healthy = new Object();
+        try {
+            List<Callable<Float>> tasks = new ArrayList<>();
+            tasks.add(() -> {
+                while (true) {
+                    try {
+                        if (release.await(5, TimeUnit.SECONDS)) break;
+                    } catch (InterruptedException ignored) {
+                        // 模拟忽略中断的原生调用
+                    }
+                }
+                returned.countDown();
+                return 1f;
+            });
+            assertNull(runner.invokeOrdered(tasks, Arrays.asList(hung)).get(0));
+            assertEquals(1, runner.getLastStats().timedOut);
+
+            tasks.clear();
+            tasks.add(() -> 2f);
+            tasks.add(() -> 3f);
+            long start = System.nanoTime();
+            List<Float> results = runner.invokeOrdered(tasks, Arrays.asList(hung, healthy));
+            long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+            assertNull(results.get(0));
+            assertEquals(3f, results.get(1), 0.0f);
+            assertEquals(1, runner.getLastStats().skipped);
+            assertEquals(0, runner.getLastStats().timedOut);
+            assertTrue("batch took " + elapsedMs + "ms", elapsedMs < 1000);
+
+            // 卡住的 forward 返回后，该 Module 重新参与推理
+            release.countDown();
+            assertTrue(returned.await(2, TimeUnit.SECONDS));
+            Thread.sleep(50);
+            results = runner.invokeOrdered(tasks, Arrays.asList(hung, healthy));
+            assertEquals(2f, results.get(0), 0.0f);
+            assertEquals(0, runner.getLastStats().skipped);
+        } finally {
+            release.countDown();
+            runner.shutdown();
+        }
+    }
+}
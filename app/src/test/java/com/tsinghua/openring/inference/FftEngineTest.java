@@ -0,0 +1,90 @@
+package com.tsinghua.openring.inference;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks {@link FftEngine} against the recursive Cooley-Tukey transform it replaced.
+ */
+public class FftEngineTest {
+
+    @Test
+    public void forward_matchesRecursiveReference() {
+        Random random = new Random(42);
+        for (int n = 1; n <= 4096; n <<= 1) {
+            float[] signal = new float[n];
+            for (int i = 0; i < n; i++) {
+                // PPG-like: large DC offset, pulse at ~1.2 Hz (100 Hz sampling) plus noise
+                signal[i] = (float) (90000 + 500 * Math.sin(2 * Math.PI * 1.2 * i / 100.0) + random.nextGaussian() * 20);
+            }
+
+            double[] re = new double[n];
+            double[] im = new double[n];
+            double[][] reference = new double[n][2];
+            for (int i = 0; i < n; i++) {
+                re[i] = signal[i];
+                reference[i][0] = signal[i];
+            }
+
+            FftEngine.forward(re, im, n);
+            double[][] expected = recursiveFft(reference);
+
+            double scale = 0;
+            for (double[] c : expected) {
+                scale = Math.max(scale, Math.hypot(c[0], c[1]));
+            }
+            for (int k = 0; k < n; k++) {
+                assertEquals("re[" + k + "] n=" + n, expected[k][0] / scale, re[k] / scale, 1e-9);
+                assertEquals("im[" + k + "] n=" + n, expected[k][1] / scale, im[k] / scale, 1e-9);
+            }
+        }
+    }
+
+    @Test
+    public void forward_findsToneBin() {
+        int n = 512;
+        double[] re = new double[n];
+        double[] im = new double[n];
+        for (int i = 0; i < n; i++) {
+            re[i] = Math.cos(2 * Math.PI * 37 * i / n);
+        }
+        FftEngine.forward(re, im, n);
+        assertEquals(n / 2.0, Math.hypot(re[37], im[37]), 1e-9);
+        assertEquals(0.0, Math.hypot(re[36], im[36]), 1e-9);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void forward_rejectsNonPowerOfTwo() {
+        FftEngine.forward(new double[12], new double[12], 12);
+    }
+
+    /** The former ClassicAlgorithmProcessor.computeFFT, on {re, im} pairs */
+    private static double[][] recursiveFft(double[][] input) {
+        int n = input.length;
+        if (n == 1) {
+            return new double[][] { { input[0][0], input[0][1] } };
+        }
+        double[][] even = new double[n / 2][];
+        double[][] odd = new double[n / 2][];
+        for (int i = 0; i < n / 2; i++) {
+            even[i] = input[2 * i];
+            odd[i] = input[2 * i + 1];
+        }
+        double[][] fftEven = recursiveFft(even);
+        double[][] fftOdd = recursiveFft(odd);
+        double[][] result = new double[n][];
+        for (int k = 0; k < n / 2; k++) {
+            double angle = -2.0 * Math.PI * k / n;
+            double wr = Math.cos(angle);
+            double wi = Math.sin(angle);
+            double tr = wr * fftOdd[k][0] - wi * fftOdd[k][1];
+            double ti = wr * fftOdd[k][1] + wi * fftOdd[k][0];
+            result[k] = new double[] { fftEven[k][0] + tr, fftEven[k][1] + ti };
+            result[k + n / 2] = new double[] { fftEven[k][0] - tr, fftEven[k][1] - ti };
+        }
+        return result;
+    }
+}
@@ -0,0 +1,82 @@
+package com.tsinghua.openring.inference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class InferenceSchedulerTest {
+
+    private static final int FS = 100;
+
+    /**
+     * Feed {@code total} samples in chunks of the given sizes and return the sample index at each fire
+     */
+    private static List<Integer> schedule(InferenceScheduler scheduler, int total, int[] chunks) {
+        List<Integer> fires = new ArrayList<>();
+        int appended = 0;
+        for (int c = 0; appended < total; c++) {
+            int produced = Math.min(chunks[c % chunks.length], total - appended);
+            appended += produced;
+            if (scheduler.onSamples(produced, appended)) {
+                fires.add(appended);
+            }
+        }
+        return fires;
+    }
+
+    @Test
+    public void firesAtMinimumThenEveryHop() {
+        InferenceScheduler scheduler = new InferenceScheduler(5, 2000, FS);
+        List<Integer> fires = schedule(scheduler, 1100, new int[]{1});
+        List<Integer> expected = new ArrayList<>();
+        expected.add(500);
+        expected.add(700);
+        expected.add(900);
+        expected.add(1100);
+        assertEquals(expected, fires);
+    }
+
+    @Test
+    public void burstsDoNotChangeTheNumberOfWindows() {
+        int total = 60 * FS;
+        List<Integer> steady = schedule(new InferenceScheduler(5, 2000, FS), total, new int[]{4});
+
+        // Irregular BLE bursts: anything from one frame to a second of samples at once
+        Random random = new Random(7);
+        int[] chunks = new int[97];
+        for (int i = 0; i < chunks.length; i++) {
+            chunks[i] = 4 * (1 + random.nextInt(25));
+        }
+        List<Integer> bursty = schedule(new InferenceScheduler(5, 2000, FS), total, chunks);
+
+        assertEquals(steady.size(), bursty.size());
+        for (int i = 0; i < steady.size(); i++) {
+            // Each window fires within one burst of its steady-state position
+            assertTrue(Math.abs(steady.get(i) - bursty.get(i)) <= 100);
+        }
+    }
+
+    @Test
+    public void hopChangeAndResetRestartSchedule() {
+        InferenceScheduler scheduler = new InferenceScheduler(5, 2000, FS);
+        assertTrue(scheduler.onSamples(500, 500));
+        scheduler.setHopMs(5000);
+        assertEquals(500, scheduler.getHopSamples());
+        assertFalse(scheduler.onSamples(499, 999));
+        assertTrue(scheduler.onSamples(1, 1000));
+
+        scheduler.reset();
+        assertFalse(scheduler.onSamples(100, 100));
+        assertTrue(scheduler.onSamples(400, 500));
+
+        scheduler.setSampleRate(50);
+        assertEquals(250, scheduler.getMinSamples());
+        assertEquals(250, scheduler.getHopSamples());
+    }
+}
@@ -0,0 +1,57 @@
+package com.tsinghua.openring.inference;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link SpectralEstimator}.
+ */
+public class SpectralEstimatorTest {
+
+    private static float[] tone(double freqHz, int sampleRate, int n) {
+        float[] signal = new float[n];
+        for (int i = 0; i < n; i++) {
+            signal[i] = (float) (90000 + 300 * Math.sin(2 * Math.PI * freqHz * i / sampleRate));
+        }
+        return signal;
+    }
+
+    @Test
+    public void findPeak_interpolatesBetweenBins() {
+        // 30 s at 100 Hz -> 4096-point grid, bin spacing ~0.0244 Hz
+        float[] signal = tone(1.2345, 100, 3000);
+        SpectralEstimator.Peak peak = SpectralEstimator.findPeak(signal, 100, 0.5, 4.0);
+        assertTrue(peak.isValid());
+        assertEquals(1.2345, peak.frequencyHz, 0.01);
+        assertTrue(peak.elapsedNanos > 0);
+    }
+
+    @Test
+    public void findPeak_goertzelAndFftAgree() {
+        float[] signal = tone(2.1, 100, 3000);
+        SpectralEstimator.Peak narrow = SpectralEstimator.findPeak(signal, 100, 1.8, 2.4);
+        SpectralEstimator.Peak wide = SpectralEstimator.findPeak(signal, 100, 0.5, 50.0);
+        assertFalse(narrow.usedFft);
+        assertTrue(wide.usedFft);
+        assertEquals(narrow.frequencyHz, wide.frequencyHz, 1e-9);
+        assertEquals(1.0, narrow.power / wide.power, 1e-9);
+    }
+
+    @Test
+    public void findPeak_ignoresStrongerComponentOutsideBand() {
+        float[] signal = tone(0.2, 100, 3000);
+        float[] pulse = tone(1.5, 100, 3000);
+        for (int i = 0; i < signal.length; i++) {
+            signal[i] += (pulse[i] - 90000) * 0.1f;
+        }
+        SpectralEstimator.Peak peak = SpectralEstimator.findPeak(signal, 100, 0.5, 4.0);
+        assertEquals(1.5, peak.frequencyHz, 0.02);
+    }
+
+    @Test
+    public void findPeak_emptyBandIsInvalid() {
+        SpectralEstimator.Peak peak = SpectralEstimator.findPeak(tone(1.0, 25, 100), 25, 3.0, 2.0);
+        assertFalse(peak.isValid());
+    }
+}
@@ -0,0 +1,46 @@
+package com.tsinghua.openring.inference;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+public class WindowPreprocessorTest {
+
+    @Test
+    public void padsCyclicallyAndKeepsNewestSamples() {
+        float[] src = {1, 2, 3};
+        assertArrayEquals(new float[]{1, 2, 3, 1, 2, 3, 1}, WindowPreprocessor.padWindow(src, 7), 0f);
+        assertArrayEquals(new float[]{2, 3}, WindowPreprocessor.padWindow(src, 2), 0f);
+        assertSame(src, WindowPreprocessor.padWindow(src, 3));
+        assertNull(WindowPreprocessor.padWindow(new float[]{1}, 5));
+    }
+
+    @Test
+    public void normalizesInterleavedChannelsIndependently() {
+        int length = 200;
+        float[] a = new float[length];
+        float[] b = new float[length];
+        for (int i = 0; i < length; i++) {
+            a[i] = (float) (1000 + 50 * Math.sin(i / 7.0));
+            b[i] = 5;  // flat channel: only centred
+        }
+        float[] input = WindowPreprocessor.interleave(a, b, length);
+        WindowPreprocessor.normalizeInterleaved(input, length, 2);
+
+        float[] single = a.clone();
+        WindowPreprocessor.normalize(single, length);
+
+        double sum = 0, sumSq = 0;
+        for (int i = 0; i < length; i++) {
+            assertEquals(single[i], input[i * 2], 1e-6f);
+            assertEquals(0f, input[i * 2 + 1], 0f);
+            sum += single[i];
+            sumSq += single[i] * single[i];
+        }
+        assertEquals(0, sum / length, 1e-5);
+        assertEquals(1, (sumSq - sum * sum / length) / (length - 1), 1e-4);
+    }
+}
@@ -0,0 +1,136 @@
+package com.tsinghua.openring.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.util.Log;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+public class AsyncLoggerTest {
+
+    /**
+     * Records what the writer thread sees, plus the batch size at every flush
+     */
+    private static final class RecordingSink implements AsyncLogger.Sink {
+        final List<String> lines = Collections.synchronizedList(new ArrayList<>());
+        final List<Integer> flushSizes = Collections.synchronizedList(new ArrayList<>());
+        final CountDownLatch release;
+        int sinceFlush = 0;
+        volatile boolean closed = false;
+
+        RecordingSink(CountDownLatch release) {
+            this.release = release;
+        }
+
+        @Override
+        public void writeLog(long timeMillis, int level, String message) {
+            awaitRelease();
+            lines.add(message);
+            sinceFlush++;
+        }
+
+        @Override
+        public void writePacket(long timeMillis, byte[] packet) {
+            awaitRelease();
+            lines.add("packet:" + packet.length);
+            sinceFlush++;
+        }
+
+        private void awaitRelease() {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public void flush() {
+            flushSizes.add(sinceFlush);
+            sinceFlush = 0;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    @Test
+    public void writesInOrderAndFlushesInBatches() {
+        RecordingSink sink = new RecordingSink(new CountDownLatch(0));
+        AsyncLogger logger = new AsyncLogger("test", sink, Log.DEBUG, 10, 60_000, 1000);
+        for (int i = 0; i < 35; i++) {
+            logger.log(Log.INFO, "m" + i);
+        }
+        logger.packet(new byte[7]);
+        logger.close();
+
+        assertEquals(36, sink.lines.size());
+        for (int i = 0; i < 35; i++) {
+            assertEquals("m" + i, sink.lines.get(i));
+        }
+        assertEquals("packet:7", sink.lines.get(35));
+        assertTrue(sink.closed);
+        // Group commit: no flush covers more than one batch, and the long interval never fires
+        int total = 0;
+        for (int size : sink.flushSizes) {
+            assertTrue(size > 0 && size <= 10);
+            total += size;
+        }
+        assertEquals(36, total);
+        assertTrue(sink.flushSizes.size() <= 36 / 10 + 2);
+    }
+
+    @Test
+    public void levelFilterSkipsMessages() {
+        RecordingSink sink = new RecordingSink(new CountDownLatch(0));
+        AsyncLogger logger = new AsyncLogger("test", sink, Log.INFO);
+        assertFalse(logger.isEnabled(Log.DEBUG));
+        assertTrue(logger.isEnabled(Log.WARN));
+        logger.log(Log.DEBUG, "hidden");
+        logger.log(Log.WARN, "shown");
+        logger.close();
+        assertEquals(Collections.singletonList("shown"), sink.lines);
+        assertFalse(logger.isEnabled(Log.ERROR));
+    }
+
+    @Test
+    public void dropsInsteadOfBlockingWhenFull() {
+        CountDownLatch release = new CountDownLatch(1);
+        RecordingSink sink = new RecordingSink(release);
+        AsyncLogger logger = new AsyncLogger("test", sink, Log.DEBUG, 4, 60_000, 8);
+        for (int i = 0; i < 100; i++) {
+            logger.log(Log.INFO, "m" + i);
+        }
+        assertTrue(logger.getDroppedCount() >= 100 - 8 - 4);
+        release.countDown();
+        logger.close();
+        assertEquals(100 - logger.getDroppedCount(), sink.lines.size());
+    }
+
+    @Test
+    public void textSinkFormatsTimestampOnWriterThread() throws IOException {
+        File file = File.createTempFile("async", ".txt");
+        file.deleteOnExit();
+        AsyncLogger logger = new AsyncLogger("test", AsyncLogger.textFileSink(file, false), Log.DEBUG);
+        logger.log(Log.DEBUG, "hello");
+        logger.log(Log.DEBUG, "world");
+        logger.close();
+        List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+        assertEquals(2, lines.size());
+        assertTrue(lines.get(0).matches("\\[\\d{4}-\\d{2}-\\d{2} \\d{2}:\\d{2}:\\d{2}\\.\\d{3}] hello"));
+        assertTrue(lines.get(1).endsWith("] world"));
+    }
+}
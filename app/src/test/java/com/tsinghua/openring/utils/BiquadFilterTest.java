@@ -0,0 +1,91 @@
+package com.tsinghua.openring.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class BiquadFilterTest {
+
+    private static float[] sine(double freqHz, double fs, int n, double amplitude, double offset) {
+        float[] out = new float[n];
+        for (int i = 0; i < n; i++) {
+            out[i] = (float) (offset + amplitude * Math.sin(2 * Math.PI * freqHz * i / fs));
+        }
+        return out;
+    }
+
+    /**
+     * Steady-state amplitude of a streamed sine, measured after the transient has died out
+     */
+    private static double streamedGain(BiquadFilter filter, double freqHz, double fs, int n) {
+        float[] x = sine(freqHz, fs, n, 1.0, 0.0);
+        double peak = 0;
+        for (int i = 0; i < n; i++) {
+            float y = filter.process(x[i]);
+            if (i >= n / 2) {
+                peak = Math.max(peak, Math.abs(y));
+            }
+        }
+        return peak;
+    }
+
+    @Test
+    public void bandpassHasButterworthEdgesAndUnityCentreGain() {
+        double fs = 100;
+        double low = 0.5, high = 3.0;
+        BiquadFilter filter = SignalFilters.PhysiologicalSignalFilter.create(fs);
+        assertEquals(3, filter.getSectionCount());
+
+        int n = 20000;
+        // Centre frequency of the pre-warped design is the geometric mean of the edges
+        assertEquals(1.0, streamedGain(filter.copy(), Math.sqrt(low * high), fs, n), 0.01);
+        assertEquals(Math.sqrt(0.5), streamedGain(filter.copy(), low, fs, n), 0.01);
+        assertEquals(Math.sqrt(0.5), streamedGain(filter.copy(), high, fs, n), 0.01);
+        assertTrue(streamedGain(filter.copy(), 10.0, fs, n) < 0.05);
+    }
+
+    @Test
+    public void designAdaptsToSampleRate() {
+        BiquadFilter at25 = SignalFilters.PhysiologicalSignalFilter.create(25);
+        assertEquals(Math.sqrt(0.5), streamedGain(at25, 3.0, 25, 8000), 0.01);
+        BiquadFilter rr = SignalFilters.RespiratoryRateFilter.create(25);
+        assertEquals(Math.sqrt(0.5), streamedGain(rr, 0.5, 25, 40000), 0.01);
+    }
+
+    @Test
+    public void firstSamplePrimesStateSoDcOffsetDoesNotRing() {
+        BiquadFilter filter = SignalFilters.PhysiologicalSignalFilter.create(25);
+        for (int i = 0; i < 500; i++) {
+            assertEquals(0.0, filter.process(80000f), 1e-2);
+        }
+    }
+
+    @Test
+    public void filtfiltIsZeroPhase() {
+        double fs = 100;
+        int n = 3000;
+        float[] x = sine(1.2, fs, n, 100.0, 50000.0);
+        float[] y = SignalFilters.PhysiologicalSignalFilter.filter(x);
+        assertEquals(n, y.length);
+        // DC removed, in-band tone passed in phase (away from the edges)
+        for (int i = 500; i < n - 500; i++) {
+            assertEquals(x[i] - 50000.0, y[i], 2.0);
+        }
+    }
+
+    @Test
+    public void filtfiltLeavesStreamingStateUntouched() {
+        BiquadFilter filter = SignalFilters.RespiratoryRateFilter.create(100);
+        BiquadFilter reference = filter.copy();
+        float[] x = sine(0.25, 100, 1000, 10.0, 0.0);
+        for (int i = 0; i < 100; i++) {
+            filter.process(x[i]);
+            reference.process(x[i]);
+        }
+        filter.filtfilt(x);
+        for (int i = 100; i < x.length; i++) {
+            assertEquals(reference.process(x[i]), filter.process(x[i]), 0.0f);
+        }
+    }
+}
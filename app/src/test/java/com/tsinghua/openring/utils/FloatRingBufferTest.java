@@ -0,0 +1,112 @@
+package com.tsinghua.openring.utils;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link FloatRingBuffer}, run on the development machine (host).
+ */
+public class FloatRingBufferTest {
+
+    @Test
+    public void copyLatest_returnsSamplesOldestFirst() {
+        FloatRingBuffer buffer = new FloatRingBuffer(4);
+        for (int i = 1; i <= 6; i++) {
+            buffer.add(i);
+        }
+        assertEquals(4, buffer.size());
+        assertTrue(buffer.isFull());
+
+        float[] dst = new float[4];
+        assertEquals(4, buffer.copyLatest(dst, 4));
+        assertArrayEquals(new float[]{3, 4, 5, 6}, dst, 0f);
+
+        float[] lastTwo = new float[2];
+        assertEquals(2, buffer.copyLatest(lastTwo, 2));
+        assertArrayEquals(new float[]{5, 6}, lastTwo, 0f);
+        assertEquals(6f, buffer.latest(), 0f);
+        assertEquals(3f, buffer.get(0), 0f);
+    }
+
+    @Test
+    public void copyLatest_partiallyFilledBuffer() {
+        FloatRingBuffer buffer = new FloatRingBuffer(8);
+        buffer.add(1f);
+        buffer.add(2f);
+
+        float[] dst = new float[8];
+        assertEquals(2, buffer.copyLatest(dst, 8));
+        assertEquals(1f, dst[0], 0f);
+        assertEquals(2f, dst[1], 0f);
+
+        buffer.clear();
+        assertTrue(buffer.isEmpty());
+        assertEquals(0, buffer.copyLatest(dst, 8));
+    }
+
+    @Test
+    public void ingestChain_allocatesNothingAfterWarmup() {
+        // Same chain as ModelInferenceManager.appendSample: 25 Hz ring samples resampled to the model rate,
+        // band-passed, and appended to the red, IR and RR rings (30 s windows)
+        Ingest ingest = new Ingest(25, (int) SignalFilters.DEFAULT_FS, 30);
+
+        for (int i = 0; i < 200_000; i++) {
+            ingest.append(80_000 + i % 500, 90_000 + i % 700);
+        }
+
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        int produced = 0;
+        for (int i = 0; i < 100_000; i++) {
+            produced += ingest.append(80_000 + i % 500, 90_000 + i % 700);
+        }
+        long after = threads.getThreadAllocatedBytes(threadId);
+
+        assertEquals(400_000, produced, 4);
+        assertTrue(ingest.irRR.isFull());
+        // Allow for the bookkeeping of the measurement call itself, but nothing proportional to the sample count
+        assertTrue("Allocated " + (after - before) + " bytes for 100000 samples", after - before < 1024);
+    }
+
+    private static final class Ingest {
+        final StreamingResampler redResampler;
+        final StreamingResampler irResampler;
+        final float[] redResampled;
+        final float[] irResampled;
+        final BiquadFilter redFilter;
+        final BiquadFilter irFilter;
+        final BiquadFilter irFilterRR;
+        final FloatRingBuffer redBuf;
+        final FloatRingBuffer irBuf;
+        final FloatRingBuffer irRR;
+
+        Ingest(int inFs, int fs, int windowSeconds) {
+            redResampler = new StreamingResampler(inFs, fs);
+            irResampler = new StreamingResampler(inFs, fs);
+            redResampled = new float[redResampler.maxOutputsPerSample()];
+            irResampled = new float[irResampler.maxOutputsPerSample()];
+            redFilter = SignalFilters.PhysiologicalSignalFilter.create(fs);
+            irFilter = redFilter.copy();
+            irFilterRR = SignalFilters.RespiratoryRateFilter.create(fs);
+            redBuf = new FloatRingBuffer(windowSeconds * fs);
+            irBuf = new FloatRingBuffer(windowSeconds * fs);
+            irRR = new FloatRingBuffer(windowSeconds * fs);
+        }
+
+        int append(long red, long ir) {
+            int produced = redResampler.push(red, redResampled);
+            irResampler.push(ir, irResampled);
+            for (int i = 0; i < produced; i++) {
+                redBuf.add(redFilter.process(redResampled[i]));
+                irBuf.add(irFilter.process(irResampled[i]));
+                irRR.add(irFilterRR.process(irResampled[i]));
+            }
+            return produced;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.tsinghua.openring.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link LatencyHistogram} and {@link PipelineMetrics}, run on the development machine (host).
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void buckets_coverValuesContiguouslyWithBoundedError() {
+        assertEquals(0, LatencyHistogram.bucketLowerBound(0));
+        for (int i = 0; i + 1 < LatencyHistogram.BUCKET_COUNT; i++) {
+            long lower = LatencyHistogram.bucketLowerBound(i);
+            long upper = LatencyHistogram.bucketUpperBound(i);
+            assertEquals(upper + 1, LatencyHistogram.bucketLowerBound(i + 1));
+            assertEquals(i, LatencyHistogram.bucketIndex(lower));
+            assertEquals(i, LatencyHistogram.bucketIndex(upper));
+            // 桶宽不超过下界的 1/16
+            assertTrue((upper - lower) * LatencyHistogram.SUB_BUCKETS <= Math.max(LatencyHistogram.SUB_BUCKETS, lower));
+        }
+        assertEquals(LatencyHistogram.BUCKET_COUNT - 1, LatencyHistogram.bucketIndex(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void percentiles_withinRelativeError() {
+        LatencyHistogram histogram = new LatencyHistogram("test");
+        for (long v = 1; v <= 1000; v++) {
+            histogram.record(v * 1_000);  // 1 us .. 1 ms
+        }
+        LatencyHistogram.Snapshot s = histogram.snapshot();
+        assertEquals(1000, s.count);
+        assertEquals(1_000_000, s.maxNanos);
+        assertEquals(500_500.0, s.meanNanos(), 1e-6);
+        assertEquals(500_000, s.percentileNanos(50), 500_000 / 16.0);
+        assertEquals(990_000, s.percentileNanos(99), 990_000 / 16.0);
+        assertEquals(1_000_000, s.percentileNanos(100));
+        assertTrue(s.percentileNanos(50) >= 500_000);
+    }
+
+    @Test
+    public void record_negativeAndReset() {
+        LatencyHistogram histogram = new LatencyHistogram("test");
+        histogram.record(-5);
+        assertEquals(1, histogram.snapshot().count);
+        assertEquals(0, histogram.snapshot().percentileNanos(50));
+
+        histogram.reset();
+        LatencyHistogram.Snapshot s = histogram.snapshot();
+        assertEquals(0, s.count);
+        assertEquals(0, s.percentileNanos(99));
+    }
+
+    @Test
+    public void pipelineMetrics_formatListsEveryMetric() {
+        PipelineMetrics.histogram("test.stage").record(2_000_000);
+        PipelineMetrics.counter("test.count").add(3);
+        PipelineMetrics.gauge("test.depth").set(7);
+        assertSame(PipelineMetrics.histogram("test.stage"), PipelineMetrics.histogram("test.stage"));
+
+        String text = PipelineMetrics.format();
+        assertTrue(text.contains("test.stage"));
+        assertTrue(text.contains("test.count"));
+        assertTrue(text.contains("test.depth"));
+
+        PipelineMetrics.reset();
+        assertEquals(0, PipelineMetrics.counter("test.count").get());
+        assertEquals(0, PipelineMetrics.histogram("test.stage").snapshot().count);
+        assertEquals(7, PipelineMetrics.gauge("test.depth").get());
+    }
+}
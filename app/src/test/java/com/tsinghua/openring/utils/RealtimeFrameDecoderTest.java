@@ -0,0 +1,65 @@
+package com.tsinghua.openring.utils;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+public class RealtimeFrameDecoderTest {
+
+    private static byte[] frame(int samples, int declared, long unixMs) {
+        ByteBuffer buf = ByteBuffer.allocate(14 + samples * 30).order(ByteOrder.LITTLE_ENDIAN);
+        buf.put((byte) 0).put((byte) 3).put((byte) 0x3C).put((byte) 0x01);
+        buf.put((byte) 9).put((byte) declared).putLong(unixMs);
+        for (int i = 0; i < samples; i++) {
+            buf.putInt(0xFFFFFF00 + i).putInt(1000 + i).putInt(2000 + i);
+            for (int c = 0; c < 9; c++) {
+                buf.putShort((short) (c * 100 - i));
+            }
+        }
+        return buf.array();
+    }
+
+    @Test
+    public void decodesAllChannelsIntoBlock() {
+        RealtimeFrameDecoder decoder = new RealtimeFrameDecoder();
+        SampleBlock block = new SampleBlock();
+        assertEquals(5, decoder.decode(frame(5, 5, 1700000000123L), block));
+        assertEquals(5, block.count);
+        assertEquals(9, block.sequence);
+        assertEquals(1700000000123L, block.frameTimestampMs);
+        assertEquals(0xFFFFFF04L, block.green[4]);
+        assertEquals(1003, block.red[3]);
+        assertEquals(2002, block.ir[2]);
+        assertEquals(-1, block.accX[1]);
+        assertEquals(99, block.accY[1]);
+        assertEquals(496, block.gyroZ[4]);
+        assertEquals(800, block.temp2[0]);
+    }
+
+    @Test
+    public void rejectsShortFramesAndCapsSampleCount() {
+        RealtimeFrameDecoder decoder = new RealtimeFrameDecoder();
+        SampleBlock block = new SampleBlock();
+        assertEquals(-1, decoder.decode(new byte[10], block));
+        assertEquals(-1, decoder.decode(frame(3, 4, 0), block));
+        // Only the first length bytes count, whatever the array holds beyond them
+        assertEquals(-1, decoder.decode(frame(5, 5, 0), 14 + 2 * 30, block));
+        assertEquals(0, block.count);
+        assertEquals(5, decoder.decode(frame(5, 5, 0), 14 + 5 * 30, block));
+        assertEquals(SampleBlock.MAX_SAMPLES, decoder.decode(frame(25, 25, 0), block));
+    }
+
+    @Test
+    public void rereadsReusedArray() {
+        RealtimeFrameDecoder decoder = new RealtimeFrameDecoder();
+        SampleBlock block = new SampleBlock();
+        byte[] data = frame(2, 2, 1);
+        decoder.decode(data, block);
+        data[14] = 7; // green[0] low byte
+        decoder.decode(data, block);
+        assertEquals(0xFFFFFF07L, block.green[0]);
+    }
+}
@@ -0,0 +1,147 @@
+package com.tsinghua.openring.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class RingRecordingTest {
+
+    private static File tempFile() throws IOException {
+        File file = File.createTempFile("recording", ".bin");
+        file.deleteOnExit();
+        return file;
+    }
+
+    private static Map<String, String> header() {
+        Map<String, String> header = new LinkedHashMap<>();
+        header.put(RingRecording.KEY_KIND, RingRecording.KIND_SESSION);
+        header.put(RingRecording.KEY_DEVICE, "戒指-01");
+        return header;
+    }
+
+    /**
+     * Realtime waveform notification (Cmd 0x3C, Subcmd 0x01) with the given number of samples
+     */
+    private static byte[] realtimePacket(int samples, long deviceMs, int base) {
+        ByteBuffer buf = ByteBuffer.allocate(14 + samples * 30).order(ByteOrder.LITTLE_ENDIAN);
+        buf.put((byte) 0).put((byte) 1).put((byte) 0x3C).put((byte) 0x01);
+        buf.put((byte) 7).put((byte) samples).putLong(deviceMs);
+        for (int i = 0; i < samples; i++) {
+            buf.putInt(base + i).putInt(0xF0000000).putInt(300 + i);
+            for (int c = 0; c < 9; c++) {
+                buf.putShort((short) (-c - i));
+            }
+        }
+        return buf.array();
+    }
+
+    @Test
+    public void roundTripsHeaderPacketsAndLogs() throws IOException {
+        File file = tempFile();
+        byte[] packet = realtimePacket(5, 1700000000000L, 100);
+        byte[] large = new byte[RingRecordingWriter.BUFFER_SIZE + 17];
+        large[large.length - 1] = 42;
+        try (RingRecordingWriter writer = RingRecordingWriter.create(file, header())) {
+            writer.writeLog(1L, "start");
+            writer.writePacket(2L, packet);
+            writer.writeFrame(RingRecording.TYPE_FILE_CHUNK, 3L, large, 0, large.length);
+            writer.writeLog(4L, "stop");
+        }
+        assertTrue(RingRecording.isRecording(file));
+
+        try (RingRecordingReader reader = new RingRecordingReader(file)) {
+            assertEquals(header(), reader.getHeader());
+            RingRecordingReader.Frame frame = new RingRecordingReader.Frame();
+            assertTrue(reader.next(frame));
+            assertEquals(RingRecording.TYPE_LOG, frame.type);
+            assertEquals("start", new String(frame.copyPayload(), "UTF-8"));
+            assertTrue(reader.next(frame));
+            assertEquals(RingRecording.TYPE_PACKET, frame.type);
+            assertEquals(2L, frame.timestampMillis);
+            assertArrayEquals(packet, frame.copyPayload());
+            assertTrue(reader.next(frame));
+            assertArrayEquals(large, frame.copyPayload());
+            assertTrue(reader.next(frame));
+            assertEquals(4L, frame.timestampMillis);
+            assertFalse(reader.next(frame));
+            assertFalse(reader.isTruncated());
+        }
+    }
+
+    @Test
+    public void exportsSamplesAsCsvRows() throws IOException {
+        File file = tempFile();
+        try (RingRecordingWriter writer = RingRecordingWriter.create(file, header())) {
+            writer.writePacket(10L, realtimePacket(5, 1700000000000L, 100));
+            writer.writePacket(20L, new byte[]{0, 2, 0x10, 0x02});
+        }
+        StringWriter csv = new StringWriter();
+        assertEquals(5, RingRecording.exportCsv(file, csv));
+        String[] lines = csv.toString().split("\n");
+        assertEquals("# kind: session", lines[0]);
+        assertTrue(lines[2].startsWith("received_ms,"));
+        assertEquals("10,1700000000000,1,101,4026531840,301,-1,-2,-3,-4,-5,-6,-7,-8,-9", lines[4]);
+        assertEquals("# packet [20] 00021002", lines[8]);
+    }
+
+    @Test
+    public void stopsAtCorruptFrameAndAppendResumesAfterLastIntactFrame() throws IOException {
+        File file = tempFile();
+        try (RingRecordingWriter writer = RingRecordingWriter.create(file, header())) {
+            writer.writeLog(1L, "one");
+            writer.writeLog(2L, "two");
+        }
+        long intactLength = file.length();
+        // Torn third frame: header written, payload missing
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(intactLength);
+            raf.write(new byte[]{RingRecording.TYPE_LOG, 50, 0, 0, 0, 1, 2, 3});
+        }
+        try (RingRecordingReader reader = new RingRecordingReader(file)) {
+            RingRecordingReader.Frame frame = new RingRecordingReader.Frame();
+            assertTrue(reader.next(frame));
+            assertTrue(reader.next(frame));
+            assertFalse(reader.next(frame));
+            assertTrue(reader.isTruncated());
+            assertEquals(intactLength, reader.getPosition());
+        }
+
+        try (RingRecordingWriter writer = RingRecordingWriter.openForAppend(file, header())) {
+            writer.writeLog(3L, "three");
+        }
+        int count = 0;
+        try (RingRecordingReader reader = new RingRecordingReader(file)) {
+            RingRecordingReader.Frame frame = new RingRecordingReader.Frame();
+            while (reader.next(frame)) {
+                count++;
+            }
+            assertFalse(reader.isTruncated());
+        }
+        assertEquals(3, count);
+
+        // Flip a payload byte: CRC check rejects the frame
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(file.length() - 5);
+            raf.write('X');
+        }
+        try (RingRecordingReader reader = new RingRecordingReader(file)) {
+            RingRecordingReader.Frame frame = new RingRecordingReader.Frame();
+            assertTrue(reader.next(frame));
+            assertTrue(reader.next(frame));
+            assertFalse(reader.next(frame));
+            assertTrue(reader.isTruncated());
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.tsinghua.openring.utils;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class SampleDispatcherTest {
+
+    private static byte[] packet(int cmd, int subcmd, int length) {
+        byte[] data = new byte[length];
+        data[2] = (byte) cmd;
+        data[3] = (byte) subcmd;
+        return data;
+    }
+
+    @Test
+    public void classify_routesSampleCarryingPackets() {
+        assertEquals(SampleDispatcher.PACKET_WAVEFORM, SampleDispatcher.classify(packet(0x3C, 0x01, 44), 44));
+        assertEquals(SampleDispatcher.PACKET_WAVEFORM, SampleDispatcher.classify(packet(0x3C, 0x02, 44), 44));
+        assertEquals(SampleDispatcher.PACKET_FILE_DATA, SampleDispatcher.classify(packet(0x36, 0x11, 64), 64));
+        // 13 字节的 0x3C/0x01 是测量开始时间戳，不含样本
+        assertEquals(SampleDispatcher.PACKET_OTHER, SampleDispatcher.classify(packet(0x3C, 0x01, 13), 13));
+        assertEquals(SampleDispatcher.PACKET_OTHER, SampleDispatcher.classify(packet(0x3C, 0x04, 8), 8));
+        assertEquals(SampleDispatcher.PACKET_OTHER, SampleDispatcher.classify(packet(0x36, 0x10, 8), 8));
+        assertEquals(SampleDispatcher.PACKET_OTHER, SampleDispatcher.classify(packet(0x3C, 0x01, 4), 3));
+    }
+
+    @Test
+    public void classify_usesTheGivenLengthNotTheBufferSize() {
+        // 回放复用的缓冲区比包长，按实际长度判断
+        byte[] scratch = packet(0x3C, 0x01, 256);
+        assertEquals(SampleDispatcher.PACKET_OTHER, SampleDispatcher.classify(scratch, 13));
+        assertEquals(SampleDispatcher.PACKET_WAVEFORM, SampleDispatcher.classify(scratch, 44));
+    }
+}
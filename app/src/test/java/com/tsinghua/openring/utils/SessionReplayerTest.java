@@ -0,0 +1,183 @@
+package com.tsinghua.openring.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class SessionReplayerTest {
+
+    private static final int FRAMES = 150;          // 30 s at 25 Hz, 5 samples per frame
+    private static final int SAMPLES_PER_FRAME = 5;
+    private static final long START_MS = 1700000000000L;
+
+    private static File tempFile(String suffix) throws IOException {
+        File file = File.createTempFile("replay", suffix);
+        file.deleteOnExit();
+        return file;
+    }
+
+    private static long green(int n) {
+        return TestSignals.pulseGreen(n, 25);
+    }
+
+    private static void putSamples(ByteBuffer buf, int first) {
+        for (int i = 0; i < SAMPLES_PER_FRAME; i++) {
+            int n = first + i;
+            buf.putInt((int) green(n)).putInt(50000).putInt(60000);
+            for (int c = 0; c < 9; c++) {
+                buf.putShort((short) c);
+            }
+        }
+    }
+
+    private static byte[] realtimePacket(int frame) {
+        ByteBuffer buf = ByteBuffer.allocate(14 + SAMPLES_PER_FRAME * 30).order(ByteOrder.LITTLE_ENDIAN);
+        buf.put((byte) 0).put((byte) 1).put((byte) 0x3C).put((byte) 0x01);
+        buf.put((byte) frame).put((byte) SAMPLES_PER_FRAME).putLong(START_MS + frame * SAMPLES_PER_FRAME * 40L);
+        putSamples(buf, frame * SAMPLES_PER_FRAME);
+        return buf.array();
+    }
+
+    /**
+     * Batch download chunk: 25-byte file packet header without the notification header
+     */
+    private static byte[] fileChunk(int frame) {
+        ByteBuffer buf = ByteBuffer.allocate(25 + SAMPLES_PER_FRAME * 30).order(ByteOrder.LITTLE_ENDIAN);
+        buf.put((byte) 0).putInt(0).putInt(FRAMES).putInt(frame + 1).putInt(SAMPLES_PER_FRAME * 30)
+                .putLong(START_MS + frame * SAMPLES_PER_FRAME * 40L);
+        putSamples(buf, frame * SAMPLES_PER_FRAME);
+        return buf.array();
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder();
+        for (byte b : bytes) {
+            sb.append(String.format("%02X", b & 0xFF));
+        }
+        return sb.toString();
+    }
+
+    private static List<Integer> values(List<SessionReplayer.Measurement> series) {
+        Integer[] values = new Integer[series.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = series.get(i).value;
+        }
+        return Arrays.asList(values);
+    }
+
+    private static SessionReplayer.Result replaySession() throws IOException {
+        File file = tempFile(".bin");
+        Map<String, String> header = new LinkedHashMap<>();
+        header.put(RingRecording.KEY_KIND, RingRecording.KIND_SESSION);
+        try (RingRecordingWriter writer = RingRecordingWriter.create(file, header)) {
+            writer.writeLog(1L, "start");
+            for (int f = 0; f < FRAMES; f++) {
+                writer.writePacket(START_MS + f, realtimePacket(f));
+            }
+        }
+        return new SessionReplayer().replay(file);
+    }
+
+    @Test
+    public void replaysSessionRecordingOnRingClock() throws IOException {
+        SessionReplayer.Result result = replaySession();
+
+        assertEquals(1, result.files);
+        assertEquals(FRAMES * SAMPLES_PER_FRAME, result.samples);
+        assertTrue(result.getSamplesPerSecond() > 0);
+        assertFalse(result.processorHeartRate.isEmpty());
+        for (SessionReplayer.Measurement m : result.processorHeartRate) {
+            assertTrue(m.timestampMs >= START_MS && m.timestampMs < START_MS + FRAMES * SAMPLES_PER_FRAME * 40L);
+        }
+
+        StringWriter csv = new StringWriter();
+        result.writeCsv(csv);
+        assertTrue(csv.toString().startsWith("timestamp_ms,metric,value\n"));
+        assertTrue(csv.toString().contains(",HR_PPG,"));
+    }
+
+    @Test
+    public void batchDownloadsMatchSessionRecording() throws IOException {
+        List<Integer> expected = values(replaySession().processorHeartRate);
+
+        File binary = tempFile(".bin");
+        Map<String, String> header = new LinkedHashMap<>();
+        header.put(RingRecording.KEY_KIND, RingRecording.KIND_BATCH_DOWNLOAD);
+        try (RingRecordingWriter writer = RingRecordingWriter.create(binary, header)) {
+            for (int f = 0; f < FRAMES; f++) {
+                byte[] chunk = fileChunk(f);
+                writer.writeFrame(RingRecording.TYPE_FILE_CHUNK, 0L, chunk, 0, chunk.length);
+            }
+        }
+
+        File legacy = tempFile(".bin");
+        try (Writer out = new OutputStreamWriter(new FileOutputStream(legacy), StandardCharsets.UTF_8)) {
+            out.write("# ========== Hardware Batch Download File ==========\n");
+            out.write("# File name: test\n\n");
+            for (int f = 0; f < FRAMES; f++) {
+                out.write("# Packet " + (f + 1) + "/" + FRAMES + ":\n");
+                out.write("# Raw data: " + hex(fileChunk(f)) + "\n\n");
+            }
+        }
+
+        SessionReplayer replayer = new SessionReplayer();
+        SessionReplayer.Result fromBinary = replayer.replay(binary);
+        SessionReplayer.Result fromText = replayer.replay(legacy);
+        assertEquals(FRAMES * SAMPLES_PER_FRAME, fromBinary.samples);
+        assertEquals(FRAMES * SAMPLES_PER_FRAME, fromText.samples);
+        assertEquals(expected, values(fromBinary.processorHeartRate));
+        assertEquals(expected, values(fromText.processorHeartRate));
+    }
+
+    @Test
+    public void replaysLegacySessionLog() throws IOException {
+        File legacy = tempFile(".txt");
+        try (Writer out = new OutputStreamWriter(new FileOutputStream(legacy), StandardCharsets.UTF_8)) {
+            out.write("[2024-05-01 10:00:00.000] Start recording\n");
+            for (int n = 0; n < FRAMES * SAMPLES_PER_FRAME; n++) {
+                // The samples of one notification are logged within the same millisecond or two
+                long ms = (n / SAMPLES_PER_FRAME) * SAMPLES_PER_FRAME * 40L + n % SAMPLES_PER_FRAME;
+                out.write(String.format("[2024-05-01 10:%02d:%02d.%03d] [NH] Realtime data point: Green=%d, Red=50000, "
+                                + "IR=60000, AccX=0, AccY=1, AccZ=2, GyroX=3, GyroY=4, GyroZ=5, Temp0=6, Temp1=7, Temp2=8\n",
+                        ms / 60000, ms / 1000 % 60, ms % 1000, green(n)));
+            }
+        }
+
+        SessionReplayer.Result result = new SessionReplayer().replay(legacy);
+        assertEquals(FRAMES * SAMPLES_PER_FRAME, result.samples);
+        assertEquals(values(replaySession().processorHeartRate), values(result.processorHeartRate));
+    }
+
+    @Test
+    public void truncatedPacketAfterLongerOneIsRejected() throws IOException {
+        // 回放复用同一缓冲区：截断帧不能读到上一帧残留的字节
+        byte[] truncated = Arrays.copyOf(realtimePacket(1), 14 + 2 * 30);
+        File file = tempFile(".bin");
+        Map<String, String> header = new LinkedHashMap<>();
+        header.put(RingRecording.KEY_KIND, RingRecording.KIND_SESSION);
+        try (RingRecordingWriter writer = RingRecordingWriter.create(file, header)) {
+            writer.writePacket(START_MS, realtimePacket(0));
+            writer.writePacket(START_MS + 1, truncated);
+            writer.writePacket(START_MS + 2, realtimePacket(2));
+        }
+
+        SessionReplayer.Result result = new SessionReplayer().replay(file);
+        assertEquals(2 * SAMPLES_PER_FRAME, result.samples);
+    }
+}
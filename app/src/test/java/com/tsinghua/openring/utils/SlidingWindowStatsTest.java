@@ -0,0 +1,60 @@
+package com.tsinghua.openring.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class SlidingWindowStatsTest {
+
+    @Test
+    public void statsMatchBruteForceOverSlidingWindow() {
+        int capacity = 125;
+        SlidingWindowStats stats = new SlidingWindowStats(capacity);
+        double[] history = new double[5000];
+        Random random = new Random(42);
+        for (int n = 0; n < history.length; n++) {
+            // Drifting PPG-like level with noise, so the extremes keep moving through the window
+            history[n] = 80000 + 3000 * Math.sin(n / 40.0) + random.nextInt(500);
+            stats.add(history[n]);
+
+            int start = Math.max(0, n + 1 - capacity);
+            double min = Double.MAX_VALUE, max = -Double.MAX_VALUE, sum = 0, sumSq = 0;
+            for (int i = start; i <= n; i++) {
+                min = Math.min(min, history[i]);
+                max = Math.max(max, history[i]);
+                sum += history[i];
+            }
+            int size = n + 1 - start;
+            double mean = sum / size;
+            for (int i = start; i <= n; i++) {
+                sumSq += (history[i] - mean) * (history[i] - mean);
+            }
+
+            assertEquals(size, stats.size());
+            assertEquals(min, stats.min(), 0.0);
+            assertEquals(max, stats.max(), 0.0);
+            assertEquals(mean, stats.mean(), 1e-6);
+            assertEquals(sumSq / size, stats.variance(), 1e-3);
+            assertEquals(history[start], stats.get(0), 0.0);
+            assertEquals(history[n], stats.get(size - 1), 0.0);
+        }
+    }
+
+    @Test
+    public void clearStartsAFreshWindow() {
+        SlidingWindowStats stats = new SlidingWindowStats(3);
+        stats.add(10);
+        stats.add(-5);
+        stats.clear();
+        assertTrue(stats.isEmpty());
+        assertTrue(Double.isNaN(stats.min()));
+        stats.add(2);
+        stats.add(7);
+        assertEquals(2, stats.min(), 0.0);
+        assertEquals(7, stats.max(), 0.0);
+        assertEquals(4.5, stats.mean(), 0.0);
+    }
+}
@@ -0,0 +1,65 @@
+package com.tsinghua.openring.utils;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class StreamingResamplerTest {
+
+    @Test
+    public void push_matchesLinearInterpolationOfTheWholeSignal() {
+        float[] input = new float[250];
+        for (int i = 0; i < input.length; i++) {
+            input[i] = (float) (1000 * Math.sin(i * 0.3) + i);
+        }
+        StreamingResampler resampler = new StreamingResampler(25, 100);
+        assertEquals(4, resampler.maxOutputsPerSample());
+
+        float[] chunk = new float[resampler.maxOutputsPerSample()];
+        float[] output = new float[input.length * 4];
+        int total = 0;
+        for (float x : input) {
+            int n = resampler.push(x, chunk);
+            System.arraycopy(chunk, 0, output, total, n);
+            total += n;
+        }
+        // Every interval between consecutive inputs yields 4 outputs
+        assertEquals((input.length - 1) * 4, total);
+        for (int k = 0; k < total; k++) {
+            double pos = k * 0.25;
+            int i0 = (int) pos;
+            double expected = input[i0] + (input[i0 + 1] - input[i0]) * (pos - i0);
+            assertEquals(expected, output[k], 1e-3);
+        }
+    }
+
+    @Test
+    public void push_handlesNonIntegerRatios() {
+        StreamingResampler resampler = new StreamingResampler(25, 60);
+        float[] chunk = new float[resampler.maxOutputsPerSample()];
+        int total = 0;
+        for (int i = 0; i < 251; i++) {
+            int n = resampler.push(i, chunk);
+            // A ramp stays a ramp on the output grid
+            for (int k = 0; k < n; k++) {
+                assertEquals((total + k) * 25.0 / 60.0, chunk[k], 1e-3);
+            }
+            total += n;
+        }
+        // 250 input intervals = 10 s = 600 output samples
+        assertEquals(600, total);
+    }
+
+    @Test
+    public void reset_restartsTheOutputGrid() {
+        StreamingResampler resampler = new StreamingResampler(25, 100);
+        float[] chunk = new float[4];
+        resampler.push(1f, chunk);
+        resampler.push(2f, chunk);
+        resampler.reset();
+        assertEquals(0, resampler.push(10f, chunk));
+        assertEquals(4, resampler.push(14f, chunk));
+        assertEquals(10f, chunk[0], 0f);
+        assertEquals(13f, chunk[3], 0f);
+    }
+}
@@ -0,0 +1,17 @@
+package com.tsinghua.openring.utils;
+
+/**
+ * Synthetic sensor signals shared by the host unit tests.
+ */
+final class TestSignals {
+
+    private TestSignals() {
+    }
+
+    /**
+     * Green PPG sample {@code n}: a 72 bpm pulse on a steady DC level
+     */
+    static long pulseGreen(int n, int sampleRate) {
+        return 100000 + Math.round(2000 * Math.sin(2 * Math.PI * 1.2 * n / sampleRate));
+    }
+}
@@ -0,0 +1,98 @@
+package com.tsinghua.openring.utils;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link UploadCodec}, run on the development machine (host).
+ */
+public class UploadCodecTest {
+
+    private static File tempFile(byte[] data) throws IOException {
+        File file = File.createTempFile("codec", ".txt");
+        file.deleteOnExit();
+        Files.write(file.toPath(), data);
+        return file;
+    }
+
+    private static byte[] gunzip(byte[] compressed) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                out.write(buffer, 0, read);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * 与会话日志类似的内容：时间戳加十六进制帧
+     */
+    private static byte[] hexLog(int lines) {
+        StringBuilder sb = new StringBuilder();
+        Random random = new Random(42);
+        for (int i = 0; i < lines; i++) {
+            sb.append("2025-01-01 12:00:").append(String.format("%02d.%03d", i / 1000 % 60, i % 1000)).append(" ");
+            for (int j = 0; j < 24; j++) {
+                sb.append(String.format("%02X", random.nextInt(16)));
+            }
+            sb.append('\n');
+        }
+        return sb.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    @Test
+    public void sha256_matchesKnownDigest() throws Exception {
+        File file = tempFile("abc".getBytes(StandardCharsets.US_ASCII));
+        assertEquals("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad", UploadCodec.sha256(file));
+    }
+
+    @Test
+    public void gzipRegion_roundTripsTheRegionAndCountsWireBytes() throws Exception {
+        byte[] data = hexLog(20_000);
+        File file = tempFile(data);
+        int offset = 100_000;
+        int length = 300_000;
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long written = UploadCodec.gzipRegion(file, offset, length, out);
+
+        assertEquals(out.size(), written);
+        assertArrayEquals(Arrays.copyOfRange(data, offset, offset + length), gunzip(out.toByteArray()));
+        assertTrue("hex log should compress at least 2x, got " + written, written * 2 < length);
+    }
+
+    @Test
+    public void gzipRegion_leavesOutputOpen() throws Exception {
+        File file = tempFile(hexLog(10));
+        ByteArrayOutputStream out = new ByteArrayOutputStream() {
+            @Override
+            public void close() {
+                fail("output stream must not be closed");
+            }
+        };
+        UploadCodec.gzipRegion(file, 0, file.length(), out);
+        UploadCodec.copyRegion(file, 0, 5, out);
+        assertTrue(out.size() > 5);
+    }
+
+    @Test(expected = java.io.EOFException.class)
+    public void copyRegion_failsOnTruncatedFile() throws Exception {
+        File file = tempFile(new byte[10]);
+        UploadCodec.copyRegion(file, 5, 10, new ByteArrayOutputStream());
+    }
+}
@@ -0,0 +1,237 @@
+package com.tsinghua.openring.utils;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link UploadLedger}, run on the development machine (host).
+ */
+public class UploadLedgerTest {
+
+    private static File tempDir() throws IOException {
+        File dir = Files.createTempDirectory("ledger").toFile();
+        dir.deleteOnExit();
+        return dir;
+    }
+
+    private static File dataFile(File dir, String name, String content) throws IOException {
+        File file = new File(dir, name);
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.US_ASCII));
+        file.deleteOnExit();
+        return file;
+    }
+
+    @Test
+    public void status_survivesReopenAndFollowsFileIdentity() throws Exception {
+        File dir = tempDir();
+        File log = new File(dir, "ledger.log");
+        File data = dataFile(dir, "MainSession_1.txt", "0A0B0C");
+
+        try (UploadLedger ledger = new UploadLedger(log)) {
+            assertEquals(UploadLedger.STATUS_PENDING, ledger.getStatus(data));
+            ledger.setStatus(data, UploadLedger.STATUS_FAILED);
+            ledger.setStatus(data, UploadLedger.STATUS_UPLOADED);
+        }
+        try (UploadLedger ledger = new UploadLedger(log)) {
+            assertEquals(UploadLedger.STATUS_UPLOADED, ledger.getStatus(data));
+
+            // 文件内容变化后重新视为待上传
+            Files.write(data.toPath(), "0A0B0C0D".getBytes(StandardCharsets.US_ASCII));
+            assertEquals(UploadLedger.STATUS_PENDING, ledger.getStatus(data));
+        }
+    }
+
+    @Test
+    public void countDirectory_tracksStatusChangesAndListingDiffs() throws Exception {
+        File dir = tempDir();
+        File data = new File(dir, "data");
+        assertTrue(data.mkdir());
+        File a = dataFile(data, "a.bin", "1");
+        File b = dataFile(data, "b.bin", "2");
+        dataFile(data, "ignored.txt", "3");
+
+        try (UploadLedger ledger = new UploadLedger(new File(dir, "ledger.log"))) {
+            UploadLedger.Counts counts = ledger.countDirectory(data, (d, name) -> name.endsWith(".bin"));
+            assertEquals(2, counts.total);
+            assertEquals(0, counts.uploaded);
+            assertEquals(2, counts.pending());
+
+            ledger.setStatus(a, UploadLedger.STATUS_UPLOADED);
+            ledger.setStatus(b, UploadLedger.STATUS_FAILED);
+            File c = dataFile(data, "c.bin", "4");
+            counts = ledger.countDirectory(data, (d, name) -> name.endsWith(".bin"));
+            assertEquals(3, counts.total);
+            assertEquals(1, counts.uploaded);
+            assertEquals(1, counts.failed);
+            assertEquals(1, counts.pending());
+
+            assertTrue(a.delete());
+            ledger.setStatus(c, UploadLedger.STATUS_UPLOADED);
+            counts = ledger.countDirectory(data, (d, name) -> name.endsWith(".bin"));
+            assertEquals(2, counts.total);
+            assertEquals(1, counts.uploaded);
+            assertEquals(1, counts.failed);
+        }
+    }
+
+    @Test
+    public void countDirectory_recountsFilesRewrittenAfterCounting() throws Exception {
+        File dir = tempDir();
+        File data = new File(dir, "data");
+        assertTrue(data.mkdir());
+        File log = dataFile(data, "MainSession_1.txt", "0A0B");
+
+        try (UploadLedger ledger = new UploadLedger(new File(dir, "ledger.log"))) {
+            ledger.setStatus(log, UploadLedger.STATUS_UPLOADED);
+            assertEquals(1, ledger.countDirectory(data, null).uploaded);
+
+            // 会话日志在上传后继续追加：计数应与 getStatus 一致，变回待上传
+            Files.write(log.toPath(), "0A0B0C0D".getBytes(StandardCharsets.US_ASCII));
+            UploadLedger.Counts counts = ledger.countDirectory(data, null);
+            assertEquals(UploadLedger.STATUS_PENDING, ledger.getStatus(log));
+            assertEquals(0, counts.uploaded);
+            assertEquals(1, counts.pending());
+        }
+    }
+
+    @Test
+    public void stateStore_keepsProgressAndDigests() throws Exception {
+        File dir = tempDir();
+        File log = new File(dir, "ledger.log");
+        File data = dataFile(dir, "a.bin", "abc");
+        String path = data.getAbsolutePath();
+
+        try (UploadLedger ledger = new UploadLedger(log)) {
+            UploadScheduler.UploadState state = new UploadScheduler.UploadState(path, data.length(), data.lastModified());
+            state.uploadId = "u1";
+            state.offset = 2;
+            state.sha256 = UploadCodec.sha256(data);
+            ledger.save(state);
+        }
+        try (UploadLedger ledger = new UploadLedger(log)) {
+            UploadScheduler.UploadState state = ledger.load(path);
+            assertEquals("u1", state.getUploadId());
+            assertEquals(2, state.getOffset());
+
+            // 调度器完成时：移除进度、记录摘要，然后回调设置状态
+            ledger.remove(path);
+            ledger.markUploaded(state.getSha256());
+            ledger.setStatus(data, UploadLedger.STATUS_UPLOADED);
+            assertNull(ledger.load(path));
+        }
+        try (UploadLedger ledger = new UploadLedger(log)) {
+            assertNull(ledger.load(path));
+            assertTrue(ledger.isUploaded(UploadCodec.sha256(data)));
+            assertEquals(UploadLedger.STATUS_UPLOADED, ledger.getStatus(data));
+
+            ledger.clear();
+            assertFalse(ledger.isUploaded(UploadCodec.sha256(data)));
+        }
+        try (UploadLedger ledger = new UploadLedger(log)) {
+            assertEquals(UploadLedger.STATUS_PENDING, ledger.getStatus(data));
+            assertEquals(0, ledger.size());
+        }
+    }
+
+    @Test
+    public void failureCount_followsFileIdentityAndSurvivesReopen() throws Exception {
+        File dir = tempDir();
+        File log = new File(dir, "ledger.log");
+        File data = dataFile(dir, "rejected.bin", "abc");
+
+        try (UploadLedger ledger = new UploadLedger(log)) {
+            assertEquals(0, ledger.getFailureCount(data));
+            ledger.setStatus(data, UploadLedger.STATUS_FAILED);
+            ledger.setStatus(data, UploadLedger.STATUS_FAILED);
+        }
+        try (UploadLedger ledger = new UploadLedger(log)) {
+            assertEquals(2, ledger.getFailureCount(data));
+
+            // 文件内容变化后重新计数
+            Files.write(data.toPath(), "abcd".getBytes(StandardCharsets.US_ASCII));
+            assertEquals(0, ledger.getFailureCount(data));
+            ledger.setStatus(data, UploadLedger.STATUS_FAILED);
+            assertEquals(1, ledger.getFailureCount(data));
+
+            ledger.setStatus(data, UploadLedger.STATUS_UPLOADED);
+            assertEquals(0, ledger.getFailureCount(data));
+        }
+    }
+
+    @Test
+    public void compaction_keepsLiveEntriesOnly() throws Exception {
+        File dir = tempDir();
+        File log = new File(dir, "ledger.log");
+        File data = dataFile(dir, "a.bin", "abc");
+
+        try (UploadLedger ledger = new UploadLedger(log)) {
+            for (int i = 0; i < 1000; i++) {
+                ledger.setStatus(data, i % 2 == 0 ? UploadLedger.STATUS_FAILED : UploadLedger.STATUS_UPLOADED);
+            }
+        }
+        long lines = Files.readAllLines(log.toPath()).size();
+        assertTrue("log should have been compacted, has " + lines + " lines", lines < 600);
+        try (UploadLedger ledger = new UploadLedger(log)) {
+            assertEquals(UploadLedger.STATUS_UPLOADED, ledger.getStatus(data));
+            assertEquals(1, ledger.size());
+        }
+    }
+
+    @Test
+    public void compaction_dropsDeletedFilesWithoutProgress() throws Exception {
+        File dir = tempDir();
+        File log = new File(dir, "ledger.log");
+        File deleted = dataFile(dir, "deleted.bin", "abc");
+        File resumable = dataFile(dir, "resumable.bin", "def");
+        File kept = dataFile(dir, "kept.bin", "ghi");
+
+        try (UploadLedger ledger = new UploadLedger(log)) {
+            ledger.setStatus(deleted, UploadLedger.STATUS_UPLOADED);
+            UploadScheduler.UploadState state = new UploadScheduler.UploadState(
+                    resumable.getAbsolutePath(), resumable.length(), resumable.lastModified());
+            state.uploadId = "u1";
+            ledger.save(state);
+            assertTrue(deleted.delete());
+            assertTrue(resumable.delete());
+            for (int i = 0; i < 1000; i++) {
+                ledger.setStatus(kept, i % 2 == 0 ? UploadLedger.STATUS_FAILED : UploadLedger.STATUS_UPLOADED);
+            }
+        }
+        try (UploadLedger ledger = new UploadLedger(log)) {
+            // 已删除且没有上传进度的文件被丢弃；仍有进度的保留，由调度器决定如何处理
+            assertEquals(2, ledger.size());
+            assertNotNull(ledger.load(resumable.getAbsolutePath()));
+            assertEquals(UploadLedger.STATUS_UPLOADED, ledger.getStatus(kept));
+        }
+    }
+
+    @Test
+    public void tornTrailingRecordIsDropped() throws Exception {
+        File dir = tempDir();
+        File log = new File(dir, "ledger.log");
+        File a = dataFile(dir, "a.bin", "abc");
+        File b = dataFile(dir, "b.bin", "def");
+
+        try (UploadLedger ledger = new UploadLedger(log)) {
+            ledger.setStatus(a, UploadLedger.STATUS_UPLOADED);
+        }
+        try (FileOutputStream out = new FileOutputStream(log, true)) {
+            out.write("S\t/half/written".getBytes(StandardCharsets.UTF_8));
+        }
+        try (UploadLedger ledger = new UploadLedger(log)) {
+            ledger.setStatus(b, UploadLedger.STATUS_FAILED);
+        }
+        try (UploadLedger ledger = new UploadLedger(log)) {
+            assertEquals(UploadLedger.STATUS_UPLOADED, ledger.getStatus(a));
+            assertEquals(UploadLedger.STATUS_FAILED, ledger.getStatus(b));
+            assertEquals(2, ledger.size());
+        }
+    }
+}
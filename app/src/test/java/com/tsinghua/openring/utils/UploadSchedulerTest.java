@@ -0,0 +1,415 @@
+package com.tsinghua.openring.utils;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link UploadScheduler}, run on the development machine (host).
+ */
+public class UploadSchedulerTest {
+
+    /**
+     * In-memory server: sessions keep the bytes received so far
+     */
+    private static class FakeTransport implements UploadScheduler.Transport {
+        final Map<String, byte[]> received = new ConcurrentHashMap<>();
+        final Map<String, Long> offsets = new ConcurrentHashMap<>();
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final AtomicInteger chunks = new AtomicInteger();
+        final AtomicInteger sessionsOpened = new AtomicInteger();
+        volatile int failChunksRemaining;
+        volatile boolean supportsSessions = true;
+        volatile boolean supportsBatches;
+        volatile long chunkDelayMs = 2;
+        final List<String> wholeUploads = Collections.synchronizedList(new ArrayList<>());
+        final List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        public UploadScheduler.Session openSession(File file, String sha256, Map<String, String> fields) throws IOException {
+            if (!supportsSessions) throw UploadScheduler.UploadException.unsupported("HTTP 404");
+            String id = "s" + sessionsOpened.incrementAndGet();
+            received.put(id, new byte[(int) file.length()]);
+            offsets.put(id, 0L);
+            return new UploadScheduler.Session(id, 0);
+        }
+
+        @Override
+        public long queryOffset(String uploadId) {
+            Long offset = offsets.get(uploadId);
+            return offset == null ? -1 : offset;
+        }
+
+        @Override
+        public long sendChunk(String uploadId, File file, long offset, int length) throws IOException {
+            int now = running.incrementAndGet();
+            maxRunning.accumulateAndGet(now, Math::max);
+            try {
+                Thread.sleep(chunkDelayMs);
+                if (failChunksRemaining > 0) {
+                    failChunksRemaining--;
+                    throw new IOException("connection reset");
+                }
+                chunks.incrementAndGet();
+                byte[] data = Files.readAllBytes(file.toPath());
+                System.arraycopy(data, (int) offset, received.get(uploadId), (int) offset, length);
+                offsets.put(uploadId, offset + length);
+                return offset + length;
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            } finally {
+                running.decrementAndGet();
+            }
+        }
+
+        @Override
+        public void uploadWhole(File file, String sha256, Map<String, String> fields) {
+            wholeUploads.add(file.getName());
+        }
+
+        @Override
+        public void uploadBatch(List<File> files, List<String> sha256, Map<String, String> fields) throws IOException {
+            if (!supportsBatches) throw UploadScheduler.UploadException.unsupported("HTTP 404");
+            assertEquals(files.size(), sha256.size());
+            batchSizes.add(files.size());
+        }
+    }
+
+    private static class MemoryStore implements UploadScheduler.StateStore {
+        final Map<String, String> entries = new ConcurrentHashMap<>();
+        final Set<String> digests = ConcurrentHashMap.newKeySet();
+
+        @Override
+        public UploadScheduler.UploadState load(String path) {
+            return UploadScheduler.UploadState.decode(path, entries.get(path));
+        }
+
+        @Override
+        public void save(UploadScheduler.UploadState state) {
+            entries.put(state.path, state.encode());
+        }
+
+        @Override
+        public void remove(String path) {
+            entries.remove(path);
+        }
+
+        @Override
+        public boolean isUploaded(String sha256) {
+            return digests.contains(sha256);
+        }
+
+        @Override
+        public void markUploaded(String sha256) {
+            digests.add(sha256);
+        }
+    }
+
+    private static class Result implements UploadScheduler.Listener {
+        final CountDownLatch done = new CountDownLatch(1);
+        volatile int succeeded = -1;
+        volatile int failed = -1;
+        final AtomicInteger completions = new AtomicInteger();
+
+        @Override
+        public void onFileCompleted(File file, boolean success, String message) {
+            completions.incrementAndGet();
+        }
+
+        @Override
+        public void onAllCompleted(int succeeded, int failed) {
+            this.succeeded = succeeded;
+            this.failed = failed;
+            done.countDown();
+        }
+
+        void await() throws InterruptedException {
+            assertTrue("batch did not complete", done.await(10, TimeUnit.SECONDS));
+        }
+    }
+
+    private static File tempFile(int size, int seed) throws IOException {
+        File file = File.createTempFile("upload", ".bin");
+        file.deleteOnExit();
+        byte[] data = new byte[size];
+        new Random(seed).nextBytes(data);
+        Files.write(file.toPath(), data);
+        return file;
+    }
+
+    @Test
+    public void uploadsInChunksWithBoundedParallelism() throws Exception {
+        FakeTransport transport = new FakeTransport();
+        MemoryStore store = new MemoryStore();
+        UploadScheduler scheduler = new UploadScheduler(transport, store, 2);
+        scheduler.setChunkSize(1000);
+        List<File> files = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            files.add(tempFile(4500, i));
+        }
+
+        Result result = new Result();
+        scheduler.submit(files, new HashMap<>(), result);
+        result.await();
+        scheduler.shutdown();
+
+        assertEquals(6, result.succeeded);
+        assertEquals(0, result.failed);
+        assertEquals(6, result.completions.get());
+        assertTrue("at most 2 uploads in flight", transport.maxRunning.get() <= 2);
+        assertEquals(6 * 5, transport.chunks.get());
+        assertTrue(store.entries.isEmpty());
+        for (File file : files) {
+            assertTrue(containsUpload(transport, Files.readAllBytes(file.toPath())));
+        }
+    }
+
+    private static boolean containsUpload(FakeTransport transport, byte[] expected) {
+        for (byte[] data : transport.received.values()) {
+            if (Arrays.equals(data, expected)) return true;
+        }
+        return false;
+    }
+
+    @Test
+    public void retriesWithBackoffAndResumesAtAcknowledgedOffset() throws Exception {
+        FakeTransport transport = new FakeTransport();
+        MemoryStore store = new MemoryStore();
+        UploadScheduler scheduler = new UploadScheduler(transport, store, 1);
+        scheduler.setChunkSize(1000);
+        scheduler.setRetryPolicy(3, 1, 10);
+        File file = tempFile(3000, 7);
+        transport.failChunksRemaining = 2;
+
+        Result result = new Result();
+        scheduler.submit(Collections.singletonList(file), new HashMap<>(), result);
+        result.await();
+        scheduler.shutdown();
+
+        assertEquals(1, result.succeeded);
+        assertEquals(1, transport.sessionsOpened.get());
+        assertEquals(3, transport.chunks.get());  // no acknowledged chunk was sent twice
+        assertArrayEquals(Files.readAllBytes(file.toPath()), transport.received.get("s1"));
+    }
+
+    @Test
+    public void persistedStateResumesAfterRestart() throws Exception {
+        FakeTransport transport = new FakeTransport();
+        MemoryStore store = new MemoryStore();
+        File file = tempFile(5000, 3);
+
+        // 第一次运行：两个分块后连接持续失败，超过重试次数
+        FakeTransport failing = transport;
+        UploadScheduler.Transport flaky = new UploadScheduler.Transport() {
+            int sent;
+
+            @Override
+            public UploadScheduler.Session openSession(File f, String sha256, Map<String, String> fields) throws IOException {
+                return failing.openSession(f, sha256, fields);
+            }
+
+            @Override
+            public long queryOffset(String uploadId) {
+                return failing.queryOffset(uploadId);
+            }
+
+            @Override
+            public long sendChunk(String uploadId, File f, long offset, int length) throws IOException {
+                if (++sent > 2) throw new IOException("network down");
+                return failing.sendChunk(uploadId, f, offset, length);
+            }
+
+            @Override
+            public void uploadWhole(File f, String sha256, Map<String, String> fields) {
+            }
+        };
+        UploadScheduler first = new UploadScheduler(flaky, store, 1);
+        first.setChunkSize(1000);
+        first.setRetryPolicy(1, 1, 1);
+        Result failed = new Result();
+        first.submit(Collections.singletonList(file), new HashMap<>(), failed);
+        failed.await();
+        first.shutdown();
+        assertEquals(1, failed.failed);
+        UploadScheduler.UploadState saved = store.load(file.getAbsolutePath());
+        assertEquals(2000, saved.getOffset());
+        assertEquals("s1", saved.getUploadId());
+
+        // 重启后：从已确认的 2000 字节继续，不重发已确认的数据
+        int chunksBefore = transport.chunks.get();
+        UploadScheduler second = new UploadScheduler(transport, store, 1);
+        second.setChunkSize(1000);
+        Result resumed = new Result();
+        second.submit(Collections.singletonList(file), new HashMap<>(), resumed);
+        resumed.await();
+        second.shutdown();
+
+        assertEquals(1, resumed.succeeded);
+        assertEquals(UploadCodec.sha256(file), saved.getSha256());
+        assertEquals(3, transport.chunks.get() - chunksBefore);
+        assertEquals(1, transport.sessionsOpened.get());
+        assertArrayEquals(Files.readAllBytes(file.toPath()), transport.received.get("s1"));
+        assertNull(store.load(file.getAbsolutePath()));
+    }
+
+    @Test
+    public void skipsContentThatWasAlreadyUploaded() throws Exception {
+        FakeTransport transport = new FakeTransport();
+        MemoryStore store = new MemoryStore();
+        UploadScheduler scheduler = new UploadScheduler(transport, store, 2);
+        File original = tempFile(3000, 5);
+        File copy = tempFile(3000, 5);  // 相同内容，不同路径
+
+        Result first = new Result();
+        scheduler.submit(Collections.singletonList(original), new HashMap<>(), first);
+        first.await();
+        Result second = new Result();
+        scheduler.submit(Collections.singletonList(copy), new HashMap<>(), second);
+        second.await();
+        scheduler.shutdown();
+
+        assertEquals(1, second.succeeded);
+        assertEquals(1, transport.sessionsOpened.get());
+        assertTrue(store.entries.isEmpty());
+    }
+
+    @Test
+    public void fallsBackToWholeFileUpload() throws Exception {
+        FakeTransport transport = new FakeTransport();
+        transport.supportsSessions = false;
+        UploadScheduler scheduler = new UploadScheduler(transport, new MemoryStore(), 2);
+        File file = tempFile(100, 1);
+
+        Result result = new Result();
+        scheduler.submit(Collections.singletonList(file), new HashMap<>(), result);
+        result.await();
+        scheduler.shutdown();
+
+        assertEquals(1, result.succeeded);
+        assertEquals(Collections.singletonList(file.getName()), transport.wholeUploads);
+    }
+
+    @Test
+    public void coalescesSmallFilesIntoBatchRequests() throws Exception {
+        FakeTransport transport = new FakeTransport();
+        transport.supportsBatches = true;
+        UploadScheduler scheduler = new UploadScheduler(transport, new MemoryStore(), 2);
+        scheduler.setCoalescing(1000, 4, 10_000);
+        List<File> files = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            files.add(tempFile(500, 100 + i));
+        }
+        files.add(tempFile(5000, 200));  // 大文件单独分块上传
+
+        Result result = new Result();
+        scheduler.submit(files, new HashMap<>(), result);
+        result.await();
+        scheduler.shutdown();
+
+        assertEquals(11, result.succeeded);
+        assertEquals(11, result.completions.get());
+        List<Integer> sizes = new ArrayList<>(transport.batchSizes);
+        Collections.sort(sizes);
+        assertEquals(Arrays.asList(2, 4, 4), sizes);
+        assertEquals(1, transport.sessionsOpened.get());
+    }
+
+    @Test
+    public void batchFallbackSendsFilesOneByOne() throws Exception {
+        FakeTransport transport = new FakeTransport();
+        UploadScheduler scheduler = new UploadScheduler(transport, new MemoryStore(), 2);
+        scheduler.setCoalescing(1000, 8, 10_000);
+        List<File> files = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            files.add(tempFile(500, 300 + i));
+        }
+
+        Result result = new Result();
+        scheduler.submit(files, new HashMap<>(), result);
+        result.await();
+        scheduler.shutdown();
+
+        assertEquals(3, result.succeeded);
+        assertEquals(3, transport.sessionsOpened.get());
+    }
+
+    @Test
+    public void cancelStopsAtChunkBoundaryAndKeepsProgress() throws Exception {
+        FakeTransport transport = new FakeTransport();
+        transport.chunkDelayMs = 20;
+        MemoryStore store = new MemoryStore();
+        UploadScheduler scheduler = new UploadScheduler(transport, store, 1);
+        scheduler.setChunkSize(100);
+        File file = tempFile(10_000, 9);
+
+        CountDownLatch progressed = new CountDownLatch(2);
+        Result result = new Result() {
+            @Override
+            public void onFileProgress(File f, long acknowledgedBytes, long totalBytes) {
+                progressed.countDown();
+            }
+        };
+        UploadScheduler.Handle handle = scheduler.submit(Collections.singletonList(file), new HashMap<>(), result);
+        assertTrue(progressed.await(10, TimeUnit.SECONDS));
+        handle.cancel();
+        result.await();
+        scheduler.shutdown();
+
+        assertEquals(1, result.failed);
+        UploadScheduler.UploadState saved = store.load(file.getAbsolutePath());
+        assertTrue(saved.getOffset() >= 200 && saved.getOffset() < 10_000);
+        assertEquals(0, saved.attempts);
+    }
+
+    @Test
+    public void backoffDelay_growsExponentiallyWithinCap() {
+        Random random = new Random(1);
+        for (int retry = 1; retry <= 10; retry++) {
+            long nominal = Math.min(60_000, 1000L << (retry - 1));
+            long delay = UploadScheduler.backoffDelayMs(retry, 1000, 60_000, random);
+            assertTrue(delay >= nominal / 2);
+            assertTrue(delay <= nominal);
+        }
+    }
+
+    @Test
+    public void uploadState_roundTrips() {
+        UploadScheduler.UploadState state = new UploadScheduler.UploadState("/a/b.bin", 200_000_000L, 1234L);
+        state.uploadId = "abc|def";
+        state.sha256 = "ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad";
+        state.offset = 5_000_000L;
+        state.attempts = 2;
+        state.nextAttemptAtMs = 99L;
+        UploadScheduler.UploadState decoded = UploadScheduler.UploadState.decode("/a/b.bin", state.encode());
+        assertEquals(state.size, decoded.size);
+        assertEquals(state.lastModified, decoded.lastModified);
+        assertEquals(state.offset, decoded.offset);
+        assertEquals(state.attempts, decoded.attempts);
+        assertEquals(state.nextAttemptAtMs, decoded.nextAttemptAtMs);
+        assertEquals("abc|def", decoded.uploadId);
+        assertEquals(state.sha256, decoded.sha256);
+        assertNull(UploadScheduler.UploadState.decode("/a", "garbage"));
+
+        // 没有摘要字段的旧格式
+        UploadScheduler.UploadState legacy = UploadScheduler.UploadState.decode("/a", "10|20|5|0|0|id-1");
+        assertEquals("id-1", legacy.uploadId);
+        assertNull(legacy.sha256);
+    }
+}
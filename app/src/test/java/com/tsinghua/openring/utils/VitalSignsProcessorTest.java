@@ -0,0 +1,66 @@
+package com.tsinghua.openring.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class VitalSignsProcessorTest {
+
+    private static final int FS = 25;
+    // Does not divide the 25-sample HR update interval, so updates fall inside blocks
+    private static final int BLOCK = 7;
+
+    private static class Recorder implements VitalSignsProcessor.VitalSignsCallback {
+        final List<Integer> heartRates = new ArrayList<>();
+        final List<VitalSignsProcessor.SignalQuality> qualities = new ArrayList<>();
+
+        @Override
+        public void onHeartRateUpdate(int heartRate) {
+            heartRates.add(heartRate);
+        }
+
+        @Override
+        public void onSignalQualityUpdate(VitalSignsProcessor.SignalQuality quality) {
+            qualities.add(quality);
+        }
+    }
+
+    @Test
+    public void blockIngestMatchesPerSampleIngest() {
+        Recorder perSample = new Recorder();
+        Recorder blocked = new Recorder();
+        VitalSignsProcessor a = new VitalSignsProcessor(perSample);
+        VitalSignsProcessor b = new VitalSignsProcessor(blocked);
+
+        long[] green = new long[BLOCK];
+        long[] ir = new long[BLOCK];
+        short[] acc = new short[BLOCK];
+        int total = 20 * FS;
+        for (int start = 0; start < total; start += BLOCK) {
+            int n = Math.min(BLOCK, total - start);
+            for (int i = 0; i < n; i++) {
+                green[i] = TestSignals.pulseGreen(start + i, FS);
+                a.addDataPoint(green[i], 0, (short) 0, (short) 0, (short) 0, 0);
+            }
+            b.onSensorBlock(green, ir, acc, acc, acc, n, 0);
+        }
+
+        assertTrue(perSample.heartRates.size() > 0);
+        assertEquals(perSample.heartRates, blocked.heartRates);
+        assertEquals(a.getCurrentHeartRate(), b.getCurrentHeartRate());
+        assertEquals(a.getCurrentSignalQuality(), b.getCurrentSignalQuality());
+    }
+
+    @Test
+    public void emptyBlockIsIgnored() {
+        Recorder recorder = new Recorder();
+        VitalSignsProcessor processor = new VitalSignsProcessor(recorder);
+        processor.onSensorBlock(new long[0], new long[0], new short[0], new short[0], new short[0], 0, 0);
+        assertEquals(0, processor.getLastUpdateTime());
+        assertTrue(recorder.qualities.isEmpty());
+    }
+}
@@ -0,0 +1,85 @@
+package com.tsinghua.openring.utils;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.List;
+
+public class VitalSignsRecordLogTest {
+    private static final ZoneId ZONE = ZoneId.of("Asia/Shanghai");
+
+    private static File tempLog() throws IOException {
+        File file = File.createTempFile("vitals", ".bin");
+        file.delete();
+        file.deleteOnExit();
+        return file;
+    }
+
+    private static long day(String date) {
+        return LocalDate.parse(date).toEpochDay();
+    }
+
+    @Test
+    public void appendAndReadByLocalDay() throws IOException {
+        File file = tempLog();
+        try (VitalSignsRecordLog log = new VitalSignsRecordLog(file, ZONE)) {
+            log.append(new VitalSignsRecord("2025-03-01T23:59:58", 70, 120, 80, 98, 16));
+            log.append(new VitalSignsRecord("2025-03-02T00:00:01", 72, 121, 81, 97, 15));
+            log.append(new VitalSignsRecord("2025-03-01T12:00:00", 65, 110, 70, 99, 14));
+
+            List<VitalSignsRecord> first = log.readDay(day("2025-03-01"));
+            assertEquals(2, first.size());
+            assertEquals("2025-03-01T23:59:58", first.get(0).getTimestamp());
+            assertEquals("2025-03-01T12:00:00", first.get(1).getTimestamp());
+            assertEquals(65, first.get(1).getHr());
+            assertEquals(14, first.get(1).getRr());
+
+            List<VitalSignsRecord> second = log.readDay(day("2025-03-02"));
+            assertEquals(1, second.size());
+            assertEquals(121, second.get(0).getBp_sys());
+            assertEquals(81, second.get(0).getBp_dia());
+            assertEquals(97, second.get(0).getSpo2());
+            assertEquals(0, log.readDay(day("2025-03-03")).size());
+        }
+        assertEquals(VitalSignsRecordLog.HEADER_SIZE + 3 * VitalSignsRecordLog.RECORD_SIZE, file.length());
+    }
+
+    @Test
+    public void reopenRebuildsIndexAndDropsTornRecord() throws IOException {
+        File file = tempLog();
+        try (VitalSignsRecordLog log = new VitalSignsRecordLog(file, ZONE)) {
+            for (int i = 0; i < 10; i++) {
+                log.append(new VitalSignsRecord(String.format("2025-03-0%dT08:00:00", 1 + i % 2), 60 + i, 0, 0, 0, 0));
+            }
+        }
+        // Simulate an append interrupted half-way
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(raf.length() + 7);
+        }
+        try (VitalSignsRecordLog log = new VitalSignsRecordLog(file, ZONE)) {
+            assertEquals(10, log.size());
+            List<VitalSignsRecord> records = log.readDay(day("2025-03-02"));
+            assertEquals(5, records.size());
+            assertEquals(61, records.get(0).getHr());
+            assertEquals(69, records.get(4).getHr());
+            log.append(new VitalSignsRecord("2025-03-02T09:00:00", 99, 0, 0, 0, 0));
+            assertEquals(6, log.readDay(day("2025-03-02")).size());
+        }
+    }
+
+    @Test
+    public void secondInstanceSeesAppendsFromFirst() throws IOException {
+        File file = tempLog();
+        try (VitalSignsRecordLog writer = new VitalSignsRecordLog(file, ZONE);
+             VitalSignsRecordLog reader = new VitalSignsRecordLog(file, ZONE)) {
+            writer.append(new VitalSignsRecord("2025-03-01T10:00:00", 70, 0, 0, 0, 0));
+            assertEquals(1, reader.readDay(day("2025-03-01")).size());
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.tsinghua.openring.bench;
+
+import com.tsinghua.openring.inference.ClassicAlgorithmProcessor;
+import com.tsinghua.openring.inference.SpectralEstimator;
+import com.tsinghua.openring.utils.SignalFilters;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Classic HR/RR estimators on a filtered 30 s window, as run once per inference window
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ClassicAlgorithmBenchmark {
+
+    @Param({"25", "100"})
+    public int fs;
+
+    private float[] hrWindow;
+    private float[] rrWindow;
+
+    @Setup
+    public void setUp() {
+        float[] raw = SyntheticPpg.window(fs, 30, 6);
+        hrWindow = SignalFilters.PhysiologicalSignalFilter.create(fs).filtfilt(raw);
+        rrWindow = SignalFilters.RespiratoryRateFilter.create(fs).filtfilt(raw);
+    }
+
+    @Benchmark
+    public float hrPeak() {
+        return ClassicAlgorithmProcessor.estimateHrByPeak(hrWindow, fs);
+    }
+
+    @Benchmark
+    public float hrFft() {
+        return ClassicAlgorithmProcessor.estimateHrByFFT(hrWindow, fs);
+    }
+
+    @Benchmark
+    public float rrPeak() {
+        return ClassicAlgorithmProcessor.estimateRrByPeak(rrWindow, fs);
+    }
+
+    @Benchmark
+    public float rrFft() {
+        return ClassicAlgorithmProcessor.estimateRrByFFT(rrWindow, fs);
+    }
+
+    /**
+     * Spectral peak used by the ensemble HR path
+     */
+    @Benchmark
+    public SpectralEstimator.Peak hrSpectralPeak() {
+        return SpectralEstimator.findPeak(hrWindow, fs, 0.5, 4.0);
+    }
+}
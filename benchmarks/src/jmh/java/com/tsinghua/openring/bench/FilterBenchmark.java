@@ -0,0 +1,79 @@
+package com.tsinghua.openring.bench;
+
+import com.tsinghua.openring.utils.BiquadFilter;
+import com.tsinghua.openring.utils.SignalFilters;
+import com.tsinghua.openring.utils.StreamingResampler;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-sample ingest work: band-pass filtering at the stream rate and 25 Hz to model rate resampling.
+ * Each op is one incoming sample, which must stay allocation-free.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class FilterBenchmark {
+
+    @Param({"25", "100"})
+    public int fs;
+
+    private float[] signal;
+    private int index;
+    private BiquadFilter physiological;
+    private BiquadFilter respiratory;
+    private StreamingResampler resampler;
+    private float[] resampled;
+    private float[] raw25;
+    private int rawIndex;
+
+    @Setup
+    public void setUp() {
+        signal = SyntheticPpg.window(fs, 60, 1);
+        raw25 = SyntheticPpg.window(25, 60, 2);
+        physiological = SignalFilters.PhysiologicalSignalFilter.create(fs);
+        respiratory = SignalFilters.RespiratoryRateFilter.create(fs);
+        resampler = new StreamingResampler(25, fs);
+        resampled = new float[resampler.maxOutputsPerSample()];
+    }
+
+    private int next(int length) {
+        int i = index;
+        index = i + 1 == length ? 0 : i + 1;
+        return i;
+    }
+
+    @Benchmark
+    public float physiologicalTick() {
+        return physiological.process(signal[next(signal.length)]);
+    }
+
+    @Benchmark
+    public float respiratoryTick() {
+        return respiratory.process(signal[next(signal.length)]);
+    }
+
+    /**
+     * One 25 Hz sample resampled to fs and filtered, as ModelInferenceManager does for each channel
+     */
+    @Benchmark
+    public float resampleAndFilterTick() {
+        int n = rawIndex;
+        rawIndex = n + 1 == raw25.length ? 0 : n + 1;
+        int produced = resampler.push(raw25[n], resampled);
+        float last = 0;
+        for (int i = 0; i < produced; i++) {
+            last = physiological.process(resampled[i]);
+        }
+        return last;
+    }
+}
@@ -0,0 +1,76 @@
+package com.tsinghua.openring.bench;
+
+import com.tsinghua.openring.inference.WindowPreprocessor;
+import com.tsinghua.openring.utils.FloatRingBuffer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Model input preparation for one inference window: snapshot of the sample windows,
+ * padding, interleaving and per-channel normalisation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PreprocessBenchmark {
+
+    @Param({"25", "100"})
+    public int fs;
+
+    @Param({"30"})
+    public int windowSeconds;
+
+    private FloatRingBuffer redBuf;
+    private FloatRingBuffer irBuf;
+    private float[] shortWindow;
+
+    @Setup
+    public void setUp() {
+        int capacity = windowSeconds * fs;
+        redBuf = new FloatRingBuffer(capacity);
+        irBuf = new FloatRingBuffer(capacity);
+        float[] red = SyntheticPpg.window(fs, windowSeconds + 5, 3);
+        float[] ir = SyntheticPpg.window(fs, windowSeconds + 5, 4);
+        for (int i = 0; i < red.length; i++) {
+            redBuf.add(red[i]);
+            irBuf.add(ir[i]);
+        }
+        // Inference starts after 5 s, so early windows are padded up to the model length
+        shortWindow = SyntheticPpg.window(fs, 5, 5);
+    }
+
+    @Benchmark
+    public float[] hrBpSpo2Input() {
+        int length = windowSeconds * fs;
+        float[] red = WindowPreprocessor.padWindow(redBuf.toArray(), length);
+        float[] ir = WindowPreprocessor.padWindow(irBuf.toArray(), length);
+        float[] input = WindowPreprocessor.interleave(ir, red, length);
+        WindowPreprocessor.normalizeInterleaved(input, length, 2);
+        return input;
+    }
+
+    @Benchmark
+    public float[] rrInput() {
+        int length = windowSeconds * fs;
+        float[] ir = WindowPreprocessor.padWindow(irBuf.toArray(), length);
+        WindowPreprocessor.normalize(ir, length);
+        return ir;
+    }
+
+    @Benchmark
+    public float[] paddedInput() {
+        int length = windowSeconds * fs;
+        float[] ir = WindowPreprocessor.padWindow(shortWindow, length);
+        WindowPreprocessor.normalize(ir, length);
+        return ir;
+    }
+}
@@ -0,0 +1,74 @@
+package com.tsinghua.openring.bench;
+
+import com.tsinghua.openring.utils.VitalSignsProcessor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Realtime heart rate path at the ring's 25 Hz: sliding windows, signal quality and the peak
+ * detection that runs every 25 samples. One op is one sample (tick) or one 5-sample frame (block),
+ * so the averages include the amortised peak detection.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class VitalSignsProcessorBenchmark {
+
+    private static final int FS = 25;
+    private static final int FRAME_SAMPLES = 5;
+
+    private VitalSignsProcessor processor;
+    public int lastHeartRate;
+    public VitalSignsProcessor.SignalQuality lastQuality;
+    private long[] green;
+    private int index;
+    private final long[] blockGreen = new long[FRAME_SAMPLES];
+    private final long[] blockIr = new long[FRAME_SAMPLES];
+    private final short[] blockAcc = new short[FRAME_SAMPLES];
+
+    @Setup
+    public void setUp() {
+        processor = new VitalSignsProcessor(new VitalSignsProcessor.VitalSignsCallback() {
+            @Override
+            public void onHeartRateUpdate(int heartRate) {
+                lastHeartRate = heartRate;
+            }
+
+            @Override
+            public void onSignalQualityUpdate(VitalSignsProcessor.SignalQuality quality) {
+                lastQuality = quality;
+            }
+        });
+        green = SyntheticPpg.rawWindow(FS, 60, 7);
+        // Fill the 5 s window so every op sees steady-state work
+        for (int i = 0; i < FS * 10; i++) {
+            processor.addDataPoint(green[i], 0, (short) 0, (short) 0, (short) 0, i);
+        }
+        index = FS * 10;
+    }
+
+    @Benchmark
+    public void tick() {
+        int i = index;
+        index = i + 1 == green.length ? 0 : i + 1;
+        processor.addDataPoint(green[i], 0, (short) 0, (short) 0, (short) 0, i);
+    }
+
+    @Benchmark
+    public void frame() {
+        for (int k = 0; k < FRAME_SAMPLES; k++) {
+            int i = index;
+            index = i + 1 == green.length ? 0 : i + 1;
+            blockGreen[k] = green[i];
+        }
+        processor.onSensorBlock(blockGreen, blockIr, blockAcc, blockAcc, blockAcc, FRAME_SAMPLES, index);
+    }
+}